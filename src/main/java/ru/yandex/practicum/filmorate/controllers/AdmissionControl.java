@@ -0,0 +1,125 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.yandex.practicum.filmorate.exceptions.AdmissionRejectedException;
+import ru.yandex.practicum.filmorate.model.AdmissionStats;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.admission.enabled", havingValue = "true")
+public class AdmissionControl implements HandlerInterceptor, WebMvcConfigurer {
+
+    /* ограничение одновременных запросов отдельно для каждой точки доступа: тяжелые запросы (популярные
+    фильмы с большим count, друзья пользователя с большим списком, полный список пользователей) упираются
+    в собственный предел и получают быстрый ответ 503 с Retry-After, не занимая потоки легких запросов */
+
+    private static final String ADMISSION = AdmissionControl.class.getName() + ".admission";
+
+    private final Map<String, AdmissionLimiter> limiters = new ConcurrentHashMap<>();
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long queueTimeoutNanos;
+    private final double tolerance;
+    private final long retryAfterSeconds;
+
+    public AdmissionControl(@Value("${filmorate.admission.initial-limit}") int initialLimit,
+                            @Value("${filmorate.admission.min-limit}") int minLimit,
+                            @Value("${filmorate.admission.max-limit}") int maxLimit,
+                            @Value("${filmorate.admission.max-queue}") int maxQueue,
+                            @Value("${filmorate.admission.queue-timeout-ms}") long queueTimeoutMs,
+                            @Value("${filmorate.admission.tolerance}") double tolerance,
+                            @Value("${filmorate.admission.retry-after-seconds}") long retryAfterSeconds) {
+
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+        this.tolerance = tolerance;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+
+        registry.addInterceptor(this).excludePathPatterns("/admission", "/replication/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws InterruptedException {
+
+        // повторная обработка асинхронного запроса (неблокирующий API) - место уже занято
+        if (!(handler instanceof HandlerMethod) || request.getAttribute(ADMISSION) != null) {
+            return true;
+        }
+
+        String endpoint = request.getMethod() + " " + request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        AdmissionLimiter limiter = limiters.computeIfAbsent(endpoint,
+                key -> new AdmissionLimiter(key, initialLimit, minLimit, maxLimit, maxQueue, tolerance));
+
+        if (!limiter.acquire(queueTimeoutNanos)) {
+            log.debug("Запрос {} отклонен: превышен предел одновременных запросов", endpoint);
+            throw new AdmissionRejectedException("Сервер перегружен запросами " + endpoint
+                    + ", повторите запрос позже", retryAfterSeconds);
+        }
+        request.setAttribute(ADMISSION, new Admission(limiter, System.nanoTime()));
+        return true;
+    }
+
+    // вызывается после ответа, в том числе по завершении асинхронной обработки
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+
+        if (request.isAsyncStarted()) { // место освобождается после завершения асинхронной обработки
+            return;
+        }
+        Admission admission = (Admission) request.getAttribute(ADMISSION);
+        if (admission != null) {
+            request.removeAttribute(ADMISSION);
+            admission.limiter.release(System.nanoTime() - admission.startNanos);
+        }
+    }
+
+    // состояние ограничений всех точек доступа, к которым были запросы
+    public List<AdmissionStats> stats() {
+
+        return limiters.values().stream()
+                .map(AdmissionLimiter::stats)
+                .sorted(Comparator.comparing(AdmissionStats::getEndpoint))
+                .collect(Collectors.toList());
+    }
+
+    // занятое запросом место и время начала выполнения
+    private static class Admission {
+
+        private final AdmissionLimiter limiter;
+        private final long startNanos;
+
+        private Admission(AdmissionLimiter limiter, long startNanos) {
+            this.limiter = limiter;
+            this.startNanos = startNanos;
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.AdmissionStats;
+
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@Slf4j
+@RequestMapping("/admission")
+@RequiredArgsConstructor
+public class AdmissionController {
+
+    /* обработка запросов на получение состояния ограничения запросов по адресу http://localhost:8080/admission */
+
+    private final Optional<AdmissionControl> admissionControl; // отсутствует, если ограничение не включено
+
+    // обработка GET-запроса на получение пределов, очередей и числа отклоненных запросов по точкам доступа
+    @GetMapping()
+    public List<AdmissionStats> listAdmissionStats() {
+
+        return admissionControl.map(AdmissionControl::stats).orElse(List.of());
+    }
+
+}
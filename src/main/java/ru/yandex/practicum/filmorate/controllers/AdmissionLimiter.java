@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import ru.yandex.practicum.filmorate.model.AdmissionStats;
+
+import java.util.concurrent.TimeUnit;
+
+class AdmissionLimiter {
+
+    /* адаптивное ограничение одновременных запросов одной точки доступа по времени ответа.
+    пока сглаженное время ответа не превышает время без нагрузки больше чем в tolerance раз, предел растет
+    на корень из текущего значения; при росте задержки предел уменьшается пропорционально, но не больше
+    чем вдвое за замер. запросы сверх предела ждут в ограниченной очереди, остальные сразу отклоняются */
+
+    private static final double SMOOTHING = 0.2; // доля нового значения предела при пересчете
+    private static final double LATENCY_SMOOTHING = 0.1; // доля нового замера в сглаженном времени ответа
+    private static final int WINDOW = 500; // замеров в окне поиска времени ответа без нагрузки
+    private static final long NO_LOAD_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1); // быстрее - нагрузки нет
+
+    private final String endpoint;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final double tolerance;
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long admitted;
+    private long rejected;
+
+    private long noLoadNanos = Long.MAX_VALUE; // время ответа без нагрузки
+    private long windowMinNanos = Long.MAX_VALUE; // наименьшее время ответа текущего окна
+    private int windowSamples;
+    private double latencyNanos;
+
+    AdmissionLimiter(String endpoint, int initialLimit, int minLimit, int maxLimit, int maxQueue, double tolerance) {
+
+        this.endpoint = endpoint;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.tolerance = tolerance;
+    }
+
+    // занятие места: сразу при свободном пределе, иначе ожидание в очереди не дольше timeoutNanos
+    synchronized boolean acquire(long timeoutNanos) throws InterruptedException {
+
+        if (inFlight < (int) limit) {
+            return admit();
+        }
+        if (queued >= maxQueue) {
+            rejected++;
+            return false;
+        }
+
+        queued++;
+        try {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (inFlight >= (int) limit) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejected++;
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return admit();
+        } finally {
+            queued--;
+        }
+    }
+
+    // освобождение места и пересчет предела по времени ответа запроса
+    synchronized void release(long latency) {
+
+        boolean saturated = inFlight * 2 >= (int) limit; // при малой загрузке задержка не говорит о пределе
+        inFlight--;
+
+        // время без нагрузки не больше наименьшего замера, а по окончании окна заменяется минимумом окна,
+        // чтобы следовать за медленными изменениями (прогрев, рост данных)
+        windowMinNanos = Math.min(windowMinNanos, latency);
+        noLoadNanos = Math.min(noLoadNanos, Math.max(latency, NO_LOAD_FLOOR_NANOS));
+        if (++windowSamples >= WINDOW) {
+            noLoadNanos = Math.max(windowMinNanos, NO_LOAD_FLOOR_NANOS);
+            windowMinNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        latencyNanos = latencyNanos == 0 ? latency : latencyNanos + LATENCY_SMOOTHING * (latency - latencyNanos);
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * noLoadNanos / latencyNanos));
+        double target = limit * gradient + (saturated ? Math.sqrt(limit) : 0);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit + SMOOTHING * (target - limit)));
+
+        notifyAll(); // предел мог вырасти больше чем на одно место
+    }
+
+    synchronized AdmissionStats stats() {
+
+        return AdmissionStats.builder()
+                .endpoint(endpoint)
+                .limit((int) limit)
+                .inFlight(inFlight)
+                .queued(queued)
+                .admitted(admitted)
+                .rejected(rejected)
+                .noLoadLatencyMicros(noLoadNanos == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMicros(noLoadNanos))
+                .latencyMicros(TimeUnit.NANOSECONDS.toMicros((long) latencyNanos))
+                .build();
+    }
+
+    private boolean admit() {
+
+        inFlight++;
+        admitted++;
+        return true;
+    }
+
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.BatchOperation;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.service.BatchService;
+
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+@RestController
+@Slf4j
+@RequestMapping("/batch")
+@Validated
+@RequiredArgsConstructor
+public class BatchController {
+
+    /* обработка запросов на выполнение нескольких операций с пользователями, друзьями, фильмами и лайками
+    одним запросом по адресу http://localhost:8080/batch */
+
+    private final BatchService batchService;
+
+    // обработка POST-запроса на выполнение пакета операций - выполняются все операции или ни одной
+    @PostMapping()
+    public List<BatchResult> execute(@RequestBody @NotEmpty List<BatchOperation> operations) {
+
+        return batchService.execute(operations);
+    }
+
+}
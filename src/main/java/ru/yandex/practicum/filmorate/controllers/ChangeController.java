@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.ChangeFeed;
+import ru.yandex.practicum.filmorate.service.ChangeService;
+
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+
+@RestController
+@Slf4j
+@RequestMapping("/changes")
+@Validated
+@RequiredArgsConstructor
+public class ChangeController {
+
+    /* обработка запросов потребителей ленты изменений пользователей, фильмов и лайков по адресу
+    http://localhost:8080/changes */
+
+    private final ChangeService changeService;
+
+    // обработка GET-запроса на получение изменений с версией больше since
+    @GetMapping()
+    public ChangeFeed listChanges(@RequestParam(defaultValue = "0") @PositiveOrZero Long since,
+                                  @RequestParam(defaultValue = "100") @Positive Integer limit) {
+
+        return changeService.listChanges(since, limit);
+    }
+
+}
@@ -1,11 +1,20 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+import ru.yandex.practicum.filmorate.exceptions.AdmissionRejectedException;
 import ru.yandex.practicum.filmorate.exceptions.FilmDoesNotExistException;
+import ru.yandex.practicum.filmorate.exceptions.ReplicaUnavailableException;
+import ru.yandex.practicum.filmorate.exceptions.RequestValidationException;
+import ru.yandex.practicum.filmorate.exceptions.ShardAccessDeniedException;
+import ru.yandex.practicum.filmorate.exceptions.ShardRequestException;
 import ru.yandex.practicum.filmorate.exceptions.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.exceptions.VersionConflictException;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 
 import javax.validation.ConstraintViolationException;
@@ -23,14 +32,57 @@ public class ErrorHandler {
         return new ErrorResponse("Несуществующий id: " + e.getMessage());
     }
 
-    // обработка ошибок при прохождении валидации
-    @ExceptionHandler(ConstraintViolationException.class)
+    /* обработка ошибок при прохождении валидации и некорректных значений параметров. ошибки в данных,
+    найденные сервисами, выбрасываются как RequestValidationException - прочие IllegalArgumentException
+    означают ошибку приложения и обрабатываются как непредвиденные */
+    @ExceptionHandler({ConstraintViolationException.class, RequestValidationException.class,
+            MethodArgumentTypeMismatchException.class})
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponse handleFailValidation(final RuntimeException e) {
 
         return new ErrorResponse("Ошибка валидации: " + e.getMessage());
     }
 
+    // обработка изменений устаревшей версии записи - запись изменена после чтения клиентом (If-Match)
+    @ExceptionHandler(VersionConflictException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public ErrorResponse handleVersionConflict(final RuntimeException e) {
+
+        return new ErrorResponse(e.getMessage());
+    }
+
+    // обработка внутренних запросов узлов без общего секрета
+    @ExceptionHandler(ShardAccessDeniedException.class)
+    @ResponseStatus(HttpStatus.FORBIDDEN)
+    public ErrorResponse handleShardAccessDenied(final RuntimeException e) {
+
+        return new ErrorResponse(e.getMessage());
+    }
+
+    // обработка запросов, которые реплика не может выполнить - изменения или чтение отставших данных
+    @ExceptionHandler(ReplicaUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleReplicaUnavailable(final RuntimeException e) {
+
+        return new ErrorResponse(e.getMessage());
+    }
+
+    // обработка ошибок, полученных от другого узла, - код и сообщение узла-владельца передаются клиенту
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleShardError(final ShardRequestException e) {
+
+        return ResponseEntity.status(e.getStatus()).body(new ErrorResponse(e.getMessage()));
+    }
+
+    // обработка запросов сверх предела точки доступа - клиенту сообщается, когда повторить запрос
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleAdmissionRejected(final AdmissionRejectedException e) {
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ErrorResponse(e.getMessage()));
+    }
+
     // обработка непредвиденных ошибок
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.service.EventService;
+
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.util.List;
+
+@RestController
+@Slf4j
+@RequestMapping("/events")
+@Validated
+@RequiredArgsConstructor
+public class EventController {
+
+    /* обработка запросов HTTP-клиентов на получение истории событий изменения лайков и дружбы по адресу
+    http://localhost:8080/events */
+
+    private final EventService eventService;
+
+    // обработка GET-запроса на получение событий с id больше указанного
+    @GetMapping()
+    public List<Event> listEvents(@RequestParam(defaultValue = "0") @PositiveOrZero Long from,
+                                  @RequestParam(defaultValue = "100") @Positive Integer count) {
+
+        return eventService.listEvents(from, count);
+    }
+
+}
@@ -2,13 +2,32 @@ package ru.yandex.practicum.filmorate.controllers;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exceptions.RequestValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFacets;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.SearchService;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
 
 @RestController
 @Slf4j
@@ -20,7 +39,11 @@ public class FilmController {
     /* обработка запросов HTTP-клиентов на добавление, обновление, получение информации о фильмах по адресу
     http://localhost:8080/films */
 
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count"; // число фильмов во всем диапазоне
+
     private final FilmService filmService;
+    private final JsonArrayStreamer jsonArrayStreamer;
+    private final SearchService searchService;
 
 
     // обработка POST-запроса на добавление информации о фильме
@@ -30,26 +53,88 @@ public class FilmController {
         return filmService.addFilm(film);
     }
 
-    // обработка PUT-запроса на обновление информации о фильме
+    /* обработка PUT-запроса на обновление информации о фильме - с заголовком If-Match только известной клиенту
+    версии. метка ETag новой версии выставляется, как в GET-запросе, если фильм не изменен другим запросом
+    после обновления: метка более новой версии позволила бы клиенту перезаписать не виденные им изменения */
     @PutMapping()
-    public Film updateFilm(@Valid @RequestBody Film film) {
-
-        return filmService.updateFilm(film);
+    public Film updateFilm(@Valid @RequestBody Film film,
+                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                           HttpServletResponse response) {
+
+        Film updatedFilm = filmService.updateFilm(film, ifMatch);
+
+        String version = filmService.getFilmVersion(updatedFilm.getId());
+        if (updatedFilm.equals(filmService.getFilmById(updatedFilm.getId()))
+                && version.equals(filmService.getFilmVersion(updatedFilm.getId()))) {
+            response.setHeader(HttpHeaders.ETAG, "\"" + version + "\"");
+        }
+        return updatedFilm;
     }
 
-    // обработка GET-запроса на получение фильма по идентификатору
+    /* обработка GET-запроса на получение фильма по идентификатору - метка ETag строится по версии фильма,
+    при совпадении с If-None-Match возвращается 304 без чтения записи */
     @GetMapping("/{id}")
+    public Film getFilmById(@PathVariable Integer id, WebRequest request) {
 
-    public Film getFilmById(@PathVariable Integer id) {
-
+        if (request.checkNotModified(filmService.getFilmVersion(id))) {
+            return null;
+        }
         return filmService.getFilmById(id);
     }
 
-    // обработка GET-запроса на получение списка всех фильмов
+    /* обработка GET-запроса на получение списка всех фильмов - фильмы записываются в ответ по одному. с любым
+    из параметров диапазона дат выхода (включительно), страницы или порядка - страница фильмов диапазона по дате
+    выхода или по убыванию числа лайков, число фильмов во всем диапазоне - в заголовке X-Total-Count */
     @GetMapping()
-    public List<Film> listFilms() {
+    public ResponseEntity<StreamingResponseBody> listFilms(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedTo,
+            @RequestParam(required = false) @PositiveOrZero Integer offset,
+            @RequestParam(required = false) @Positive Integer count,
+            @RequestParam(required = false) @Pattern(regexp = "date|popularity") String sort) {
+
+        if (releasedFrom == null && releasedTo == null && offset == null && count == null && sort == null) {
+            return jsonArrayStreamer.stream(filmService::streamFilms);
+        }
+
+        FilmPage page = searchService.listFilmsReleasedBetween(releasedFrom, releasedTo, "popularity".equals(sort),
+                offset == null ? 0 : offset, count == null ? 100 : count);
+        ResponseEntity<StreamingResponseBody> response = jsonArrayStreamer.stream(page.getFilms()::stream);
+        return ResponseEntity.ok()
+                .headers(response.getHeaders())
+                .header(TOTAL_COUNT_HEADER, String.valueOf(page.getTotal()))
+                .body(response.getBody());
+    }
+
+    /* обработка GET-запроса на выборку фильмов по жанрам и рейтингам MPA - фильмы с любым из жанров genre и любым
+    из рейтингов mpa по возрастанию id и число фильмов для каждого жанра и рейтинга. выборка не сочетается
+    с диапазоном дат выхода и порядком страницы - такой запрос отклоняется, а не выполняется без части условий */
+    @GetMapping(params = "genre")
+    public FilmFacets listFilmsByFacets(@RequestParam(required = false) Set<Genre> genre,
+                                        @RequestParam(required = false) Set<RatingMPA> mpa,
+                                        @RequestParam(defaultValue = "0") @PositiveOrZero Integer offset,
+                                        @RequestParam(defaultValue = "100") @Positive Integer count,
+                                        @RequestParam(required = false) String releasedFrom,
+                                        @RequestParam(required = false) String releasedTo,
+                                        @RequestParam(required = false) String sort) {
+
+        if (releasedFrom != null || releasedTo != null || sort != null) {
+            throw new RequestValidationException("Выборка по жанрам и рейтингам MPA не сочетается "
+                    + "с параметрами releasedFrom, releasedTo и sort");
+        }
+        return searchService.listFilmsByFacets(genre, mpa, offset, count);
+    }
+
+    // обработка GET-запроса на выборку фильмов только по рейтингам MPA
+    @GetMapping(params = {"!genre", "mpa"})
+    public FilmFacets listFilmsByRating(@RequestParam Set<RatingMPA> mpa,
+                                        @RequestParam(defaultValue = "0") @PositiveOrZero Integer offset,
+                                        @RequestParam(defaultValue = "100") @Positive Integer count,
+                                        @RequestParam(required = false) String releasedFrom,
+                                        @RequestParam(required = false) String releasedTo,
+                                        @RequestParam(required = false) String sort) {
 
-        return filmService.listFilms();
+        return listFilmsByFacets(null, mpa, offset, count, releasedFrom, releasedTo, sort);
     }
 
     // обработка PUT-запроса на добавление лайка фильму
@@ -66,10 +151,30 @@ public class FilmController {
         return filmService.deleteLike(id, userId);
     }
 
+    // обработка GET-запроса на поиск фильмов по словам названия и описания - по убыванию релевантности
+    @GetMapping("/search")
+    public List<Film> searchFilms(@RequestParam @NotBlank String q,
+                                  @RequestParam(defaultValue = "10") @Positive Integer limit) {
+
+        return searchService.searchFilms(q, limit);
+    }
+
+    // обработка GET-запроса на подсказки по началу названия фильма при наборе
+    @GetMapping("/suggest")
+    public List<Suggestion> suggestFilms(@RequestParam @NotBlank String prefix,
+                                         @RequestParam(defaultValue = "10") @Positive Integer limit) {
+
+        return searchService.suggestFilms(prefix, limit);
+    }
+
     // обработка GET-запроса на получение списка наиболее популярных фильмов
     @GetMapping("/popular")
-    public List<Film> listMostPopularFilms(@RequestParam(required = false, defaultValue = "10") Integer count) {
+    public List<Film> listMostPopularFilms(@RequestParam(required = false, defaultValue = "10") Integer count,
+                                           WebRequest request) {
 
+        if (request.checkNotModified(filmService.getPopularFilmsVersion())) {
+            return null;
+        }
         return filmService.listMostPopularFilms(count);
     }
 }
@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.service.ImportFormat;
+import ru.yandex.practicum.filmorate.service.ImportService;
+
+import java.io.InputStream;
+
+@RestController
+@Slf4j
+@RequestMapping("/import")
+@RequiredArgsConstructor
+public class ImportController {
+
+    /* обработка запросов HTTP-клиентов на массовый импорт фильмов и пользователей по адресу
+    http://localhost:8080/import - тело запроса читается потоком без загрузки в память целиком */
+
+    private final ImportService importService;
+
+    // обработка POST-запроса на импорт фильмов
+    @PostMapping("/films")
+    public ImportReport importFilms(InputStream body, @RequestParam(defaultValue = "ndjson") String format) {
+
+        return importService.importFilms(body, ImportFormat.of(format));
+    }
+
+    // обработка POST-запроса на импорт пользователей
+    @PostMapping("/users")
+    public ImportReport importUsers(InputStream body, @RequestParam(defaultValue = "ndjson") String format) {
+
+        return importService.importUsers(body, ImportFormat.of(format));
+    }
+
+}
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Component
+@RequiredArgsConstructor
+public class JsonArrayStreamer {
+
+    /* потоковая запись элементов в ответ в виде JSON-массива: элементы сериализуются генератором Jackson
+    по одному по мере чтения из хранилища, список целиком не строится */
+
+    private final ObjectMapper objectMapper;
+
+    public <T> ResponseEntity<StreamingResponseBody> stream(Supplier<Stream<T>> items) {
+
+        StreamingResponseBody body = out -> {
+            try (Stream<T> stream = items.get();
+                 SequenceWriter writer = objectMapper.writer()
+                         .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                         .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                         .writeValuesAsArray(out)) {
+
+                Iterator<T> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    writer.write(iterator.next());
+                }
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+}
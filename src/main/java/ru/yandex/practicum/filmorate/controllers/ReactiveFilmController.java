@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.ReactiveFilmService;
+
+import javax.validation.Valid;
+
+@RestController
+@Slf4j
+@RequestMapping("/reactive/films")
+@Validated
+@RequiredArgsConstructor
+public class ReactiveFilmController {
+
+    /* неблокирующий вариант обработки запросов о фильмах по адресу http://localhost:8080/reactive/films.
+    поток запроса освобождается до получения результата, списки выдаются построчно в формате NDJSON
+    по мере готовности и с учетом скорости чтения клиентом, при Accept: application/json - JSON-массивом */
+
+    private final ReactiveFilmService filmService;
+
+    // обработка POST-запроса на добавление информации о фильме
+    @PostMapping()
+    public Mono<Film> addFilm(@Valid @RequestBody Film film) {
+
+        return filmService.addFilm(film);
+    }
+
+    // обработка PUT-запроса на обновление информации о фильме, с заголовком If-Match - известной клиенту версии
+    @PutMapping()
+    public Mono<Film> updateFilm(@Valid @RequestBody Film film,
+                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        return filmService.updateFilm(film, ifMatch);
+    }
+
+    // обработка GET-запроса на получение фильма по идентификатору
+    @GetMapping("/{id}")
+    public Mono<Film> getFilmById(@PathVariable Integer id) {
+
+        return filmService.getFilmById(id);
+    }
+
+    // обработка GET-запроса на получение всех фильмов - фильм на строку
+    @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<Film> listFilms() {
+
+        return filmService.streamFilms();
+    }
+
+    // обработка PUT-запроса на добавление лайка фильму
+    @PutMapping("/{id}/like/{userId}")
+    public Mono<Film> addLike(@PathVariable Integer id, @PathVariable Long userId) {
+
+        return filmService.addLike(id, userId);
+    }
+
+    // обработка DELETE-запроса на удаление лайка фильму
+    @DeleteMapping("/{id}/like/{userId}")
+    public Mono<Film> deleteLike(@PathVariable Integer id, @PathVariable Long userId) {
+
+        return filmService.deleteLike(id, userId);
+    }
+
+    // обработка GET-запроса на получение наиболее популярных фильмов - фильм на строку
+    @GetMapping(value = "/popular",
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<Film> listMostPopularFilms(@RequestParam(required = false, defaultValue = "10") Integer count) {
+
+        return filmService.listMostPopularFilms(count);
+    }
+
+}
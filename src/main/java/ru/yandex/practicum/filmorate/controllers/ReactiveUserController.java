@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.ReactiveUserService;
+
+import javax.validation.Valid;
+
+@RestController
+@Slf4j
+@RequestMapping("/reactive/users")
+@Validated
+@RequiredArgsConstructor
+public class ReactiveUserController {
+
+    /* неблокирующий вариант обработки запросов о пользователях по адресу http://localhost:8080/reactive/users.
+    поток запроса освобождается до получения результата, списки выдаются построчно в формате NDJSON
+    по мере готовности и с учетом скорости чтения клиентом, при Accept: application/json - JSON-массивом */
+
+    private final ReactiveUserService userService;
+
+    // обработка POST-запроса на добавление данных пользователя
+    @PostMapping()
+    public Mono<User> addUser(@Valid @RequestBody User user) {
+
+        return userService.addUser(user);
+    }
+
+    // обработка PUT-запроса на обновление данных пользователя, с заголовком If-Match - известной клиенту версии
+    @PutMapping()
+    public Mono<User> updateUser(@Valid @RequestBody User user,
+                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        return userService.updateUser(user, ifMatch);
+    }
+
+    // обработка GET-запроса на получение всех пользователей - пользователь на строку
+    @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<User> listUsers() {
+
+        return userService.streamUsers();
+    }
+
+    // обработка GET-запроса на получение пользователя по id
+    @GetMapping("{id}")
+    public Mono<User> getUserById(@PathVariable Long id) {
+
+        return userService.getUserById(id);
+    }
+
+    // обработка PUT-запроса на добавление друга
+    @PutMapping("{id}/friends/{friendId}")
+    public Mono<User> addFriend(@PathVariable Long id, @PathVariable Long friendId) {
+
+        return userService.addFriend(id, friendId);
+    }
+
+    // обработка DELETE-запроса на удаление друга
+    @DeleteMapping("{id}/friends/{friendId}")
+    public Mono<User> deleteFriend(@PathVariable Long id, @PathVariable Long friendId) {
+
+        return userService.deleteFriend(id, friendId);
+    }
+
+    // обработка GET-запроса на получение списка друзей - друг на строку
+    @GetMapping(value = "{id}/friends",
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<User> listUserFriends(@PathVariable Long id) {
+
+        return userService.listUserFriends(id);
+    }
+
+    // обработка GET-запроса на получение списка общих друзей - друг на строку
+    @GetMapping(value = "{id}/friends/common/{otherId}",
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<User> listCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
+
+        return userService.listCommonFriends(id, otherId);
+    }
+
+}
@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.yandex.practicum.filmorate.exceptions.ReplicaUnavailableException;
+import ru.yandex.practicum.filmorate.storage.replication.ReplicationNode;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.replication.role", havingValue = "replica")
+public class ReplicaRequestGuard implements HandlerInterceptor, WebMvcConfigurer {
+
+    /* ограничение запросов к реплике: изменения выполняются только на основном узле,
+    чтение отклоняется, если реплика отстала от основного узла больше допустимого */
+
+    private final ReplicationNode replicationNode;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+
+        registry.addInterceptor(this).excludePathPatterns("/replication/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+        if (!"GET".equals(request.getMethod())) {
+            throw new ReplicaUnavailableException("Реплика только для чтения, изменения выполняются на основном узле");
+        }
+        if (!replicationNode.isFresh()) {
+            throw new ReplicaUnavailableException("Данные реплики отстают от основного узла");
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.ReplicationStatus;
+import ru.yandex.practicum.filmorate.storage.replication.ReplicationNode;
+
+import java.util.Optional;
+
+@RestController
+@Slf4j
+@RequestMapping("/replication")
+@RequiredArgsConstructor
+public class ReplicationController {
+
+    /* обработка запросов на получение состояния репликации по адресу http://localhost:8080/replication */
+
+    private final Optional<ReplicationNode> replicationNode; // отсутствует, если репликация не настроена
+
+    // обработка GET-запроса на получение роли узла и отставания реплики
+    @GetMapping("/status")
+    public ReplicationStatus getStatus() {
+
+        return replicationNode.map(ReplicationNode::status)
+                .orElse(ReplicationStatus.builder().role("none").build());
+    }
+
+}
@@ -0,0 +1,205 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFacets;
+import ru.yandex.practicum.filmorate.model.FilmHit;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.Command;
+import ru.yandex.practicum.filmorate.service.FilmServiceRating;
+import ru.yandex.practicum.filmorate.service.SearchServiceIndex;
+import ru.yandex.practicum.filmorate.service.UserServiceCommunity;
+import ru.yandex.practicum.filmorate.service.shard.ShardClient;
+import ru.yandex.practicum.filmorate.service.shard.ShardedUserService;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Positive;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@RestController
+@Slf4j
+@RequestMapping("/shard")
+@Validated
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.shard.enabled", havingValue = "true")
+public class ShardController {
+
+    /* обработка запросов других узлов к данным текущего узла по адресу http://localhost:8080/shard.
+    запросы выполняются локальными сервисами без повторной маршрутизации, принимаются только с общим секретом
+    узлов (ShardRequestGuard). число запрашиваемых записей ограничено ShardClient.MAX_COUNT */
+
+    private final UserServiceCommunity userService;
+    private final ShardedUserService shardedUserService;
+    private final FilmServiceRating filmService;
+    private final SearchServiceIndex searchService;
+    private final JsonArrayStreamer jsonArrayStreamer;
+
+    // обработка GET-запроса на получение пользователей текущего узла
+    @GetMapping("/users")
+    public ResponseEntity<StreamingResponseBody> listUsers() {
+
+        return jsonArrayStreamer.stream(userService::streamUsers);
+    }
+
+    // обработка GET-запроса на подсказки по началу логина пользователей текущего узла
+    @GetMapping("/users/suggest")
+    public List<Suggestion> suggestUsers(@RequestParam String prefix,
+                                         @RequestParam @Positive @Max(ShardClient.MAX_COUNT) Integer limit) {
+
+        return searchService.suggestUsers(prefix, limit);
+    }
+
+    // обработка GET-запроса на получение пользователя текущего узла по id
+    @GetMapping("/users/{id}")
+    public User getUserById(@PathVariable Long id) {
+
+        return userService.getUserById(id);
+    }
+
+    // обработка GET-запроса на получение метки версии пользователя текущего узла
+    @GetMapping("/users/{id}/version")
+    public Map<String, String> getUserVersion(@PathVariable Long id) {
+
+        return Map.of("version", userService.getUserVersion(id));
+    }
+
+    // обработка POST-запроса на получение пользователей текущего узла по списку id
+    @PostMapping("/users/batch")
+    public List<User> listUsersById(@RequestBody List<Long> ids) {
+
+        return ids.stream()
+                .map(userService::getUserById)
+                .collect(Collectors.toList());
+    }
+
+    // обработка PUT-запроса на обновление пользователя текущего узла
+    @PutMapping("/users")
+    public User updateUser(@Valid @RequestBody User user, @RequestParam(required = false) String expectedVersion) {
+
+        return userService.updateUser(user, expectedVersion);
+    }
+
+    // обработка PUT-запроса на добавление друга в список друзей пользователя текущего узла
+    @PutMapping("/users/{id}/friends/{friendId}")
+    public User addFriend(@PathVariable Long id, @PathVariable Long friendId, @RequestParam boolean initiator) {
+
+        return shardedUserService.updateLocalFriendship(id, friendId, Command.ADD, initiator);
+    }
+
+    // обработка DELETE-запроса на удаление друга из списка друзей пользователя текущего узла
+    @DeleteMapping("/users/{id}/friends/{friendId}")
+    public User deleteFriend(@PathVariable Long id, @PathVariable Long friendId, @RequestParam boolean initiator) {
+
+        return shardedUserService.updateLocalFriendship(id, friendId, Command.DELETE, initiator);
+    }
+
+    // обработка GET-запроса на получение фильмов текущего узла
+    @GetMapping("/films")
+    public ResponseEntity<StreamingResponseBody> listFilms() {
+
+        return jsonArrayStreamer.stream(filmService::streamFilms);
+    }
+
+    // обработка GET-запроса на поиск фильмов текущего узла - с релевантностью для объединения результатов узлов
+    @GetMapping("/films/search")
+    public List<FilmHit> searchFilms(@RequestParam String q,
+                                     @RequestParam @Positive @Max(ShardClient.MAX_COUNT) Integer limit) {
+
+        return searchService.searchFilmHits(q, limit);
+    }
+
+    // обработка GET-запроса на подсказки по началу названия фильмов текущего узла
+    @GetMapping("/films/suggest")
+    public List<Suggestion> suggestFilms(@RequestParam String prefix,
+                                         @RequestParam @Positive @Max(ShardClient.MAX_COUNT) Integer limit) {
+
+        return searchService.suggestFilms(prefix, limit);
+    }
+
+    // обработка GET-запроса на первые фильмы диапазона дат выхода текущего узла - для объединения страниц узлов
+    @GetMapping("/films/released")
+    public FilmPage listFilmsReleasedBetween(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam boolean byPopularity,
+            @RequestParam @Positive @Max(ShardClient.MAX_COUNT) Integer count) {
+
+        return searchService.listFilmsReleasedBetween(from, to, byPopularity, 0, count);
+    }
+
+    // обработка GET-запроса на первые фильмы выборки по жанрам и рейтингам текущего узла со счетчиками признаков
+    @GetMapping("/films/facets")
+    public FilmFacets listFilmsByFacets(@RequestParam(required = false) Set<Genre> genre,
+                                        @RequestParam(required = false) Set<RatingMPA> mpa,
+                                        @RequestParam @Positive @Max(ShardClient.MAX_COUNT) Integer count) {
+
+        return searchService.listFilmsByFacets(genre, mpa, 0, count);
+    }
+
+    // обработка GET-запроса на получение фильма текущего узла по id
+    @GetMapping("/films/{id}")
+    public Film getFilmById(@PathVariable Integer id) {
+
+        return filmService.getFilmById(id);
+    }
+
+    // обработка GET-запроса на получение метки версии фильма текущего узла
+    @GetMapping("/films/{id}/version")
+    public Map<String, String> getFilmVersion(@PathVariable Integer id) {
+
+        return Map.of("version", filmService.getFilmVersion(id));
+    }
+
+    // обработка GET-запроса на получение метки версии списка фильмов текущего узла
+    @GetMapping("/films/version")
+    public Map<String, String> getFilmsVersion() {
+
+        return Map.of("version", filmService.getPopularFilmsVersion());
+    }
+
+    // обработка PUT-запроса на обновление фильма текущего узла
+    @PutMapping("/films")
+    public Film updateFilm(@Valid @RequestBody Film film, @RequestParam(required = false) String expectedVersion) {
+
+        return filmService.updateFilm(film, expectedVersion);
+    }
+
+    // обработка PUT-запроса на добавление лайка фильму текущего узла
+    @PutMapping("/films/{id}/like/{userId}")
+    public Film addLike(@PathVariable Integer id, @PathVariable Long userId) {
+
+        return filmService.updateLike(id, userId, Command.ADD);
+    }
+
+    // обработка DELETE-запроса на удаление лайка у фильма текущего узла
+    @DeleteMapping("/films/{id}/like/{userId}")
+    public Film deleteLike(@PathVariable Integer id, @PathVariable Long userId) {
+
+        return filmService.updateLike(id, userId, Command.DELETE);
+    }
+
+    // обработка GET-запроса на получение наиболее популярных фильмов текущего узла
+    @GetMapping("/films/popular")
+    public List<Film> listMostPopularFilms(
+            @RequestParam(defaultValue = "10") @Positive @Max(ShardClient.MAX_COUNT) Integer count) {
+
+        return filmService.listMostPopularFilms(count);
+    }
+
+}
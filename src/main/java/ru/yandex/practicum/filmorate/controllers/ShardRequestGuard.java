@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.yandex.practicum.filmorate.exceptions.ShardAccessDeniedException;
+import ru.yandex.practicum.filmorate.service.shard.ShardClient;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+@Component
+@ConditionalOnProperty(name = "filmorate.shard.enabled", havingValue = "true")
+public class ShardRequestGuard implements HandlerInterceptor, WebMvcConfigurer {
+
+    /* внутренние адреса /shard изменяют данные узла без проверок маршрутизатора, поэтому принимаются только
+    от других узлов - с общим секретом в заголовке X-Shard-Secret. секрет сравнивается за постоянное время */
+
+    private final byte[] secret;
+
+    public ShardRequestGuard(@Value("${filmorate.shard.secret}") String secret) {
+
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("Для шардирования задайте общий секрет узлов filmorate.shard.secret");
+        }
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+
+        registry.addInterceptor(this).addPathPatterns("/shard/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+        String header = request.getHeader(ShardClient.SECRET_HEADER);
+        if (header == null || !MessageDigest.isEqual(secret, header.getBytes(StandardCharsets.UTF_8))) {
+            throw new ShardAccessDeniedException("Внутренние запросы узлов принимаются только от других узлов");
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.cache.CachingUserStorage;
+
+import java.util.List;
+
+@RestController
+@Slf4j
+@RequestMapping("/storage/cache")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.storage.cache.enabled", havingValue = "true")
+public class StorageCacheController {
+
+    /* обработка запросов на получение статистики кеша чтения хранилищ по адресу
+    http://localhost:8080/storage/cache */
+
+    private final CachingUserStorage userStorage;
+    private final CachingFilmStorage filmStorage;
+
+    // обработка GET-запроса на получение попаданий, промахов и вытеснений кеша
+    @GetMapping()
+    public List<CacheStats> listCacheStats() {
+
+        return List.of(userStorage.getCacheStats(), filmStorage.getCacheStats());
+    }
+
+}
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.IdFilterStats;
+import ru.yandex.practicum.filmorate.storage.IdFilters;
+
+import java.util.List;
+
+@RestController
+@Slf4j
+@RequestMapping("/storage/id-filters")
+@RequiredArgsConstructor
+public class StorageIdFilterController {
+
+    /* обработка запросов на получение статистики фильтров существующих id по адресу
+    http://localhost:8080/storage/id-filters */
+
+    private final IdFilters idFilters;
+
+    // обработка GET-запроса на получение числа проверок, отклонений и ложных срабатываний
+    @GetMapping()
+    public List<IdFilterStats> listIdFilterStats() {
+
+        return idFilters.stats();
+    }
+
+}
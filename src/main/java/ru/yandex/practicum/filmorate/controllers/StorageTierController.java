@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.TierStats;
+import ru.yandex.practicum.filmorate.storage.tiered.TieredFilmStorage;
+import ru.yandex.practicum.filmorate.storage.tiered.TieredUserStorage;
+
+import java.util.List;
+
+@RestController
+@Slf4j
+@RequestMapping("/storage/tiers")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "tiered")
+public class StorageTierController {
+
+    /* обработка запросов на получение статистики многоуровневого хранилища по адресу
+    http://localhost:8080/storage/tiers */
+
+    private final TieredUserStorage userStorage;
+    private final TieredFilmStorage filmStorage;
+
+    // обработка GET-запроса на получение размеров уровней и доли чтений из памяти
+    @GetMapping()
+    public List<TierStats> listTierStats() {
+
+        return List.of(userStorage.getTierStats(), filmStorage.getTierStats());
+    }
+
+}
@@ -1,17 +1,26 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.SearchService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.util.List;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Positive;
 
 
 @RestController
@@ -25,6 +34,8 @@ public class UserController {
     http://localhost:8080/users */
 
     private final UserService userService;
+    private final JsonArrayStreamer jsonArrayStreamer;
+    private final SearchService searchService;
 
     // обработка POST-запроса на добавление данных пользователя
     @PostMapping()
@@ -33,24 +44,46 @@ public class UserController {
         return userService.addUser(user);
     }
 
-    // обработка PUT-запроса на обновление данных пользователя
+    /* обработка PUT-запроса на обновление данных пользователя - с заголовком If-Match только известной клиенту
+    версии. метка ETag новой версии выставляется, как в GET-запросе, если пользователь не изменен другим запросом
+    после обновления: метка более новой версии позволила бы клиенту перезаписать не виденные им изменения */
     @PutMapping()
-    public User updateUser(@Valid @RequestBody User user) {
-
-        return userService.updateUser(user);
+    public User updateUser(@Valid @RequestBody User user,
+                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                           HttpServletResponse response) {
+
+        User updatedUser = userService.updateUser(user, ifMatch);
+
+        String version = userService.getUserVersion(updatedUser.getId());
+        if (updatedUser.equals(userService.getUserById(updatedUser.getId()))
+                && version.equals(userService.getUserVersion(updatedUser.getId()))) {
+            response.setHeader(HttpHeaders.ETAG, "\"" + version + "\"");
+        }
+        return updatedUser;
     }
 
-    // обработка GET-запроса на получение списка пользователей
+    // обработка GET-запроса на получение списка пользователей - пользователи записываются в ответ по одному
     @GetMapping()
-    public List<User> listUsers() {
+    public ResponseEntity<StreamingResponseBody> listUsers() {
+
+        return jsonArrayStreamer.stream(userService::streamUsers);
+    }
+
+    // обработка GET-запроса на подсказки по началу логина пользователя при наборе
+    @GetMapping("/suggest")
+    public List<Suggestion> suggestUsers(@RequestParam @NotBlank String prefix,
+                                         @RequestParam(defaultValue = "10") @Positive Integer limit) {
 
-        return userService.listUsers();
+        return searchService.suggestUsers(prefix, limit);
     }
 
-    // обработка GET-запроса на получение пользователя по id
+    // обработка GET-запроса на получение пользователя по id - с проверкой If-None-Match по версии пользователя
     @GetMapping("{id}")
-    public User getUserById(@PathVariable Long id) {
+    public User getUserById(@PathVariable Long id, WebRequest request) {
 
+        if (request.checkNotModified(userService.getUserVersion(id))) {
+            return null;
+        }
         return userService.getUserById(id);
     }
 
@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.web.virtual-threads", havingValue = "true")
+public class VirtualThreadExecutor implements TomcatProtocolHandlerCustomizer<ProtocolHandler> {
+
+    /* обработка HTTP-запросов в виртуальных потоках вместо ограниченного пула потоков Tomcat:
+    каждый запрос получает свой виртуальный поток, поток, заблокированный вводом-выводом хранилища,
+    не занимает поток ОС. число одновременных запросов ограничено только server.tomcat.max-connections.
+    виртуальные потоки появились в Java 21 - сборка остается на Java 11, исполнитель создается через
+    отражение, и на более ранней JVM приложение не запускается с этим режимом.
+    ожидание внутри synchronized закрепляет виртуальный поток за потоком ОС - запись на диск в хранилищах
+    выполняется вне блокировок */
+
+    private final ExecutorService executor;
+
+    public VirtualThreadExecutor() {
+
+        try {
+            this.executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Виртуальные потоки требуют Java 21, текущая версия: "
+                    + Runtime.version(), e);
+        }
+        log.info("Запросы обрабатываются в виртуальных потоках");
+    }
+
+    @Override
+    public void customize(ProtocolHandler protocolHandler) {
+
+        protocolHandler.setExecutor(executor);
+    }
+
+    @PreDestroy
+    public void close() {
+
+        executor.shutdown();
+    }
+
+}
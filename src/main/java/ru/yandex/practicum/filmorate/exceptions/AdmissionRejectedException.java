@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.exceptions;
+
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds; // через сколько секунд клиенту стоит повторить запрос
+
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+}
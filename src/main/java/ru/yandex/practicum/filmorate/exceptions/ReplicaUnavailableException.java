@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.exceptions;
+
+public class ReplicaUnavailableException extends RuntimeException {
+
+    public ReplicaUnavailableException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.exceptions;
+
+public class RequestValidationException extends RuntimeException {
+
+    public RequestValidationException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.exceptions;
+
+public class ShardAccessDeniedException extends RuntimeException {
+
+    public ShardAccessDeniedException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.exceptions;
+
+public class ShardRequestException extends RuntimeException {
+
+    private final int status; // код ответа узла-владельца, передается клиенту без изменений
+
+    public ShardRequestException(String message, int status) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+}
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.exceptions;
+
+public class VersionConflictException extends RuntimeException {
+
+    public VersionConflictException(String message) {
+        super(message);
+    }
+
+}
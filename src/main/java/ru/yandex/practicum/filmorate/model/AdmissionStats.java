@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class AdmissionStats {
+
+    // состояние ограничения одновременных запросов к точке доступа
+
+    String endpoint; // метод и шаблон адреса, например GET /films/popular
+
+    Integer limit; // текущее допустимое число одновременно выполняемых запросов
+
+    Integer inFlight; // выполняемых запросов
+
+    Integer queued; // запросов в очереди ожидания
+
+    Long admitted; // принятых запросов
+
+    Long rejected; // отклоненных запросов с ответом 503
+
+    Long noLoadLatencyMicros; // время ответа без нагрузки - наименьшее за последнее окно замеров
+
+    Long latencyMicros; // сглаженное время ответа
+
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class BatchOperation {
+
+    /* операция пакетного запроса. вместо id можно указать номер более ранней операции пакета (отсчет с 0),
+    создавшей пользователя или фильм, - поля userRef, friendRef, filmRef */
+
+    @NotNull
+    BatchOperationType type; // тип операции
+
+    User user; // пользователь для ADD_USER / UPDATE_USER
+
+    Film film; // фильм для ADD_FILM / UPDATE_FILM
+
+    Long userId; // id пользователя
+
+    Integer userRef; // номер операции, создавшей пользователя
+
+    Long friendId; // id друга
+
+    Integer friendRef; // номер операции, создавшей друга
+
+    Integer filmId; // id фильма
+
+    Integer filmRef; // номер операции, создавшей фильм
+
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+// типы операций пакетного запроса
+
+public enum BatchOperationType {
+    ADD_USER, // добавление пользователя (user)
+    UPDATE_USER, // обновление пользователя (user, id - в user или userRef)
+    ADD_FRIEND, // добавление в друзья (userId / userRef, friendId / friendRef)
+    DELETE_FRIEND, // удаление из друзей (userId / userRef, friendId / friendRef)
+    ADD_FILM, // добавление фильма (film)
+    UPDATE_FILM, // обновление фильма (film, id - в film или filmRef)
+    ADD_LIKE, // добавление лайка (filmId / filmRef, userId / userRef)
+    DELETE_LIKE // удаление лайка (filmId / filmRef, userId / userRef)
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class BatchResult {
+
+    // результат операции пакета - состояние пользователя или фильма после выполнения всего пакета
+
+    Integer index; // номер операции в пакете
+
+    BatchOperationType type; // тип операции
+
+    User user; // пользователь операции (для операций с пользователями и друзьями)
+
+    Film film; // фильм операции (для операций с фильмами и лайками)
+
+}
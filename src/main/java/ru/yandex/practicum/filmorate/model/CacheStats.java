@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class CacheStats {
+
+    // статистика кеша чтения хранилища - размер, попадания, промахи и вытеснения
+
+    String entity; // users / films
+
+    Integer size; // записей в кеше
+
+    Integer maxSize; // максимум записей в кеше
+
+    Long ttlMs; // время жизни записи в мс, 0 - без ограничения
+
+    Long hits; // чтений по id из кеша
+
+    Long misses; // чтений по id из хранилища
+
+    Long evictions; // вытеснений из-за превышения размера
+
+    Long expirations; // удалений записей с истекшим временем жизни
+
+    Long invalidations; // удалений записей при изменении в хранилище
+
+    Double hitRatio; // доля чтений по id из кеша
+
+}
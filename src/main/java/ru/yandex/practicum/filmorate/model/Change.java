@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class Change {
+
+    // изменение в хранилище - глобальная версия, время, тип изменения и измененные данные
+
+    Long version; // глобальный номер версии, возрастает с каждым изменением
+
+    Long timestamp; // время изменения в миллисекундах
+
+    ChangeType changeType; // тип изменения
+
+    User user; // сохраненный пользователь (для USER_SAVED)
+
+    Film film; // сохраненный фильм (для FILM_SAVED)
+
+    Integer filmId; // id фильма (для LIKE_ADDED / LIKE_REMOVED)
+
+    Long userId; // id пользователя (для LIKE_ADDED / LIKE_REMOVED)
+
+}
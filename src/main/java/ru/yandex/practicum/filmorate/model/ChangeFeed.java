@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class ChangeFeed {
+
+    // ответ ленты изменений - изменения после запрошенной версии и границы доступной истории
+
+    List<Change> changes; // изменения в порядке возрастания версий
+
+    Long lastVersion; // версия последнего изменения в хранилище
+
+    Long oldestVersion; // самая ранняя версия, доступная в ленте
+
+    boolean resyncRequired; // запрошенные изменения уже недоступны - нужна полная синхронизация
+
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.model;
+
+// типы изменений в хранилищах для ленты изменений
+
+public enum ChangeType {
+    USER_SAVED, // сохранена новая или обновленная информация о пользователе
+    FILM_SAVED, // сохранена новая или обновленная информация о фильме
+    LIKE_ADDED, // пользователь поставил лайк фильму
+    LIKE_REMOVED // пользователь удалил лайк у фильма
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.springframework.validation.annotation.Validated;
+
+@Validated
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class Event {
+
+    // неизменяемое событие изменения лайков или дружбы - id события, время, тип, пользователь, объект события
+
+    Long eventId; // id события, возрастает в порядке появления событий
+
+    Long timestamp; // время события в миллисекундах
+
+    EventType eventType; // тип события
+
+    Long userId; // id пользователя, совершившего действие
+
+    Long entityId; // id фильма (для лайков) или друга (для дружбы)
+
+}
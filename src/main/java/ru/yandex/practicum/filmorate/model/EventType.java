@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.model;
+
+// типы событий изменения лайков и дружбы
+
+public enum EventType {
+    LIKE_ADDED, // пользователь поставил лайк фильму
+    LIKE_REMOVED, // пользователь удалил лайк у фильма
+    FRIEND_ADDED, // пользователи добавили друг друга в друзья
+    FRIEND_REMOVED // пользователи удалили друг друга из друзей
+}
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.util.List;
+import java.util.Map;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class FilmFacets {
+
+    // выборка фильмов по жанрам и рейтингам MPA - страница фильмов, размер выборки и счетчики значений признаков
+
+    List<Film> films; // фильмы страницы по возрастанию id
+
+    Integer total; // число фильмов в выборке
+
+    Map<Genre, Integer> genres; // число фильмов с жанром при выбранных рейтингах
+
+    Map<RatingMPA, Integer> mpa; // число фильмов с рейтингом при выбранных жанрах
+
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class FilmHit {
+
+    // найденный фильм узла и его релевантность - для объединения результатов поиска со всех узлов
+
+    Film film;
+
+    Double score; // релевантность фильма запросу на узле-владельце
+
+}
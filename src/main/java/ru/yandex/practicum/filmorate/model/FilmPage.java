@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class FilmPage {
+
+    // страница списка фильмов - фильмы страницы и число фильмов во всем списке
+
+    List<Film> films; // фильмы страницы
+
+    Integer total; // число фильмов во всем списке, передается клиенту в заголовке X-Total-Count
+
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class IdFilterStats {
+
+    // статистика фильтра существующих id - размер фильтра, проверки и доля ложных срабатываний
+
+    String entity; // users / films
+
+    Long bits; // размер фильтра в битах - всех слоев
+
+    Integer hashes; // число хеш-функций последнего слоя
+
+    Integer layers; // число слоев - слой добавляется, когда в последний добавлено рассчитанное число id
+
+    Long expectedIds; // ожидаемое число id, на которое рассчитан первый слой
+
+    Long capacity; // число id, на которое рассчитаны все слои
+
+    Long insertions; // добавлений новых id - повторные сохранения записей не учитываются
+
+    Long checks; // проверок id
+
+    Long rejections; // отклонено фильтром - записи точно нет
+
+    Long falsePositives; // пропущено фильтром, но записи нет
+
+    Double falsePositiveRate; // доля ложных срабатываний среди запросов несуществующих id
+
+    Double expectedFalsePositiveRate; // расчетная доля ложных срабатываний при текущем числе добавлений
+
+}
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class ImportReport {
+
+    // итоги массового импорта - количество обработанных, сохраненных и отклоненных записей, скорость импорта
+
+    String entity; // тип импортируемых записей
+
+    Long processed; // количество прочитанных записей
+
+    Long imported; // количество сохраненных записей
+
+    Long rejected; // количество записей, не прошедших разбор или валидацию
+
+    Long elapsedMs; // продолжительность импорта в миллисекундах
+
+    Long recordsPerSecond; // скорость импорта
+
+    List<String> errors; // первые ошибки с номерами строк
+
+}
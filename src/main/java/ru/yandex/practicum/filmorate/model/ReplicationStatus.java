@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.util.Map;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class ReplicationStatus {
+
+    // состояние репликации узла - роль, версии изменений и отставание от основного узла
+
+    String role; // none / primary / replica
+
+    boolean connected; // реплика подключена к основному узлу
+
+    Long appliedVersion; // версия последнего изменения, примененного узлом
+
+    Long primaryVersion; // последняя известная версия основного узла
+
+    Long lagVersions; // количество изменений основного узла, еще не примененных репликой
+
+    Long stalenessMs; // время с момента, когда реплика последний раз совпадала с основным узлом
+
+    Map<String, Long> replicas; // адреса подключенных реплик и версии, переданные им основным узлом
+
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class Suggestion {
+
+    // подсказка при наборе - id, название фильма или логин пользователя и популярность
+
+    Long id; // id фильма или пользователя
+
+    String text; // название фильма или логин пользователя
+
+    Long popularity; // число лайков фильма или число друзей пользователя
+
+}
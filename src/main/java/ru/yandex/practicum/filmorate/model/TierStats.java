@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class TierStats {
+
+    // статистика многоуровневого хранилища - размеры уровней и доля чтений из памяти
+
+    String entity; // users / films
+
+    Integer hotSize; // записей в памяти
+
+    Integer hotCapacity; // максимум записей в памяти
+
+    Integer coldSize; // записей на диске (на диске хранятся все записи)
+
+    Long hits; // чтений по id из памяти
+
+    Long misses; // чтений по id с диска с загрузкой в память
+
+    Long evictions; // вытеснений из памяти
+
+    Double hitRatio; // доля чтений по id из памяти
+
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.model.BatchOperation;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+
+import java.util.List;
+
+// сервис для выполнения нескольких операций одним запросом
+
+public interface BatchService {
+
+    List<BatchResult> execute(List<BatchOperation> operations); // выполнение всех операций пакета или ни одной
+
+}
@@ -0,0 +1,381 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exceptions.FilmDoesNotExistException;
+import ru.yandex.practicum.filmorate.exceptions.RequestValidationException;
+import ru.yandex.practicum.filmorate.exceptions.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.BatchOperation;
+import ru.yandex.practicum.filmorate.model.BatchOperationType;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/* реализация пакетного выполнения операций по принципу "все или ничего".
+сначала все операции выполняются на промежуточной копии затронутых пользователей, фильмов и лайков:
+каждый пользователь и фильм читается из хранилища один раз, созданным в пакете записям выдаются временные
+отрицательные id. если какая-либо операция не проходит проверку, исключение выбрасывается до изменения хранилищ.
+затем итоговое состояние записывается в хранилища: новые записи - одним пакетом, каждый затронутый пользователь
+и фильм - один раз, лайки - в порядке операций. все изменения пакета добавляются в журнал одной записью, поэтому
+после сбоя пакет восстанавливается целиком или не восстанавливается совсем. на время пакета блокируются пары
+пользователей, дружба которых изменяется, и хранилища лайков, фильмов и пользователей, поэтому параллельные
+изменения не могут нарушить выполненные проверки.
+при шардировании пакет выполняется на узле, получившем запрос, и может затрагивать только его записи:
+новые записи получают id текущего узла, ссылка на запись другого узла отклоняется до изменения хранилищ */
+@Slf4j
+@Service
+public class BatchServiceAtomic implements BatchService {
+
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final LikeStorage likeStorage;
+    private final EventStorage eventStorage;
+    private final MutationJournal journal;
+    private final FriendPairLocks pairLocks;
+    private final ShardLayout shardLayout;
+    private final Validator validator;
+    private final int maxOperations;
+
+    public BatchServiceAtomic(UserStorage userStorage, FilmStorage filmStorage, LikeStorage likeStorage,
+                              EventStorage eventStorage, MutationJournal journal, FriendPairLocks pairLocks,
+                              ShardLayout shardLayout, Validator validator,
+                              @Value("${filmorate.batch.max-operations}") int maxOperations) {
+        this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
+        this.likeStorage = likeStorage;
+        this.eventStorage = eventStorage;
+        this.journal = journal;
+        this.pairLocks = pairLocks;
+        this.shardLayout = shardLayout;
+        this.validator = validator;
+        this.maxOperations = maxOperations;
+    }
+
+    @Override
+    public List<BatchResult> execute(List<BatchOperation> operations) {
+
+        if (operations.size() > maxOperations) {
+            throw new RequestValidationException("В пакете больше " + maxOperations + " операций");
+        }
+
+        /* блокировки берутся в том же порядке, что и у одиночных операций: пары пользователей до хранилища
+        пользователей, как при изменении дружбы, хранилища - в порядке обращения к ним операций с лайками */
+        Batch batch = new Batch();
+        List<BatchResult> results = pairLocks.withPairLocks(friendPairs(operations), () -> {
+            synchronized (likeStorage) {
+                synchronized (filmStorage) {
+                    synchronized (userStorage) {
+                        for (int index = 0; index < operations.size(); index++) {
+                            batch.stage(index, operations.get(index));
+                        }
+                        return batch.commit();
+                    }
+                }
+            }
+        });
+        journal.sync(batch.sequence); // ожидание записи на диск вне блокировок
+
+        log.info("Выполнен пакет из {} операций", operations.size());
+        return results;
+    }
+
+    /* пары существующих пользователей, дружба которых изменяется в пакете. созданный в пакете пользователь
+    не виден другим запросам до окончания пакета - блокировка пары с ним не нужна */
+    private static List<Long[]> friendPairs(List<BatchOperation> operations) {
+
+        return operations.stream()
+                .filter(operation -> operation != null && (operation.getType() == BatchOperationType.ADD_FRIEND
+                        || operation.getType() == BatchOperationType.DELETE_FRIEND))
+                .filter(operation -> operation.getUserRef() == null && operation.getFriendRef() == null
+                        && operation.getUserId() != null && operation.getFriendId() != null)
+                .map(operation -> new Long[]{operation.getUserId(), operation.getFriendId()})
+                .collect(Collectors.toList());
+    }
+
+    // промежуточное состояние пакета
+    private class Batch {
+
+        private final Map<Long, User> users = new HashMap<>(); // затронутые пользователи по id или временному id
+        private final Map<Integer, Film> films = new HashMap<>(); // затронутые фильмы по id или временному id
+        private final Set<Long> changedUsers = new LinkedHashSet<>();
+        private final Set<Integer> changedFilms = new LinkedHashSet<>();
+        private final Map<Integer, Map<Long, Boolean>> likes = new HashMap<>(); // измененные в пакете лайки
+        private final List<BatchOperation> friendAndLikeChanges = new ArrayList<>(); // с временными id
+        private final Map<Integer, Long> createdUsers = new HashMap<>(); // номер операции / временный id
+        private final Map<Integer, Integer> createdFilms = new HashMap<>();
+        private final List<BatchResult> results = new ArrayList<>(); // результаты с временными id
+        private final Map<Long, Long> userIds = new HashMap<>(); // временный id / id, выданный хранилищем
+        private final Map<Integer, Integer> filmIds = new HashMap<>();
+        private long sequence; // позиция записи пакета в журнале
+
+        // выполнение операции на промежуточной копии
+        private void stage(int index, BatchOperation operation) {
+
+            if (operation == null || operation.getType() == null) {
+                throw new RequestValidationException(prefix(index) + "не указан тип операции");
+            }
+
+            BatchResult.BatchResultBuilder result = BatchResult.builder().index(index).type(operation.getType());
+
+            switch (operation.getType()) {
+                case ADD_USER: {
+                    User user = validate(index, operation.getUser());
+                    Long key = -(long) (createdUsers.size() + 1);
+                    users.put(key, withDefaultName(user).toBuilder().id(key).build());
+                    createdUsers.put(index, key);
+                    result.user(users.get(key));
+                    break;
+                }
+                case UPDATE_USER: {
+                    User user = validate(index, operation.getUser());
+                    Long key = userKey(index, user.getId(), operation.getUserRef());
+                    // друзья - из копии пакета, как при одиночном обновлении: дружба изменяется только операциями
+                    users.put(key, withDefaultName(user).toBuilder().id(key).friends(users.get(key).getFriends())
+                            .build());
+                    changedUsers.add(key);
+                    result.user(users.get(key));
+                    break;
+                }
+                case ADD_FRIEND:
+                case DELETE_FRIEND: {
+                    Long userKey = userKey(index, operation.getUserId(), operation.getUserRef());
+                    Long friendKey = userKey(index, operation.getFriendId(), operation.getFriendRef());
+                    boolean add = operation.getType() == BatchOperationType.ADD_FRIEND;
+                    updateFriends(userKey, friendKey, add);
+                    updateFriends(friendKey, userKey, add);
+                    friendAndLikeChanges.add(operation.toBuilder().userId(userKey).friendId(friendKey).build());
+                    result.user(users.get(userKey));
+                    break;
+                }
+                case ADD_FILM: {
+                    Film film = validate(index, operation.getFilm());
+                    Integer key = -(createdFilms.size() + 1);
+                    films.put(key, film.toBuilder().id(key).build());
+                    createdFilms.put(index, key);
+                    result.film(films.get(key));
+                    break;
+                }
+                case UPDATE_FILM: {
+                    Film film = validate(index, operation.getFilm());
+                    Integer key = filmKey(index, film.getId(), operation.getFilmRef());
+                    // лайки - из копии пакета: они изменяются только операциями с лайками
+                    films.put(key, film.toBuilder().id(key).likes(films.get(key).getLikes()).build());
+                    changedFilms.add(key);
+                    result.film(films.get(key));
+                    break;
+                }
+                case ADD_LIKE:
+                case DELETE_LIKE: {
+                    Integer filmKey = filmKey(index, operation.getFilmId(), operation.getFilmRef());
+                    Long userKey = userKey(index, operation.getUserId(), operation.getUserRef());
+                    boolean add = operation.getType() == BatchOperationType.ADD_LIKE;
+                    if (hasLike(filmKey, userKey) == add) {
+                        throw new RuntimeException(prefix(index)
+                                + (add ? "Вы уже ставили лайк этому фильму" : "Вы не ставили лайк этому фильму"));
+                    }
+                    likes.computeIfAbsent(filmKey, key -> new HashMap<>()).put(userKey, add);
+                    friendAndLikeChanges.add(operation.toBuilder().filmId(filmKey).userId(userKey).build());
+                    result.film(films.get(filmKey));
+                    break;
+                }
+            }
+
+            results.add(result.build());
+        }
+
+        /* запись итогового состояния в хранилища и журнал одной записью пакета, возвращает результаты с id,
+        выданными хранилищами. проверки выполнены при подготовке, поэтому запись в хранилища не отклоняется */
+        private List<BatchResult> commit() {
+
+            sequence = journal.atomically(this::apply);
+
+            return results.stream()
+                    .map(result -> result.toBuilder()
+                            .user(result.getUser() == null ? null : userStorage.getUserById(
+                                    userIds.getOrDefault(result.getUser().getId(), result.getUser().getId())))
+                            .film(result.getFilm() == null ? null : filmStorage.getFilmById(
+                                    filmIds.getOrDefault(result.getFilm().getId(), result.getFilm().getId())))
+                            .build())
+                    .collect(Collectors.toList());
+        }
+
+        // запись итогового состояния в хранилища и замена временных id выданными хранилищами
+        private void apply() {
+
+            List<Long> newUserKeys = new ArrayList<>(new TreeMap<>(createdUsers).values());
+            List<User> savedUsers = userStorage.addUsers(newUserKeys.stream()
+                    .map(key -> users.get(key).toBuilder().id(null).friends(null).build())
+                    .collect(Collectors.toList()));
+            for (int i = 0; i < newUserKeys.size(); i++) {
+                userIds.put(newUserKeys.get(i), savedUsers.get(i).getId());
+                if (users.get(newUserKeys.get(i)).getFriends() != null) {
+                    changedUsers.add(newUserKeys.get(i));
+                }
+            }
+
+            List<Integer> newFilmKeys = new ArrayList<>(new TreeMap<>(createdFilms).values());
+            List<Film> savedFilms = filmStorage.addFilms(newFilmKeys.stream()
+                    .map(key -> films.get(key).toBuilder().id(null).build())
+                    .collect(Collectors.toList()));
+            for (int i = 0; i < newFilmKeys.size(); i++) {
+                filmIds.put(newFilmKeys.get(i), savedFilms.get(i).getId());
+            }
+
+            for (Long key : changedUsers) {
+                User user = users.get(key);
+                userStorage.updateUserData(user.toBuilder()
+                        .id(userIds.getOrDefault(key, key))
+                        .friends(user.getFriends() == null ? null : user.getFriends().stream()
+                                .map(friendKey -> userIds.getOrDefault(friendKey, friendKey))
+                                .collect(Collectors.toSet()))
+                        .build());
+            }
+            for (Integer key : changedFilms) {
+                filmStorage.updateFilmData(films.get(key).toBuilder().id(filmIds.getOrDefault(key, key)).build());
+            }
+
+            // события дружбы и лайки - в порядке операций пакета
+            for (BatchOperation change : friendAndLikeChanges) {
+                Long userId = userIds.getOrDefault(change.getUserId(), change.getUserId());
+                switch (change.getType()) {
+                    case ADD_FRIEND:
+                    case DELETE_FRIEND:
+                        eventStorage.addEvent(change.getType() == BatchOperationType.ADD_FRIEND
+                                        ? EventType.FRIEND_ADDED : EventType.FRIEND_REMOVED,
+                                userId, userIds.getOrDefault(change.getFriendId(), change.getFriendId()));
+                        break;
+                    case ADD_LIKE:
+                        likeStorage.addLike(filmIds.getOrDefault(change.getFilmId(), change.getFilmId()), userId);
+                        break;
+                    case DELETE_LIKE:
+                        likeStorage.deleteLike(filmIds.getOrDefault(change.getFilmId(), change.getFilmId()), userId);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        // id пользователя из операции: временный id созданного в пакете пользователя или id из хранилища
+        private Long userKey(int index, Long id, Integer ref) {
+
+            if (ref != null) {
+                Long key = createdUsers.get(ref);
+                if (key == null) { // ссылка только на более раннюю операцию создания
+                    throw new RequestValidationException(prefix(index) + "операция " + ref + " не создает пользователя");
+                }
+                return key;
+            }
+            if (id != null && !shardLayout.owns(id)) {
+                throw new RequestValidationException(prefix(index) + "пользователь " + id
+                        + " хранится на другом узле, пакет изменяет только записи текущего узла");
+            }
+            if (id == null || !users.containsKey(id) && !loadUser(id)) {
+                throw new UserDoesNotExistException(prefix(index) + "Пользователь с id " + id + " не найден.");
+            }
+            return id;
+        }
+
+        private Integer filmKey(int index, Integer id, Integer ref) {
+
+            if (ref != null) {
+                Integer key = createdFilms.get(ref);
+                if (key == null) {
+                    throw new RequestValidationException(prefix(index) + "операция " + ref + " не создает фильм");
+                }
+                return key;
+            }
+            if (id != null && !shardLayout.owns(id)) {
+                throw new RequestValidationException(prefix(index) + "фильм " + id
+                        + " хранится на другом узле, пакет изменяет только записи текущего узла");
+            }
+            if (id == null || !films.containsKey(id) && !loadFilm(id)) {
+                throw new FilmDoesNotExistException(prefix(index) + "Фильм c id " + id + " не найден.");
+            }
+            return id;
+        }
+
+        // однократное чтение пользователя из хранилища в промежуточную копию
+        private boolean loadUser(Long id) {
+
+            User user = userStorage.getUsersData().get(id);
+            if (user != null) {
+                users.put(id, user);
+            }
+            return user != null;
+        }
+
+        private boolean loadFilm(Integer id) {
+
+            Film film = filmStorage.getFilmsData().get(id);
+            if (film != null) {
+                films.put(id, film);
+            }
+            return film != null;
+        }
+
+        private void updateFriends(Long userKey, Long friendKey, boolean add) {
+
+            User user = users.get(userKey);
+            Set<Long> friends = user.getFriends() == null ? new HashSet<>() : new HashSet<>(user.getFriends());
+            if (add) {
+                friends.add(friendKey);
+            } else {
+                friends.remove(friendKey);
+            }
+
+            users.put(userKey, user.toBuilder().friends(friends).build());
+            changedUsers.add(userKey); // друзья созданного в пакете пользователя записываются после выдачи id
+        }
+
+        // лайк с учетом изменений пакета, у созданных в пакете фильмов лайков нет
+        private boolean hasLike(Integer filmKey, Long userKey) {
+
+            Boolean changed = likes.getOrDefault(filmKey, Map.of()).get(userKey);
+            if (changed != null) {
+                return changed;
+            }
+            return filmKey > 0 && userKey > 0 && likeStorage.containsLike(filmKey, userKey);
+        }
+
+        private <T> T validate(int index, T item) {
+
+            if (item == null) {
+                throw new RequestValidationException(prefix(index) + "не указаны данные");
+            }
+
+            Set<ConstraintViolation<T>> violations = validator.validate(item);
+            if (!violations.isEmpty()) {
+                throw new RequestValidationException(prefix(index) + violations.stream()
+                        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                        .collect(Collectors.joining(", ")));
+            }
+            return item;
+        }
+
+        private User withDefaultName(User user) { // логин в качестве имени в случае незаполненного поля
+
+            return user.getName() == null || user.getName().isBlank()
+                    ? user.toBuilder().name(user.getLogin()).build()
+                    : user;
+        }
+
+        private String prefix(int index) {
+            return "операция " + index + ": ";
+        }
+    }
+
+}
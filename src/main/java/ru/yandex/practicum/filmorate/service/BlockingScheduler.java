@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+
+@Slf4j
+@Component
+public class BlockingScheduler {
+
+    /* ограниченный пул потоков для блокирующих вызовов сервисов и хранилищ из неблокирующего API.
+    потоки создаются по мере необходимости до заданного числа, задачи сверх него ждут в очереди,
+    при переполнении очереди подписчик получает ошибку - блокирующий сервер не занимает все потоки приложения */
+
+    private final Scheduler scheduler;
+
+    public BlockingScheduler(@Value("${filmorate.reactive.threads}") int threads,
+                             @Value("${filmorate.reactive.queued-tasks}") int queuedTasks) {
+
+        this.scheduler = Schedulers.newBoundedElastic(threads, queuedTasks, "filmorate-blocking");
+        log.info("Блокирующие вызовы неблокирующего API: до {} потоков, очередь {}", threads, queuedTasks);
+    }
+
+    public Scheduler get() {
+        return scheduler;
+    }
+
+    @PreDestroy
+    public void close() {
+
+        scheduler.dispose();
+    }
+
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.model.ChangeFeed;
+
+// сервис для получения ленты изменений потребителями
+public interface ChangeService {
+
+    ChangeFeed listChanges(Long sinceVersion, Integer limit); // получение изменений после версии из ChangeStorage
+
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.ChangeFeed;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+
+// реализация сервиса ленты изменений для инкрементальной синхронизации потребителей
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChangeServiceFeed implements ChangeService {
+
+    private final ChangeStorage changeStorage;
+
+    // получение изменений после версии из ChangeStorage
+    @Override
+    public ChangeFeed listChanges(Long sinceVersion, Integer limit) {
+
+        ChangeFeed feed = changeStorage.listChanges(sinceVersion, limit);
+        log.info("Изменений после версии {}: {}, последняя версия {}",
+                sinceVersion, feed.getChanges().size(), feed.getLastVersion());
+
+        return feed;
+    }
+
+}
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.model.Event;
+
+import java.util.List;
+
+// сервис для получения истории событий изменения лайков и дружбы
+public interface EventService {
+
+    List<Event> listEvents(Long fromEventId, Integer count); // получение событий с id больше указанного из EventStorage
+
+}
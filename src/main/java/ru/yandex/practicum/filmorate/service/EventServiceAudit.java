@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
+
+import java.util.List;
+
+// реализация сервиса для аудита истории событий изменения лайков и дружбы
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EventServiceAudit implements EventService {
+
+    private final EventStorage eventStorage;
+
+    // получение событий с id больше указанного из EventStorage
+    @Override
+    public List<Event> listEvents(Long fromEventId, Integer count) {
+
+        List<Event> events = eventStorage.listEvents(fromEventId, count);
+        log.info("Количество событий по запросу: {}", events.size());
+
+        return events;
+    }
+
+}
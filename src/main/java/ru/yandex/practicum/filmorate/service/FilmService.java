@@ -3,18 +3,24 @@ package ru.yandex.practicum.filmorate.service;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 // сервис для определения рейтинга фильмов
 public interface FilmService {
 
     Film addFilm(Film film);  // добавление информации о фильме в FilmStorage
 
-    Film updateFilm(Film film); // обновление информации о фильме в FilmStorage
+    // обновление информации о фильме в FilmStorage, при заданной метке (If-Match) - только ее версии фильма
+    Film updateFilm(Film film, String expectedVersion);
 
-    List<Film> listFilms(); // получение списка фильмов из FilmStorage
+    Stream<Film> streamFilms(); // последовательное получение фильмов из FilmStorage
 
     Film getFilmById(Integer id); // получение фильма по идентификатору из FilmStorage
 
+    String getFilmVersion(Integer id); // метка версии фильма для условных запросов
+
+    String getPopularFilmsVersion(); // метка версии списка фильмов для условных запросов рейтинга
+
     Film addLike(Integer id, Long userId); // добавление лайка фильму в LikeStorage
 
     Film deleteLike(Integer id, Long userId); // удаление лайка у фильма в LikeStorage
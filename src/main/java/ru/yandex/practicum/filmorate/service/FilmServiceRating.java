@@ -6,13 +6,17 @@ import org.springframework.stereotype.Service;
 
 import ru.yandex.practicum.filmorate.exceptions.FilmDoesNotExistException;
 import ru.yandex.practicum.filmorate.exceptions.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.exceptions.VersionConflictException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.pipeline.MutationPipeline;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.LikeStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 //реализация сервиса для определения рейтинга фильмов
 @Slf4j
@@ -23,8 +27,12 @@ public class FilmServiceRating implements FilmService {
     private final FilmStorage filmStorage;
     private final LikeStorage likeStorage;
     private final UserStorage userStorage;
+    private final Optional<MutationPipeline> pipeline; // отсутствует, если конвейер записи не включен
     private static final Integer HIT_LIST_SIZE = 10;
 
+    // одновременные запросы популярных фильмов одного размера сортируют каталог один раз
+    private final SingleFlight<Integer, List<Film>> popularFilmsFlight = new SingleFlight<>();
+
     //добавление информации о фильме в FilmStorage
     @Override
     public Film addFilm(Film film) {
@@ -32,18 +40,36 @@ public class FilmServiceRating implements FilmService {
         return filmStorage.addFilm(film);
     }
 
-    // обновление информации о фильме в FilmStorage
+    /* обновление информации о фильме в FilmStorage без блокировок: фильм сохраняется сравнением версии,
+    число лайков берется из сохраненного фильма - обновление не отменяет одновременно поставленные лайки.
+    без метки при изменении фильма другим запросом попытка повторяется с новой версией, с меткой If-Match
+    фильм сохраняется только поверх версии, которую видел клиент, иначе VersionConflictException */
     @Override
-    public Film updateFilm(Film film) {
-
-        return filmStorage.updateFilm(film);
+    public Film updateFilm(Film film, String expectedVersion) {
+
+        while (true) {
+            long version = filmStorage.getFilmVersion(film.getId()); // проверка существования фильма
+            if (!VersionTag.matches(expectedVersion, version)) {
+                throw new VersionConflictException("Фильм c id: " + film.getId() + " изменен после получения версии "
+                        + expectedVersion);
+            }
+
+            Film updatedFilm = film.toBuilder()
+                    .likes(filmStorage.getFilmById(film.getId()).getLikes())
+                    .build();
+            if (filmStorage.compareAndSetFilmData(updatedFilm, version)) {
+                log.info("Обновлена информация о фильме: {}", updatedFilm);
+                return updatedFilm;
+            }
+            log.debug("Фильм с id {} изменен другим запросом, повтор обновления", film.getId());
+        }
     }
 
-    // получение списка фильмов из FilmStorage
+    // последовательное получение фильмов из FilmStorage
     @Override
-    public List<Film> listFilms() {
+    public Stream<Film> streamFilms() {
 
-        return filmStorage.listFilms();
+        return filmStorage.streamFilms();
     }
 
     // получение фильма по идентификатору из FilmStorage
@@ -53,6 +79,20 @@ public class FilmServiceRating implements FilmService {
         return filmStorage.getFilmById(id);
     }
 
+    // метка версии фильма из FilmStorage - без чтения и сериализации фильма
+    @Override
+    public String getFilmVersion(Integer id) {
+
+        return VersionTag.of(filmStorage.getFilmVersion(id));
+    }
+
+    // метка версии списка фильмов - рейтинг изменяется только при сохранении фильмов
+    @Override
+    public String getPopularFilmsVersion() {
+
+        return VersionTag.of(filmStorage.getFilmsVersion());
+    }
+
     // возвращение копии объекта фильм с увеличенным значением лайков из LikeStorage
     @Override
     public Film addLike(Integer filmId, Long userId) {
@@ -61,7 +101,7 @@ public class FilmServiceRating implements FilmService {
         checkIfFilmIdExist(filmId);
         checkIfUserIdExist(userId);
 
-        return likeStorage.addLike(filmId, userId);
+        return applyLike(filmId, userId, Command.ADD);
     }
 
     // возвращение копии объекта фильм с уменьшенным значением лайков из LikeStorage
@@ -72,7 +112,27 @@ public class FilmServiceRating implements FilmService {
         checkIfFilmIdExist(filmId);
         checkIfUserIdExist(userId);
 
-        return likeStorage.deleteLike(filmId, userId);
+        return applyLike(filmId, userId, Command.DELETE);
+    }
+
+    /* изменение лайка без проверки пользователя - в шардированном режиме пользователь может храниться
+    на другом узле, и его существование проверяет узел-маршрутизатор */
+    public Film updateLike(Integer filmId, Long userId, Command command) {
+
+        checkIfFilmIdExist(filmId);
+
+        return applyLike(filmId, userId, command);
+    }
+
+    /* изменение лайка в LikeStorage. при включенном конвейере изменение выполняет писатель раздела фильма:
+    лайки одного фильма применяются по очереди без конкуренции потоков запросов */
+    private Film applyLike(Integer filmId, Long userId, Command command) {
+
+        Supplier<Film> mutation = () -> command == Command.ADD
+                ? likeStorage.addLike(filmId, userId)
+                : likeStorage.deleteLike(filmId, userId);
+
+        return pipeline.map(p -> p.execute(filmId, mutation)).orElseGet(mutation);
     }
 
     // получение списка наиболее популярных фильмов
@@ -83,7 +143,7 @@ public class FilmServiceRating implements FilmService {
         int limit = Optional.ofNullable(count).orElse(HIT_LIST_SIZE);
 
         // возвращение отсортированного по популярности фильмов списка определенного размера
-        List<Film> mostPopularFilms = sortFilmReversedOrderWithLimit(limit);
+        List<Film> mostPopularFilms = popularFilmsFlight.execute(limit, () -> sortFilmReversedOrderWithLimit(limit));
         log.info("Количество популярных фильмов по запросу: {}", mostPopularFilms.size());
 
         return mostPopularFilms;
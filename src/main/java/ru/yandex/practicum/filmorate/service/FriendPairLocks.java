@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Component
+public class FriendPairLocks {
+
+    /* блокировки пар пользователей: событие дружбы записывается и списки друзей изменяются под блокировкой пары,
+    поэтому списки друзей изменяются в порядке событий в истории. пары распределяются по PAIR_LOCKS блокировкам.
+    блокировка пары берется до блокировки хранилища пользователей - и одиночной операцией, и пакетом */
+
+    private static final int PAIR_LOCKS = 64;
+    private final Object[] pairLocks = Stream.generate(Object::new).limit(PAIR_LOCKS).toArray();
+
+    // блокировка пары пользователей - одна и та же при любом порядке id
+    public Object pairLock(Long userId, Long friendId) {
+        return pairLocks[index(userId, friendId)];
+    }
+
+    /* выполнение действия под блокировками нескольких пар (каждая пара - массив из двух id).
+    блокировки берутся по возрастанию номера - два пакета с общими парами не ждут друг друга по кругу */
+    public <T> T withPairLocks(Collection<Long[]> pairs, Supplier<T> action) {
+
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Long[] pair : pairs) {
+            indexes.add(index(pair[0], pair[1]));
+        }
+        return lockAll(indexes.stream().mapToInt(Integer::intValue).toArray(), 0, action);
+    }
+
+    private <T> T lockAll(int[] indexes, int from, Supplier<T> action) {
+
+        if (from == indexes.length) {
+            return action.get();
+        }
+        synchronized (pairLocks[indexes[from]]) {
+            return lockAll(indexes, from + 1, action);
+        }
+    }
+
+    private static int index(Long userId, Long friendId) {
+
+        long low = Math.min(userId, friendId);
+        long high = Math.max(userId, friendId);
+        return Math.floorMod(Long.hashCode(low * 31 + high), PAIR_LOCKS);
+    }
+
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.exceptions.RequestValidationException;
+
+import java.util.Arrays;
+
+// форматы файлов для массового импорта
+
+public enum ImportFormat {
+    NDJSON, // один JSON-объект на строку
+    CSV; // строка заголовка с названиями полей, затем одна запись на строку
+
+    // формат по названию из параметра запроса без учета регистра
+    public static ImportFormat of(String name) {
+
+        return Arrays.stream(values())
+                .filter(format -> format.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new RequestValidationException("Неизвестный формат импорта: " + name
+                        + ", допустимые форматы: " + Arrays.toString(values())));
+    }
+}
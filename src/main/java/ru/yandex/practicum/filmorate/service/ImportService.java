@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.model.ImportReport;
+
+import java.io.InputStream;
+
+// сервис для массового импорта фильмов и пользователей из файлов
+public interface ImportService {
+
+    ImportReport importFilms(InputStream input, ImportFormat format); // потоковый импорт фильмов в FilmStorage
+
+    ImportReport importUsers(InputStream input, ImportFormat format); // потоковый импорт пользователей в UserStorage
+
+}
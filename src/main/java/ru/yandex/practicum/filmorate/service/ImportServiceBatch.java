@@ -0,0 +1,245 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/* реализация массового импорта: файл читается построчно, записи разбираются и проходят валидацию,
+накапливаются в пакеты ограниченного размера и сохраняются в хранилище одним вызовом на пакет.
+в памяти одновременно находится не более одного пакета, поэтому объем файла не ограничен */
+@Slf4j
+@Service
+public class ImportServiceBatch implements ImportService {
+
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final String GENRES_SEPARATOR = "\\|";
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    public ImportServiceBatch(FilmStorage filmStorage, UserStorage userStorage, Validator validator,
+                              ObjectMapper objectMapper, @Value("${filmorate.import.chunk-size}") int chunkSize) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    // потоковый импорт фильмов в FilmStorage
+    @Override
+    public ImportReport importFilms(InputStream input, ImportFormat format) {
+
+        return importEntities("films", input, format, Film.class, this::csvToFilm, filmStorage::addFilms);
+    }
+
+    // потоковый импорт пользователей в UserStorage
+    @Override
+    public ImportReport importUsers(InputStream input, ImportFormat format) {
+
+        return importEntities("users", input, format, User.class, this::csvToUser, userStorage::addUsers);
+    }
+
+    // чтение, валидация и пакетное сохранение записей
+    private <T> ImportReport importEntities(String entity, InputStream input, ImportFormat format, Class<T> type,
+                                            Function<Map<String, String>, T> csvMapper,
+                                            Function<List<T>, List<T>> saver) {
+
+        long started = System.nanoTime();
+        ObjectReader jsonReader = objectMapper.readerFor(type);
+
+        List<T> chunk = new ArrayList<>(chunkSize);
+        List<String> errors = new ArrayList<>();
+        List<String> header = null;
+        long lineNumber = 0;
+        long processed = 0;
+        long imported = 0;
+        long rejected = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == ImportFormat.CSV && header == null) { // первая строка CSV - названия полей
+                    header = parseCsvLine(line);
+                    continue;
+                }
+
+                processed++;
+                try {
+                    T item = format == ImportFormat.CSV
+                            ? csvMapper.apply(toFieldMap(header, parseCsvLine(line)))
+                            : jsonReader.readValue(line);
+
+                    Set<ConstraintViolation<T>> violations = validator.validate(item);
+                    if (violations.isEmpty()) {
+                        chunk.add(item);
+                    } else {
+                        rejected++;
+                        addError(errors, lineNumber, violations.stream()
+                                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                                .collect(Collectors.joining(", ")));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    rejected++;
+                    addError(errors, lineNumber, e.getMessage());
+                }
+
+                if (chunk.size() >= chunkSize) { // сохранение заполненного пакета
+                    imported += saver.apply(chunk).size();
+                    chunk.clear();
+                    logProgress(entity, processed, imported, rejected, started);
+                }
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка чтения импортируемого файла", e);
+        }
+
+        if (!chunk.isEmpty()) {
+            imported += saver.apply(chunk).size();
+        }
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        ImportReport report = ImportReport.builder()
+                .entity(entity)
+                .processed(processed)
+                .imported(imported)
+                .rejected(rejected)
+                .elapsedMs(elapsedMs)
+                .recordsPerSecond(imported * 1000 / Math.max(1, elapsedMs))
+                .errors(errors)
+                .build();
+
+        log.info("Завершен импорт: {}", report);
+        return report;
+    }
+
+    private void logProgress(String entity, long processed, long imported, long rejected, long started) {
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        log.info("Импорт {}: обработано {}, сохранено {}, отклонено {}, {} записей/с",
+                entity, processed, imported, rejected, imported * 1000 / elapsedMs);
+    }
+
+    private void addError(List<String> errors, long lineNumber, String message) {
+
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("строка " + lineNumber + ": " + message);
+        }
+    }
+
+    // преобразование полей CSV в фильм: name, description, releaseDate, duration, ratingMPA, genres (через |)
+    private Film csvToFilm(Map<String, String> fields) {
+
+        String genres = fields.get("genres");
+
+        return Film.builder()
+                .name(fields.get("name"))
+                .description(fields.get("description"))
+                .releaseDate(parseDate(fields.get("releaseDate")))
+                .duration(fields.get("duration") == null ? null : Integer.valueOf(fields.get("duration")))
+                .ratingMPA(fields.get("ratingMPA") == null ? null : RatingMPA.valueOf(fields.get("ratingMPA")))
+                .genres(genres == null ? null : Arrays.stream(genres.split(GENRES_SEPARATOR))
+                        .map(String::trim)
+                        .map(Genre::valueOf)
+                        .collect(Collectors.toSet()))
+                .build();
+    }
+
+    // преобразование полей CSV в пользователя: email, login, name, birthday
+    private User csvToUser(Map<String, String> fields) {
+
+        return User.builder()
+                .email(fields.get("email"))
+                .login(fields.get("login"))
+                .name(fields.get("name"))
+                .birthday(parseDate(fields.get("birthday")))
+                .build();
+    }
+
+    private LocalDate parseDate(String value) {
+        return value == null ? null : LocalDate.parse(value);
+    }
+
+    // сопоставление значений строки CSV с названиями полей, пустые значения не учитываются
+    private Map<String, String> toFieldMap(List<String> header, List<String> values) {
+
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < header.size() && i < values.size(); i++) {
+            if (!values.get(i).isBlank()) {
+                fields.put(header.get(i).trim(), values.get(i));
+            }
+        }
+        return fields;
+    }
+
+    // разбор строки CSV с поддержкой значений в кавычках
+    private List<String> parseCsvLine(String line) {
+
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char symbol = line.charAt(i);
+
+            if (quoted) {
+                if (symbol == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (symbol == '"') {
+                    quoted = false;
+                } else {
+                    value.append(symbol);
+                }
+            } else if (symbol == '"') {
+                quoted = true;
+            } else if (symbol == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(symbol);
+            }
+        }
+        values.add(value.toString());
+
+        return values;
+    }
+
+}
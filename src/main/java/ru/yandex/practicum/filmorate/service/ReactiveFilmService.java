@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.filmorate.model.Film;
+
+// неблокирующий вариант сервиса фильмов - результат выдается подписчику по мере готовности
+public interface ReactiveFilmService {
+
+    Mono<Film> addFilm(Film film);  // добавление информации о фильме
+
+    Mono<Film> updateFilm(Film film, String expectedVersion); // обновление фильма, с меткой If-Match - ее версии
+
+    Flux<Film> streamFilms(); // фильмы по одному по запросу подписчика
+
+    Mono<Film> getFilmById(Integer id); // получение фильма по идентификатору
+
+    Mono<Film> addLike(Integer id, Long userId); // добавление лайка фильму
+
+    Mono<Film> deleteLike(Integer id, Long userId); // удаление лайка у фильма
+
+    Flux<Film> listMostPopularFilms(Integer count); // наиболее популярные фильмы
+
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.filmorate.model.Film;
+
+// реализация неблокирующего сервиса фильмов поверх блокирующего: вызовы выполняются в ограниченном пуле
+@Service
+@RequiredArgsConstructor
+public class ReactiveFilmServiceBridge implements ReactiveFilmService {
+
+    private final FilmService filmService;
+    private final BlockingScheduler blockingScheduler;
+
+    @Override
+    public Mono<Film> addFilm(Film film) {
+
+        return Mono.fromCallable(() -> filmService.addFilm(film)).subscribeOn(blockingScheduler.get());
+    }
+
+    @Override
+    public Mono<Film> updateFilm(Film film, String expectedVersion) {
+
+        return Mono.fromCallable(() -> filmService.updateFilm(film, expectedVersion)).subscribeOn(blockingScheduler.get());
+    }
+
+    // фильмы читаются из хранилища по мере запроса подписчика, поток хранилища закрывается при отмене
+    @Override
+    public Flux<Film> streamFilms() {
+
+        return Flux.fromStream(filmService::streamFilms).subscribeOn(blockingScheduler.get());
+    }
+
+    @Override
+    public Mono<Film> getFilmById(Integer id) {
+
+        return Mono.fromCallable(() -> filmService.getFilmById(id)).subscribeOn(blockingScheduler.get());
+    }
+
+    @Override
+    public Mono<Film> addLike(Integer id, Long userId) {
+
+        return Mono.fromCallable(() -> filmService.addLike(id, userId)).subscribeOn(blockingScheduler.get());
+    }
+
+    @Override
+    public Mono<Film> deleteLike(Integer id, Long userId) {
+
+        return Mono.fromCallable(() -> filmService.deleteLike(id, userId)).subscribeOn(blockingScheduler.get());
+    }
+
+    // рейтинг требует сортировки всего каталога - список строится целиком и выдается по одному
+    @Override
+    public Flux<Film> listMostPopularFilms(Integer count) {
+
+        return Mono.fromCallable(() -> filmService.listMostPopularFilms(count))
+                .subscribeOn(blockingScheduler.get())
+                .flatMapIterable(films -> films);
+    }
+
+}
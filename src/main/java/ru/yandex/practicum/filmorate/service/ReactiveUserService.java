@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.filmorate.model.User;
+
+// неблокирующий вариант сервиса пользователей - результат выдается подписчику по мере готовности
+public interface ReactiveUserService {
+
+    Mono<User> addUser(User user);  // добавление информации о пользователе
+
+    Mono<User> updateUser(User user, String expectedVersion);  // обновление пользователя, с меткой - ее версии
+
+    Flux<User> streamUsers(); // пользователи по одному по запросу подписчика
+
+    Mono<User> getUserById(Long id); // получение пользователя по идентификатору
+
+    Mono<User> addFriend(Long userId, Long friendId); // добавление пользователя в список друзей
+
+    Mono<User> deleteFriend(Long userId, Long friendId);  // удаление пользователя из списка друзей
+
+    Flux<User> listUserFriends(Long id); // друзья пользователя по одному по запросу подписчика
+
+    Flux<User> listCommonFriends(Long userId, Long otherId); // общие друзья по одному по запросу подписчика
+
+}
@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+// реализация неблокирующего сервиса пользователей поверх блокирующего: вызовы выполняются в ограниченном пуле
+@Service
+@RequiredArgsConstructor
+public class ReactiveUserServiceBridge implements ReactiveUserService {
+
+    private static final int FRIENDS_PREFETCH = 32; // друзей, читаемых заранее сверх запроса подписчика
+
+    private final UserService userService;
+    private final BlockingScheduler blockingScheduler;
+
+    @Override
+    public Mono<User> addUser(User user) {
+
+        return Mono.fromCallable(() -> userService.addUser(user)).subscribeOn(blockingScheduler.get());
+    }
+
+    @Override
+    public Mono<User> updateUser(User user, String expectedVersion) {
+
+        return Mono.fromCallable(() -> userService.updateUser(user, expectedVersion)).subscribeOn(blockingScheduler.get());
+    }
+
+    // пользователи читаются из хранилища по мере запроса подписчика, поток хранилища закрывается при отмене
+    @Override
+    public Flux<User> streamUsers() {
+
+        return Flux.fromStream(userService::streamUsers).subscribeOn(blockingScheduler.get());
+    }
+
+    @Override
+    public Mono<User> getUserById(Long id) {
+
+        return Mono.fromCallable(() -> userService.getUserById(id)).subscribeOn(blockingScheduler.get());
+    }
+
+    @Override
+    public Mono<User> addFriend(Long userId, Long friendId) {
+
+        return Mono.fromCallable(() -> userService.addFriend(userId, friendId)).subscribeOn(blockingScheduler.get());
+    }
+
+    @Override
+    public Mono<User> deleteFriend(Long userId, Long friendId) {
+
+        return Mono.fromCallable(() -> userService.deleteFriend(userId, friendId))
+                .subscribeOn(blockingScheduler.get());
+    }
+
+    // друзья читаются по одному по мере запроса подписчика - список друзей целиком не строится
+    @Override
+    public Flux<User> listUserFriends(Long id) {
+
+        return getUserById(id)
+                .flatMapMany(user -> Flux.fromIterable(friendsOf(user)))
+                .concatMap(this::getUserById, FRIENDS_PREFETCH);
+    }
+
+    // пересечение списков друзей, общие друзья читаются по одному по мере запроса подписчика
+    @Override
+    public Flux<User> listCommonFriends(Long userId, Long otherId) {
+
+        return Mono.zip(getUserById(userId), getUserById(otherId))
+                .flatMapMany(users -> {
+                    Set<Long> mutualFriends = new HashSet<>(friendsOf(users.getT1()));
+                    mutualFriends.retainAll(friendsOf(users.getT2()));
+                    return Flux.fromIterable(mutualFriends);
+                })
+                .concatMap(this::getUserById, FRIENDS_PREFETCH);
+    }
+
+    private Set<Long> friendsOf(User user) {
+
+        return Optional.ofNullable(user.getFriends()).orElse(Set.of());
+    }
+
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFacets;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+// сервис полнотекстового поиска, подсказок при наборе и выборок по индексам
+public interface SearchService {
+
+    List<Film> searchFilms(String query, Integer limit); // фильмы по убыванию релевантности запросу
+
+    List<Suggestion> suggestFilms(String prefix, Integer limit); // фильмы с названием на префикс, популярные первыми
+
+    List<Suggestion> suggestUsers(String prefix, Integer limit); // пользователи с логином на префикс, популярные первыми
+
+    // страница фильмов, вышедших в диапазоне дат, по дате выхода или по убыванию популярности
+    FilmPage listFilmsReleasedBetween(LocalDate from, LocalDate to, boolean byPopularity, Integer offset, Integer count);
+
+    // страница фильмов с любым из жанров и любым из рейтингов и число фильмов для каждого жанра и рейтинга
+    FilmFacets listFilmsByFacets(Set<Genre> genres, Set<RatingMPA> ratings, Integer offset, Integer count);
+
+}
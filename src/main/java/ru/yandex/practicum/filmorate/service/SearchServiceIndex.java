@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFacets;
+import ru.yandex.practicum.filmorate.model.FilmHit;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.search.FacetIndex;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.search.ReleaseDateIndex;
+import ru.yandex.practicum.filmorate.storage.search.SuggestIndex;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// реализация поиска по обратному индексу - читаются только найденные фильмы, подсказки - по префиксным деревьям,
+// выборки по датам выхода - по списку с пропусками, по жанрам и рейтингам - по битовым индексам
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchServiceIndex implements SearchService {
+
+    private final FilmSearchIndex filmSearchIndex;
+    private final FilmStorage filmStorage;
+    private final SuggestIndex suggestIndex;
+    private final ReleaseDateIndex releaseDateIndex;
+    private final FacetIndex facetIndex;
+
+    // поиск фильмов по словам названия и описания
+    @Override
+    public List<Film> searchFilms(String query, Integer limit) {
+
+        return searchFilmHits(query, limit).stream()
+                .map(FilmHit::getFilm)
+                .collect(Collectors.toList());
+    }
+
+    // найденные фильмы с релевантностью - для объединения результатов узлов
+    public List<FilmHit> searchFilmHits(String query, Integer limit) {
+
+        List<FilmHit> hits = filmSearchIndex.search(query, limit).stream()
+                .map(hit -> new FilmHit(filmStorage.getFilmById(hit.getId()), hit.getScore()))
+                .collect(Collectors.toList());
+        log.info("По запросу '{}' найдено фильмов: {}", query, hits.size());
+
+        return hits;
+    }
+
+    // подсказки по началу названия фильма - без чтения хранилища
+    @Override
+    public List<Suggestion> suggestFilms(String prefix, Integer limit) {
+        return suggestIndex.suggestFilms(prefix, limit);
+    }
+
+    // подсказки по началу логина пользователя - без чтения хранилища
+    @Override
+    public List<Suggestion> suggestUsers(String prefix, Integer limit) {
+        return suggestIndex.suggestUsers(prefix, limit);
+    }
+
+    // страница фильмов диапазона дат выхода - читаются только фильмы страницы
+    @Override
+    public FilmPage listFilmsReleasedBetween(LocalDate from, LocalDate to, boolean byPopularity,
+                                             Integer offset, Integer count) {
+
+        ReleaseDateIndex.Page page = releaseDateIndex.list(from, to, byPopularity, offset, count);
+        List<Film> films = page.getIds().stream()
+                .map(filmStorage::getFilmById)
+                .collect(Collectors.toList());
+        log.info("Фильмов с датой выхода с {} по {}: {}, на странице: {}", from, to, page.getTotal(), films.size());
+
+        return new FilmPage(films, page.getTotal());
+    }
+
+    // страница выборки по жанрам и рейтингам - читаются только фильмы страницы, счетчики - из битовых индексов
+    @Override
+    public FilmFacets listFilmsByFacets(Set<Genre> genres, Set<RatingMPA> ratings, Integer offset, Integer count) {
+
+        FacetIndex.Page page = facetIndex.select(genres, ratings, offset, count);
+        List<Film> films = page.getIds().stream()
+                .map(filmStorage::getFilmById)
+                .collect(Collectors.toList());
+        log.info("Фильмов с жанрами {} и рейтингами {}: {}, на странице: {}", genres, ratings, page.getTotal(),
+                films.size());
+
+        return new FilmFacets(films, page.getTotal(), page.getGenreCounts(), page.getRatingCounts());
+    }
+
+}
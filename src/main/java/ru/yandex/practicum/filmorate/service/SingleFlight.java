@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+public class SingleFlight<K, V> {
+
+    /* объединение одинаковых одновременных запросов: первый запрос с ключом выполняет вычисление,
+    запросы с тем же ключом, пришедшие до его окончания, ждут и получают тот же результат или то же исключение.
+    результат не кешируется - запрос, пришедший после окончания вычисления, запускает новое вычисление,
+    поэтому ответ не старше момента прихода запроса */
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public V execute(K key, Supplier<V> computation) {
+
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, call);
+
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            V result = computation.get();
+            call.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    // ожидание чужого вычисления - исключение передается ожидающим в исходном виде
+    private V await(CompletableFuture<V> running) {
+
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
@@ -3,17 +3,21 @@ package ru.yandex.practicum.filmorate.service;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 // сервис для добавления, удаления, получение списков друзей пользователя
 public interface UserService {
     User addUser(User user);  // добавление информации о пользователе в UserStorage
 
-    User updateUser(User user);  // обновление информации о пользователе в UserStorage
+    // обновление информации о пользователе в UserStorage, при заданной метке (If-Match) - только ее версии
+    User updateUser(User user, String expectedVersion);
 
-    List<User> listUsers(); // получение списка пользователей из UserStorage
+    Stream<User> streamUsers(); // последовательное получение пользователей из UserStorage
 
     User getUserById(Long id); // получение пользователя по идентификатору из UserStorage
 
+    String getUserVersion(Long id); // метка версии пользователя для условных запросов
+
     User addFriend(Long userId, Long friendId); //добавление пользователя в список друзей в UserStorage
 
     User deleteFriend(Long userId, Long friendId);  // удаление пользователя из списка друзей в UserStorage
@@ -4,11 +4,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.exceptions.VersionConflictException;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.pipeline.MutationPipeline;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 // реализация сервиса для обработки запросов на создание / удаление / получение списков друзей пользователя
@@ -18,6 +25,12 @@ import java.util.stream.Collectors;
 public class UserServiceCommunity implements UserService {
 
     private final UserStorage userStorage;
+    private final EventStorage eventStorage;
+    private final Optional<MutationPipeline> pipeline; // отсутствует, если конвейер записи не включен
+    private final FriendPairLocks pairLocks; // общие с пакетами операций блокировки пар пользователей
+
+    // одновременные запросы общих друзей одной пары пользователей вычисляются один раз
+    private final SingleFlight<List<Long>, List<User>> commonFriendsFlight = new SingleFlight<>();
 
     // добавление информации о пользователе в UserStorage
     @Override
@@ -26,18 +39,36 @@ public class UserServiceCommunity implements UserService {
         return userStorage.addUser(user);
     }
 
-    // обновление информации о пользователе в UserStorage
+    /* обновление информации о пользователе в UserStorage сравнением версии: список друзей берется
+    из сохраненного пользователя - обновление не отменяет одновременные изменения дружбы.
+    с меткой If-Match пользователь сохраняется только поверх версии, которую видел клиент */
     @Override
-    public User updateUser(User user) {
-
-        return userStorage.updateUser(user);
+    public User updateUser(User user, String expectedVersion) {
+
+        while (true) {
+            long version = userStorage.getUserVersion(user.getId()); // проверка существования пользователя
+            if (!VersionTag.matches(expectedVersion, version)) {
+                throw new VersionConflictException("Пользователь c id: " + user.getId()
+                        + " изменен после получения версии " + expectedVersion);
+            }
+
+            User updatedUser = user.toBuilder()
+                    .name(user.getName() == null || user.getName().isBlank() ? user.getLogin() : user.getName())
+                    .friends(userStorage.getUserById(user.getId()).getFriends())
+                    .build();
+            if (userStorage.compareAndSetUserData(updatedUser, version)) {
+                log.info("Обновлены данные пользователя {}", updatedUser);
+                return updatedUser;
+            }
+            log.debug("Пользователь с id {} изменен другим запросом, повтор обновления", user.getId());
+        }
     }
 
-    // получение списка пользователей из UserStorage
+    // последовательное получение пользователей из UserStorage
     @Override
-    public List<User> listUsers() {
+    public Stream<User> streamUsers() {
 
-        return userStorage.listUsers();
+        return userStorage.streamUsers();
     }
 
     // получение пользователя по идентификатору из UserStorage
@@ -47,6 +78,13 @@ public class UserServiceCommunity implements UserService {
         return userStorage.getUserById(id);
     }
 
+    // метка версии пользователя из UserStorage - без чтения и сериализации пользователя
+    @Override
+    public String getUserVersion(Long id) {
+
+        return VersionTag.of(userStorage.getUserVersion(id));
+    }
+
     // добавление друзей в UserStorage
     @Override
     public User addFriend(Long userId, Long friendId) {
@@ -55,14 +93,10 @@ public class UserServiceCommunity implements UserService {
         checkIfUserIdExist(userId);
         checkIfUserIdExist(friendId);
 
-        // добавляем пользователей в списки друзей друг друга
-        // возвращение копий объектов с обновленным списком друзей
-        User user = updateFriendList(userId, friendId, Command.ADD);
-        User friend = updateFriendList(friendId, userId, Command.ADD);
-
-        // обновление информации об объектах в хранилище
-        userStorage.updateUserData(user);
-        userStorage.updateUserData(friend);
+        // записываем событие и добавляем пользователей в списки друзей друг друга
+        synchronized (pairLocks.pairLock(userId, friendId)) {
+            applyFriendEvent(eventStorage.addEvent(EventType.FRIEND_ADDED, userId, friendId));
+        }
 
         log.info("Сохранен друг {} с id {} для пользователя: {} c id {}",
                 userStorage.getUserById(friendId), friendId, userStorage.getUserById(userId), userId);
@@ -78,14 +112,10 @@ public class UserServiceCommunity implements UserService {
         checkIfUserIdExist(userId);
         checkIfUserIdExist(friendId);
 
-        // удаление пользователей из списков друзей друг друга
-        // возвращение копий объектов с обновленным списком друзей
-        User user = updateFriendList(userId, friendId, Command.DELETE);
-        User friend = updateFriendList(friendId, userId, Command.DELETE);
-
-        // обновление информации об объектах в хранилище
-        userStorage.updateUserData(user);
-        userStorage.updateUserData(friend);
+        // записываем событие и удаляем пользователей из списков друзей друг друга
+        synchronized (pairLocks.pairLock(userId, friendId)) {
+            applyFriendEvent(eventStorage.addEvent(EventType.FRIEND_REMOVED, userId, friendId));
+        }
 
         log.info("Удален друг {} с id {} для пользователя: {} c id {}",
                 userStorage.getUserById(friendId), friendId, userStorage.getUserById(userId), userId);
@@ -111,6 +141,12 @@ public class UserServiceCommunity implements UserService {
     @Override
     public List<User> listCommonFriends(Long userId, Long otherId) {
 
+        return commonFriendsFlight.execute(Arrays.asList(userId, otherId), () -> findCommonFriends(userId, otherId));
+    }
+
+    // пересечение списков друзей двух пользователей
+    private List<User> findCommonFriends(Long userId, Long otherId) {
+
         checkIfUserIdExist(userId);
         checkIfUserIdExist(otherId);
 
@@ -131,6 +167,59 @@ public class UserServiceCommunity implements UserService {
         return convertIdSetToUserList(mutualFriends);
     }
 
+    /* изменение списка друзей только одного пользователя. в шардированном режиме пользователи хранятся
+    на разных узлах, и каждый узел обновляет своего пользователя; событие записывает узел инициатора */
+    public User updateFriendship(Long userId, Long friendId, Command command, boolean initiator) {
+
+        checkIfUserIdExist(userId);
+
+        synchronized (pairLocks.pairLock(userId, friendId)) {
+            if (initiator) {
+                eventStorage.addEvent(command == Command.ADD ? EventType.FRIEND_ADDED : EventType.FRIEND_REMOVED,
+                        userId, friendId);
+            }
+
+            if (pipeline.isPresent()) {
+                return pipeline.get().execute(userId, () -> saveFriendList(userId, friendId, command));
+            }
+            return saveFriendList(userId, friendId, command);
+        }
+    }
+
+    // изменение списков друзей обоих пользователей по записанному событию дружбы
+    private void applyFriendEvent(Event event) {
+
+        Command command = event.getEventType() == EventType.FRIEND_ADDED ? Command.ADD : Command.DELETE;
+
+        /* при включенном конвейере список друзей каждого пользователя изменяет писатель его раздела,
+        как узлы в шардированном режиме: половины выполняются независимо, ожидаются обе */
+        if (pipeline.isPresent()) {
+            CompletableFuture<User> user = pipeline.get().submit(event.getUserId(),
+                    () -> saveFriendList(event.getUserId(), event.getEntityId(), command));
+            CompletableFuture<User> friend = pipeline.get().submit(event.getEntityId(),
+                    () -> saveFriendList(event.getEntityId(), event.getUserId(), command));
+            MutationPipeline.await(user);
+            MutationPipeline.await(friend);
+            return;
+        }
+
+        // обновление списков друзей обоих пользователей в хранилище
+        saveFriendList(event.getUserId(), event.getEntityId(), command);
+        saveFriendList(event.getEntityId(), event.getUserId(), command);
+    }
+
+    /* сохранение обновленного списка друзей одного пользователя в UserStorage сравнением версии:
+    если пользователь изменен другим запросом после чтения, список строится заново по новой версии */
+    private User saveFriendList(Long userId, Long friendId, Command command) {
+
+        while (true) {
+            long version = userStorage.getUserVersion(userId);
+            User user = updateFriendList(userId, friendId, command);
+            if (userStorage.compareAndSetUserData(user, version)) {
+                return user;
+            }
+        }
+    }
 
     // обновление списка друзей пользователя в UserStorage
     private User updateFriendList(Long userId, Long friendId, Command command) {
@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+// построение меток версий для условных запросов
+
+public final class VersionTag {
+
+    /* версии хранилищ в памяти начинаются заново после перезапуска, поэтому метка включает идентификатор
+    запуска приложения - метка, полученная до перезапуска, не совпадет с меткой новых данных */
+    private static final String LAUNCH = Long.toString(UUID.randomUUID().getMostSignificantBits() >>> 1, 36);
+
+    private VersionTag() {
+    }
+
+    public static String of(long... versions) {
+
+        return LAUNCH + "-" + Arrays.stream(versions)
+                .mapToObj(Long::toString)
+                .collect(Collectors.joining("-"));
+    }
+
+    // совпадение метки из If-Match с версией записи: * и отсутствие метки совпадают с любой версией
+    public static boolean matches(String tag, long version) {
+
+        return tag == null || "*".equals(tag.trim()) || parse(tag) == version;
+    }
+
+    /* версия записи из метки заголовка If-Match. метка другого запуска приложения или другого вида
+    не совпадает ни с одной версией - возвращается -1 */
+    public static long parse(String tag) {
+
+        String value = tag.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+
+        String prefix = LAUNCH + "-";
+        if (!value.startsWith(prefix)) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(value.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+}
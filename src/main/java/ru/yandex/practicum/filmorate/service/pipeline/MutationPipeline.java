@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.service.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.pipeline.enabled", havingValue = "true")
+public class MutationPipeline {
+
+    /* конвейер изменений лайков и дружбы: изменения распределяются по разделам по id изменяемой записи
+    (фильма для лайков, пользователя для списка друзей), в каждом разделе их применяет один поток-писатель.
+    изменения одной записи выполняются строго по порядку публикации и не конкурируют между собой,
+    запись журнала на диск выполняется одна на пакет изменений раздела */
+
+    private final MutationRing[] rings;
+
+    public MutationPipeline(@Value("${filmorate.pipeline.partitions}") int partitions,
+                            @Value("${filmorate.pipeline.ring-size}") int ringSize,
+                            @Value("${filmorate.pipeline.max-batch}") int maxBatch,
+                            MutationJournal journal) {
+
+        this.rings = new MutationRing[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            rings[partition] = new MutationRing(partition, ringSize, maxBatch, journal);
+        }
+        log.info("Конвейер записи: разделов {}, размер буфера {}, пакет до {} изменений",
+                partitions, ringSize, maxBatch);
+    }
+
+    // публикация изменения записи с указанным id без ожидания
+    public <T> CompletableFuture<T> submit(long key, Supplier<T> mutation) {
+
+        return rings[Math.floorMod(Long.hashCode(key), rings.length)].publish(mutation);
+    }
+
+    // публикация изменения и ожидание его применения
+    public <T> T execute(long key, Supplier<T> mutation) {
+
+        return await(submit(key, mutation));
+    }
+
+    // ожидание применения - исключение изменения передается в исходном виде
+    public static <T> T await(CompletableFuture<T> done) {
+
+        try {
+            return done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+
+        for (MutationRing ring : rings) {
+            ring.stop();
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+package ru.yandex.practicum.filmorate.service.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+@Slf4j
+class MutationRing implements Runnable {
+
+    /* кольцевой буфер изменений одного раздела с единственным писателем.
+    ячейки создаются заранее и переиспользуются. поток запроса получает номер ячейки атомарным счетчиком,
+    заполняет ее и публикует номер; писатель забирает подряд опубликованные ячейки пакетом, применяет
+    изменения в порядке номеров с одним ожиданием записи журнала на диск на пакет и только после этого
+    завершает ожидания потоков запросов. при заполненном буфере поток запроса ждет освобождения ячейки.
+    любая ошибка изменения, в том числе Error, завершает только его ожидание. при выходе писателя ожидания всех
+    опубликованных и не примененных изменений завершаются исключением, а изменение, опубликованное после выхода,
+    завершает свое ожидание само - поток запроса не ждет остановленного писателя бесконечно */
+
+    private static final int SPINS = 100; // попыток перед остановкой потока в ожидании
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLongArray published; // номер изменения, опубликованного в ячейке
+    private final AtomicLong claimed = new AtomicLong(-1L); // последний выданный номер
+    private final MutationJournal journal;
+    private final int maxBatch;
+    private final Thread writer;
+
+    private volatile long consumed = -1L; // последний номер, ячейка которого освобождена писателем
+    private volatile boolean sleeping; // писатель остановлен в ожидании публикации
+    private volatile boolean running = true;
+    private volatile boolean terminated; // писатель завершил работу и больше не применяет изменения
+
+    private long batches;
+    private long mutations;
+
+    MutationRing(int partition, int size, int maxBatch, MutationJournal journal) {
+
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Размер кольцевого буфера должен быть степенью двойки: " + size);
+        }
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1L);
+        }
+        this.maxBatch = maxBatch;
+        this.journal = journal;
+        this.writer = new Thread(this, "filmorate-writer-" + partition);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // публикация изменения - результат завершается после применения и записи журнала на диск
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> publish(Supplier<T> mutation) {
+
+        if (!running || terminated) {
+            throw stopped();
+        }
+
+        long sequence = claimed.incrementAndGet();
+        for (int spin = 0; sequence - slots.length > consumed; spin++) { // ячейка еще не освобождена писателем
+            if (terminated) {
+                throw stopped();
+            }
+            if (spin < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(10_000L);
+            }
+        }
+
+        int index = (int) (sequence & mask);
+        Slot slot = slots[index];
+        CompletableFuture<Object> done = new CompletableFuture<>();
+        slot.mutation = (Supplier<Object>) mutation;
+        slot.done = done;
+        published.set(index, sequence); // запись volatile публикует заполненную ячейку писателю
+
+        /* писатель объявляет о выходе до проверки опубликованных ячеек: если он не увидел эту ячейку,
+        поток запроса увидит объявление и завершит ожидание сам. повторное завершение ожидания ничего не меняет */
+        if (terminated) {
+            done.completeExceptionally(stopped());
+        }
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+        return (CompletableFuture<T>) done;
+    }
+
+    @Override
+    public void run() {
+
+        long next = 0L;
+        try {
+            while (running || isPublished(next)) {
+                long last = next - 1;
+                while (last - next + 1 < maxBatch && isPublished(last + 1)) {
+                    last++;
+                }
+                if (last < next) {
+                    idle(next);
+                    continue;
+                }
+                apply(next, last);
+                next = last + 1;
+            }
+        } catch (Throwable e) {
+            log.error("Писатель {} остановлен из-за ошибки", writer.getName(), e);
+        } finally {
+            terminated = true;
+            failPublished(next);
+        }
+    }
+
+    void stop() throws InterruptedException {
+
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+        log.info("Писатель {} остановлен: изменений {}, пакетов {}", writer.getName(), mutations, batches);
+    }
+
+    // применение пакета изменений с одним ожиданием записи на диск, затем завершение ожиданий
+    private void apply(long from, long to) {
+
+        long sequence = journal.deferSync(() -> {
+            for (long current = from; current <= to; current++) {
+                Slot slot = slots[(int) (current & mask)];
+                try {
+                    slot.result = slot.mutation.get();
+                } catch (Throwable e) { // Error изменения не останавливает писателя
+                    slot.error = e;
+                }
+            }
+        });
+
+        Throwable syncError = null;
+        try {
+            journal.sync(sequence);
+        } catch (Throwable e) {
+            syncError = e;
+        }
+
+        for (long current = from; current <= to; current++) {
+            Slot slot = slots[(int) (current & mask)];
+            CompletableFuture<Object> done = slot.done;
+            Object result = slot.result;
+            Throwable error = syncError != null ? syncError : slot.error;
+            slot.clear();
+            if (error != null) {
+                done.completeExceptionally(error);
+            } else {
+                done.complete(result);
+            }
+        }
+
+        batches++;
+        mutations += to - from + 1;
+        consumed = to; // ячейки пакета свободны для новых изменений
+    }
+
+    // завершение исключением ожиданий изменений, опубликованных с номера from и не примененных писателем
+    private void failPublished(long from) {
+
+        for (long current = from; current <= claimed.get() && current < from + slots.length; current++) {
+            Slot slot = slots[(int) (current & mask)];
+            CompletableFuture<Object> done = slot.done;
+            if (isPublished(current) && done != null) {
+                done.completeExceptionally(stopped());
+            }
+        }
+    }
+
+    private static IllegalStateException stopped() {
+        return new IllegalStateException("Конвейер записи остановлен");
+    }
+
+    // ожидание публикации: короткое активное ожидание, затем остановка до сигнала потока запроса
+    private void idle(long next) {
+
+        for (int spin = 0; spin < SPINS; spin++) {
+            if (isPublished(next) || !running) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        sleeping = true;
+        if (!isPublished(next) && running) { // повторная проверка после объявления об остановке
+            LockSupport.park(this);
+        }
+        sleeping = false;
+    }
+
+    private boolean isPublished(long sequence) {
+        return published.get((int) (sequence & mask)) == sequence;
+    }
+
+    // ячейка буфера - создается один раз и переиспользуется
+    private static class Slot {
+
+        private Supplier<Object> mutation;
+        private CompletableFuture<Object> done;
+        private Object result;
+        private Throwable error;
+
+        private void clear() {
+            mutation = null;
+            done = null;
+            result = null;
+            error = null;
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+package ru.yandex.practicum.filmorate.service.shard;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.RequestValidationException;
+import ru.yandex.practicum.filmorate.exceptions.ShardRequestException;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.shard.enabled", havingValue = "true")
+public class ShardClient {
+
+    /* обращение к внутренним адресам /shard других узлов по HTTP. запросы отправляются асинхронно,
+    чтобы узел-маршрутизатор мог опрашивать несколько узлов параллельно. ошибки узла-владельца передаются
+    клиенту с тем же кодом ответа, недоступность узла - ответом 503 */
+
+    private static final String JSON = "application/json";
+
+    public static final String SECRET_HEADER = "X-Shard-Secret"; // общий секрет узлов в запросах /shard
+    public static final int MAX_COUNT = 10_000; // наибольшее число записей, запрашиваемых у узла
+
+    private final ShardLayout shardLayout;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final String secret;
+
+    public ShardClient(ShardLayout shardLayout,
+                       ObjectMapper objectMapper,
+                       @Value("${filmorate.shard.timeout-ms}") long timeoutMs,
+                       @Value("${filmorate.shard.secret}") String secret) {
+
+        this.shardLayout = shardLayout;
+        this.objectMapper = objectMapper;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.secret = secret;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    public <T> CompletableFuture<T> getAsync(int shard, String path, Class<T> type) {
+
+        return sendAsync(shard, "GET", path, null, objectMapper.constructType(type));
+    }
+
+    // метка версии записи или списка на узле-владельце - ответ вида {"version": "..."}
+    public CompletableFuture<String> getVersionAsync(int shard, String path) {
+
+        return getAsync(shard, path, JsonNode.class).thenApply(node -> node.path("version").asText());
+    }
+
+    public <T> CompletableFuture<List<T>> getListAsync(int shard, String path, Class<T> type) {
+
+        return sendAsync(shard, "GET", path, null,
+                objectMapper.getTypeFactory().constructCollectionType(List.class, type));
+    }
+
+    public <T> CompletableFuture<List<T>> postListAsync(int shard, String path, Object body, Class<T> type) {
+
+        return sendAsync(shard, "POST", path, body,
+                objectMapper.getTypeFactory().constructCollectionType(List.class, type));
+    }
+
+    public <T> T put(int shard, String path, Object body, Class<T> type) {
+
+        return join(sendAsync(shard, "PUT", path, body, objectMapper.constructType(type)));
+    }
+
+    public <T> T delete(int shard, String path, Class<T> type) {
+
+        return join(sendAsync(shard, "DELETE", path, null, objectMapper.constructType(type)));
+    }
+
+    // параметр запроса с меткой версии из If-Match для проверки на узле-владельце
+    public static String expectedVersionQuery(String expectedVersion) {
+
+        return expectedVersion == null
+                ? ""
+                : "?expectedVersion=" + URLEncoder.encode(expectedVersion, StandardCharsets.UTF_8);
+    }
+
+    // проверка числа записей, запрашиваемых у каждого узла, - узлы не отдают больше MAX_COUNT записей
+    public static int checkCount(long count) {
+
+        if (count > MAX_COUNT) {
+            throw new RequestValidationException("В шардированном режиме запрашивается не больше " + MAX_COUNT
+                    + " записей с учетом смещения, запрошено " + count);
+        }
+        return (int) count;
+    }
+
+    // ожидание ответа с передачей исключения узла без обертки CompletionException
+    public static <T> T join(CompletableFuture<T> future) {
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // потоковое чтение JSON-массива с узла - элементы разбираются по одному по мере чтения ответа
+    public <T> Stream<T> stream(int shard, String path, Class<T> type) {
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request(shard, "GET", path, null), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            throw unavailable(shard, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw unavailable(shard, e);
+        }
+
+        try {
+            InputStream body = response.body();
+            if (response.statusCode() >= 400) {
+                try (body) {
+                    throw failure(response.statusCode(), body.readAllBytes());
+                }
+            }
+
+            MappingIterator<T> iterator = objectMapper.readerFor(type).readValues(body);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                    .onClose(() -> {
+                        try {
+                            iterator.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw unavailable(shard, e);
+        }
+    }
+
+    private <T> CompletableFuture<T> sendAsync(int shard, String method, String path, Object body, JavaType type) {
+
+        return httpClient.sendAsync(request(shard, method, path, body), HttpResponse.BodyHandlers.ofByteArray())
+                .handle((response, error) -> {
+                    if (error != null) {
+                        throw unavailable(shard, error);
+                    }
+                    if (response.statusCode() >= 400) {
+                        throw failure(response.statusCode(), response.body());
+                    }
+                    try {
+                        return objectMapper.readValue(response.body(), type);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Некорректный ответ узла " + shard, e);
+                    }
+                });
+    }
+
+    private HttpRequest request(int shard, String method, String path, Object body) {
+
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.noBody();
+        if (body != null) {
+            try {
+                publisher = HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return HttpRequest.newBuilder(URI.create(shardLayout.node(shard) + path))
+                .timeout(timeout)
+                .header("Content-Type", JSON)
+                .header("Accept", JSON)
+                .header(SECRET_HEADER, secret)
+                .method(method, publisher)
+                .build();
+    }
+
+    // ошибка узла-владельца - сообщение берется из поля error тела ответа
+    private ShardRequestException failure(int status, byte[] body) {
+
+        String message;
+        try {
+            message = objectMapper.readTree(body).path("error").asText(new String(body));
+        } catch (IOException e) {
+            message = new String(body);
+        }
+        return new ShardRequestException(message, status);
+    }
+
+    private ShardRequestException unavailable(int shard, Throwable cause) {
+
+        log.warn("Узел {} ({}) недоступен: {}", shard, shardLayout.node(shard), cause.toString());
+        return new ShardRequestException("Узел " + shardLayout.node(shard) + " недоступен", 503);
+    }
+
+}
@@ -0,0 +1,169 @@
+package ru.yandex.practicum.filmorate.service.shard;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.Command;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.FilmServiceRating;
+import ru.yandex.practicum.filmorate.service.SingleFlight;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// маршрутизация запросов о фильмах по узлам: запрос по id выполняет узел-владелец, рейтинг собирается со всех узлов
+@Slf4j
+@Service
+@Primary
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.shard.enabled", havingValue = "true")
+public class ShardedFilmService implements FilmService {
+
+    private static final Integer HIT_LIST_SIZE = 10;
+
+    private final ShardLayout shardLayout;
+    private final ShardClient shardClient;
+    private final FilmServiceRating localService;
+    private final UserService userService; // маршрутизатор пользователей для проверки существования id
+
+    // одновременные запросы популярных фильмов одного размера опрашивают узлы один раз
+    private final SingleFlight<Integer, List<Film>> popularFilmsFlight = new SingleFlight<>();
+
+    // новый фильм сохраняется на текущем узле - хранилище выдает id, принадлежащий этому узлу
+    @Override
+    public Film addFilm(Film film) {
+
+        return localService.addFilm(film);
+    }
+
+    // обновление выполняет узел-владелец - метка версии выдана им и им же проверяется
+    @Override
+    public Film updateFilm(Film film, String expectedVersion) {
+
+        if (film.getId() == null || isLocal(film.getId())) {
+            return localService.updateFilm(film, expectedVersion);
+        }
+        return shardClient.put(shardOf(film.getId()), "/shard/films" + ShardClient.expectedVersionQuery(expectedVersion),
+                film, Film.class);
+    }
+
+    // фильмы всех узлов по очереди - с других узлов читаются потоком
+    @Override
+    public Stream<Film> streamFilms() {
+
+        return IntStream.range(0, shardLayout.count()).boxed()
+                .flatMap(shard -> shard == shardLayout.index()
+                        ? localService.streamFilms()
+                        : shardClient.stream(shard, "/shard/films", Film.class));
+    }
+
+    @Override
+    public Film getFilmById(Integer id) {
+
+        if (isLocal(id)) {
+            return localService.getFilmById(id);
+        }
+        return ShardClient.join(shardClient.getAsync(shardOf(id), "/shard/films/" + id, Film.class));
+    }
+
+    @Override
+    public String getFilmVersion(Integer id) {
+
+        if (isLocal(id)) {
+            return localService.getFilmVersion(id);
+        }
+        return ShardClient.join(shardClient.getVersionAsync(shardOf(id), "/shard/films/" + id + "/version"));
+    }
+
+    // метка версии рейтинга - метки списков фильмов всех узлов, узлы опрашиваются параллельно
+    @Override
+    public String getPopularFilmsVersion() {
+
+        List<CompletableFuture<String>> parts = IntStream.range(0, shardLayout.count())
+                .mapToObj(shard -> shard == shardLayout.index()
+                        ? CompletableFuture.completedFuture(localService.getPopularFilmsVersion())
+                        : shardClient.getVersionAsync(shard, "/shard/films/version"))
+                .collect(Collectors.toList());
+
+        return parts.stream()
+                .map(ShardClient::join)
+                .collect(Collectors.joining("."));
+    }
+
+    // лайк хранится на узле фильма, пользователь проверяется на своем узле
+    @Override
+    public Film addLike(Integer id, Long userId) {
+
+        return updateLike(id, userId, Command.ADD);
+    }
+
+    @Override
+    public Film deleteLike(Integer id, Long userId) {
+
+        return updateLike(id, userId, Command.DELETE);
+    }
+
+    /* наиболее популярные фильмы: каждый узел возвращает свои count лучших фильмов, узлы опрашиваются
+    параллельно, общий рейтинг - первые count фильмов объединения */
+    @Override
+    public List<Film> listMostPopularFilms(Integer count) {
+
+        int limit = ShardClient.checkCount(Optional.ofNullable(count).orElse(HIT_LIST_SIZE));
+
+        return popularFilmsFlight.execute(limit, () -> gatherMostPopularFilms(limit));
+    }
+
+    // сбор лучших фильмов со всех узлов
+    private List<Film> gatherMostPopularFilms(int limit) {
+
+        List<CompletableFuture<List<Film>>> parts = IntStream.range(0, shardLayout.count())
+                .filter(shard -> shard != shardLayout.index())
+                .mapToObj(shard -> shardClient.getListAsync(shard, "/shard/films/popular?count=" + limit, Film.class))
+                .collect(Collectors.toList());
+
+        List<Film> localFilms = localService.listMostPopularFilms(limit);
+
+        List<Film> mostPopularFilms = Stream.concat(localFilms.stream(),
+                        parts.stream().flatMap(part -> ShardClient.join(part).stream()))
+                .sorted(Comparator.comparing(Film::getLikes, Comparator.nullsLast(Comparator.reverseOrder())))
+                .limit(limit)
+                .collect(Collectors.toList());
+        log.info("Количество популярных фильмов со всех узлов: {}", mostPopularFilms.size());
+
+        return mostPopularFilms;
+    }
+
+    private Film updateLike(Integer id, Long userId, Command command) {
+
+        getFilmById(id); // проверка существования фильма до обращения к узлу пользователя
+        userService.getUserById(userId);
+
+        if (isLocal(id)) {
+            return localService.updateLike(id, userId, command);
+        }
+
+        String path = "/shard/films/" + id + "/like/" + userId;
+        return command == Command.ADD
+                ? shardClient.put(shardOf(id), path, null, Film.class)
+                : shardClient.delete(shardOf(id), path, Film.class);
+    }
+
+    private int shardOf(Integer id) {
+        return shardLayout.shardOf(id);
+    }
+
+    private boolean isLocal(Integer id) {
+        return shardLayout.owns(id);
+    }
+
+}
@@ -0,0 +1,194 @@
+package ru.yandex.practicum.filmorate.service.shard;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFacets;
+import ru.yandex.practicum.filmorate.model.FilmHit;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.service.SearchService;
+import ru.yandex.practicum.filmorate.service.SearchServiceIndex;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// маршрутизация поиска по узлам: индексы каждого узла содержат только его записи, результаты собираются со всех узлов
+@Slf4j
+@Service
+@Primary
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.shard.enabled", havingValue = "true")
+public class ShardedSearchService implements SearchService {
+
+    private static final Comparator<Suggestion> BY_POPULARITY = Comparator
+            .comparing(Suggestion::getPopularity, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Suggestion::getId);
+
+    // порядки страниц диапазона дат - те же, что у индекса дат выхода узла
+    private static final Comparator<Film> BY_RELEASE_DATE = Comparator.comparing(Film::getReleaseDate)
+            .thenComparing(Film::getId);
+    private static final Comparator<Film> BY_LIKES = Comparator
+            .comparingLong((Film film) -> film.getLikes() == null ? 0 : film.getLikes()).reversed()
+            .thenComparing(Film::getId);
+
+    private final ShardLayout shardLayout;
+    private final ShardClient shardClient;
+    private final SearchServiceIndex localService;
+
+    /* каждый узел возвращает свои limit лучших фильмов с релевантностью, узлы опрашиваются параллельно.
+    релевантность считается по статистике слов узла - при равномерном разбиении id она близка к общей */
+    @Override
+    public List<Film> searchFilms(String query, Integer limit) {
+
+        ShardClient.checkCount(limit);
+        List<Film> films = gather(() -> localService.searchFilmHits(query, limit),
+                shard -> shardClient.getListAsync(shard,
+                        "/shard/films/search?q=" + encode(query) + "&limit=" + limit, FilmHit.class))
+                .stream()
+                .sorted(Comparator.comparing(FilmHit::getScore, Comparator.reverseOrder())
+                        .thenComparing(hit -> hit.getFilm().getId()))
+                .limit(limit)
+                .map(FilmHit::getFilm)
+                .collect(Collectors.toList());
+        log.info("По запросу '{}' найдено фильмов на всех узлах: {}", query, films.size());
+
+        return films;
+    }
+
+    @Override
+    public List<Suggestion> suggestFilms(String prefix, Integer limit) {
+
+        ShardClient.checkCount(limit);
+        return gather(() -> localService.suggestFilms(prefix, limit),
+                shard -> shardClient.getListAsync(shard,
+                        "/shard/films/suggest?prefix=" + encode(prefix) + "&limit=" + limit, Suggestion.class))
+                .stream()
+                .sorted(BY_POPULARITY)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Suggestion> suggestUsers(String prefix, Integer limit) {
+
+        ShardClient.checkCount(limit);
+        return gather(() -> localService.suggestUsers(prefix, limit),
+                shard -> shardClient.getListAsync(shard,
+                        "/shard/users/suggest?prefix=" + encode(prefix) + "&limit=" + limit, Suggestion.class))
+                .stream()
+                .sorted(BY_POPULARITY)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /* страница диапазона дат выхода со всех узлов: каждый узел возвращает первые offset + count фильмов своей
+    части диапазона в порядке страницы и размер своей части, страница выбирается из объединения ответов */
+    @Override
+    public FilmPage listFilmsReleasedBetween(LocalDate from, LocalDate to, boolean byPopularity,
+                                             Integer offset, Integer count) {
+
+        int first = ShardClient.checkCount((long) offset + count);
+        StringBuilder path = new StringBuilder("/shard/films/released?byPopularity=").append(byPopularity)
+                .append("&count=").append(first);
+        if (from != null) {
+            path.append("&from=").append(from);
+        }
+        if (to != null) {
+            path.append("&to=").append(to);
+        }
+
+        List<FilmPage> pages = gather(() -> List.of(localService.listFilmsReleasedBetween(from, to, byPopularity,
+                        0, first)),
+                shard -> shardClient.getAsync(shard, path.toString(), FilmPage.class).thenApply(List::of));
+        List<Film> films = pages.stream()
+                .flatMap(page -> page.getFilms().stream())
+                .sorted(byPopularity ? BY_LIKES : BY_RELEASE_DATE)
+                .skip(offset)
+                .limit(count)
+                .collect(Collectors.toList());
+        int total = pages.stream().mapToInt(FilmPage::getTotal).sum();
+        log.info("Фильмов с датой выхода с {} по {} на всех узлах: {}, на странице: {}", from, to, total,
+                films.size());
+
+        return new FilmPage(films, total);
+    }
+
+    /* выборка по жанрам и рейтингам со всех узлов: каждый узел отдает первые offset + count фильмов своей выборки
+    по возрастанию id и счетчики признаков, страница берется из объединения, размеры выборок и счетчики складываются */
+    @Override
+    public FilmFacets listFilmsByFacets(Set<Genre> genres, Set<RatingMPA> ratings, Integer offset, Integer count) {
+
+        int first = ShardClient.checkCount((long) offset + count);
+        StringBuilder path = new StringBuilder("/shard/films/facets?count=").append(first);
+        if (genres != null) {
+            genres.forEach(genre -> path.append("&genre=").append(genre));
+        }
+        if (ratings != null) {
+            ratings.forEach(rating -> path.append("&mpa=").append(rating));
+        }
+
+        List<FilmFacets> parts = gather(() -> List.of(localService.listFilmsByFacets(genres, ratings, 0, first)),
+                shard -> shardClient.getAsync(shard, path.toString(), FilmFacets.class).thenApply(List::of));
+        List<Film> films = parts.stream()
+                .flatMap(part -> part.getFilms().stream())
+                .sorted(Comparator.comparing(Film::getId))
+                .skip(offset)
+                .limit(count)
+                .collect(Collectors.toList());
+        int total = parts.stream().mapToInt(FilmFacets::getTotal).sum();
+        Map<Genre, Integer> genreCounts = new EnumMap<>(Genre.class);
+        Map<RatingMPA, Integer> ratingCounts = new EnumMap<>(RatingMPA.class);
+        for (FilmFacets part : parts) {
+            part.getGenres().forEach((genre, number) -> genreCounts.merge(genre, number, Integer::sum));
+            part.getMpa().forEach((rating, number) -> ratingCounts.merge(rating, number, Integer::sum));
+        }
+        log.info("Фильмов с жанрами {} и рейтингами {} на всех узлах: {}, на странице: {}", genres, ratings, total,
+                films.size());
+
+        return new FilmFacets(films, total, genreCounts, ratingCounts);
+    }
+
+    // запросы к другим узлам отправляются до выполнения локального, ответы объединяются
+    private <T> List<T> gather(Supplier<List<T>> local, ShardRequest<T> remote) {
+
+        List<CompletableFuture<List<T>>> parts = IntStream.range(0, shardLayout.count())
+                .filter(shard -> shard != shardLayout.index())
+                .mapToObj(remote::send)
+                .collect(Collectors.toList());
+
+        List<T> results = new ArrayList<>(local.get());
+        parts.forEach(part -> results.addAll(ShardClient.join(part)));
+
+        return results;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface ShardRequest<T> { // запрос к узлу с указанным номером
+
+        CompletableFuture<List<T>> send(int shard);
+
+    }
+
+}
@@ -0,0 +1,195 @@
+package ru.yandex.practicum.filmorate.service.shard;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exceptions.RequestValidationException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.Command;
+import ru.yandex.practicum.filmorate.service.SingleFlight;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.service.UserServiceCommunity;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// маршрутизация запросов о пользователях по узлам: запрос по id выполняет узел-владелец, списки собираются со всех узлов
+@Slf4j
+@Service
+@Primary
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.shard.enabled", havingValue = "true")
+public class ShardedUserService implements UserService {
+
+    private final ShardLayout shardLayout;
+    private final ShardClient shardClient;
+    private final UserServiceCommunity localService;
+
+    // одновременные запросы общих друзей одной пары пользователей опрашивают узлы один раз
+    private final SingleFlight<List<Long>, List<User>> commonFriendsFlight = new SingleFlight<>();
+
+    // новый пользователь сохраняется на текущем узле - хранилище выдает id, принадлежащий этому узлу
+    @Override
+    public User addUser(User user) {
+
+        return localService.addUser(user);
+    }
+
+    // обновление выполняет узел-владелец - метка версии выдана им и им же проверяется
+    @Override
+    public User updateUser(User user, String expectedVersion) {
+
+        if (user.getId() == null || isLocal(user.getId())) {
+            return localService.updateUser(user, expectedVersion);
+        }
+        return shardClient.put(shardOf(user.getId()), "/shard/users" + ShardClient.expectedVersionQuery(expectedVersion),
+                user, User.class);
+    }
+
+    // пользователи всех узлов по очереди - с других узлов читаются потоком
+    @Override
+    public Stream<User> streamUsers() {
+
+        return IntStream.range(0, shardLayout.count()).boxed()
+                .flatMap(shard -> shard == shardLayout.index()
+                        ? localService.streamUsers()
+                        : shardClient.stream(shard, "/shard/users", User.class));
+    }
+
+    @Override
+    public User getUserById(Long id) {
+
+        return ShardClient.join(getUserAsync(id));
+    }
+
+    @Override
+    public String getUserVersion(Long id) {
+
+        if (isLocal(id)) {
+            return localService.getUserVersion(id);
+        }
+        return ShardClient.join(shardClient.getVersionAsync(shardOf(id), "/shard/users/" + id + "/version"));
+    }
+
+    // добавление в друзья: каждый узел-владелец обновляет список друзей своего пользователя
+    @Override
+    public User addFriend(Long userId, Long friendId) {
+
+        return updateFriendship(userId, friendId, Command.ADD);
+    }
+
+    @Override
+    public User deleteFriend(Long userId, Long friendId) {
+
+        return updateFriendship(userId, friendId, Command.DELETE);
+    }
+
+    @Override
+    public List<User> listUserFriends(Long id) {
+
+        User user = getUserById(id);
+
+        return listUsersById(Optional.ofNullable(user.getFriends()).orElse(Set.of()));
+    }
+
+    // общие друзья: пользователи запрашиваются у своих узлов параллельно, друзья - пакетами по узлам
+    @Override
+    public List<User> listCommonFriends(Long userId, Long otherId) {
+
+        return commonFriendsFlight.execute(Arrays.asList(userId, otherId), () -> gatherCommonFriends(userId, otherId));
+    }
+
+    // пересечение списков друзей пользователей, полученных с их узлов
+    private List<User> gatherCommonFriends(Long userId, Long otherId) {
+
+        CompletableFuture<User> user = getUserAsync(userId);
+        CompletableFuture<User> other = getUserAsync(otherId);
+
+        Set<Long> mutualFriends = new HashSet<>(Optional.ofNullable(ShardClient.join(user).getFriends())
+                .orElse(Set.of()));
+        mutualFriends.retainAll(Optional.ofNullable(ShardClient.join(other).getFriends()).orElse(Set.of()));
+
+        log.info("Общих друзей у пользователей с id {} и {}: {}", userId, otherId, mutualFriends.size());
+        return listUsersById(mutualFriends);
+    }
+
+    /* существование обоих пользователей проверяется до изменений, затем список друга и список инициатора
+    обновляются на их узлах. изменение двух узлов не атомарно - при сбое второго узла повтор запроса
+    доводит дружбу до согласованного состояния */
+    private User updateFriendship(Long userId, Long friendId, Command command) {
+
+        CompletableFuture<User> user = getUserAsync(userId);
+        CompletableFuture<User> friend = getUserAsync(friendId);
+        ShardClient.join(user);
+        ShardClient.join(friend);
+
+        updateFriendshipOnShard(friendId, userId, command, false);
+        return updateFriendshipOnShard(userId, friendId, command, true);
+    }
+
+    /* изменение дружбы по запросу другого узла: пользователь должен принадлежать текущему узлу,
+    а при добавлении в друзья друг должен существовать на своем узле */
+    public User updateLocalFriendship(Long userId, Long friendId, Command command, boolean initiator) {
+
+        if (!isLocal(userId)) {
+            throw new RequestValidationException("Пользователь с id " + userId + " не принадлежит текущему узлу");
+        }
+        if (command == Command.ADD) {
+            ShardClient.join(getUserAsync(friendId)); // UserDoesNotExistException или ошибка узла друга
+        }
+        return localService.updateFriendship(userId, friendId, command, initiator);
+    }
+
+    private User updateFriendshipOnShard(Long userId, Long friendId, Command command, boolean initiator) {
+
+        if (isLocal(userId)) {
+            return localService.updateFriendship(userId, friendId, command, initiator);
+        }
+
+        String path = "/shard/users/" + userId + "/friends/" + friendId + "?initiator=" + initiator;
+        return command == Command.ADD
+                ? shardClient.put(shardOf(userId), path, null, User.class)
+                : shardClient.delete(shardOf(userId), path, User.class);
+    }
+
+    private CompletableFuture<User> getUserAsync(Long id) {
+
+        if (isLocal(id)) {
+            return CompletableFuture.completedFuture(localService.getUserById(id));
+        }
+        return shardClient.getAsync(shardOf(id), "/shard/users/" + id, User.class);
+    }
+
+    // получение пользователей по набору id - один запрос на каждый узел, узлы опрашиваются параллельно
+    private List<User> listUsersById(Set<Long> ids) {
+
+        Map<Integer, List<Long>> idsByShard = ids.stream()
+                .collect(Collectors.groupingBy(this::shardOf));
+
+        List<CompletableFuture<List<User>>> parts = new ArrayList<>();
+        idsByShard.forEach((shard, shardIds) -> parts.add(shard == shardLayout.index()
+                ? CompletableFuture.completedFuture(shardIds.stream()
+                        .map(localService::getUserById)
+                        .collect(Collectors.toList()))
+                : shardClient.postListAsync(shard, "/shard/users/batch", shardIds, User.class)));
+
+        return parts.stream()
+                .flatMap(part -> ShardClient.join(part).stream())
+                .collect(Collectors.toList());
+    }
+
+    private int shardOf(Long id) {
+        return shardLayout.shardOf(id);
+    }
+
+    private boolean isLocal(Long id) {
+        return shardLayout.owns(id);
+    }
+
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.model.ChangeFeed;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+
+import java.util.function.Consumer;
+
+// хранение ленты изменений хранилищ с глобальными версиями
+
+public interface ChangeStorage {
+
+    long addChange(JournalRecord record); // регистрация изменения, возвращает присвоенную ему версию
+
+    ChangeFeed listChanges(Long sinceVersion, Integer limit); // получение изменений с версией больше указанной
+
+    long lastVersion(); // версия последнего изменения
+
+    // продолжение нумерации после восстановления: следующее изменение получит версию больше указанной
+    void seedVersion(long version);
+
+    // ожидание изменения с версией больше указанной, false - если за время ожидания изменений не было
+    boolean awaitChange(long sinceVersion, long timeoutMs) throws InterruptedException;
+
+    /* подписка на новые изменения: слушатель вызывается в отдельном потоке индексов для каждого изменения
+    в порядке версий, вне блокировок хранилищ и ленты - после того, как изменение стало видно читателям ленты */
+    void addListener(Consumer<Change> listener);
+
+    // ожидание, пока слушатели не получат все изменения до указанной версии включительно
+    void awaitListeners(long version) throws InterruptedException;
+
+}
@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+
+public class EntityVersions {
+
+    /* версии записей хранилища для условных запросов: при каждом сохранении записи счетчик хранилища
+    увеличивается, и запись получает его значение; версия всей коллекции - текущее значение счетчика.
+    версии изменяются под блокировкой хранилища после сохранения записи и читаются без блокировки
+    (8 байт на запись в куче): новые данные со старой версией возможны, старые данные с новой версией - нет */
+
+    private volatile long[] versions = new long[1024]; // индекс id -> версия последнего сохранения
+    private volatile long version;
+
+    // новая версия для сохраненной записи
+    public synchronized long touch(long id) {
+
+        long[] current = versions;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, (int) Math.max(current.length * 2L, id + 1));
+        }
+
+        long next = version + 1;
+        current[(int) id] = next;
+        versions = current; // запись volatile-поля публикует и измененный элемент массива
+        version = next;
+
+        return next;
+    }
+
+    // версия записи, 0 - если запись не сохранялась
+    public long get(long id) {
+
+        long[] current = versions;
+        return id >= 0 && id < current.length ? current[(int) id] : 0L;
+    }
+
+    // версия коллекции - изменяется при сохранении любой записи
+    public long current() {
+        return version;
+    }
+
+}
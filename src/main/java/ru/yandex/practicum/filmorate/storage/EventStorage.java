@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventType;
+
+import java.util.List;
+
+/* хранение истории событий изменения лайков и дружбы для ленты событий - журнал аудита, а не источник данных.
+история хранится в памяти и ограничена последними событиями: лайки и списки друзей хранятся в своих
+хранилищах и восстанавливаются из журнала изменений, а не воспроизведением истории */
+
+public interface EventStorage {
+
+    Event addEvent(EventType eventType, Long userId, Long entityId); // добавление события в конец истории
+
+    List<Event> listEvents(Long fromEventId, Integer count); // получение событий с id больше указанного
+
+}
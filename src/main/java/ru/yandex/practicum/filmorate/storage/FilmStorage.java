@@ -4,6 +4,7 @@ import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 // хранение информации о фильмах
 
@@ -11,14 +12,26 @@ public interface FilmStorage {
 
     Film addFilm(Film film);  //добавление информации о фильме
 
+    List<Film> addFilms(List<Film> films); // пакетное добавление информации о фильмах
+
     Film updateFilm(Film film); // обновление информации о фильме
 
     List<Film> listFilms(); // получение списка фильмов
 
+    Stream<Film> streamFilms(); // последовательное получение фильмов без построения списка
+
     Film getFilmById(Integer id); // получение фильма по идентификатору
 
     void updateFilmData(Film film); // сохранение новой или обновленной информации о фильме
 
+    boolean compareAndSetFilmData(Film film, long expectedVersion); // сохранение, если версия не изменилась
+
+    long getFilmVersion(Integer id); // версия последнего сохранения фильма для условных запросов
+
+    long getFilmsVersion(); // версия списка фильмов - изменяется при сохранении любого фильма
+
+    void restoreFilmData(Film film); // восстановление информации о фильме без записи в журнал изменений
+
     Map<Integer, Film> getFilmsData(); // получение данных о фильмах
 
 
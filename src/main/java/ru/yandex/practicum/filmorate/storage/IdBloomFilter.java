@@ -0,0 +1,217 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.IdFilterStats;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+
+public class IdBloomFilter {
+
+    /* фильтр Блума существующих id хранилища: отрицательный ответ означает, что записи с таким id нет,
+    положительный - что запись вероятно есть и ее нужно искать в хранилище. id добавляются при каждом
+    сохранении записи и не удаляются - записи из хранилищ не удаляются. биты устанавливаются под блокировкой
+    хранилища и читаются без блокировки.
+    фильтр масштабируемый: первый слой рассчитан на ожидаемое число id, когда в слой добавлено столько новых id,
+    на сколько он рассчитан, добавляется слой вдвое большей емкости с вдвое меньшей долей ложных срабатываний.
+    id ищется во всех слоях, поэтому суммарная доля ложных срабатываний не превышает заданной при любом числе id
+    (p / 2 + p / 4 + ... < p), а пересчитывать уже добавленные id не нужно */
+
+    private static final double TIGHTENING = 0.5; // отношение долей ложных срабатываний соседних слоев
+
+    private final long expectedIds;
+    private final double falsePositiveRate;
+    private volatile Layer[] layers; // заменяется целиком при добавлении слоя
+
+    private final LongAdder insertions = new LongAdder();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder rejections = new LongAdder(); // отклонено фильтром - записи гарантированно нет
+    private final LongAdder falsePositives = new LongAdder(); // пропущено фильтром, но записи нет
+
+    // слой фильтра фиксированного размера
+    private static final class Layer {
+
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final long capacity; // число id, на которое рассчитан слой
+        private final AtomicLong count = new AtomicLong(); // добавлено новых id
+
+        private Layer(long capacity, double falsePositiveRate) {
+
+            this.capacity = capacity;
+            // оптимальные размер и число хеш-функций: m = -n ln p / (ln 2)^2, k = m / n ln 2
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = Math.max(Long.SIZE, (optimalBits + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.bits = new AtomicLongArray((int) (bitCount / Long.SIZE));
+        }
+
+        private void add(long hash1, long hash2) {
+
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                do {
+                    current = bits.get(word);
+                } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+            }
+            count.incrementAndGet();
+        }
+
+        private boolean mightContain(long hash1, long hash2) {
+
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // расчетная доля ложных срабатываний слоя при текущем числе id: (1 - e^(-kn/m))^k
+        private double expectedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashCount * count.get() / bitCount), hashCount);
+        }
+    }
+
+    public IdBloomFilter(long expectedIds, double falsePositiveRate) {
+
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Доля ложных срабатываний фильтра должна быть от 0 до 1");
+        }
+        this.expectedIds = Math.max(1L, expectedIds);
+        this.falsePositiveRate = falsePositiveRate;
+        this.layers = new Layer[]{new Layer(this.expectedIds, falsePositiveRate * (1 - TIGHTENING))};
+    }
+
+    // добавление id: уже пропускаемый фильтром id биты не изменяет и заполненность слоя не увеличивает
+    public void add(long id) {
+
+        long hash1 = mix(id);
+        long hash2 = mix(hash1) | 1L; // нечетный шаг - индексы не зацикливаются раньше времени
+        if (contains(layers, hash1, hash2)) {
+            return;
+        }
+
+        Layer[] current = layers;
+        Layer last = current[current.length - 1];
+        if (last.count.get() >= last.capacity) {
+            last = grow(current);
+        }
+        last.add(hash1, hash2);
+        insertions.increment();
+    }
+
+    // false - записи с таким id точно нет, true - запись нужно искать в хранилище
+    public boolean mightContain(long id) {
+
+        checks.increment();
+        long hash1 = mix(id);
+        long hash2 = mix(hash1) | 1L;
+        if (!contains(layers, hash1, hash2)) {
+            rejections.increment();
+            return false;
+        }
+        return true;
+    }
+
+    // поиск записи: чтение из хранилища только для id, пропущенных фильтром, null при отсутствии записи
+    public <V> V find(long id, LongFunction<V> loader) {
+
+        if (!mightContain(id)) {
+            return null;
+        }
+        V value = loader.apply(id);
+        if (value == null) {
+            falsePositives.increment();
+        }
+        return value;
+    }
+
+    // проверка существования записи: обращение к хранилищу только для id, пропущенных фильтром
+    public boolean exists(long id, LongPredicate contains) {
+
+        if (!mightContain(id)) {
+            return false;
+        }
+        boolean found = contains.test(id);
+        if (!found) {
+            falsePositives.increment();
+        }
+        return found;
+    }
+
+    // расчетная доля ложных срабатываний всего фильтра: id ложно пропускается, если его пропускает любой слой
+    public double expectedFalsePositiveRate() {
+
+        double passedByNone = 1.0;
+        for (Layer layer : layers) {
+            passedByNone *= 1 - layer.expectedFalsePositiveRate();
+        }
+        return 1 - passedByNone;
+    }
+
+    public IdFilterStats stats(String entity) {
+
+        Layer[] current = layers;
+        long negatives = rejections.sum() + falsePositives.sum();
+        return IdFilterStats.builder()
+                .entity(entity)
+                .bits(Arrays.stream(current).mapToLong(layer -> layer.bitCount).sum())
+                .hashes(current[current.length - 1].hashCount)
+                .layers(current.length)
+                .expectedIds(expectedIds)
+                .capacity(Arrays.stream(current).mapToLong(layer -> layer.capacity).sum())
+                .insertions(insertions.sum())
+                .checks(checks.sum())
+                .rejections(rejections.sum())
+                .falsePositives(falsePositives.sum())
+                .falsePositiveRate(negatives == 0 ? 0.0 : (double) falsePositives.sum() / negatives)
+                .expectedFalsePositiveRate(expectedFalsePositiveRate())
+                .build();
+    }
+
+    // добавление слоя вдвое большей емкости, если последний слой заполнен, - выполняется одним потоком
+    private synchronized Layer grow(Layer[] seen) {
+
+        Layer[] current = layers;
+        Layer last = current[current.length - 1];
+        if (current != seen || last.count.get() < last.capacity) { // слой уже добавлен другим потоком
+            return last;
+        }
+
+        double rate = falsePositiveRate * (1 - TIGHTENING) * Math.pow(TIGHTENING, current.length);
+        Layer next = new Layer(Math.min(last.capacity * 2, Integer.MAX_VALUE), rate);
+        Layer[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = next;
+        layers = grown;
+        return next;
+    }
+
+    private static boolean contains(Layer[] layers, long hash1, long hash2) {
+
+        for (Layer layer : layers) {
+            if (layer.mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // перемешивание битов id (финализатор SplitMix64)
+    private static long mix(long id) {
+
+        long z = id + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IdFilterStats;
+
+import java.util.List;
+
+@Component
+public class IdFilters {
+
+    /* фильтры существующих id пользователей и фильмов - по одному на хранилище, выбранное filmorate.storage.type.
+    хранилища добавляют id при сохранении записи и проверяют фильтр перед поиском записи по id,
+    поэтому запросы несуществующих id отклоняются без обращения к данным */
+
+    private final IdBloomFilter users;
+    private final IdBloomFilter films;
+
+    public IdFilters(@Value("${filmorate.storage.id-filter.expected-ids}") long expectedIds,
+                     @Value("${filmorate.storage.id-filter.false-positive-rate}") double falsePositiveRate) {
+
+        this.users = new IdBloomFilter(expectedIds, falsePositiveRate);
+        this.films = new IdBloomFilter(expectedIds, falsePositiveRate);
+    }
+
+    public IdBloomFilter users() {
+        return users;
+    }
+
+    public IdBloomFilter films() {
+        return films;
+    }
+
+    public List<IdFilterStats> stats() {
+        return List.of(users.stats("users"), films.stats("films"));
+    }
+
+}
@@ -0,0 +1,530 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.model.ChangeFeed;
+import ru.yandex.practicum.filmorate.model.ChangeType;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.RecordCodec;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+@Slf4j
+@Component
+public class InMemoryChangeStorage implements ChangeStorage {
+
+    /* реализация ленты изменений: последние изменения хранятся в кольцевом буфере фиксированного размера,
+    при включенном хвосте на диске все изменения дополнительно записываются в файл, и потребители,
+    отставшие больше чем на размер буфера, читают изменения из файла по разреженному индексу версий.
+    addChange вызывается под блокировками хранилищ, поэтому под блокировкой ленты изменение только получает
+    версию и попадает в буфер и очереди: кодирование и запись в файл выполняет фоновый поток в порядке версий,
+    а слушателям (индексам поиска) изменения передает отдельный поток индексов, тоже в порядке версий.
+    читатели индексов, которым нужны изменения до определенной версии, ждут ее применения слушателями.
+    хвост на диске ограничен по размеру: когда текущий файл достигает половины предела, он переименовывается
+    в предыдущий (прежний предыдущий удаляется), и запись продолжается в новый файл. вытесненные из файлов
+    изменения недоступны так же, как вытесненные из буфера: отставшие потребители получают признак синхронизации.
+    формат записи в файле: версия (long), время (long), длина данных (int), данные записи журнала */
+
+    private static final int TAIL_HEADER_SIZE = Long.BYTES * 2 + Integer.BYTES;
+    private static final int TAIL_INDEX_STEP = 1024; // каждая 1024-я версия попадает в индекс файла
+    private static final int MAX_LIMIT = 1000;
+    private static final Change STOP = Change.builder().build(); // признак остановки потока записи в файл
+
+    private final Change[] ring;
+    private final Path tailPath; // null, если хвост на диске отключен
+    private final Path previousTailPath;
+    private final long tailMaxSize; // предел суммарного размера файлов хвоста
+    private final BlockingQueue<Change> tailQueue = new LinkedBlockingQueue<>(); // изменения для записи в файл
+    private final Thread tailWriter;
+    private final List<Consumer<Change>> listeners = new CopyOnWriteArrayList<>(); // индексы поиска и выборок
+    private final BlockingQueue<Change> listenerQueue = new LinkedBlockingQueue<>(); // изменения для слушателей
+    private final Object listenedLock = new Object(); // ожидание применения изменений слушателями
+    private volatile Thread listenerDispatcher; // запускается с подпиской первого слушателя
+    private long listenedVersion; // версия, до которой изменения переданы слушателям, под listenedLock
+
+    private TailFile tail; // текущий файл хвоста, null, если хвост отключен; заменяется потоком записи
+    private TailFile previousTail; // предыдущий файл хвоста, null при его отсутствии
+    private long lastVersion; // версия последнего изменения
+    private long ringFirstVersion; // первая версия, записанная в буфер после запуска
+    private long tailFirstVersion; // первая версия, хранимая в файлах
+
+    // файл хвоста: канал, разреженный индекс версий и позиция конца, изменяемая только потоком записи
+    private static final class TailFile {
+
+        private final FileChannel channel;
+        private final TreeMap<Long, Long> index = new TreeMap<>(); // версия / позиция записи в файле
+        private long firstVersion;
+        private long size;
+
+        private TailFile(Path path) throws IOException {
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    public InMemoryChangeStorage(@Value("${filmorate.changes.ring-size}") int ringSize,
+                                 @Value("${filmorate.changes.tail.enabled}") boolean tailEnabled,
+                                 @Value("${filmorate.changes.tail.path}") String tailPath,
+                                 @Value("${filmorate.changes.tail.max-size}") long tailMaxSize) throws IOException {
+
+        this.ring = new Change[ringSize];
+        this.tailMaxSize = tailMaxSize;
+
+        if (tailEnabled) {
+            if (tailMaxSize <= 0) {
+                throw new IllegalArgumentException("Размер хвоста ленты изменений должен быть положительным");
+            }
+            this.tailPath = Paths.get(tailPath);
+            this.previousTailPath = this.tailPath.resolveSibling(this.tailPath.getFileName() + ".old");
+            if (this.tailPath.getParent() != null) {
+                Files.createDirectories(this.tailPath.getParent());
+            }
+            if (Files.exists(previousTailPath)) {
+                previousTail = new TailFile(previousTailPath);
+                scanTail(previousTail);
+            }
+            tail = new TailFile(this.tailPath);
+            scanTail(tail);
+            log.info("Лента изменений на диске: версии {} - {}", tailFirstVersion, lastVersion);
+
+            this.tailWriter = new Thread(this::writeTail, "changes-tail-writer");
+            this.tailWriter.setDaemon(true);
+            this.tailWriter.start();
+        } else {
+            this.tailPath = null;
+            this.previousTailPath = null;
+            this.tailWriter = null;
+        }
+    }
+
+    // регистрация изменения с присвоением следующей глобальной версии
+    @Override
+    public synchronized long addChange(JournalRecord record) {
+
+        long version = ++lastVersion;
+        long timestamp = System.currentTimeMillis();
+
+        Change change = toChange(version, timestamp, record);
+        ring[(int) (version % ring.length)] = change;
+        if (ringFirstVersion == 0) {
+            ringFirstVersion = version;
+        }
+        if (listenerDispatcher != null) {
+            listenerQueue.add(change); // слушатели вызываются вне блокировок хранилищ и ленты
+        }
+
+        if (tailPath != null) {
+            tailQueue.add(change); // порядок очереди совпадает с порядком версий
+        }
+        notifyAll(); // пробуждение потоков, ожидающих новых изменений
+
+        return version;
+    }
+
+    // слушатель получает изменения с версией больше последней на момент подписки
+    @Override
+    public synchronized void addListener(Consumer<Change> listener) {
+
+        listeners.add(listener);
+        if (listenerDispatcher == null) {
+            synchronized (listenedLock) {
+                listenedVersion = lastVersion;
+            }
+            listenerDispatcher = new Thread(this::dispatchToListeners, "changes-index-applier");
+            listenerDispatcher.setDaemon(true);
+            listenerDispatcher.start();
+        }
+    }
+
+    // ожидание передачи слушателям изменений до указанной версии включительно
+    @Override
+    public void awaitListeners(long version) throws InterruptedException {
+
+        synchronized (listenedLock) {
+            while (listenerDispatcher != null && listenedVersion < version) {
+                listenedLock.wait();
+            }
+        }
+    }
+
+    // получение изменений с версией больше указанной: из буфера, из файла или признак необходимости синхронизации
+    @Override
+    public ChangeFeed listChanges(Long sinceVersion, Integer limit) {
+
+        int count = Math.min(limit, MAX_LIMIT);
+        long fromVersion = sinceVersion + 1;
+        long currentVersion;
+        long ringOldest;
+        long tailOldest;
+        TailFile source = null; // файл, с которого начинается чтение, и следующий за ним файл
+        TailFile next = null;
+        long tailPosition = 0;
+        List<Change> changes = new ArrayList<>();
+
+        synchronized (this) {
+            currentVersion = lastVersion;
+            ringOldest = ringFirstVersion == 0 ? currentVersion + 1
+                    : Math.max(ringFirstVersion, currentVersion - ring.length + 1);
+
+            if (sinceVersion > currentVersion) { // версии начались заново после перезапуска
+                return buildFeed(changes, currentVersion, tailFirstVersion > 0 ? tailFirstVersion : ringOldest, true);
+            }
+
+            if (fromVersion >= ringOldest) {
+                for (long version = fromVersion; version <= currentVersion && changes.size() < count; version++) {
+                    changes.add(ring[(int) (version % ring.length)]);
+                }
+                return buildFeed(changes, currentVersion, ringOldest, false);
+            }
+
+            tailOldest = tailFirstVersion;
+            if (tailPath != null && tailFirstVersion > 0 && fromVersion >= tailFirstVersion) {
+                boolean inPrevious = previousTail != null
+                        && (tail.firstVersion == 0 || fromVersion < tail.firstVersion);
+                source = inPrevious ? previousTail : tail;
+                next = inPrevious ? tail : null;
+                Map.Entry<Long, Long> indexEntry = source.index.floorEntry(fromVersion);
+                tailPosition = indexEntry == null ? 0L : indexEntry.getValue();
+            }
+        }
+
+        if (source == null) { // изменения уже вытеснены из буфера и недоступны на диске
+            return buildFeed(changes, currentVersion, ringOldest, true);
+        }
+
+        try { // чтение файлов без блокировки записи
+            readTail(source, tailPosition, fromVersion, currentVersion, count, changes);
+            if (next != null) {
+                readTail(next, 0, fromVersion, currentVersion, count, changes);
+            }
+        } catch (ClosedChannelException e) { // файл вытеснен во время чтения - изменения больше недоступны
+            changes.clear();
+            return buildFeed(changes, currentVersion, tailOldest, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка чтения ленты изменений с диска", e);
+        }
+        return buildFeed(changes, currentVersion, tailOldest, false);
+    }
+
+    @Override
+    public synchronized long lastVersion() {
+        return lastVersion;
+    }
+
+    // версии до указанной считаются вытесненными из буфера: отставшие потребители получают признак синхронизации
+    @Override
+    public synchronized void seedVersion(long version) {
+
+        if (version > lastVersion) {
+            log.info("Нумерация ленты изменений продолжается с версии {}", version);
+            lastVersion = version;
+            if (listenerDispatcher != null) { // пропущенные версии считаются переданными слушателям
+                listenerQueue.add(Change.builder().version(version).build());
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean awaitChange(long sinceVersion, long timeoutMs) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (lastVersion <= sinceVersion) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    // остановка после записи в файл всех изменений из очереди
+    @PreDestroy
+    public void close() throws IOException {
+
+        Thread dispatcher;
+        synchronized (this) {
+            dispatcher = listenerDispatcher;
+        }
+        if (dispatcher != null) {
+            listenerQueue.add(STOP);
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (tailPath != null) {
+            tailQueue.add(STOP);
+            try {
+                tailWriter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            tail.channel.close();
+            if (previousTail != null) {
+                previousTail.channel.close();
+            }
+        }
+    }
+
+    private ChangeFeed buildFeed(List<Change> changes, long lastVersion, long oldestVersion, boolean resyncRequired) {
+
+        return ChangeFeed.builder()
+                .changes(changes)
+                .lastVersion(lastVersion)
+                .oldestVersion(oldestVersion)
+                .resyncRequired(resyncRequired)
+                .build();
+    }
+
+    private Change toChange(long version, long timestamp, JournalRecord record) {
+
+        Change.ChangeBuilder builder = Change.builder().version(version).timestamp(timestamp);
+
+        switch (record.getType()) {
+            case USER:
+                return builder.changeType(ChangeType.USER_SAVED).user(record.getUser()).build();
+            case FILM:
+                return builder.changeType(ChangeType.FILM_SAVED).film(record.getFilm()).build();
+            case LIKE_ADDED:
+                return builder.changeType(ChangeType.LIKE_ADDED)
+                        .filmId(record.getFilmId()).userId(record.getUserId()).build();
+            default:
+                return builder.changeType(ChangeType.LIKE_REMOVED)
+                        .filmId(record.getFilmId()).userId(record.getUserId()).build();
+        }
+    }
+
+    private JournalRecord toRecord(Change change) {
+
+        switch (change.getChangeType()) {
+            case USER_SAVED:
+                return JournalRecord.ofUser(change.getUser());
+            case FILM_SAVED:
+                return JournalRecord.ofFilm(change.getFilm());
+            case LIKE_ADDED:
+                return JournalRecord.ofLikeAdded(change.getFilmId(), change.getUserId());
+            default:
+                return JournalRecord.ofLikeRemoved(change.getFilmId(), change.getUserId());
+        }
+    }
+
+    /* поток индексов: изменения из очереди передаются слушателям в порядке версий, после чего версия
+    считается примененной и ожидающие ее читатели продолжают работу. ошибка слушателя не останавливает поток */
+    private void dispatchToListeners() {
+
+        List<Change> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(listenerQueue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            listenerQueue.drainTo(batch);
+
+            for (Change change : batch) {
+                if (change == STOP) {
+                    return;
+                }
+                if (change.getChangeType() != null) { // без типа - пропуск версий после восстановления
+                    for (Consumer<Change> listener : listeners) {
+                        try {
+                            listener.accept(change);
+                        } catch (RuntimeException e) {
+                            log.error("Ошибка передачи изменения {} слушателю", change.getVersion(), e);
+                        }
+                    }
+                }
+                synchronized (listenedLock) {
+                    listenedVersion = change.getVersion();
+                    listenedLock.notifyAll();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /* поток записи хвоста: изменения из очереди пачками записываются в конец файла без блокировки ленты,
+    индекс и первая версия файла обновляются после записи - читатели не видят недописанных записей.
+    прерывание потока не используется: оно закрыло бы канал файла */
+    private void writeTail() {
+
+        List<Change> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(tailQueue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            tailQueue.drainTo(batch);
+
+            for (Change change : batch) {
+                if (change == STOP) {
+                    return;
+                }
+                appendToTail(change);
+            }
+            batch.clear();
+        }
+    }
+
+    private void appendToTail(Change change) {
+
+        byte[] payload = RecordCodec.encode(toRecord(change));
+        ByteBuffer frame = ByteBuffer.allocate(TAIL_HEADER_SIZE + payload.length);
+        frame.putLong(change.getVersion()).putLong(change.getTimestamp()).putInt(payload.length).put(payload).flip();
+
+        long position = tail.size;
+        try {
+            while (frame.hasRemaining()) {
+                tail.size += tail.channel.write(frame, tail.size);
+            }
+        } catch (IOException e) {
+            log.error("Ошибка записи ленты изменений на диск, версия {}", change.getVersion(), e);
+            tail.size = position; // следующая запись заменит недописанную
+            return;
+        }
+
+        synchronized (this) {
+            if (tail.firstVersion == 0) {
+                tail.firstVersion = change.getVersion();
+            }
+            if (tailFirstVersion == 0) {
+                tailFirstVersion = change.getVersion();
+            }
+            if (change.getVersion() % TAIL_INDEX_STEP == 0 || tail.index.isEmpty()) {
+                tail.index.put(change.getVersion(), position);
+            }
+        }
+
+        if (tail.size >= tailMaxSize / 2) {
+            rollTail();
+        }
+    }
+
+    /* переключение на новый файл хвоста: текущий файл становится предыдущим, прежний предыдущий удаляется.
+    читатель удаленного файла получает ClosedChannelException и признак синхронизации */
+    private void rollTail() {
+
+        try {
+            Files.move(tailPath, previousTailPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            TailFile created = new TailFile(tailPath);
+
+            TailFile dropped;
+            synchronized (this) {
+                dropped = previousTail;
+                previousTail = tail;
+                tail = created;
+                tailFirstVersion = previousTail.firstVersion;
+            }
+            if (dropped != null) {
+                dropped.channel.close();
+            }
+            log.info("Лента изменений на диске: новый файл, хранятся версии начиная с {}", tailFirstVersion);
+        } catch (IOException e) {
+            log.error("Ошибка переключения файла ленты изменений", e);
+        }
+    }
+
+    // чтение изменений из файла начиная с позиции, пропуская версии меньше запрошенной
+    private void readTail(TailFile file, long position, long fromVersion, long toVersion, int count,
+                          List<Change> changes) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(TAIL_HEADER_SIZE);
+        while (changes.size() < count) {
+            header.clear();
+            if (readFully(file, header, position) < TAIL_HEADER_SIZE) {
+                break;
+            }
+            header.flip();
+            long version = header.getLong();
+            long timestamp = header.getLong();
+            int length = header.getInt();
+            if (version > toVersion) {
+                break;
+            }
+
+            if (version >= fromVersion) {
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                if (readFully(file, payload, position + TAIL_HEADER_SIZE) < length) {
+                    break;
+                }
+                changes.add(toChange(version, timestamp, RecordCodec.decode(payload.array())));
+            }
+            position += TAIL_HEADER_SIZE + length;
+        }
+    }
+
+    // восстановление индекса и последней версии по файлу с отбрасыванием недописанной записи
+    private void scanTail(TailFile file) throws IOException {
+
+        long position = 0;
+        long size = file.channel.size();
+        ByteBuffer header = ByteBuffer.allocate(TAIL_HEADER_SIZE);
+
+        while (position + TAIL_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(file, header, position);
+            header.flip();
+            long version = header.getLong();
+            header.getLong();
+            int length = header.getInt();
+            if (length < 0 || position + TAIL_HEADER_SIZE + length > size) {
+                break;
+            }
+
+            if (file.firstVersion == 0) {
+                file.firstVersion = version;
+            }
+            if (tailFirstVersion == 0) {
+                tailFirstVersion = version;
+            }
+            if (version % TAIL_INDEX_STEP == 0 || file.index.isEmpty()) {
+                file.index.put(version, position);
+            }
+            lastVersion = version;
+            position += TAIL_HEADER_SIZE + length;
+        }
+
+        if (position < size) {
+            file.channel.truncate(position);
+        }
+        file.size = position;
+    }
+
+    private int readFully(TailFile file, ByteBuffer buffer, long position) throws IOException {
+
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = file.channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+}
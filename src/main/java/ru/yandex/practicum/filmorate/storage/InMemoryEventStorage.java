@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class InMemoryEventStorage implements EventStorage {
+
+    /* реализация хранения истории событий в памяти.
+    последние события хранятся в кольцевом буфере: событие с id n занимает ячейку (n - 1) % размер буфера,
+    новое событие замещает самое старое, поэтому объем истории ограничен без отдельного удаления старых событий.
+    id событий выдаются подряд, и позиция события в буфере вычисляется по id без поиска */
+
+    private final Event[] events; // последние события
+
+    private long nextEventId = 1L;
+
+    public InMemoryEventStorage(@Value("${filmorate.events.retained}") int retainedEvents) {
+        this.events = new Event[retainedEvents];
+    }
+
+    // добавление события в конец истории с замещением самого старого события
+    @Override
+    public synchronized Event addEvent(EventType eventType, Long userId, Long entityId) {
+
+        Event event = Event.builder()
+                .eventId(nextEventId++)
+                .timestamp(System.currentTimeMillis())
+                .eventType(eventType)
+                .userId(userId)
+                .entityId(entityId)
+                .build();
+
+        events[slot(event.getEventId())] = event;
+        return event;
+    }
+
+    // получение событий с id больше указанного, замещенные старые события недоступны
+    @Override
+    public synchronized List<Event> listEvents(Long fromEventId, Integer count) {
+
+        long oldest = Math.max(1L, nextEventId - events.length); // id самого старого хранимого события
+        long from = Math.max(fromEventId + 1, oldest);
+        long to = Math.min(nextEventId, from + count);
+
+        List<Event> result = new ArrayList<>((int) Math.max(0, to - from));
+        for (long eventId = from; eventId < to; eventId++) {
+            result.add(events[slot(eventId)]);
+        }
+        return result;
+    }
+
+    private int slot(long eventId) {
+        return (int) ((eventId - 1) % events.length);
+    }
+
+}
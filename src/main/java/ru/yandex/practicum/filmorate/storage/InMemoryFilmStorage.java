@@ -1,27 +1,54 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.FilmDoesNotExistException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
 
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "memory", matchIfMissing = true)
 public class InMemoryFilmStorage implements FilmStorage {
 
     // реализация хранения информации о фильмах в памяти
 
-    private final HashMap<Integer, Film> films = new HashMap<>();
+    // многоверсионное хранение - списки фильмов читаются согласованным срезом без блокировки записи
+    private final VersionedMap<Integer, Film> films = new VersionedMap<>();
+
+    private final ShardLayout shardLayout; // выдача id, принадлежащих текущему узлу
+
+    private final EntityVersions versions = new EntityVersions(); // версии для условных запросов
+
+    private final IdFilters idFilters; // фильтр существующих id - запросы несуществующих id не читают данные
+
+    private final RecordWriter<Film, Film> writer; // общий путь записи: фильтр id, данные, журнал, лента и версии
+
     private Integer nextId = 1;
 
+    public InMemoryFilmStorage(MutationJournal journal, ChangeStorage changeStorage, ShardLayout shardLayout,
+                               IdFilters idFilters) {
+        this.shardLayout = shardLayout;
+        this.idFilters = idFilters;
+        this.writer = new RecordWriter<>(this, journal, changeStorage, versions, idFilters.films(), Film::getId,
+                JournalRecord::ofFilm, Function.identity(), (film, same) -> films.put(film.getId(), film));
+    }
+
     // добавление информации о фильме
     @Override
     public Film addFilm(Film film) {
 
-        Film newFilm = film.toBuilder().id(nextId).build();
-        nextId++;
+        Film newFilm;
+        synchronized (this) {
+            newFilm = film.toBuilder().id(allocateId()).build();
+        }
 
         updateFilmData(newFilm); // сохранение информации о фильме
         log.info("Сохранена информация о фильме: {}", film);
@@ -30,6 +57,16 @@ public class InMemoryFilmStorage implements FilmStorage {
 
     }
 
+    // пакетное добавление информации о фильмах - одна блокировка и одна запись журнала на диск на пакет
+    @Override
+    public List<Film> addFilms(List<Film> newFilms) {
+
+        List<Film> savedFilms = writer.saveAll(newFilms, film -> film.toBuilder().id(allocateId()).build());
+
+        log.info("Сохранено фильмов пакетом: {}", savedFilms.size());
+        return savedFilms;
+    }
+
     // обновление информации о фильме
     @Override
     public Film updateFilm(Film film) {
@@ -48,33 +85,84 @@ public class InMemoryFilmStorage implements FilmStorage {
     @Override
     public List<Film> listFilms() {
 
-        List<Film> listFilms = new ArrayList<>(films.values());
+        List<Film> listFilms;
+        try (Stream<Film> snapshot = films.streamSnapshot()) { // согласованный срез на момент запроса
+            listFilms = snapshot.collect(Collectors.toList());
+        }
 
         log.info("Количество фильмов в списке: {}", listFilms.size());
 
         return listFilms;
     }
 
+    // последовательное получение фильмов из согласованного среза, срез освобождается при закрытии потока
+    @Override
+    public Stream<Film> streamFilms() {
+
+        log.info("Количество фильмов в списке: {}", films.size());
+
+        return films.streamSnapshot();
+    }
+
     // получение фильма по идентификатору
     @Override
     public Film getFilmById(Integer id) {
 
-        return films.values().stream()
-                .filter(film -> film.getId().equals(id))
-                .findFirst()
-                .orElseThrow(() -> new FilmDoesNotExistException(String.format("Фильм с id %d не найден", id)));
+        Film film = id == null ? null : idFilters.films().find(id, key -> films.get((int) key));
+        if (film == null) {
+            throw new FilmDoesNotExistException(String.format("Фильм с id %d не найден", id));
+        }
+        return film;
     }
 
     // сохранение новой или обновленной информации о фильме
     @Override
     public void updateFilmData(Film film) {
-        films.put(film.getId(), film);
+        writer.save(film);
+    }
+
+    // сохранение фильма, только если его версия не изменилась после чтения - защита от потерянных обновлений
+    @Override
+    public boolean compareAndSetFilmData(Film film, long expectedVersion) {
+        return writer.compareAndSet(film, expectedVersion);
+    }
+
+    // восстановление информации о фильме из журнала
+    @Override
+    public synchronized void restoreFilmData(Film film) {
+
+        writer.restore(film);
+        nextId = Math.max(nextId, film.getId() + 1);
     }
 
-    // получение данных о фильмах
+    // версия последнего сохранения фильма
+    @Override
+    public long getFilmVersion(Integer id) {
+
+        if (id == null || !idFilters.films().exists(id, key -> films.containsKey((int) key))) {
+            throw new FilmDoesNotExistException(String.format("Фильм с id %d не найден", id));
+        }
+        return versions.get(id);
+    }
+
+    // версия списка фильмов - изменяется при сохранении любого фильма, в том числе при изменении лайков
+    @Override
+    public long getFilmsVersion() {
+        return versions.current();
+    }
+
+    // получение данных о фильмах - последние версии, только чтение
     @Override
     public Map<Integer, Film> getFilmsData() {
-        return films;
+        return films.asMap();
+    }
+
+    // выдача следующего id, принадлежащего текущему узлу, вызывается под блокировкой хранилища
+    private Integer allocateId() {
+
+        long id = shardLayout.ownedIdFrom(nextId);
+        nextId = (int) id + 1;
+        return (int) id;
     }
 
 }
@@ -1,40 +1,54 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.Command;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class InMemoryLikeStorage implements LikeStorage {
 
-    // реализация хранения информации о лайках в памяти
+    /* реализация хранения информации о лайках в памяти.
+    каждое изменение добавляет событие LIKE_ADDED / LIKE_REMOVED в ограниченную историю событий для ленты
+    событий. лайки восстанавливаются из журнала изменений, снимка или реплики, а не из истории, поэтому
+    при восстановлении события повторно не добавляются */
 
-    private final UserStorage userStorage;
     private final FilmStorage filmStorage;
+    private final MutationJournal journal;
+    private final EventStorage eventStorage;
+    private final ChangeStorage changeStorage;
 
-    // полная информация о лайках - <id фильма, <id пользователя, количество лайков пользователя>>
-    // информация о лайках пользователя - не boolean для возможности их дальнейшего подсчета при необходимости
-    private final Map<Integer, Map<Long, Long>> likes = new HashMap<>();
+    /* полная информация о лайках - <id фильма и id пользователя, количество лайков пользователя> в многоверсионной
+    таблице: снимок состояния открывает согласованный срез лайков без остановки записи.
+    информация о лайках пользователя - не boolean для возможности их дальнейшего подсчета при необходимости */
+    private final VersionedMap<Like, Long> likes = new VersionedMap<>();
 
+    private final Map<Integer, Long> likeCounts = new HashMap<>(); // число лайков фильма - без обхода лайков
 
     @Override
     public Film addLike(Integer filmId, Long userId) {
 
-        // обновляем количество лайков у фильма
-        Film film = updateLikes(filmId, userId, Command.ADD);
+        // обновляем информацию о лайках фильма
+        updateLikes(filmId, userId, Command.ADD);
 
         // обновление данных о фильме в хранилище фильмов
-        filmStorage.updateFilmData(film);
+        // запись о лайке сбрасывается на диск вместе с записью о фильме - один fsync на лайк
+        Film film = saveLikesCount(filmId);
 
-        log.info("Пользователь {} поставил лайк фильму {}",
-                userStorage.getUserById(userId), filmStorage.getFilmById(filmId));
+        log.info("Пользователь с id {} поставил лайк фильму {}", userId, film);
 
         return film;
     }
@@ -42,77 +56,130 @@ public class InMemoryLikeStorage implements LikeStorage {
     @Override
     public Film deleteLike(Integer filmId, Long userId) {
 
-        // получаем фильм с обновленным количество лайков
-        Film film = updateLikes(filmId, userId, Command.DELETE);
+        // обновляем информацию о лайках фильма
+        updateLikes(filmId, userId, Command.DELETE);
 
         // обновление данных о фильме в хранилище
-        filmStorage.updateFilmData(film);
+        Film film = saveLikesCount(filmId);
 
-        log.info("Пользователь {} удалил лайк у фильма {}",
-                userStorage.getUserById(userId), filmStorage.getFilmById(filmId));
+        log.info("Пользователь с id {} удалил лайк у фильма {}", userId, film);
 
         return film;
     }
 
-    // обновление количества лайков у фильма с сохранением информации о пользователях, поставивших лайки
-    private Film updateLikes(Integer filmId, Long userId, Command command) {
+    // проверка наличия лайка пользователя у фильма без копирования информации о лайках
+    @Override
+    public boolean containsLike(Integer filmId, Long userId) {
 
-        // получаем информацию о лайках определенному фильму (id пользователя / количество лайков)
-        Map<Long, Long> filmLikesByUsers = getFilmLikesByUsers(filmId);
+        Long numberOfUserLikes = likes.get(new Like(filmId, userId));
+        return numberOfUserLikes != null && numberOfUserLikes > 0;
+    }
 
-        // запрашиваем количество лайков определенного пользователя
-        Long numberOfUserLikes = filmLikesByUsers.getOrDefault(userId, 0L);
+    // получение копии информации о лайках - id фильма / id пользователей, поставивших лайк
+    @Override
+    public Map<Integer, Set<Long>> getLikesData() {
+
+        Map<Integer, Set<Long>> likesData = new HashMap<>();
+        try (Stream<Map.Entry<Like, Long>> snapshot = likes.streamSnapshotEntries()) {
+            snapshot.forEach(entry -> {
+                Set<Long> filmLikes = likesData.computeIfAbsent(entry.getKey().getFilmId(), id -> new HashSet<>());
+                if (entry.getValue() > 0) {
+                    filmLikes.add(entry.getKey().getUserId());
+                }
+            });
+        }
+        return likesData;
+    }
 
-        switch (command) {
-            case ADD:
+    // поток лайков согласованного среза - срез открывается при вызове, чтение потока не блокирует запись
+    @Override
+    public Stream<Map.Entry<Integer, Long>> streamLikes() {
 
-                // добавляем лайк от пользователя в случае отсутствия лайков
-                if (numberOfUserLikes == 0L) {
+        return likes.streamSnapshotEntries()
+                .filter(entry -> entry.getValue() > 0)
+                .map(entry -> Map.entry(entry.getKey().getFilmId(), entry.getKey().getUserId()));
+    }
 
-                    filmLikesByUsers.put(userId, ++numberOfUserLikes);
+    // восстановление информации о лайке из журнала изменений, снимка или реплики - без записи события
+    @Override
+    public synchronized void restoreLike(Integer filmId, Long userId, Command command) {
+        putLike(filmId, userId, command == Command.ADD ? 1L : 0L);
+    }
 
-                    // обновляем общие данные
-                    likes.put(filmId, filmLikesByUsers);
+    // сохранение количества лайков пользователя с пересчетом числа лайков фильма
+    private void putLike(Integer filmId, Long userId, long count) {
 
-                } else {
-                    throw new RuntimeException("Вы уже ставили лайк этому фильму");
-                }
+        Long previous = likes.get(new Like(filmId, userId));
+        likes.put(new Like(filmId, userId), count);
+        likeCounts.merge(filmId, count - (previous == null ? 0L : previous), Long::sum);
+    }
+
+    // обновление количества лайков у фильма с сохранением информации о пользователях, поставивших лайки
+    private synchronized void updateLikes(Integer filmId, Long userId, Command command) {
+
+        // запрашиваем количество лайков определенного пользователя
+        Long numberOfUserLikes = likes.get(new Like(filmId, userId));
+        numberOfUserLikes = numberOfUserLikes == null ? 0L : numberOfUserLikes;
+
+        // проверка до изменений - лайк изменяется, только если запись о нем добавлена в журнал
+        if (command == Command.ADD && numberOfUserLikes != 0L) {
+            throw new RuntimeException("Вы уже ставили лайк этому фильму");
+        }
+        if (command == Command.DELETE && numberOfUserLikes != 1L) {
+            throw new RuntimeException("Вы не ставили лайк этому фильму");
+        }
+
+        // запись об изменении в журнал до изменения лайков, сброс на диск выполняется при сохранении фильма
+        JournalRecord record = command == Command.ADD
+                ? JournalRecord.ofLikeAdded(filmId, userId)
+                : JournalRecord.ofLikeRemoved(filmId, userId);
+        journal.append(record);
+
+        switch (command) {
+            case ADD:
+
+                // добавляем лайк от пользователя
+                putLike(filmId, userId, 1L);
+                eventStorage.addEvent(EventType.LIKE_ADDED, userId, filmId.longValue());
                 break;
             case DELETE:
-                if (numberOfUserLikes == 1L) {
 
-                    // удаляем лайк от пользователя
-                    filmLikesByUsers.put(userId, --numberOfUserLikes);
-                    // обновляем общие данные
-                    likes.put(filmId, filmLikesByUsers);
-                    break;
+                // удаляем лайк от пользователя
+                putLike(filmId, userId, 0L);
+                eventStorage.addEvent(EventType.LIKE_REMOVED, userId, filmId.longValue());
+                break;
+        }
 
-                } else {
+        changeStorage.addChange(record);
+    }
 
-                    throw new RuntimeException("Вы не ставили лайк этому фильму");
-                }
+    /* сохранение копии фильма с текущим количеством лайков сравнением версии: фильм, обновленный другим
+    запросом после чтения, не перезаписывается старыми данными - копия строится заново по новой версии.
+    количество лайков читается после версии, поэтому последняя успешная запись содержит актуальное значение */
+    private Film saveLikesCount(Integer filmId) {
+
+        while (true) {
+            long version = filmStorage.getFilmVersion(filmId);
+            Film film = filmStorage.getFilmById(filmId).toBuilder()
+                    .likes(countLikes(filmId))
+                    .build();
+            if (filmStorage.compareAndSetFilmData(film, version)) {
+                return film;
+            }
         }
+    }
 
-        // возвращаем копию объекта фильм с обновленным количеством лайков
-        return filmStorage.getFilmById(filmId).toBuilder()
-                .likes(getFilmLikesTotalCount(filmId))
-                .build();
+    private synchronized Long countLikes(Integer filmId) {
+        return likeCounts.getOrDefault(filmId, 0L);
     }
 
-    // возвращение информации о лайках определенному фильму от пользователей с проверкой на null
-    private Map<Long, Long> getFilmLikesByUsers(Integer filmId) {
+    @Value
+    private static class Like { // ключ лайка - фильм и пользователь
 
-        return likes.computeIfAbsent(filmId, map -> new HashMap<>());
-    }
+        Integer filmId;
 
-    // подсчет лайков определенному фильму от всех пользователей
-    private Long getFilmLikesTotalCount(Integer filmId) {
+        Long userId;
 
-        Map<Long, Long> filmLikesByUsers = getFilmLikesByUsers(filmId);
-        return filmLikesByUsers.values().stream() // считаем количество лайков у фильма
-                .mapToLong(Long::valueOf)
-                .sum();
     }
 
-
 }
@@ -1,31 +1,55 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.UserDoesNotExistException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "memory", matchIfMissing = true)
 public class InMemoryUserStorage implements UserStorage {
 
     // реализация хранения информации о пользователях в памяти
 
-    private final HashMap<Long, User> users = new HashMap<>();
+    // многоверсионное хранение - списки пользователей читаются согласованным срезом без блокировки записи
+    private final VersionedMap<Long, User> users = new VersionedMap<>();
+
+    private final ShardLayout shardLayout; // выдача id, принадлежащих текущему узлу
+
+    private final EntityVersions versions = new EntityVersions(); // версии для условных запросов
+
+    private final IdFilters idFilters; // фильтр существующих id - запросы несуществующих id не читают данные
+
+    private final RecordWriter<User, User> writer; // общий путь записи: фильтр id, данные, журнал, лента и версии
 
     private Long nextId = 1L;
 
+    public InMemoryUserStorage(MutationJournal journal, ChangeStorage changeStorage, ShardLayout shardLayout,
+                               IdFilters idFilters) {
+        this.shardLayout = shardLayout;
+        this.idFilters = idFilters;
+        this.writer = new RecordWriter<>(this, journal, changeStorage, versions, idFilters.users(), User::getId,
+                JournalRecord::ofUser, Function.identity(), (user, same) -> users.put(user.getId(), user));
+    }
+
     //добавление информации о пользователе
     @Override
     public User addUser(User user) {
 
-        User newUser = user.toBuilder().id(nextId).build();
-        nextId++;
+        User newUser;
+        synchronized (this) {
+            newUser = user.toBuilder().id(allocateId()).build();
+        }
 
         if (isFieldEmpty(user.getName())) { // устанавливаем логин в качестве имени в случае незаполненного поля
             newUser = newUser.toBuilder().name(user.getLogin()).build();
@@ -37,6 +61,19 @@ public class InMemoryUserStorage implements UserStorage {
         return newUser;
     }
 
+    // пакетное добавление информации о пользователях - одна блокировка и одна запись журнала на диск на пакет
+    @Override
+    public List<User> addUsers(List<User> newUsers) {
+
+        List<User> savedUsers = writer.saveAll(newUsers, user -> user.toBuilder()
+                .id(allocateId())
+                .name(isFieldEmpty(user.getName()) ? user.getLogin() : user.getName())
+                .build());
+
+        log.info("Сохранено пользователей пакетом: {}", savedUsers.size());
+        return savedUsers;
+    }
+
     // обновление информации о пользователе
     @Override
     public User updateUser(User user) {
@@ -63,7 +100,10 @@ public class InMemoryUserStorage implements UserStorage {
     @Override
     public List<User> listUsers() {
 
-        List<User> listUsers = new ArrayList<>(users.values());
+        List<User> listUsers;
+        try (Stream<User> snapshot = users.streamSnapshot()) { // согласованный срез на момент запроса
+            listUsers = snapshot.collect(Collectors.toList());
+        }
 
         log.info("Количество пользователей в списке: {}", listUsers.size());
 
@@ -71,26 +111,71 @@ public class InMemoryUserStorage implements UserStorage {
 
     }
 
+    // последовательное получение пользователей из согласованного среза, срез освобождается при закрытии потока
+    @Override
+    public Stream<User> streamUsers() {
+
+        log.info("Количество пользователей в списке: {}", users.size());
+
+        return users.streamSnapshot();
+    }
+
     @Override
     public User getUserById(Long id) { // получение пользователя по идентификатору
 
-        return users.values().stream()
-                .filter(user -> user.getId().equals(id))
-                .findFirst()
-                .orElseThrow(() -> new UserDoesNotExistException(String.format("Пользователь с id %d не найден", id)));
+        User user = id == null ? null : idFilters.users().find(id, key -> users.get(key));
+        if (user == null) {
+            throw new UserDoesNotExistException(String.format("Пользователь с id %d не найден", id));
+        }
+        return user;
     }
 
     public void updateUserData(User user) { // сохранение новой или обновленной информации о пользователе
-        users.put(user.getId(), user);
+        writer.save(user);
     }
 
+    // сохранение пользователя, только если его версия не изменилась после чтения - защита от потерянных обновлений
+    @Override
+    public boolean compareAndSetUserData(User user, long expectedVersion) {
+        return writer.compareAndSet(user, expectedVersion);
+    }
+
+    @Override
+    public synchronized void restoreUserData(User user) { // восстановление информации о пользователе из журнала
 
-    public Map<Long, User> getUsersData() { // получение данных о пользователях
-        return users;
+        writer.restore(user);
+        nextId = Math.max(nextId, user.getId() + 1);
+    }
+
+
+    @Override
+    public long getUserVersion(Long id) { // версия последнего сохранения пользователя
+
+        if (id == null || !idFilters.users().exists(id, key -> users.containsKey(key))) {
+            throw new UserDoesNotExistException(String.format("Пользователь с id %d не найден", id));
+        }
+        return versions.get(id);
+    }
+
+    @Override
+    public long getUsersVersion() { // версия списка пользователей
+        return versions.current();
+    }
+
+    public Map<Long, User> getUsersData() { // получение данных о пользователях - последние версии, только чтение
+        return users.asMap();
     }
 
     private boolean isFieldEmpty(String fieldValue) { // проверка является ли поле пустым
         return fieldValue == null || fieldValue.isBlank();
     }
 
+    // выдача следующего id, принадлежащего текущему узлу, вызывается под блокировкой хранилища
+    private Long allocateId() {
+
+        long id = shardLayout.ownedIdFrom(nextId);
+        nextId = id + 1;
+        return id;
+    }
+
 }
@@ -1,6 +1,11 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.Command;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 // хранение информации о поставленных лайках
 
@@ -10,4 +15,12 @@ public interface LikeStorage {
 
     Film deleteLike(Integer filmId, Long userId); // удаление лайка у определенного фильма от пользователя
 
+    boolean containsLike(Integer filmId, Long userId); // проверка наличия лайка пользователя у фильма
+
+    Map<Integer, Set<Long>> getLikesData(); // получение копии информации о лайках - id фильма / id пользователей
+
+    Stream<Map.Entry<Integer, Long>> streamLikes(); // срез лайков (id фильма / id пользователя) без блокировки записи
+
+    void restoreLike(Integer filmId, Long userId, Command command); // восстановление лайка без записи в журнал
+
 }
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+public class RecordWriter<T, P> {
+
+    /* общий путь записи хранилищ пользователей и фильмов: под блокировкой хранилища запись сначала кодируется
+    и добавляется в журнал изменений, и только после этого id добавляется в фильтр, запись сохраняется в хранилище
+    и ленту изменений и получает новую версию - при ошибке кодирования или записи журнала ни читатели, ни лента
+    (и реплики через нее) не видят изменения, которого нет в журнале. ожидание записи журнала на диск
+    выполняется вне блокировки. хранилища различаются только представлением данных:
+    encoder готовит его (для хранилищ вне кучи - двоичную запись), store сохраняет под блокировкой */
+
+    private final Object monitor; // блокировка хранилища - под ней же хранилище выдает id
+    private final MutationJournal journal;
+    private final ChangeStorage changeStorage;
+    private final EntityVersions versions;
+    private final IdBloomFilter idFilter;
+    private final ToLongFunction<T> idOf;
+    private final Function<T, JournalRecord> recordOf;
+    private final Function<T, P> encoder;
+    private final BiConsumer<T, P> store;
+
+    public RecordWriter(Object monitor, MutationJournal journal, ChangeStorage changeStorage,
+                        EntityVersions versions, IdBloomFilter idFilter, ToLongFunction<T> idOf,
+                        Function<T, JournalRecord> recordOf, Function<T, P> encoder, BiConsumer<T, P> store) {
+        this.monitor = monitor;
+        this.journal = journal;
+        this.changeStorage = changeStorage;
+        this.versions = versions;
+        this.idFilter = idFilter;
+        this.idOf = idOf;
+        this.recordOf = recordOf;
+        this.encoder = encoder;
+        this.store = store;
+    }
+
+    // сохранение новой или обновленной записи
+    public void save(T value) {
+
+        P encoded = encoder.apply(value); // подготовка данных вне блокировки
+
+        long sequence;
+        synchronized (monitor) { // порядок записей в журнале совпадает с порядком изменений в хранилище
+            sequence = write(value, encoded);
+        }
+        journal.sync(sequence); // ожидание записи на диск вне блокировки - fsync объединяется для потоков
+    }
+
+    // сохранение записи, только если ее версия не изменилась после чтения - защита от потерянных обновлений
+    public boolean compareAndSet(T value, long expectedVersion) {
+
+        P encoded = encoder.apply(value);
+
+        long sequence;
+        synchronized (monitor) {
+            if (versions.get(idOf.applyAsLong(value)) != expectedVersion) { // запись изменена другим запросом
+                return false;
+            }
+            sequence = write(value, encoded);
+        }
+        journal.sync(sequence);
+        return true;
+    }
+
+    // пакетное сохранение - одна блокировка и одна запись журнала на диск на пакет, prepare выдает id под блокировкой
+    public List<T> saveAll(List<T> values, UnaryOperator<T> prepare) {
+
+        List<T> saved = new ArrayList<>(values.size());
+        long sequence = 0L;
+
+        synchronized (monitor) {
+            for (T value : values) {
+                T prepared = prepare.apply(value);
+                sequence = write(prepared, encoder.apply(prepared));
+                saved.add(prepared);
+            }
+        }
+        journal.sync(sequence);
+
+        return saved;
+    }
+
+    // восстановление записи из журнала, снимка или реплики - без записи в журнал и ленту изменений
+    public void restore(T value) {
+
+        synchronized (monitor) {
+            long id = idOf.applyAsLong(value);
+            idFilter.add(id);
+            store.accept(value, encoder.apply(value));
+            versions.touch(id);
+        }
+    }
+
+    // сохранение под блокировкой хранилища, возвращает позицию записи в журнале
+    private long write(T value, P encoded) {
+
+        long id = idOf.applyAsLong(value);
+        JournalRecord record = recordOf.apply(value);
+        long sequence = journal.append(record); // до изменения хранилища - ошибка журнала ничего не изменяет
+        idFilter.add(id); // id в фильтре до записи - сохраненная запись всегда проходит фильтр
+        store.accept(value, encoded);
+        changeStorage.addChange(record);
+        versions.touch(id);
+
+        return sequence;
+    }
+
+}
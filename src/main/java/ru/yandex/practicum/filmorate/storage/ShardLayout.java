@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Slf4j
+@Component
+public class ShardLayout {
+
+    /* разбиение пользователей и фильмов по узлам: узел-владелец определяется хешем id по числу узлов.
+    каждый узел выдает новым записям только принадлежащие ему id, поэтому id не пересекаются между узлами.
+    без шардирования узел один и владеет всеми id */
+
+    private final boolean enabled;
+    private final int index; // номер текущего узла в списке узлов
+    private final List<String> nodes; // базовые адреса всех узлов, например http://localhost:8080
+
+    public ShardLayout(@Value("${filmorate.shard.enabled}") boolean enabled,
+                       @Value("${filmorate.shard.index}") int index,
+                       @Value("${filmorate.shard.nodes}") List<String> nodes) {
+
+        this.enabled = enabled;
+        this.nodes = enabled ? List.copyOf(nodes) : List.of("");
+        this.index = enabled ? index : 0;
+
+        if (this.index < 0 || this.index >= this.nodes.size()) {
+            throw new IllegalArgumentException("Номер узла " + index + " вне списка узлов " + nodes);
+        }
+        if (enabled) {
+            log.info("Шардирование включено: узел {} из {}", this.index, this.nodes.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public int count() {
+        return nodes.size();
+    }
+
+    public String node(int shard) {
+        return nodes.get(shard);
+    }
+
+    // номер узла-владельца записи с указанным id
+    public int shardOf(long id) {
+
+        if (nodes.size() == 1) {
+            return 0;
+        }
+        return Math.floorMod(mix(id), nodes.size());
+    }
+
+    public boolean owns(long id) {
+        return shardOf(id) == index;
+    }
+
+    // наименьший id не меньше указанного, принадлежащий текущему узлу
+    public long ownedIdFrom(long candidate) {
+
+        long id = candidate;
+        while (!owns(id)) {
+            id++;
+        }
+        return id;
+    }
+
+    // перемешивание битов id (финализатор SplitMix64) - последовательные id равномерно расходятся по узлам
+    private static int mix(long id) {
+
+        long z = id + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (z ^ (z >>> 31));
+    }
+
+}
@@ -4,6 +4,7 @@ import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 //хранение информации о пользователях
 
@@ -11,14 +12,26 @@ public interface UserStorage {
 
     User addUser(User user);  // добавление информации о пользователе
 
+    List<User> addUsers(List<User> users); // пакетное добавление информации о пользователях
+
     User updateUser(User user);  // обновление информации о пользователе
 
     List<User> listUsers(); // получение списка пользователей
 
+    Stream<User> streamUsers(); // последовательное получение пользователей без построения списка
+
     User getUserById(Long id); // получение пользователя по идентификатору
 
     void updateUserData(User user); // сохранение новой или обновленной информации о пользователе
 
+    boolean compareAndSetUserData(User user, long expectedVersion); // сохранение, если версия не изменилась
+
+    long getUserVersion(Long id); // версия последнего сохранения пользователя для условных запросов
+
+    long getUsersVersion(); // версия списка пользователей - изменяется при сохранении любого пользователя
+
+    void restoreUserData(User user); // восстановление информации о пользователе без записи в журнал изменений
+
     Map<Long, User> getUsersData(); // получение информации о пользователях
 
 }
@@ -0,0 +1,271 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.lang.ref.Cleaner;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class VersionedMap<K, V> {
+
+    /* многоверсионное хранение значений (MVCC): каждое изменение получает следующий номер версии
+    и добавляется в начало цепочки версий ключа. читатель фиксирует номер последней версии и видит
+    по каждому ключу самое новое значение не новее этой версии - согласованный срез на момент чтения.
+    читатели не блокируют писателей и не блокируются ими, старые версии удаляются при следующей записи ключа,
+    когда они больше не нужны ни одному открытому срезу.
+    срез освобождается при закрытии потока, при полном проходе по нему, а поток, брошенный без закрытия,
+    освобождает срез после сборки мусора - незакрытые потоки не удерживают старые версии навсегда */
+
+    private static final Cleaner CLEANER = Cleaner.create(); // освобождение срезов брошенных потоков
+
+    private final ConcurrentHashMap<K, Version<V>> entries = new ConcurrentHashMap<>();
+
+    // открытые срезы: номер версии / количество читателей
+    private final ConcurrentSkipListMap<Long, Integer> activeSnapshots = new ConcurrentSkipListMap<>();
+
+    private final Object writeLock = new Object(); // писатели упорядочиваются между собой
+
+    private volatile long currentVersion; // номер последней опубликованной версии
+
+    private final Map<K, V> latestView = new LatestView();
+
+    // версия значения - элемент цепочки от новых к старым
+    private static final class Version<V> {
+
+        private final long number;
+        private final V value;
+        private volatile Version<V> previous;
+
+        private Version(long number, V value, Version<V> previous) {
+            this.number = number;
+            this.value = value;
+            this.previous = previous;
+        }
+    }
+
+    // сохранение нового значения ключа, возвращает номер версии
+    public long put(K key, V value) {
+
+        synchronized (writeLock) {
+            long number = currentVersion + 1;
+            Version<V> version = new Version<>(number, value, entries.get(key));
+
+            entries.put(key, version);
+            currentVersion = number; // публикация версии для новых срезов
+            prune(version);
+
+            return number;
+        }
+    }
+
+    // получение последнего значения ключа
+    public V get(Object key) {
+
+        if (key == null) {
+            return null;
+        }
+        Version<V> version = entries.get(key);
+        return version == null ? null : version.value;
+    }
+
+    public boolean containsKey(Object key) {
+        return key != null && entries.containsKey(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long currentVersion() {
+        return currentVersion;
+    }
+
+    // количество открытых срезов
+    public int openSnapshots() {
+        return activeSnapshots.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    // количество хранимых версий ключа - старые версии удаляются, когда их не видит ни один открытый срез
+    public int versionCount(Object key) {
+
+        int count = 0;
+        for (Version<V> version = key == null ? null : entries.get(key); version != null; version = version.previous) {
+            count++;
+        }
+        return count;
+    }
+
+    // представление последних значений в виде Map только для чтения
+    public Map<K, V> asMap() {
+        return latestView;
+    }
+
+    /* поток значений согласованного среза. срез освобождается при закрытии потока или полном проходе по нему;
+    освобождение регистрируется в Cleaner на итератор среза и не ссылается на него - итератор брошенного
+    потока собирается сборщиком мусора, после чего срез освобождается. Cleanable выполняется не более раза */
+    public Stream<V> streamSnapshot() {
+        return streamSnapshotEntries().map(Map.Entry::getValue);
+    }
+
+    // поток пар ключ / значение согласованного среза - срез открывается при вызове, до чтения потока
+    public Stream<Map.Entry<K, V>> streamSnapshotEntries() {
+
+        long number = openSnapshot();
+        SnapshotIterator iterator = new SnapshotIterator(number);
+        Cleaner.Cleanable release = CLEANER.register(iterator, () -> release(number));
+        iterator.start(release);
+
+        return StreamSupport.stream(Spliterators.spliterator(iterator, entries.size(),
+                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(release::clean);
+    }
+
+    // открытие среза без блокировки: если после регистрации среза появилась новая версия,
+    // писатель мог не увидеть регистрацию и удалить нужную срезу версию - регистрация повторяется
+    private long openSnapshot() {
+
+        while (true) {
+            long number = currentVersion;
+            activeSnapshots.merge(number, 1, Integer::sum);
+
+            if (currentVersion == number) {
+                return number;
+            }
+            release(number);
+        }
+    }
+
+    private void release(long number) {
+        activeSnapshots.computeIfPresent(number, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    // удаление версий, более старых чем нужно самому старому открытому срезу
+    private void prune(Version<V> head) {
+
+        Map.Entry<Long, Integer> oldest = activeSnapshots.firstEntry();
+        long oldestVisible = oldest == null ? head.number : oldest.getKey();
+
+        Version<V> version = head;
+        while (version != null && version.number > oldestVisible) {
+            version = version.previous;
+        }
+        if (version != null) { // версия, видимая самому старому срезу, - более ранние не нужны
+            version.previous = null;
+        }
+    }
+
+    // значение ключа, видимое в срезе с указанным номером версии
+    private static <V> V visibleValue(Version<V> version, long snapshotVersion) {
+
+        while (version != null && version.number > snapshotVersion) {
+            version = version.previous;
+        }
+        return version == null ? null : version.value;
+    }
+
+    // итератор по парам среза, ключи, добавленные после открытия среза, пропускаются
+    private final class SnapshotIterator implements Iterator<Map.Entry<K, V>> {
+
+        private final long number;
+        private final Iterator<Map.Entry<K, Version<V>>> heads = entries.entrySet().iterator();
+        private Cleaner.Cleanable release;
+        private Map.Entry<K, V> next;
+
+        private SnapshotIterator(long number) {
+            this.number = number;
+        }
+
+        private void start(Cleaner.Cleanable release) {
+            this.release = release;
+            this.next = advance();
+        }
+
+        // следующая пара среза, после последней пары срез освобождается
+        private Map.Entry<K, V> advance() {
+
+            while (heads.hasNext()) {
+                Map.Entry<K, Version<V>> head = heads.next();
+                V value = visibleValue(head.getValue(), number);
+                if (value != null) {
+                    return new AbstractMap.SimpleImmutableEntry<>(head.getKey(), value);
+                }
+            }
+            release.clean();
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = next;
+            next = advance();
+            return entry;
+        }
+    }
+
+    private final class LatestView extends AbstractMap<K, V> {
+
+        @Override
+        public boolean containsKey(Object key) {
+            return VersionedMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return VersionedMap.this.get(key);
+        }
+
+        @Override
+        public int size() {
+            return VersionedMap.this.size();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+
+            return new AbstractSet<>() {
+
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+
+                    Iterator<Map.Entry<K, Version<V>>> iterator = entries.entrySet().iterator();
+
+                    return new Iterator<>() {
+
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<K, V> next() {
+                            Map.Entry<K, Version<V>> entry = iterator.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().value);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return VersionedMap.this.size();
+                }
+            };
+        }
+    }
+
+}
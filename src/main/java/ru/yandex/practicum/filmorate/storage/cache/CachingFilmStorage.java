@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "filmorate.storage.cache.enabled", havingValue = "true")
+public class CachingFilmStorage implements FilmStorage {
+
+    /* кеш чтения фильмов по id перед хранилищем, выбранным filmorate.storage.type.
+    все изменения проходят через кеш: запись передается в хранилище, затем запись кеша удаляется.
+    изменения сериализуются на мониторе кеша - пакетная запись, блокирующая хранилище, блокирует кеш */
+
+    private final FilmStorage storage;
+    private final ReadThroughCache<Integer, Film> cache;
+
+    // в списке реализаций нет самого кеша - только хранилище, выбранное filmorate.storage.type
+    public CachingFilmStorage(List<FilmStorage> storages,
+                              @Value("${filmorate.storage.cache.max-size}") int maxSize,
+                              @Value("${filmorate.storage.cache.ttl-ms}") long ttlMs) {
+
+        if (storages.size() != 1) {
+            throw new IllegalStateException("Кеш фильмов ожидает одно хранилище, найдено: " + storages.size());
+        }
+        this.storage = storages.get(0);
+        this.cache = new ReadThroughCache<>(maxSize, ttlMs);
+        log.info("Кеш фильмов перед {}: до {} записей, время жизни {} мс",
+                storage.getClass().getSimpleName(), maxSize, ttlMs);
+    }
+
+    @Override
+    public synchronized Film addFilm(Film film) {
+
+        Film newFilm = storage.addFilm(film);
+        cache.invalidate(newFilm.getId());
+        return newFilm;
+    }
+
+    @Override
+    public synchronized List<Film> addFilms(List<Film> films) {
+
+        List<Film> savedFilms = storage.addFilms(films);
+        savedFilms.forEach(film -> cache.invalidate(film.getId()));
+        return savedFilms;
+    }
+
+    @Override
+    public synchronized Film updateFilm(Film film) {
+
+        Film updatedFilm = storage.updateFilm(film);
+        cache.invalidate(film.getId());
+        return updatedFilm;
+    }
+
+    @Override
+    public List<Film> listFilms() {
+        return storage.listFilms();
+    }
+
+    @Override
+    public Stream<Film> streamFilms() {
+        return storage.streamFilms();
+    }
+
+    // чтение фильма из кеша, при промахе - из хранилища
+    @Override
+    public Film getFilmById(Integer id) {
+        return cache.get(id, storage::getFilmById);
+    }
+
+    @Override
+    public synchronized void updateFilmData(Film film) {
+
+        storage.updateFilmData(film);
+        cache.invalidate(film.getId());
+    }
+
+    @Override
+    public synchronized boolean compareAndSetFilmData(Film film, long expectedVersion) {
+
+        boolean saved = storage.compareAndSetFilmData(film, expectedVersion);
+        if (saved) {
+            cache.invalidate(film.getId());
+        }
+        return saved;
+    }
+
+    @Override
+    public long getFilmVersion(Integer id) {
+        return storage.getFilmVersion(id);
+    }
+
+    @Override
+    public long getFilmsVersion() {
+        return storage.getFilmsVersion();
+    }
+
+    @Override
+    public synchronized void restoreFilmData(Film film) {
+
+        storage.restoreFilmData(film);
+        cache.invalidate(film.getId());
+    }
+
+    @Override
+    public Map<Integer, Film> getFilmsData() {
+        return storage.getFilmsData();
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.stats("films");
+    }
+
+}
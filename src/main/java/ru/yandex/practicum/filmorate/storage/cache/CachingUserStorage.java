@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "filmorate.storage.cache.enabled", havingValue = "true")
+public class CachingUserStorage implements UserStorage {
+
+    /* кеш чтения пользователей по id перед хранилищем, выбранным filmorate.storage.type.
+    все изменения проходят через кеш: запись передается в хранилище, затем запись кеша удаляется.
+    изменения сериализуются на мониторе кеша - пакетная запись, блокирующая хранилище, блокирует кеш */
+
+    private final UserStorage storage;
+    private final ReadThroughCache<Long, User> cache;
+
+    // в списке реализаций нет самого кеша - только хранилище, выбранное filmorate.storage.type
+    public CachingUserStorage(List<UserStorage> storages,
+                              @Value("${filmorate.storage.cache.max-size}") int maxSize,
+                              @Value("${filmorate.storage.cache.ttl-ms}") long ttlMs) {
+
+        if (storages.size() != 1) {
+            throw new IllegalStateException("Кеш пользователей ожидает одно хранилище, найдено: " + storages.size());
+        }
+        this.storage = storages.get(0);
+        this.cache = new ReadThroughCache<>(maxSize, ttlMs);
+        log.info("Кеш пользователей перед {}: до {} записей, время жизни {} мс",
+                storage.getClass().getSimpleName(), maxSize, ttlMs);
+    }
+
+    @Override
+    public synchronized User addUser(User user) {
+
+        User newUser = storage.addUser(user);
+        cache.invalidate(newUser.getId());
+        return newUser;
+    }
+
+    @Override
+    public synchronized List<User> addUsers(List<User> users) {
+
+        List<User> savedUsers = storage.addUsers(users);
+        savedUsers.forEach(user -> cache.invalidate(user.getId()));
+        return savedUsers;
+    }
+
+    @Override
+    public synchronized User updateUser(User user) {
+
+        User updatedUser = storage.updateUser(user);
+        cache.invalidate(user.getId());
+        return updatedUser;
+    }
+
+    @Override
+    public List<User> listUsers() {
+        return storage.listUsers();
+    }
+
+    @Override
+    public Stream<User> streamUsers() {
+        return storage.streamUsers();
+    }
+
+    // чтение пользователя из кеша, при промахе - из хранилища
+    @Override
+    public User getUserById(Long id) {
+        return cache.get(id, storage::getUserById);
+    }
+
+    @Override
+    public synchronized void updateUserData(User user) {
+
+        storage.updateUserData(user);
+        cache.invalidate(user.getId());
+    }
+
+    @Override
+    public synchronized boolean compareAndSetUserData(User user, long expectedVersion) {
+
+        boolean saved = storage.compareAndSetUserData(user, expectedVersion);
+        if (saved) {
+            cache.invalidate(user.getId());
+        }
+        return saved;
+    }
+
+    @Override
+    public long getUserVersion(Long id) {
+        return storage.getUserVersion(id);
+    }
+
+    @Override
+    public long getUsersVersion() {
+        return storage.getUsersVersion();
+    }
+
+    @Override
+    public synchronized void restoreUserData(User user) {
+
+        storage.restoreUserData(user);
+        cache.invalidate(user.getId());
+    }
+
+    @Override
+    public Map<Long, User> getUsersData() {
+        return storage.getUsersData();
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.stats("users");
+    }
+
+}
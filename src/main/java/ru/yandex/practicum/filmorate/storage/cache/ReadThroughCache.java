@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import ru.yandex.practicum.filmorate.model.CacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+public class ReadThroughCache<K, V> {
+
+    /* ограниченный кеш чтения: при промахе запись загружается из хранилища и сохраняется в кеше.
+    при превышении размера вытесняется давно не читавшаяся запись, запись с истекшим временем жизни
+    загружается заново. отсутствующие записи не кешируются - исключение загрузки передается вызывающему.
+    загрузка выполняется без блокировки кеша: если во время загрузки запись была изменена в хранилище,
+    прочитанное значение может быть устаревшим и в кеш не сохраняется */
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries; // порядок доступа - первой вытесняется давно не читавшаяся
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations; // номер поколения - увеличивается при каждом изменении записей хранилища
+
+    public ReadThroughCache(int maxSize, long ttlMs) {
+
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+
+                if (size() > ReadThroughCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // чтение записи из кеша или из хранилища при промахе
+    public V get(K key, Function<K, V> loader) {
+
+        long generation;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (ttlNanos == 0 || System.nanoTime() - entry.expiresAt < 0) {
+                    hits++;
+                    return entry.value;
+                }
+                entries.remove(key);
+                expirations++;
+            }
+            misses++;
+            generation = invalidations;
+        }
+
+        V value = loader.apply(key);
+
+        synchronized (this) {
+            if (value != null && generation == invalidations) {
+                entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+            }
+        }
+        return value;
+    }
+
+    // удаление записи после ее изменения в хранилище
+    public synchronized void invalidate(K key) {
+
+        invalidations++;
+        entries.remove(key);
+    }
+
+    // удаление всех записей - после пакетного изменения хранилища
+    public synchronized void invalidateAll() {
+
+        invalidations++;
+        entries.clear();
+    }
+
+    public synchronized CacheStats stats(String entity) {
+
+        long reads = hits + misses;
+        return CacheStats.builder()
+                .entity(entity)
+                .size(entries.size())
+                .maxSize(maxSize)
+                .ttlMs(ttlNanos / 1_000_000L)
+                .hits(hits)
+                .misses(misses)
+                .evictions(evictions)
+                .expirations(expirations)
+                .invalidations(invalidations)
+                .hitRatio(reads == 0 ? 0.0 : (double) hits / reads)
+                .build();
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expiresAt; // System.nanoTime() окончания времени жизни
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
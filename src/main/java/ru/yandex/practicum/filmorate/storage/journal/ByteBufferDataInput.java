@@ -0,0 +1,161 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+// чтение двоичных данных напрямую из буфера (в том числе отображенного в память файла) без промежуточных копий
+
+public class ByteBufferDataInput implements DataInput {
+
+    private final ByteBuffer buffer;
+
+    public ByteBufferDataInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /* буфер для чтения следующих bytes байт. подкласс может вернуть другой буфер, например следующее окно
+    отображения большого файла; если в буфере меньше байт, чтение завершается EOFException */
+    protected ByteBuffer buffer(int bytes) throws IOException {
+        return buffer;
+    }
+
+    public boolean hasRemaining() throws IOException {
+        return buffer(1).hasRemaining();
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+        readFully(bytes, 0, bytes.length);
+    }
+
+    // массив может быть длиннее буфера - читается частями по мере смены буфера
+    @Override
+    public void readFully(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ByteBuffer source = buffer(1);
+            int chunk = Math.min(length, source.remaining());
+            if (chunk == 0) {
+                throw new EOFException();
+            }
+            source.get(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        int skipped = 0;
+        while (skipped < n) {
+            ByteBuffer source = buffer(1);
+            int chunk = Math.min(n - skipped, source.remaining());
+            if (chunk == 0) {
+                break;
+            }
+            source.position(source.position() + chunk);
+            skipped += chunk;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        try {
+            return buffer(Byte.BYTES).get();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        try {
+            return buffer(Short.BYTES).getShort();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        return (char) readUnsignedShort();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        try {
+            return buffer(Integer.BYTES).getInt();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        try {
+            return buffer(Long.BYTES).getLong();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    // строка до '\n', '\r' или "\r\n", каждый байт - символ с тем же кодом, как в DataInputStream.readLine
+    @Override
+    public String readLine() throws IOException {
+
+        if (!hasRemaining()) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder();
+        while (hasRemaining()) {
+            char c = (char) (readByte() & 0xFF);
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\r') {
+                ByteBuffer next = buffer(1);
+                if (next.hasRemaining() && next.get(next.position()) == '\n') {
+                    next.get();
+                }
+                break;
+            }
+            line.append(c);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+}
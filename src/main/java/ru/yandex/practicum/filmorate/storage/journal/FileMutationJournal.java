@@ -0,0 +1,335 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.journal.enabled", havingValue = "true")
+public class FileMutationJournal implements MutationJournal {
+
+    /* реализация журнала изменений в виде файла, в который записи только добавляются.
+    заголовок файла: MAGIC (int) и позиция журнала, с которой начинается файл (long).
+    формат записи: длина данных (int), контрольная сумма CRC32 (int), данные.
+    номером записи служит позиция ее конца в журнале - это позволяет снимку состояния хранить место, с которого
+    нужно продолжить чтение журнала, и при запуске переходить к нему без чтения предшествующей истории.
+    после сохранения снимка записи до его позиции удаляются: файл заменяется копией хвоста с новым заголовком,
+    позиции записей при этом не меняются.
+    запись на диск (fsync) выполняется группами: поток, первым дошедший до синхронизации, сбрасывает на диск
+    все записи, добавленные к этому моменту, остальные потоки дожидаются его и не вызывают fsync повторно */
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2; // заголовок записи
+    private static final int MAGIC = 0x464D4A32; // "FMJ2" - строки записей с длиной int вместо writeUTF
+    private static final int FILE_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    private final Path path;
+    private FileChannel channel; // заменяется при удалении записей до позиции снимка
+
+    private long base; // позиция журнала, с которой начинается файл
+
+    private final Object appendLock = new Object(); // блокировка добавления записей в конец файла
+    private final Object syncLock = new Object(); // блокировка сброса записей на диск
+
+    private volatile long appendedSequence; // позиция конца последней добавленной записи
+    private volatile long durableSequence; // позиция, до которой записи гарантированно сохранены на диске
+    private volatile long syncCount; // число выполненных fsync
+
+    private final List<Runnable> syncActions = new CopyOnWriteArrayList<>(); // выполняются после каждого fsync
+
+    // позиция, запомненная вместо sync в потоке, выполняющем изменения с отложенной записью на диск
+    private final ThreadLocal<long[]> deferredSequence = new ThreadLocal<>();
+
+    // записи пакета, собираемые в потоке, выполняющем изменения пакета, - добавляются в журнал одной записью
+    private final ThreadLocal<List<JournalRecord>> batchRecords = new ThreadLocal<>();
+
+    public FileMutationJournal(@Value("${filmorate.storage.journal.path}") String path) throws IOException {
+
+        this.path = Paths.get(path);
+        if (this.path.getParent() != null) {
+            Files.createDirectories(this.path.getParent());
+        }
+        this.channel = FileChannel.open(this.path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        readFileHeader();
+        this.channel.position(channel.size());
+        this.appendedSequence = base + channel.size() - FILE_HEADER_SIZE;
+        this.durableSequence = appendedSequence;
+
+        log.info("Открыт журнал изменений {}", this.path.toAbsolutePath());
+    }
+
+    // добавление записи в конец журнала без ожидания записи на диск
+    @Override
+    public long append(JournalRecord record) {
+
+        List<JournalRecord> batch = batchRecords.get();
+        if (batch != null) { // запись пакета добавит вызывающий после всех изменений
+            batch.add(record);
+            return appendedSequence;
+        }
+
+        byte[] payload = RecordCodec.encode(record);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+
+        synchronized (appendLock) {
+            try {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка записи в журнал изменений", e);
+            }
+            appendedSequence += frame.limit();
+            return appendedSequence;
+        }
+    }
+
+    @Override
+    public long lastSequence() {
+        return appendedSequence;
+    }
+
+    // групповая запись на диск: один fsync для всех записей, добавленных конкурирующими потоками
+    @Override
+    public void sync(long sequence) {
+
+        if (durableSequence >= sequence) {
+            return;
+        }
+
+        long[] deferred = deferredSequence.get();
+        if (deferred != null) { // sync выполнит вызывающий после всех изменений пакета
+            deferred[0] = Math.max(deferred[0], sequence);
+            return;
+        }
+
+        synchronized (syncLock) {
+            if (durableSequence >= sequence) { // записи уже сброшены на диск другим потоком
+                return;
+            }
+
+            long target = appendedSequence;
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка записи журнала изменений на диск", e);
+            }
+            syncActions.forEach(Runnable::run);
+            durableSequence = target;
+            syncCount++;
+        }
+    }
+
+    @Override
+    public void onSync(Runnable action) {
+        syncActions.add(action);
+    }
+
+    // число выполненных fsync - при групповой записи меньше числа вызовов sync
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    @Override
+    public long deferSync(Runnable changes) {
+
+        long[] deferred = {0L};
+        deferredSequence.set(deferred);
+        try {
+            changes.run();
+        } finally {
+            deferredSequence.remove();
+        }
+        return deferred[0];
+    }
+
+    @Override
+    public long atomically(Runnable changes) {
+
+        List<JournalRecord> records = new ArrayList<>();
+        long sequence;
+        batchRecords.set(records);
+        try {
+            sequence = deferSync(changes);
+        } finally {
+            batchRecords.remove();
+        }
+        return records.isEmpty() ? sequence : Math.max(sequence, append(JournalRecord.ofBatch(records)));
+    }
+
+    // чтение записей журнала начиная с указанной позиции с отбрасыванием недописанного хвоста
+    @Override
+    public void replay(long fromSequence, Consumer<JournalRecord> consumer) {
+
+        synchronized (appendLock) {
+            try {
+                long size = channel.size();
+                if (fromSequence < base) {
+                    throw new IllegalStateException(String.format("Журнал изменений %s начинается с позиции %d, "
+                            + "записи до нее удалены после снимка состояния, восстановление с позиции %d невозможно",
+                            path, base, fromSequence));
+                }
+                if (toFilePosition(fromSequence) > size) {
+                    throw new IllegalStateException(String.format(
+                            "Журнал изменений %s короче позиции восстановления %d", path, fromSequence));
+                }
+
+                long position = toFilePosition(fromSequence);
+                long count = 0;
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+                while (position + HEADER_SIZE <= size) {
+                    header.clear();
+                    channel.read(header, position);
+                    header.flip();
+
+                    int length = header.getInt();
+                    int checksum = header.getInt();
+                    if (length < 0 || position + HEADER_SIZE + length > size) {
+                        break;
+                    }
+
+                    ByteBuffer payload = ByteBuffer.allocate(length);
+                    while (payload.hasRemaining() && channel.read(payload, position + HEADER_SIZE + payload.position()) > 0) {
+                        // дочитываем данные записи полностью
+                    }
+
+                    CRC32 crc = new CRC32();
+                    crc.update(payload.array());
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+
+                    consumer.accept(RecordCodec.decode(payload.array()));
+                    position += HEADER_SIZE + length;
+                    count++;
+                }
+
+                if (position < size) { // запись была прервана при остановке приложения
+                    log.warn("Отброшен поврежденный хвост журнала изменений: {} байт", size - position);
+                    channel.truncate(position);
+                }
+                channel.position(position);
+
+                appendedSequence = base + position - FILE_HEADER_SIZE;
+                durableSequence = appendedSequence;
+                log.info("Из журнала изменений восстановлено записей: {}", count);
+
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка чтения журнала изменений " + path, e);
+            }
+        }
+    }
+
+    /* удаление записей до позиции сохраненного снимка: хвост журнала копируется в новый файл, который атомарно
+    заменяет прежний. добавление записей на время копирования хвоста - записей после начала снимка - ожидает */
+    @Override
+    public void compact(long sequence) {
+
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                if (sequence <= base) {
+                    return;
+                }
+                if (sequence > appendedSequence) {
+                    throw new IllegalStateException(String.format(
+                            "Позиция %d снимка состояния за концом журнала изменений %d", sequence, appendedSequence));
+                }
+
+                Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                try {
+                    long from = toFilePosition(sequence);
+                    long size = channel.size();
+                    try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                        writeFileHeader(target, sequence);
+                        target.position(FILE_HEADER_SIZE); // заголовок записан без сдвига позиции канала
+                        long copied = 0;
+                        while (copied < size - from) {
+                            copied += channel.transferTo(from + copied, size - from - copied, target);
+                        }
+                        target.force(true);
+                    }
+
+                    channel.close();
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+
+                    log.info("Из журнала изменений удалено {} байт до позиции снимка {}",
+                            from - FILE_HEADER_SIZE, sequence);
+                    base = sequence;
+                    durableSequence = appendedSequence; // хвост сохранен на диск вместе с новым файлом
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Ошибка удаления записей журнала изменений " + path, e);
+                }
+            }
+        }
+    }
+
+    // позиция в файле по позиции журнала
+    private long toFilePosition(long sequence) {
+        return sequence - base + FILE_HEADER_SIZE;
+    }
+
+    // чтение заголовка файла, в новый файл заголовок записывается. файл без заголовка или другого формата не читается
+    private void readFileHeader() throws IOException {
+
+        if (channel.size() == 0) {
+            writeFileHeader(channel, 0L);
+            channel.force(false);
+            base = 0L;
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() != FILE_HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("Неизвестный формат журнала изменений " + path);
+        }
+        base = header.getLong();
+    }
+
+    private static void writeFileHeader(FileChannel target, long base) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putLong(base).flip();
+        while (header.hasRemaining()) {
+            target.write(header, FILE_HEADER_SIZE - header.remaining());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+
+        synchronized (syncLock) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+}
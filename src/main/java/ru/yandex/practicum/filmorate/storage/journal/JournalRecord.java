@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class JournalRecord {
+
+    // запись журнала изменений - тип изменения и измененные данные
+
+    RecordType type; // тип изменения
+
+    User user; // сохраненный пользователь (для USER)
+
+    Film film; // сохраненный фильм (для FILM)
+
+    Integer filmId; // id фильма (для LIKE_ADDED / LIKE_REMOVED)
+
+    Long userId; // id пользователя (для LIKE_ADDED / LIKE_REMOVED)
+
+    List<JournalRecord> records; // записи пакета в порядке применения (для BATCH)
+
+    public static JournalRecord ofUser(User user) { // запись о сохранении пользователя
+        return JournalRecord.builder().type(RecordType.USER).user(user).build();
+    }
+
+    public static JournalRecord ofFilm(Film film) { // запись о сохранении фильма
+        return JournalRecord.builder().type(RecordType.FILM).film(film).build();
+    }
+
+    public static JournalRecord ofLikeAdded(Integer filmId, Long userId) { // запись о добавлении лайка
+        return JournalRecord.builder().type(RecordType.LIKE_ADDED).filmId(filmId).userId(userId).build();
+    }
+
+    public static JournalRecord ofLikeRemoved(Integer filmId, Long userId) { // запись об удалении лайка
+        return JournalRecord.builder().type(RecordType.LIKE_REMOVED).filmId(filmId).userId(userId).build();
+    }
+
+    public static JournalRecord ofBatch(List<JournalRecord> records) { // запись пакета изменений
+        return JournalRecord.builder().type(RecordType.BATCH).records(List.copyOf(records)).build();
+    }
+
+    // число изменений ленты, которым соответствует запись, - у пакета по одному на каждую его запись
+    public int changeCount() {
+        return type == RecordType.BATCH ? records.size() : 1;
+    }
+
+}
@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.service.Command;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.journal.enabled", havingValue = "true")
+public class JournalReplayer {
+
+    /* восстановление данных хранилищ при запуске приложения: загрузка последнего снимка состояния
+    и чтение журнала изменений с позиции, на которой был сделан снимок. каждой записи журнала соответствует
+    одно изменение ленты (записи пакета - по одному на каждую вложенную запись), поэтому нумерация ленты
+    продолжается с версии снимка плюс число прочитанных изменений */
+
+    private final MutationJournal journal;
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final LikeStorage likeStorage;
+    private final ChangeStorage changeStorage;
+    private final String snapshotPath;
+
+    public JournalReplayer(MutationJournal journal, UserStorage userStorage, FilmStorage filmStorage,
+                           LikeStorage likeStorage, ChangeStorage changeStorage,
+                           @Value("${filmorate.storage.snapshot.path}") String snapshotPath) {
+        this.journal = journal;
+        this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
+        this.likeStorage = likeStorage;
+        this.changeStorage = changeStorage;
+        this.snapshotPath = snapshotPath;
+    }
+
+    @PostConstruct
+    public void replay() {
+
+        SnapshotCodec.Position position = loadSnapshot();
+
+        long[] replayed = {0L};
+        journal.replay(position.getJournalSequence(), record -> {
+            apply(record);
+            replayed[0] += record.changeCount();
+        });
+        changeStorage.seedVersion(position.getChangeVersion() + replayed[0]);
+
+        log.info("Восстановлено пользователей: {}, фильмов: {}",
+                userStorage.getUsersData().size(), filmStorage.getFilmsData().size());
+    }
+
+    // загрузка снимка состояния, возвращает позицию журнала и версию ленты, с которых продолжается восстановление
+    private SnapshotCodec.Position loadSnapshot() {
+
+        Path path = Paths.get(snapshotPath);
+        if (!Files.exists(path)) {
+            return new SnapshotCodec.Position(0L, 0L);
+        }
+
+        try {
+            long started = System.nanoTime();
+            SnapshotCodec.Position position = SnapshotCodec.read(path,
+                    userStorage::restoreUserData,
+                    filmStorage::restoreFilmData,
+                    (filmId, userId) -> likeStorage.restoreLike(filmId, userId, Command.ADD));
+
+            log.info("Загружен снимок состояния {} ({} байт) за {} мс", path, Files.size(path),
+                    (System.nanoTime() - started) / 1_000_000);
+            return position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка чтения снимка состояния " + path, e);
+        }
+    }
+
+    // применение записи журнала к хранилищу без повторной записи в журнал
+    private void apply(JournalRecord record) {
+
+        switch (record.getType()) {
+            case USER:
+                userStorage.restoreUserData(record.getUser());
+                break;
+            case FILM:
+                filmStorage.restoreFilmData(record.getFilm());
+                break;
+            case LIKE_ADDED:
+                likeStorage.restoreLike(record.getFilmId(), record.getUserId(), Command.ADD);
+                break;
+            case LIKE_REMOVED:
+                likeStorage.restoreLike(record.getFilmId(), record.getUserId(), Command.DELETE);
+                break;
+            case BATCH:
+                record.getRecords().forEach(this::apply);
+                break;
+        }
+    }
+
+}
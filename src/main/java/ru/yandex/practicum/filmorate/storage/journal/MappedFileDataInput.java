@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// чтение файла любого размера через отображение в память окнами - одно отображение ограничено 2 ГБ
+
+public class MappedFileDataInput extends ByteBufferDataInput {
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart; // позиция окна в файле
+
+    // окно должно вмещать самое длинное значение фиксированного размера - long
+    public MappedFileDataInput(FileChannel channel, int windowSize) throws IOException {
+        super(null);
+        if (windowSize < Long.BYTES) {
+            throw new IllegalArgumentException("Размер окна отображения меньше " + Long.BYTES + " байт");
+        }
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        map(0L);
+    }
+
+    // позиция чтения в файле
+    public long position() {
+        return windowStart + window.position();
+    }
+
+    /* если в окне меньше нужного числа байт, следующее окно отображается с текущей позиции чтения -
+    значение на границе окон читается целиком из нового окна */
+    @Override
+    protected ByteBuffer buffer(int bytes) throws IOException {
+
+        if (window.remaining() < bytes && position() < size) {
+            map(position());
+        }
+        return window;
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+    }
+
+}
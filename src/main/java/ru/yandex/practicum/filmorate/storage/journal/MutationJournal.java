@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import java.util.function.Consumer;
+
+// журнал изменений хранилищ пользователей, фильмов и лайков
+
+public interface MutationJournal {
+
+    long append(JournalRecord record); // добавление записи в конец журнала, возвращает позицию конца записи
+
+    void sync(long sequence); // ожидание надежной записи на диск всех записей до указанной позиции включительно
+
+    long lastSequence(); // позиция конца последней добавленной записи
+
+    /* выполнение изменений с отложенной записью на диск: вызовы sync в текущем потоке только запоминают позицию,
+    возвращается наибольшая запомненная позиция - один sync после всех изменений пакета */
+    long deferSync(Runnable changes);
+
+    /* выполнение изменений пакета с записью в журнал одной записью BATCH: записи, добавляемые в текущем потоке,
+    собираются и после всех изменений добавляются в журнал вместе, sync откладывается как в deferSync.
+    при восстановлении пакет применяется целиком или не применяется, если его запись не успела попасть на диск.
+    изменения должны выполняться под блокировками всех затронутых хранилищ - запись пакета добавляется до их
+    снятия, и порядок записей в журнале совпадает с порядком изменений. возвращает позицию записи пакета */
+    long atomically(Runnable changes);
+
+    // последовательное чтение сохраненных записей журнала начиная с указанной позиции
+    void replay(long fromSequence, Consumer<JournalRecord> consumer);
+
+    void compact(long sequence); // удаление записей до позиции, сохраненной снимком состояния
+
+    /* действие, выполняемое при каждой записи журнала на диск, - хранилища с собственными файлами сбрасывают
+    их вместе с журналом, в том числе один раз на пакет изменений с отложенной записью */
+    void onSync(Runnable action);
+
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.journal.enabled", havingValue = "false", matchIfMissing = true)
+public class NoOpMutationJournal implements MutationJournal {
+
+    /* журнал изменений для режима работы без сохранения данных на диск - записи не сохраняются.
+    действия при записи на диск выполняются при каждом sync, кроме вызовов внутри пакета с отложенной записью */
+
+    private final List<Runnable> syncActions = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Boolean> deferred = new ThreadLocal<>();
+
+    @Override
+    public long append(JournalRecord record) {
+        return 0L;
+    }
+
+    @Override
+    public void sync(long sequence) {
+
+        if (deferred.get() == null) {
+            syncActions.forEach(Runnable::run);
+        }
+    }
+
+    @Override
+    public long lastSequence() {
+        return 0L;
+    }
+
+    @Override
+    public long deferSync(Runnable changes) {
+
+        deferred.set(Boolean.TRUE);
+        try {
+            changes.run();
+        } finally {
+            deferred.remove();
+        }
+        return 0L;
+    }
+
+    @Override
+    public long atomically(Runnable changes) {
+        return deferSync(changes);
+    }
+
+    @Override
+    public void replay(long fromSequence, Consumer<JournalRecord> consumer) {
+    }
+
+    @Override
+    public void compact(long sequence) {
+    }
+
+    @Override
+    public void onSync(Runnable action) {
+        syncActions.add(action);
+    }
+
+}
@@ -0,0 +1,304 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendshipRequest;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// двоичное представление записей журнала, пользователей и фильмов
+
+public final class RecordCodec {
+
+    private static final int NULL_SIZE = -1; // признак отсутствующей коллекции
+
+    private RecordCodec() {
+    }
+
+    // преобразование записи журнала в массив байт
+    public static byte[] encode(JournalRecord record) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeRecord(out, record);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка записи в журнал изменений", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // восстановление записи журнала из массива байт
+    public static JournalRecord decode(byte[] payload) {
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            return readRecord(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка чтения журнала изменений", e);
+        }
+    }
+
+    // преобразование информации о пользователе в массив байт
+    public static byte[] encodeUser(User user) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeUser(out, user);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка записи информации о пользователе", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // преобразование информации о фильме в массив байт
+    public static byte[] encodeFilm(Film film) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeFilm(out, film);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка записи информации о фильме", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static void writeRecord(DataOutput out, JournalRecord record) throws IOException {
+
+        out.writeByte(record.getType().ordinal());
+
+        switch (record.getType()) {
+            case USER:
+                writeUser(out, record.getUser());
+                break;
+            case FILM:
+                writeFilm(out, record.getFilm());
+                break;
+            case LIKE_ADDED:
+            case LIKE_REMOVED:
+                out.writeInt(record.getFilmId());
+                out.writeLong(record.getUserId());
+                break;
+            case BATCH:
+                out.writeInt(record.getRecords().size());
+                for (JournalRecord nested : record.getRecords()) {
+                    writeRecord(out, nested);
+                }
+                break;
+        }
+    }
+
+    public static JournalRecord readRecord(DataInput in) throws IOException {
+
+        RecordType type = RecordType.values()[in.readByte()];
+
+        switch (type) {
+            case USER:
+                return JournalRecord.ofUser(readUser(in));
+            case FILM:
+                return JournalRecord.ofFilm(readFilm(in));
+            case LIKE_ADDED:
+                return JournalRecord.ofLikeAdded(in.readInt(), in.readLong());
+            case LIKE_REMOVED:
+                return JournalRecord.ofLikeRemoved(in.readInt(), in.readLong());
+            case BATCH: {
+                int size = in.readInt();
+                List<JournalRecord> records = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    records.add(readRecord(in));
+                }
+                return JournalRecord.ofBatch(records);
+            }
+            default:
+                throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+
+    // запись информации о пользователе
+    public static void writeUser(DataOutput out, User user) throws IOException {
+
+        writeNullableLong(out, user.getId());
+        writeNullableString(out, user.getEmail());
+        writeNullableString(out, user.getName());
+        writeNullableString(out, user.getLogin());
+        writeNullableDate(out, user.getBirthday());
+
+        Set<Long> friends = user.getFriends();
+        if (friends == null) {
+            out.writeInt(NULL_SIZE);
+        } else {
+            out.writeInt(friends.size());
+            for (Long friendId : friends) {
+                out.writeLong(friendId);
+            }
+        }
+
+        Map<Long, FriendshipRequest> requests = user.getFriendshipRequests();
+        if (requests == null) {
+            out.writeInt(NULL_SIZE);
+        } else {
+            out.writeInt(requests.size());
+            for (Map.Entry<Long, FriendshipRequest> entry : requests.entrySet()) {
+                out.writeLong(entry.getKey());
+                writeNullableLong(out, entry.getValue().getInitiatorId());
+                writeNullableLong(out, entry.getValue().getRecipientId());
+                out.writeBoolean(entry.getValue().isConfirmed());
+            }
+        }
+    }
+
+    // чтение информации о пользователе
+    public static User readUser(DataInput in) throws IOException {
+
+        User.UserBuilder builder = User.builder()
+                .id(readNullableLong(in))
+                .email(readNullableString(in))
+                .name(readNullableString(in))
+                .login(readNullableString(in))
+                .birthday(readNullableDate(in));
+
+        int friendsSize = in.readInt();
+        if (friendsSize != NULL_SIZE) {
+            Set<Long> friends = new HashSet<>();
+            for (int i = 0; i < friendsSize; i++) {
+                friends.add(in.readLong());
+            }
+            builder.friends(friends);
+        }
+
+        int requestsSize = in.readInt();
+        if (requestsSize != NULL_SIZE) {
+            Map<Long, FriendshipRequest> requests = new HashMap<>();
+            for (int i = 0; i < requestsSize; i++) {
+                long key = in.readLong();
+                requests.put(key, new FriendshipRequest(readNullableLong(in), readNullableLong(in), in.readBoolean()));
+            }
+            builder.friendshipRequests(requests);
+        }
+
+        return builder.build();
+    }
+
+    // запись информации о фильме
+    public static void writeFilm(DataOutput out, Film film) throws IOException {
+
+        writeNullableInt(out, film.getId());
+        writeNullableString(out, film.getName());
+        writeNullableString(out, film.getDescription());
+        writeNullableDate(out, film.getReleaseDate());
+        writeNullableInt(out, film.getDuration());
+        writeNullableLong(out, film.getLikes());
+        out.writeByte(film.getRatingMPA() == null ? NULL_SIZE : film.getRatingMPA().ordinal());
+
+        Set<Genre> genres = film.getGenres();
+        if (genres == null) {
+            out.writeInt(NULL_SIZE);
+        } else {
+            out.writeInt(genres.size());
+            for (Genre genre : genres) {
+                out.writeByte(genre.ordinal());
+            }
+        }
+    }
+
+    // чтение информации о фильме
+    public static Film readFilm(DataInput in) throws IOException {
+
+        Film.FilmBuilder builder = Film.builder()
+                .id(readNullableInt(in))
+                .name(readNullableString(in))
+                .description(readNullableString(in))
+                .releaseDate(readNullableDate(in))
+                .duration(readNullableInt(in))
+                .likes(readNullableLong(in));
+
+        byte rating = in.readByte();
+        if (rating != NULL_SIZE) {
+            builder.ratingMPA(RatingMPA.values()[rating]);
+        }
+
+        int genresSize = in.readInt();
+        if (genresSize != NULL_SIZE) {
+            Set<Genre> genres = new HashSet<>();
+            for (int i = 0; i < genresSize; i++) {
+                genres.add(Genre.values()[in.readByte()]);
+            }
+            builder.genres(genres);
+        }
+
+        return builder.build();
+    }
+
+    // строка записывается длиной и байтами UTF-8 - writeUTF ограничивает строку 65535 байтами
+    private static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Некорректная длина строки " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullableLong(DataOutput out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readNullableLong(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeNullableInt(DataOutput out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readNullableInt(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeNullableDate(DataOutput out, LocalDate value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochDay());
+        }
+    }
+
+    private static LocalDate readNullableDate(DataInput in) throws IOException {
+        return in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+    }
+
+}
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+// типы записей журнала изменений хранилищ
+
+public enum RecordType {
+    USER, // сохранение новой или обновленной информации о пользователе
+    FILM, // сохранение новой или обновленной информации о фильме
+    LIKE_ADDED, // добавление лайка фильму от пользователя
+    LIKE_REMOVED, // удаление лайка у фильма от пользователя
+    BATCH // записи пакета операций, применяемые при восстановлении только вместе
+}
@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/* двоичный формат снимка состояния хранилищ:
+заголовок (MAGIC, версия формата), позиция журнала, с которой продолжается восстановление,
+версия ленты изменений на момент снимка,
+пользователи (вместе со списками друзей), фильмы, лайки (пары id фильма / id пользователя) */
+
+public final class SnapshotCodec {
+
+    private static final int MAGIC = 0x464D5253; // "FMRS"
+    private static final int FORMAT_VERSION = 3; // 3 - строки с длиной int вместо writeUTF
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SnapshotCodec() {
+    }
+
+    /* запись снимка в файл по мере чтения потоков - записи не собираются в память. число пользователей и фильмов
+    записывается после их потока на место, оставленное перед ним. файл сбрасывается на диск, но не заменяет
+    предыдущий снимок - замену выполняет вызывающий, когда записи снимка сохранены в журнале */
+    public static Counts write(Path path, long journalSequence, long changeVersion, Stream<User> users,
+                               Stream<Film> films, Map<Integer, ? extends Collection<Long>> likes) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(journalSequence);
+            out.writeLong(changeVersion);
+
+            int usersCount = writeCounted(out, channel, users, RecordCodec::writeUser);
+            int filmsCount = writeCounted(out, channel, films, RecordCodec::writeFilm);
+
+            out.writeInt(likes.size());
+            for (Map.Entry<Integer, ? extends Collection<Long>> entry : likes.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Long userId : entry.getValue()) {
+                    out.writeLong(userId);
+                }
+            }
+
+            out.flush();
+            channel.force(true);
+            return new Counts(usersCount, filmsCount);
+        }
+    }
+
+    // запись потока записей с числом записей перед ними, возвращает число записей
+    private static <T> int writeCounted(DataOutputStream out, FileChannel channel, Stream<T> records,
+                                        RecordEncoder<T> encoder) throws IOException {
+
+        out.flush();
+        long countPosition = channel.position();
+        out.writeInt(0); // место для числа записей
+
+        int count = 0;
+        for (Iterator<T> iterator = records.iterator(); iterator.hasNext(); count++) {
+            encoder.write(out, iterator.next());
+        }
+
+        out.flush();
+        ByteBuffer countBuffer = ByteBuffer.allocate(Integer.BYTES).putInt(count).flip();
+        while (countBuffer.hasRemaining()) {
+            channel.write(countBuffer, countPosition + Integer.BYTES - countBuffer.remaining());
+        }
+        return count;
+    }
+
+    /* чтение снимка через отображение файла в память окнами не больше 2 ГБ - снимок может быть больше одного
+    отображения. возвращает позицию журнала для продолжения восстановления */
+    public static Position read(Path path, Consumer<User> userConsumer, Consumer<Film> filmConsumer,
+                            LikeConsumer likeConsumer) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            MappedFileDataInput in = new MappedFileDataInput(channel, Integer.MAX_VALUE);
+
+            int formatVersion = in.readInt() == MAGIC ? in.readInt() : 0;
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Неизвестный формат снимка состояния " + path);
+            }
+            long journalSequence = in.readLong();
+            long changeVersion = in.readLong();
+
+            int usersCount = in.readInt();
+            for (int i = 0; i < usersCount; i++) {
+                userConsumer.accept(RecordCodec.readUser(in));
+            }
+
+            int filmsCount = in.readInt();
+            for (int i = 0; i < filmsCount; i++) {
+                filmConsumer.accept(RecordCodec.readFilm(in));
+            }
+
+            int likedFilmsCount = in.readInt();
+            for (int i = 0; i < likedFilmsCount; i++) {
+                int filmId = in.readInt();
+                int usersLikedCount = in.readInt();
+                for (int j = 0; j < usersLikedCount; j++) {
+                    likeConsumer.accept(filmId, in.readLong());
+                }
+            }
+
+            return new Position(journalSequence, changeVersion);
+        }
+    }
+
+    @Value
+    public static class Position { // место продолжения восстановления после снимка
+
+        long journalSequence;
+
+        long changeVersion;
+
+    }
+
+    @Value
+    public static class Counts { // число записей снимка
+
+        int users;
+
+        int films;
+
+    }
+
+    @FunctionalInterface
+    private interface RecordEncoder<T> { // запись одной записи снимка
+
+        void write(DataOutput out, T record) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    public interface LikeConsumer { // получатель восстановленных лайков
+
+        void accept(Integer filmId, Long userId);
+
+    }
+
+}
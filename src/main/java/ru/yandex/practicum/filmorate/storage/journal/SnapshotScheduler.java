@@ -0,0 +1,155 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.journal.enabled", havingValue = "true")
+public class SnapshotScheduler {
+
+    /* периодическое сохранение снимков состояния хранилищ.
+    снимок останавливает запись только на время открытия срезов: под блокировками хранилищ фиксируются позиция
+    журнала и версия ленты и открываются срезы данных, а чтение, кодирование и запись снимка на диск выполняются
+    после снятия блокировок. хранилища в памяти отдают согласованные многоверсионные срезы на момент открытия;
+    хранилища вне кучи (mapped, tiered) версий не хранят, и их записи читаются по мере записи снимка - снимок
+    может содержать изменения после зафиксированной позиции. все изменения после нее повторно применяются
+    из журнала при восстановлении - сохранение данных идемпотентно. поэтому перед заменой прежнего снимка
+    новый ожидает, пока все изменения, которые он мог увидеть, не будут сохранены в журнале на диске.
+    вместе с позицией журнала сохраняется версия ленты изменений: изменение записывается в журнал и получает
+    версию ленты под блокировкой хранилища, поэтому под теми же блокировками версия снимка учитывает все изменения
+    до позиции журнала, и нумерация ленты после восстановления продолжается без повторной выдачи версий.
+    после записи снимка записи журнала до его позиции больше не нужны и удаляются из файла журнала */
+
+    private final MutationJournal journal;
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final LikeStorage likeStorage;
+    private final ChangeStorage changeStorage;
+    private final Path path;
+    private final long intervalMs;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // зависимость от JournalReplayer гарантирует, что снимки начнут сохраняться после восстановления данных
+    public SnapshotScheduler(MutationJournal journal, UserStorage userStorage, FilmStorage filmStorage,
+                             LikeStorage likeStorage, ChangeStorage changeStorage, JournalReplayer replayer,
+                             @Value("${filmorate.storage.snapshot.path}") String path,
+                             @Value("${filmorate.storage.snapshot.interval-ms}") long intervalMs) {
+        this.journal = journal;
+        this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
+        this.likeStorage = likeStorage;
+        this.changeStorage = changeStorage;
+        this.path = Paths.get(path);
+        this.intervalMs = intervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+
+        if (intervalMs > 0) {
+            executor.scheduleWithFixedDelay(this::takeSnapshotSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // сохранение снимка состояния хранилищ
+    public synchronized void takeSnapshot() throws IOException {
+
+        long started = System.nanoTime();
+
+        /* позиция журнала фиксируется до чтения данных: снимок содержит все изменения до нее.
+        срезы открываются под блокировками хранилищ в порядке пакетной записи - пакет операций изменяет хранилища
+        под теми же блокировками, поэтому срезы в памяти не содержат часть пакета, запись которого еще не в журнале */
+        long sequence;
+        long changeVersion;
+        Stream<User> users;
+        Stream<Film> films;
+        Stream<Map.Entry<Integer, Long>> likes;
+        synchronized (likeStorage) {
+            synchronized (filmStorage) {
+                synchronized (userStorage) {
+                    sequence = journal.lastSequence();
+                    changeVersion = changeStorage.lastVersion();
+                    users = userStorage.streamUsers();
+                    films = filmStorage.streamFilms();
+                    likes = likeStorage.streamLikes();
+                }
+            }
+        }
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        SnapshotCodec.Counts counts;
+        try (users; films; likes) {
+            Map<Integer, List<Long>> likesByFilm = likes.collect(Collectors.groupingBy(Map.Entry::getKey,
+                    Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
+            counts = SnapshotCodec.write(temp, sequence, changeVersion, users, films, likesByFilm);
+        }
+
+        /* записи хранилищ вне кучи прочитаны без среза: изменения, начатые во время чтения, завершаются под
+        блокировками хранилищ, после чего все увиденные снимком изменения сохраняются в журнале на диске */
+        long written;
+        synchronized (likeStorage) {
+            synchronized (filmStorage) {
+                synchronized (userStorage) {
+                    written = journal.lastSequence();
+                }
+            }
+        }
+        journal.sync(written);
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.compact(sequence);
+
+        log.info("Сохранен снимок состояния: пользователей {}, фильмов {}, позиция журнала {}, за {} мс",
+                counts.getUsers(), counts.getFilms(), sequence, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void takeSnapshotSafely() {
+
+        try {
+            takeSnapshot();
+        } catch (Exception e) {
+            log.error("Ошибка сохранения снимка состояния", e);
+        }
+    }
+
+    // снимок при остановке приложения ускоряет следующий запуск
+    @PreDestroy
+    public void stop() {
+
+        executor.shutdownNow();
+        takeSnapshotSafely();
+    }
+
+}
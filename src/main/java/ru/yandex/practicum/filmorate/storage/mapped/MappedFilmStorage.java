@@ -0,0 +1,147 @@
+package ru.yandex.practicum.filmorate.storage.mapped;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.FilmDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.IdFilters;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
+import ru.yandex.practicum.filmorate.storage.journal.RecordCodec;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "mapped")
+public class MappedFilmStorage extends MappedRecordStorage<Integer, Film> implements FilmStorage {
+
+    // реализация хранения информации о фильмах вне кучи в файлах, отображенных в память
+
+    public MappedFilmStorage(@Value("${filmorate.storage.mapped.directory}") String directory,
+                             @Value("${filmorate.storage.mapped.segment-size}") int segmentSize,
+                             MutationJournal journal,
+                             ChangeStorage changeStorage,
+                             ShardLayout shardLayout,
+                             IdFilters idFilters) throws IOException {
+
+        super(new MappedRecordSlab(Paths.get(directory), "films", segmentSize), journal, changeStorage, shardLayout,
+                idFilters.films(), Film::getId, JournalRecord::ofFilm, RecordCodec::encodeFilm, RecordCodec::readFilm,
+                key -> (Integer) key, id -> (int) id);
+    }
+
+    // добавление информации о фильме
+    @Override
+    public Film addFilm(Film film) {
+
+        Film newFilm = film.toBuilder().id((int) allocateId()).build();
+
+        updateFilmData(newFilm); // сохранение информации о фильме
+        log.info("Сохранена информация о фильме: {}", film);
+
+        return newFilm;
+    }
+
+    // пакетное добавление информации о фильмах - одна блокировка и одна запись журнала на диск на пакет
+    @Override
+    public List<Film> addFilms(List<Film> newFilms) {
+
+        List<Film> savedFilms = saveAll(newFilms, film -> film.toBuilder().id((int) allocateId()).build());
+
+        log.info("Сохранено фильмов пакетом: {}", savedFilms.size());
+        return savedFilms;
+    }
+
+    // обновление информации о фильме
+    @Override
+    public Film updateFilm(Film film) {
+
+        if (film.getId() == null || !contains(film.getId())) {
+            throw new FilmDoesNotExistException("Такого фильма нет в списке.");
+        }
+
+        updateFilmData(film); // сохранение обновленной информации
+        log.info("Обновлена информация о фильме: {}", film);
+        return film;
+    }
+
+    // получение списка фильмов - декодирование всех записей
+    @Override
+    public List<Film> listFilms() {
+
+        List<Film> listFilms = list();
+        log.info("Количество фильмов в списке: {}", listFilms.size());
+
+        return listFilms;
+    }
+
+    // последовательное получение фильмов - записи декодируются по мере чтения потока
+    @Override
+    public Stream<Film> streamFilms() {
+
+        log.info("Количество фильмов в списке: {}", size());
+
+        return stream();
+    }
+
+    // получение фильма по идентификатору
+    @Override
+    public Film getFilmById(Integer id) {
+
+        Film film = id == null ? null : find(id);
+        if (film == null) {
+            throw new FilmDoesNotExistException(String.format("Фильм с id %d не найден", id));
+        }
+        return film;
+    }
+
+    // сохранение новой или обновленной информации о фильме
+    @Override
+    public void updateFilmData(Film film) {
+        save(film);
+    }
+
+    // сохранение фильма, только если его версия не изменилась после чтения - защита от потерянных обновлений
+    @Override
+    public boolean compareAndSetFilmData(Film film, long expectedVersion) {
+        return compareAndSet(film, expectedVersion);
+    }
+
+    // восстановление информации о фильме из журнала
+    @Override
+    public void restoreFilmData(Film film) {
+        restore(film, film.getId());
+    }
+
+    // версия последнего сохранения фильма
+    @Override
+    public long getFilmVersion(Integer id) {
+
+        if (id == null || !exists(id)) {
+            throw new FilmDoesNotExistException(String.format("Фильм с id %d не найден", id));
+        }
+        return version(id);
+    }
+
+    // версия списка фильмов - изменяется при сохранении любого фильма, в том числе при изменении лайков
+    @Override
+    public long getFilmsVersion() {
+        return currentVersion();
+    }
+
+    // получение данных о фильмах - представление, декодирующее фильмы при обращении
+    @Override
+    public Map<Integer, Film> getFilmsData() {
+        return view();
+    }
+
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.storage.mapped;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+public class MappedRecordMap<K, V> extends AbstractMap<K, V> {
+
+    // представление записей хранилища вне кучи в виде Map только для чтения - значения декодируются при обращении
+
+    private final MappedRecordSlab slab;
+    private final ToLongFunction<Object> keyToId;
+    private final LongFunction<K> idToKey;
+    private final Function<Long, V> loader;
+
+    public MappedRecordMap(MappedRecordSlab slab, ToLongFunction<Object> keyToId, LongFunction<K> idToKey,
+                           Function<Long, V> loader) {
+        this.slab = slab;
+        this.keyToId = keyToId;
+        this.idToKey = idToKey;
+        this.loader = loader;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && slab.contains(keyToId.applyAsLong(key));
+    }
+
+    @Override
+    public V get(Object key) {
+        return key == null ? null : loader.apply(keyToId.applyAsLong(key));
+    }
+
+    @Override
+    public int size() {
+        return slab.size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+
+        return new AbstractSet<>() {
+
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+
+                // обход индекса хранилища по возрастанию id без копирования
+                return new Iterator<>() {
+
+                    private long nextId = slab.nextId(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return nextId >= 0;
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+
+                        if (nextId < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        long id = nextId;
+                        nextId = slab.nextId(id + 1);
+                        return Map.entry(idToKey.apply(id), loader.apply(id));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return slab.size();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,422 @@
+package ru.yandex.practicum.filmorate.storage.mapped;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.storage.journal.ByteBufferDataInput;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.zip.CRC32;
+
+@Slf4j
+public class MappedRecordSlab implements Closeable {
+
+    /* хранение записей вне кучи в файлах, отображенных в память (сегменты фиксированного размера).
+    сегмент начинается с метки формата, за ней следуют ячейки: емкость (int), признак актуальности (byte),
+    контрольная сумма (int), id (long), номер записи (long), длина данных (int), данные.
+    ячейка на месте не перезаписывается: новая версия записи сохраняется в свободную ячейку, после чего индекс
+    переключается на нее, поэтому прерванная запись не портит предыдущую версию. признак актуальности
+    записывается последним, контрольная сумма охватывает id, номер, длину и данные - при запуске пропускаются
+    ячейки, запись которых прервана остановкой приложения, даже если страницы сегмента сохранены на диск
+    не по порядку. из нескольких актуальных ячеек одного id выбирается ячейка с большим номером записи.
+    замещенная ячейка освобождается только после сброса на диск сегментов с ее заменой (flush - хранилища
+    выполняют его вместе с записью журнала изменений на диск) и затем используется повторно для записей того же
+    размера: емкость ячейки округляется до степени двойки, свободные ячейки хранятся в списках по емкости.
+    в куче хранится только индекс id -> смещение ячейки (8 байт на запись) и списки свободных ячеек */
+
+    private static final int MAGIC = 0x464D5332; // "FMS2"
+    private static final int SEGMENT_HEADER_SIZE = Integer.BYTES;
+
+    private static final int CAPACITY_OFFSET = 0;
+    private static final int LIVE_OFFSET = Integer.BYTES;
+    private static final int CRC_OFFSET = LIVE_OFFSET + 1;
+    private static final int ID_OFFSET = CRC_OFFSET + Integer.BYTES;
+    private static final int STAMP_OFFSET = ID_OFFSET + Long.BYTES;
+    private static final int LENGTH_OFFSET = STAMP_OFFSET + Long.BYTES;
+    private static final int HEADER_SIZE = LENGTH_OFFSET + Integer.BYTES;
+    private static final int MIN_CAPACITY = 64;
+    private static final long NO_OFFSET = -1L;
+
+    private final Path directory;
+    private final String name;
+    private final int segmentSize;
+
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BitSet dirty = new BitSet(); // сегменты с изменениями, не сброшенными на диск
+    private final Map<Integer, ArrayDeque<Long>> free = new HashMap<>(); // свободные ячейки по емкости
+
+    private List<Long> replaced = new ArrayList<>(); // замещенные ячейки, замена которых не сброшена на диск
+    private long[] offsets = new long[1024]; // индекс id -> смещение ячейки
+    private long end; // смещение начала свободного места
+    private long maxId;
+    private long stamp; // номер последней записи
+    private int size;
+
+    public MappedRecordSlab(Path directory, String name, int segmentSize) throws IOException {
+
+        if (segmentSize < SEGMENT_HEADER_SIZE + HEADER_SIZE + MIN_CAPACITY) {
+            throw new IllegalArgumentException("Слишком маленький размер сегмента хранилища " + name);
+        }
+
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+
+        Arrays.fill(offsets, NO_OFFSET);
+        Files.createDirectories(directory);
+
+        while (Files.exists(segmentPath(segments.size()))) {
+            mapSegment(segments.size());
+        }
+        if (segments.isEmpty()) {
+            mapSegment(0);
+        }
+        scan();
+
+        log.info("Открыто хранилище {} в {}: записей {}, сегментов {}", name, directory, size, segments.size());
+    }
+
+    // получатель данных записи
+    @FunctionalInterface
+    public interface Decoder<T> {
+
+        T decode(ByteBufferDataInput in) throws IOException;
+
+    }
+
+    public boolean contains(long id) {
+
+        lock.readLock().lock();
+        try {
+            return offsetOf(id) != NO_OFFSET;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // чтение записи по id, null при отсутствии записи
+    public <T> T read(long id, Decoder<T> decoder) {
+
+        lock.readLock().lock();
+        try {
+            long offset = offsetOf(id);
+            if (offset == NO_OFFSET) {
+                return null;
+            }
+
+            ByteBuffer segment = segments.get(segmentIndex(offset)).duplicate();
+            int position = segmentPosition(offset);
+            int length = segment.getInt(position + LENGTH_OFFSET);
+            segment.position(position + HEADER_SIZE).limit(position + HEADER_SIZE + length);
+
+            return decoder.decode(new ByteBufferDataInput(segment.slice()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка чтения записи " + id + " из хранилища " + name, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* сохранение новой или обновленной записи в свободную ячейку. индекс переключается на новую ячейку
+    после записи данных и признака актуальности, прежняя ячейка остается актуальной до сброса замены на диск */
+    public void put(long id, byte[] payload) {
+
+        if (id < 0 || id >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Недопустимый id записи: " + id);
+        }
+
+        lock.writeLock().lock();
+        try {
+            long existing = offsetOf(id);
+
+            long offset = allocate(capacityFor(payload.length)); // признак актуальности ячейки сброшен
+            ByteBuffer segment = segments.get(segmentIndex(offset)).duplicate();
+            int position = segmentPosition(offset);
+            segment.putLong(position + ID_OFFSET, id);
+            segment.putLong(position + STAMP_OFFSET, ++stamp);
+            segment.putInt(position + LENGTH_OFFSET, payload.length);
+            segment.position(position + HEADER_SIZE);
+            segment.put(payload);
+            segment.putInt(position + CRC_OFFSET, checksum(segment, position, payload.length));
+            segment.put(position + LIVE_OFFSET, (byte) 1); // ячейка актуальна только после записи данных
+            dirty.set(segmentIndex(offset));
+
+            index(id, offset); // публикация новой версии для читателей
+            if (existing != NO_OFFSET) {
+                replaced.add(existing);
+            } else {
+                size++;
+            }
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* проверка размера записи до сохранения: запись, не помещающаяся в сегмент, отклоняется при кодировании,
+    до записи в журнал изменений, а не при сохранении в хранилище после нее */
+    public byte[] checkFits(byte[] payload) {
+
+        if (SEGMENT_HEADER_SIZE + HEADER_SIZE + capacityFor(payload.length) > segmentSize) {
+            throw new IllegalArgumentException("Запись превышает размер сегмента хранилища " + name);
+        }
+        return payload;
+    }
+
+    // перебор id всех записей в порядке возрастания
+    public void forEachId(LongConsumer consumer) {
+
+        for (long id = nextId(0); id != NO_OFFSET; id = nextId(id + 1)) {
+            consumer.accept(id);
+        }
+    }
+
+    // поток id всех записей в порядке возрастания без копирования индекса
+    public LongStream streamIds() {
+
+        long upperId = maxId;
+        return LongStream.rangeClosed(0, upperId).filter(this::contains);
+    }
+
+    // наименьший id записи не меньше from, -1 при отсутствии таких записей
+    public long nextId(long from) {
+
+        lock.readLock().lock();
+        try {
+            for (long id = Math.max(0, from); id <= maxId && id < offsets.length; id++) {
+                if (offsets[(int) id] != NO_OFFSET) {
+                    return id;
+                }
+            }
+            return NO_OFFSET;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long maxId() {
+        return maxId;
+    }
+
+    /* сброс на диск измененных сегментов - запись в сегменты во время сброса не блокируется.
+    ячейки, замененные до сброса, после него освобождаются для повторного использования */
+    public void flush() {
+
+        List<MappedByteBuffer> changed = new ArrayList<>();
+        List<Long> released;
+        lock.writeLock().lock();
+        try {
+            dirty.stream().forEach(index -> changed.add(segments.get(index)));
+            dirty.clear();
+            released = replaced;
+            replaced = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changed.forEach(MappedByteBuffer::force);
+
+        if (!released.isEmpty()) {
+            lock.writeLock().lock();
+            try {
+                released.forEach(this::release);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        flush();
+        flush(); // освобождение ячеек, замененных до первого сброса
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    /* восстановление индекса по содержимому сегментов: ячейки без признака актуальности, с неверной контрольной
+    суммой и замещенные ячейкой с большим номером записи становятся свободными */
+    private void scan() {
+
+        for (int index = 0; index < segments.size(); index++) {
+            ByteBuffer segment = segments.get(index);
+            int position = SEGMENT_HEADER_SIZE;
+
+            while (position + HEADER_SIZE + MIN_CAPACITY <= segmentSize) {
+                int capacity = segment.getInt(position + CAPACITY_OFFSET);
+                if (!isCapacity(capacity) || position + HEADER_SIZE + capacity > segmentSize) {
+                    break; // конец занятого места в сегменте
+                }
+
+                long offset = (long) index * segmentSize + position;
+                if (isValid(segment, position, capacity)) {
+                    long id = segment.getLong(position + ID_OFFSET);
+                    long cellStamp = segment.getLong(position + STAMP_OFFSET);
+                    long current = offsetOf(id);
+                    if (current == NO_OFFSET) {
+                        size++;
+                        index(id, offset);
+                    } else if (stampAt(current) < cellStamp) {
+                        release(current);
+                        index(id, offset);
+                    } else {
+                        release(offset);
+                    }
+                    stamp = Math.max(stamp, cellStamp);
+                } else {
+                    release(offset);
+                }
+                position += HEADER_SIZE + capacity;
+            }
+            end = (long) index * segmentSize + position;
+        }
+    }
+
+    // актуальная ячейка с записанными полностью данными
+    private boolean isValid(ByteBuffer segment, int position, int capacity) {
+
+        if (segment.get(position + LIVE_OFFSET) != 1) {
+            return false;
+        }
+        long id = segment.getLong(position + ID_OFFSET);
+        int length = segment.getInt(position + LENGTH_OFFSET);
+        return id >= 0 && id < Integer.MAX_VALUE && length >= 0 && length <= capacity
+                && segment.getInt(position + CRC_OFFSET) == checksum(segment, position, length);
+    }
+
+    // контрольная сумма id, номера записи, длины и данных ячейки
+    private static int checksum(ByteBuffer segment, int position, int length) {
+
+        ByteBuffer cell = segment.duplicate();
+        cell.limit(position + HEADER_SIZE + length).position(position + ID_OFFSET);
+        CRC32 crc = new CRC32();
+        crc.update(cell);
+        return (int) crc.getValue();
+    }
+
+    // вместимость ячейки с запасом для роста записи при обновлениях
+    private static int capacityFor(int length) {
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(length) << 1);
+    }
+
+    private static boolean isCapacity(int capacity) {
+        return capacity >= MIN_CAPACITY && Integer.bitCount(capacity) == 1;
+    }
+
+    // свободная ячейка нужной емкости из списка освобожденных либо новая ячейка в конце занятого места
+    private long allocate(int capacity) {
+
+        if (SEGMENT_HEADER_SIZE + HEADER_SIZE + capacity > segmentSize) {
+            throw new IllegalArgumentException("Запись превышает размер сегмента хранилища " + name);
+        }
+
+        ArrayDeque<Long> cells = free.get(capacity);
+        if (cells != null && !cells.isEmpty()) {
+            return cells.poll();
+        }
+
+        if (segmentPosition(end) + HEADER_SIZE + capacity > segmentSize) {
+            int next = segmentIndex(end) + 1;
+            if (next >= segments.size()) {
+                try {
+                    mapSegment(next);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Ошибка отображения сегмента хранилища " + name, e);
+                }
+            }
+            end = (long) next * segmentSize + SEGMENT_HEADER_SIZE;
+        }
+
+        long offset = end;
+        segments.get(segmentIndex(offset)).putInt(segmentPosition(offset) + CAPACITY_OFFSET, capacity);
+        dirty.set(segmentIndex(offset));
+        end += HEADER_SIZE + capacity;
+        return offset;
+    }
+
+    // освобождение ячейки для повторного использования
+    private void release(long offset) {
+
+        ByteBuffer segment = segments.get(segmentIndex(offset));
+        int position = segmentPosition(offset);
+        segment.put(position + LIVE_OFFSET, (byte) 0);
+        dirty.set(segmentIndex(offset));
+        free.computeIfAbsent(segment.getInt(position + CAPACITY_OFFSET), capacity -> new ArrayDeque<>())
+                .add(offset);
+    }
+
+    private long stampAt(long offset) {
+        return segments.get(segmentIndex(offset)).getLong(segmentPosition(offset) + STAMP_OFFSET);
+    }
+
+    private long offsetOf(long id) {
+        return id >= 0 && id < offsets.length ? offsets[(int) id] : NO_OFFSET;
+    }
+
+    private void index(long id, long offset) {
+
+        if (id >= offsets.length) {
+            int oldLength = offsets.length;
+            offsets = Arrays.copyOf(offsets, (int) Math.max(id + 1, (long) oldLength * 2));
+            Arrays.fill(offsets, oldLength, offsets.length, NO_OFFSET);
+        }
+        offsets[(int) id] = offset;
+        maxId = Math.max(maxId, id);
+    }
+
+    // отображение сегмента в память, новый сегмент получает метку формата
+    private void mapSegment(int index) throws IOException {
+
+        FileChannel channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+
+        int magic = segment.getInt(0);
+        if (magic == 0) {
+            segment.putInt(0, MAGIC);
+            dirty.set(index);
+        } else if (magic != MAGIC) {
+            channel.close();
+            throw new IOException("Неизвестный формат сегмента хранилища " + segmentPath(index));
+        }
+        channels.add(channel);
+        segments.add(segment);
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%s-%05d.slab", name, index));
+    }
+
+    private int segmentIndex(long offset) {
+        return (int) (offset / segmentSize);
+    }
+
+    private int segmentPosition(long offset) {
+        return (int) (offset % segmentSize);
+    }
+
+}
@@ -0,0 +1,149 @@
+package ru.yandex.practicum.filmorate.storage.mapped;
+
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.IdBloomFilter;
+import ru.yandex.practicum.filmorate.storage.RecordWriter;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+public abstract class MappedRecordStorage<K, T> {
+
+    /* общая часть хранилищ пользователей и фильмов вне кучи: записи хранятся в ячейках MappedRecordSlab,
+    в куче - только индекс ячеек, версии записей и фильтр id. запись выполняется через RecordWriter под
+    блокировкой хранилища, id новых записей выдаются под той же блокировкой. наследники задают тип записи,
+    ее кодирование и проверки, сообщения и исключения для отсутствующих записей */
+
+    private final MappedRecordSlab slab;
+    private final ShardLayout shardLayout;
+    private final EntityVersions versions = new EntityVersions();
+    private final IdBloomFilter idFilter;
+    private final MappedRecordSlab.Decoder<T> decoder;
+    private final RecordWriter<T, byte[]> writer;
+    private final Map<K, T> view;
+
+    private long nextId;
+
+    protected MappedRecordStorage(MappedRecordSlab slab, MutationJournal journal, ChangeStorage changeStorage,
+                                  ShardLayout shardLayout, IdBloomFilter idFilter, ToLongFunction<T> idOf,
+                                  Function<T, JournalRecord> recordOf, Function<T, byte[]> encoder,
+                                  MappedRecordSlab.Decoder<T> decoder, ToLongFunction<Object> keyToId,
+                                  LongFunction<K> idToKey) {
+
+        this.slab = slab;
+        journal.onSync(slab::flush); // файлы хранилища сбрасываются на диск вместе с журналом
+        this.shardLayout = shardLayout;
+        this.idFilter = idFilter;
+        this.decoder = decoder;
+        this.writer = new RecordWriter<>(this, journal, changeStorage, versions, idFilter, idOf, recordOf,
+                value -> slab.checkFits(encoder.apply(value)),
+                (value, payload) -> slab.put(idOf.applyAsLong(value), payload));
+        this.view = new MappedRecordMap<>(slab, keyToId, idToKey, this::load);
+        slab.streamIds().forEach(idFilter::add); // записи, сохраненные в файлах до запуска
+        this.nextId = slab.maxId() + 1;
+    }
+
+    // сохранение новой или обновленной записи
+    protected void save(T value) {
+        writer.save(value);
+    }
+
+    // сохранение записи, только если ее версия не изменилась после чтения - защита от потерянных обновлений
+    protected boolean compareAndSet(T value, long expectedVersion) {
+        return writer.compareAndSet(value, expectedVersion);
+    }
+
+    // пакетное сохранение - одна блокировка и одна запись журнала на диск на пакет, prepare выдает id
+    protected List<T> saveAll(List<T> values, UnaryOperator<T> prepare) {
+        return writer.saveAll(values, prepare);
+    }
+
+    // восстановление записи из журнала, снимка или реплики - новые id выдаются после восстановленных
+    protected synchronized void restore(T value, long id) {
+
+        writer.restore(value);
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    // все записи - декодирование каждой записи
+    protected List<T> list() {
+
+        List<T> values = new ArrayList<>(slab.size());
+        slab.forEachId(id -> {
+            T value = load(id);
+            if (value != null) {
+                values.add(value);
+            }
+        });
+        return values;
+    }
+
+    // последовательное чтение записей - записи декодируются по мере чтения потока
+    protected Stream<T> stream() {
+
+        return slab.streamIds()
+                .mapToObj(this::load)
+                .filter(Objects::nonNull);
+    }
+
+    // запись по id через фильтр id, null при отсутствии записи
+    protected T find(long id) {
+        return idFilter.find(id, this::load);
+    }
+
+    protected boolean exists(long id) {
+        return idFilter.exists(id, slab::contains);
+    }
+
+    protected boolean contains(long id) {
+        return slab.contains(id);
+    }
+
+    protected int size() {
+        return slab.size();
+    }
+
+    protected long version(long id) {
+        return versions.get(id);
+    }
+
+    protected long currentVersion() {
+        return versions.current();
+    }
+
+    // представление, декодирующее записи при обращении
+    protected Map<K, T> view() {
+        return view;
+    }
+
+    // выдача следующего id, принадлежащего текущему узлу
+    protected synchronized long allocateId() {
+
+        long id = shardLayout.ownedIdFrom(nextId);
+        nextId = id + 1;
+        return id;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        slab.close();
+    }
+
+    private T load(long id) {
+        return slab.read(id, decoder);
+    }
+
+}
@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.storage.mapped;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.IdFilters;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
+import ru.yandex.practicum.filmorate.storage.journal.RecordCodec;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "mapped")
+public class MappedUserStorage extends MappedRecordStorage<Long, User> implements UserStorage {
+
+    // реализация хранения информации о пользователях вне кучи в файлах, отображенных в память
+
+    public MappedUserStorage(@Value("${filmorate.storage.mapped.directory}") String directory,
+                             @Value("${filmorate.storage.mapped.segment-size}") int segmentSize,
+                             MutationJournal journal,
+                             ChangeStorage changeStorage,
+                             ShardLayout shardLayout,
+                             IdFilters idFilters) throws IOException {
+
+        super(new MappedRecordSlab(Paths.get(directory), "users", segmentSize), journal, changeStorage, shardLayout,
+                idFilters.users(), User::getId, JournalRecord::ofUser, RecordCodec::encodeUser, RecordCodec::readUser,
+                key -> (Long) key, id -> id);
+    }
+
+    //добавление информации о пользователе
+    @Override
+    public User addUser(User user) {
+
+        User newUser = user.toBuilder().id(allocateId()).build();
+
+        if (isFieldEmpty(user.getName())) { // устанавливаем логин в качестве имени в случае незаполненного поля
+            newUser = newUser.toBuilder().name(user.getLogin()).build();
+        }
+
+        updateUserData(newUser); // сохранение информации о пользователе
+        log.info("Сохранен пользователь: {}", user);
+
+        return newUser;
+    }
+
+    // пакетное добавление информации о пользователях - одна блокировка и одна запись журнала на диск на пакет
+    @Override
+    public List<User> addUsers(List<User> newUsers) {
+
+        List<User> savedUsers = saveAll(newUsers, user -> user.toBuilder()
+                .id(allocateId())
+                .name(isFieldEmpty(user.getName()) ? user.getLogin() : user.getName())
+                .build());
+
+        log.info("Сохранено пользователей пакетом: {}", savedUsers.size());
+        return savedUsers;
+    }
+
+    // обновление информации о пользователе
+    @Override
+    public User updateUser(User user) {
+
+        if (user.getId() == null || !contains(user.getId())) {
+            throw new UserDoesNotExistException("Такого пользователя нет в списке.");
+        }
+
+        User newUser;
+
+        if (isFieldEmpty(user.getName())) {
+            newUser = user.toBuilder().name(user.getLogin()).build(); // устанавливаем логин в качестве имени в случае незаполненного поля
+        } else {
+            newUser = user;
+        }
+
+        updateUserData(newUser); // обновление информации о пользователе
+        log.info("Обновлены данные пользователя {}", user);
+        return newUser;
+    }
+
+    // получение списка пользователей - декодирование всех записей
+    @Override
+    public List<User> listUsers() {
+
+        List<User> listUsers = list();
+        log.info("Количество пользователей в списке: {}", listUsers.size());
+
+        return listUsers;
+    }
+
+    // последовательное получение пользователей - записи декодируются по мере чтения потока
+    @Override
+    public Stream<User> streamUsers() {
+
+        log.info("Количество пользователей в списке: {}", size());
+
+        return stream();
+    }
+
+    @Override
+    public User getUserById(Long id) { // получение пользователя по идентификатору
+
+        User user = id == null ? null : find(id);
+        if (user == null) {
+            throw new UserDoesNotExistException(String.format("Пользователь с id %d не найден", id));
+        }
+        return user;
+    }
+
+    @Override
+    public void updateUserData(User user) { // сохранение новой или обновленной информации о пользователе
+        save(user);
+    }
+
+    // сохранение пользователя, только если его версия не изменилась после чтения - защита от потерянных обновлений
+    @Override
+    public boolean compareAndSetUserData(User user, long expectedVersion) {
+        return compareAndSet(user, expectedVersion);
+    }
+
+    @Override
+    public void restoreUserData(User user) { // восстановление информации о пользователе из журнала
+        restore(user, user.getId());
+    }
+
+    @Override
+    public long getUserVersion(Long id) { // версия последнего сохранения пользователя
+
+        if (id == null || !exists(id)) {
+            throw new UserDoesNotExistException(String.format("Пользователь с id %d не найден", id));
+        }
+        return version(id);
+    }
+
+    @Override
+    public long getUsersVersion() { // версия списка пользователей
+        return currentVersion();
+    }
+
+    @Override
+    public Map<Long, User> getUsersData() { // представление, декодирующее пользователей при обращении
+        return view();
+    }
+
+    private boolean isFieldEmpty(String fieldValue) { // проверка является ли поле пустым
+        return fieldValue == null || fieldValue.isBlank();
+    }
+
+}
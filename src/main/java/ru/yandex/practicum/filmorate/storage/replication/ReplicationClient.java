@@ -0,0 +1,201 @@
+package ru.yandex.practicum.filmorate.storage.replication;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.ReplicationStatus;
+import ru.yandex.practicum.filmorate.service.Command;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.RecordType;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.replication.role", havingValue = "replica")
+public class ReplicationClient implements ReplicationNode {
+
+    /* получение изменений основного узла репликой и применение их к хранилищам в памяти без записи в журнал.
+    примененные изменения регистрируются в ленте изменений реплики - по ней обновляются индексы поиска и выборок
+    и читают изменения потребители реплики.
+    при разрыве соединения реплика переподключается и продолжает с версии последнего примененного изменения.
+    реплика считается актуальной, пока с момента совпадения с последней версией основного узла
+    прошло не больше допустимого отставания */
+
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final LikeStorage likeStorage;
+    private final ChangeStorage changeStorage;
+    private final String host;
+    private final int port;
+    private final long maxLagMs;
+    private final long reconnectMs;
+
+    private final Thread receiver = new Thread(this::receive, "replication-receiver");
+
+    private volatile boolean connected;
+    private volatile long appliedVersion; // версия последнего примененного изменения
+    private volatile long primaryVersion; // последняя версия основного узла из кадров HEARTBEAT
+    private volatile long caughtUpAt; // момент, когда реплика последний раз совпадала с основным узлом
+
+    private Map<Integer, Set<Long>> snapshotLikes; // лайки принимаемого снимка, null вне снимка
+
+    public ReplicationClient(UserStorage userStorage, FilmStorage filmStorage, LikeStorage likeStorage,
+                             ChangeStorage changeStorage,
+                             @Value("${filmorate.replication.host}") String host,
+                             @Value("${filmorate.replication.port}") int port,
+                             @Value("${filmorate.replication.max-lag-ms}") long maxLagMs,
+                             @Value("${filmorate.replication.reconnect-ms}") long reconnectMs) {
+        this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
+        this.likeStorage = likeStorage;
+        this.changeStorage = changeStorage;
+        this.host = host;
+        this.port = port;
+        this.maxLagMs = maxLagMs;
+        this.reconnectMs = reconnectMs;
+    }
+
+    @PostConstruct
+    public void start() {
+
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+
+        receiver.interrupt();
+    }
+
+    @Override
+    public ReplicationStatus status() {
+
+        long applied = appliedVersion;
+        long primary = Math.max(primaryVersion, applied);
+        return ReplicationStatus.builder()
+                .role("replica")
+                .connected(connected)
+                .appliedVersion(applied)
+                .primaryVersion(primary)
+                .lagVersions(primary - applied)
+                .stalenessMs(caughtUpAt == 0 ? null : System.currentTimeMillis() - caughtUpAt)
+                .build();
+    }
+
+    @Override
+    public boolean isFresh() {
+
+        return caughtUpAt != 0 && System.currentTimeMillis() - caughtUpAt <= maxLagMs;
+    }
+
+    private void receive() {
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), (int) reconnectMs);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+                out.writeLong(appliedVersion);
+                out.flush();
+                connected = true;
+                log.info("Подключение к основному узлу {}:{} с версии {}", host, port, appliedVersion);
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    apply(ReplicationProtocol.readFrame(in));
+                }
+            } catch (IOException e) {
+                if (connected) {
+                    log.warn("Соединение с основным узлом потеряно: {}", e.toString());
+                }
+            } finally {
+                connected = false;
+                snapshotLikes = null;
+            }
+
+            try {
+                Thread.sleep(reconnectMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void apply(ReplicationProtocol.Frame frame) {
+
+        switch (frame.type) {
+            case ReplicationProtocol.CHANGE:
+                applyRecord(frame.record);
+                appliedVersion = frame.version;
+                break;
+            case ReplicationProtocol.SNAPSHOT_BEGIN:
+                log.info("Получение снимка состояния, версия {}", frame.version);
+                snapshotLikes = new HashMap<>();
+                break;
+            case ReplicationProtocol.SNAPSHOT_RECORD:
+                applyRecord(frame.record);
+                if (frame.record.getType() == RecordType.LIKE_ADDED) {
+                    snapshotLikes.computeIfAbsent(frame.record.getFilmId(), id -> new HashSet<>())
+                            .add(frame.record.getUserId());
+                }
+                break;
+            case ReplicationProtocol.SNAPSHOT_END:
+                removeLikesMissingInSnapshot();
+                snapshotLikes = null;
+                appliedVersion = frame.version; // версии основного узла могли начаться заново после перезапуска
+                break;
+            case ReplicationProtocol.HEARTBEAT:
+                primaryVersion = frame.version;
+                if (appliedVersion >= frame.version) {
+                    caughtUpAt = System.currentTimeMillis();
+                }
+                break;
+            default:
+                throw new IllegalStateException("Неизвестный тип кадра репликации: " + frame.type);
+        }
+    }
+
+    // применение записи к хранилищам так же, как при восстановлении из журнала, и регистрация в ленте реплики
+    private void applyRecord(JournalRecord record) {
+
+        switch (record.getType()) {
+            case USER:
+                userStorage.restoreUserData(record.getUser());
+                break;
+            case FILM:
+                filmStorage.restoreFilmData(record.getFilm());
+                break;
+            case LIKE_ADDED:
+                likeStorage.restoreLike(record.getFilmId(), record.getUserId(), Command.ADD);
+                break;
+            case LIKE_REMOVED:
+                likeStorage.restoreLike(record.getFilmId(), record.getUserId(), Command.DELETE);
+                break;
+        }
+        changeStorage.addChange(record);
+    }
+
+    // удаление лайков, отмененных на основном узле, пока реплика была отключена
+    private void removeLikesMissingInSnapshot() {
+
+        likeStorage.getLikesData().forEach((filmId, userIds) -> userIds.stream()
+                .filter(userId -> !snapshotLikes.getOrDefault(filmId, Set.of()).contains(userId))
+                .forEach(userId -> applyRecord(JournalRecord.ofLikeRemoved(filmId, userId))));
+    }
+
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.storage.replication;
+
+import ru.yandex.practicum.filmorate.model.ReplicationStatus;
+
+// узел репликации - основной узел или реплика
+
+public interface ReplicationNode {
+
+    ReplicationStatus status(); // текущее состояние репликации и отставание реплик
+
+    boolean isFresh(); // данные узла отстают от основного узла не больше допустимого
+
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.storage.replication;
+
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.RecordCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+final class ReplicationProtocol {
+
+    /* формат обмена между основным узлом и репликой.
+    реплика после подключения передает версию последнего примененного изменения (long), далее основной узел
+    передает кадры: тип (byte), версия (long), время (long), длина данных (int), данные записи журнала.
+    снимок состояния передается кадрами SNAPSHOT_* и применяется идемпотентно, как и последующие изменения */
+
+    static final byte CHANGE = 1; // изменение из ленты изменений
+    static final byte SNAPSHOT_BEGIN = 2; // начало снимка, версия - позиция ленты, с которой продолжатся изменения
+    static final byte SNAPSHOT_RECORD = 3; // пользователь, фильм или лайк из снимка
+    static final byte SNAPSHOT_END = 4; // конец снимка
+    static final byte HEARTBEAT = 5; // последняя версия основного узла - для вычисления отставания реплики
+
+    private ReplicationProtocol() {
+    }
+
+    static void writeFrame(DataOutputStream out, byte type, long version, long timestamp, JournalRecord record)
+            throws IOException {
+
+        byte[] payload = record == null ? new byte[0] : RecordCodec.encode(record);
+
+        out.writeByte(type);
+        out.writeLong(version);
+        out.writeLong(timestamp);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    static Frame readFrame(DataInputStream in) throws IOException {
+
+        byte type = in.readByte();
+        long version = in.readLong();
+        long timestamp = in.readLong();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+
+        return new Frame(type, version, timestamp, payload.length == 0 ? null : RecordCodec.decode(payload));
+    }
+
+    // преобразование изменения из ленты в запись журнала для передачи реплике
+    static JournalRecord toRecord(Change change) {
+
+        switch (change.getChangeType()) {
+            case USER_SAVED:
+                return JournalRecord.ofUser(change.getUser());
+            case FILM_SAVED:
+                return JournalRecord.ofFilm(change.getFilm());
+            case LIKE_ADDED:
+                return JournalRecord.ofLikeAdded(change.getFilmId(), change.getUserId());
+            default:
+                return JournalRecord.ofLikeRemoved(change.getFilmId(), change.getUserId());
+        }
+    }
+
+    static final class Frame {
+
+        final byte type;
+        final long version;
+        final long timestamp;
+        final JournalRecord record;
+
+        Frame(byte type, long version, long timestamp, JournalRecord record) {
+            this.type = type;
+            this.version = version;
+            this.timestamp = timestamp;
+            this.record = record;
+        }
+    }
+
+}
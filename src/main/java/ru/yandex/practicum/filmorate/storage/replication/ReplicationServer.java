@@ -0,0 +1,200 @@
+package ru.yandex.practicum.filmorate.storage.replication;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.model.ChangeFeed;
+import ru.yandex.practicum.filmorate.model.ReplicationStatus;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.replication.role", havingValue = "primary")
+public class ReplicationServer implements ReplicationNode {
+
+    /* передача изменений основного узла репликам по сокету. для каждой реплики отдельный поток читает ленту
+    изменений с версии, присланной репликой, и передает изменения пачками. если изменения уже вытеснены
+    из ленты, реплике сначала передается снимок состояния хранилищ. после каждой пачки и при отсутствии
+    изменений передается последняя версия основного узла - по ней реплика вычисляет свое отставание */
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final ChangeStorage changeStorage;
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final LikeStorage likeStorage;
+    private final String host;
+    private final int port;
+    private final long heartbeatMs;
+
+    private final Map<String, Long> replicas = new ConcurrentHashMap<>(); // адрес реплики / переданная версия
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "replication-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ServerSocket serverSocket;
+
+    public ReplicationServer(ChangeStorage changeStorage, UserStorage userStorage, FilmStorage filmStorage,
+                             LikeStorage likeStorage,
+                             @Value("${filmorate.replication.host}") String host,
+                             @Value("${filmorate.replication.port}") int port,
+                             @Value("${filmorate.replication.heartbeat-ms}") long heartbeatMs) {
+        this.changeStorage = changeStorage;
+        this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
+        this.likeStorage = likeStorage;
+        this.host = host;
+        this.port = port;
+        this.heartbeatMs = heartbeatMs;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(host));
+        executor.execute(this::acceptReplicas);
+        log.info("Передача изменений репликам на {}:{}", host, port);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    @Override
+    public ReplicationStatus status() {
+
+        long lastVersion = changeStorage.lastVersion();
+        return ReplicationStatus.builder()
+                .role("primary")
+                .connected(true)
+                .appliedVersion(lastVersion)
+                .primaryVersion(lastVersion)
+                .lagVersions(0L)
+                .stalenessMs(0L)
+                .replicas(Map.copyOf(replicas))
+                .build();
+    }
+
+    @Override
+    public boolean isFresh() {
+        return true;
+    }
+
+    private void acceptReplicas() {
+
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Ошибка подключения реплики: {}", e.toString());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+
+        String address = socket.getRemoteSocketAddress().toString();
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            long sinceVersion = in.readLong();
+            log.info("Подключена реплика {} с версией {}", address, sinceVersion);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                ChangeFeed feed = changeStorage.listChanges(sinceVersion, BATCH_SIZE);
+
+                if (feed.isResyncRequired()) {
+                    sinceVersion = sendSnapshot(out);
+                    continue;
+                }
+
+                for (Change change : feed.getChanges()) {
+                    ReplicationProtocol.writeFrame(out, ReplicationProtocol.CHANGE, change.getVersion(),
+                            change.getTimestamp(), ReplicationProtocol.toRecord(change));
+                    sinceVersion = change.getVersion();
+                }
+                ReplicationProtocol.writeFrame(out, ReplicationProtocol.HEARTBEAT, feed.getLastVersion(),
+                        System.currentTimeMillis(), null);
+                out.flush();
+                replicas.put(address, sinceVersion);
+
+                if (feed.getChanges().isEmpty()) {
+                    changeStorage.awaitChange(sinceVersion, heartbeatMs);
+                }
+            }
+        } catch (IOException e) {
+            log.info("Реплика {} отключена: {}", address, e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replicas.remove(address);
+        }
+    }
+
+    /* передача снимка состояния хранилищ. версия фиксируется до чтения хранилищ, поэтому изменения,
+    попавшие в снимок, будут переданы реплике повторно - их применение идемпотентно */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+
+        long version = changeStorage.lastVersion();
+        long timestamp = System.currentTimeMillis();
+        log.info("Передача снимка состояния реплике, версия {}", version);
+
+        ReplicationProtocol.writeFrame(out, ReplicationProtocol.SNAPSHOT_BEGIN, version, timestamp, null);
+
+        try (Stream<JournalRecord> users = userStorage.streamUsers().map(JournalRecord::ofUser)) {
+            writeSnapshotRecords(out, users.iterator(), version, timestamp);
+        }
+        try (Stream<JournalRecord> films = filmStorage.streamFilms().map(JournalRecord::ofFilm)) {
+            writeSnapshotRecords(out, films.iterator(), version, timestamp);
+        }
+        for (Map.Entry<Integer, Set<Long>> filmLikes : likeStorage.getLikesData().entrySet()) {
+            for (Long userId : filmLikes.getValue()) {
+                ReplicationProtocol.writeFrame(out, ReplicationProtocol.SNAPSHOT_RECORD, version, timestamp,
+                        JournalRecord.ofLikeAdded(filmLikes.getKey(), userId));
+            }
+        }
+
+        ReplicationProtocol.writeFrame(out, ReplicationProtocol.SNAPSHOT_END, version, timestamp, null);
+        return version;
+    }
+
+    private void writeSnapshotRecords(DataOutputStream out, Iterator<JournalRecord> records, long version,
+                                      long timestamp) throws IOException {
+
+        while (records.hasNext()) {
+            ReplicationProtocol.writeFrame(out, ReplicationProtocol.SNAPSHOT_RECORD, version, timestamp,
+                    records.next());
+        }
+    }
+
+}
@@ -0,0 +1,376 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+final class CompressedBitmap {
+
+    /* сжатое множество неотрицательных целых по схеме Roaring: числа делятся на блоки по старшим 16 битам,
+    блок хранит младшие 16 бит либо упорядоченным массивом (до 4096 чисел, 2 байта на число), либо битовой
+    картой на 65536 значений (8 КБ). пересечение и объединение выполняются поблочно: карты - словами по 64 бита,
+    массивы - слиянием или проверкой по карте. мощность блока хранится, поэтому мощность множества и мощность
+    пересечения считаются без обхода отдельных чисел карт */
+
+    private static final int ARRAY_MAX = 4096; // наибольшее число значений в блоке-массиве
+    private static final int WORDS = 1024; // слов по 64 бита в блоке-карте
+
+    private char[] keys = new char[0]; // старшие 16 бит блоков по возрастанию
+    private Block[] blocks = new Block[0];
+    private int blockCount;
+
+    void add(int value) {
+
+        char key = (char) (value >>> 16);
+        int position = Arrays.binarySearch(keys, 0, blockCount, key);
+        if (position < 0) {
+            position = -position - 1;
+            insertBlock(position, key, new Block(new char[4], null, 0));
+        }
+        blocks[position].add((char) value);
+    }
+
+    void remove(int value) {
+
+        int position = Arrays.binarySearch(keys, 0, blockCount, (char) (value >>> 16));
+        if (position < 0) {
+            return;
+        }
+        Block block = blocks[position];
+        block.remove((char) value);
+        if (block.cardinality == 0) {
+            System.arraycopy(keys, position + 1, keys, position, blockCount - position - 1);
+            System.arraycopy(blocks, position + 1, blocks, position, blockCount - position - 1);
+            blocks[--blockCount] = null;
+        }
+    }
+
+    int cardinality() {
+
+        int cardinality = 0;
+        for (int i = 0; i < blockCount; i++) {
+            cardinality += blocks[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    // мощность пересечения без построения результата
+    int andCardinality(CompressedBitmap other) {
+
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < blockCount && j < other.blockCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                cardinality += blocks[i++].andCardinality(other.blocks[j++]);
+            }
+        }
+        return cardinality;
+    }
+
+    CompressedBitmap and(CompressedBitmap other) {
+
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < blockCount && j < other.blockCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Block block = blocks[i].and(other.blocks[j]);
+                if (block.cardinality > 0) {
+                    result.insertBlock(result.blockCount, keys[i], block);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    CompressedBitmap or(CompressedBitmap other) {
+
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < blockCount || j < other.blockCount) {
+            if (j == other.blockCount || i < blockCount && keys[i] < other.keys[j]) {
+                result.insertBlock(result.blockCount, keys[i], blocks[i++].copy());
+            } else if (i == blockCount || keys[i] > other.keys[j]) {
+                result.insertBlock(result.blockCount, other.keys[j], other.blocks[j++].copy());
+            } else {
+                result.insertBlock(result.blockCount, keys[i], blocks[i++].or(other.blocks[j++]));
+            }
+        }
+        return result;
+    }
+
+    // обход count чисел по возрастанию, начиная с числа с номером offset, - блоки до offset пропускаются целиком
+    void forEach(int offset, int count, IntConsumer action) {
+
+        int skip = offset;
+        int left = count;
+        for (int i = 0; i < blockCount && left > 0; i++) {
+            Block block = blocks[i];
+            if (skip >= block.cardinality) {
+                skip -= block.cardinality;
+                continue;
+            }
+            left -= block.forEach(keys[i] << 16, skip, left, action);
+            skip = 0;
+        }
+    }
+
+    void clear() {
+        keys = new char[0];
+        blocks = new Block[0];
+        blockCount = 0;
+    }
+
+    int sizeInBytes() {
+
+        int size = 0;
+        for (int i = 0; i < blockCount; i++) {
+            size += 2 + (blocks[i].bits != null ? WORDS * 8 : blocks[i].values.length * 2);
+        }
+        return size;
+    }
+
+    private void insertBlock(int position, char key, Block block) {
+
+        if (blockCount == keys.length) {
+            int capacity = Math.max(4, blockCount * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            blocks = Arrays.copyOf(blocks, capacity);
+        }
+        System.arraycopy(keys, position, keys, position + 1, blockCount - position);
+        System.arraycopy(blocks, position, blocks, position + 1, blockCount - position);
+        keys[position] = key;
+        blocks[position] = block;
+        blockCount++;
+    }
+
+    private static final class Block {
+
+        private char[] values; // упорядоченные младшие 16 бит (первые cardinality элементов), если bits == null
+        private long[] bits; // битовая карта блока
+        private int cardinality;
+
+        private Block(char[] values, long[] bits, int cardinality) {
+            this.values = values;
+            this.bits = bits;
+            this.cardinality = cardinality;
+        }
+
+        // блок из битовой карты - небольшой блок сохраняется массивом
+        private static Block ofBits(long[] bits, int cardinality) {
+
+            Block block = new Block(null, bits, cardinality);
+            if (cardinality <= ARRAY_MAX) {
+                block.toArray();
+            }
+            return block;
+        }
+
+        private boolean contains(char value) {
+
+            if (bits != null) {
+                return (bits[value >>> 6] & 1L << value) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        private void add(char value) {
+
+            if (bits != null) {
+                long word = bits[value >>> 6];
+                bits[value >>> 6] = word | 1L << value;
+                cardinality += (word & 1L << value) == 0 ? 1 : 0;
+                return;
+            }
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+            if (position >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toBits();
+                add(value);
+                return;
+            }
+            position = -position - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, values.length * 2)));
+            }
+            System.arraycopy(values, position, values, position + 1, cardinality - position);
+            values[position] = value;
+            cardinality++;
+        }
+
+        private void remove(char value) {
+
+            if (bits != null) {
+                if (contains(value)) {
+                    bits[value >>> 6] &= ~(1L << value);
+                    if (--cardinality <= ARRAY_MAX) {
+                        toArray();
+                    }
+                }
+                return;
+            }
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+            if (position >= 0) {
+                System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+                cardinality--;
+            }
+        }
+
+        private int andCardinality(Block other) {
+
+            if (bits != null && other.bits != null) {
+                int cardinality = 0;
+                for (int i = 0; i < WORDS; i++) {
+                    cardinality += Long.bitCount(bits[i] & other.bits[i]);
+                }
+                return cardinality;
+            }
+            Block array = bits == null ? this : other;
+            Block probe = array == this ? other : this;
+            int cardinality = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                cardinality += probe.contains(array.values[i]) ? 1 : 0;
+            }
+            return cardinality;
+        }
+
+        private Block and(Block other) {
+
+            if (bits != null && other.bits != null) {
+                long[] result = new long[WORDS];
+                int cardinality = 0;
+                for (int i = 0; i < WORDS; i++) {
+                    result[i] = bits[i] & other.bits[i];
+                    cardinality += Long.bitCount(result[i]);
+                }
+                return ofBits(result, cardinality);
+            }
+            Block array = bits == null ? this : other;
+            Block probe = array == this ? other : this;
+            char[] result = new char[array.cardinality];
+            int cardinality = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (probe.contains(array.values[i])) {
+                    result[cardinality++] = array.values[i];
+                }
+            }
+            return new Block(result, null, cardinality);
+        }
+
+        private Block or(Block other) {
+
+            if (bits == null && other.bits == null && cardinality + other.cardinality <= ARRAY_MAX) {
+                char[] result = new char[cardinality + other.cardinality];
+                int i = 0;
+                int j = 0;
+                int k = 0;
+                while (i < cardinality || j < other.cardinality) {
+                    if (j == other.cardinality || i < cardinality && values[i] < other.values[j]) {
+                        result[k++] = values[i++];
+                    } else if (i == cardinality || values[i] > other.values[j]) {
+                        result[k++] = other.values[j++];
+                    } else {
+                        result[k++] = values[i++];
+                        j++;
+                    }
+                }
+                return new Block(result, null, k);
+            }
+            long[] result = toWords();
+            int cardinality = 0;
+            for (int i = 0; i < WORDS; i++) {
+                result[i] |= other.bits != null ? other.bits[i] : 0;
+            }
+            if (other.bits == null) {
+                for (int i = 0; i < other.cardinality; i++) {
+                    result[other.values[i] >>> 6] |= 1L << other.values[i];
+                }
+            }
+            for (int i = 0; i < WORDS; i++) {
+                cardinality += Long.bitCount(result[i]);
+            }
+            return ofBits(result, cardinality);
+        }
+
+        // обход до count значений с номера skip, возвращает число обойденных значений
+        private int forEach(int high, int skip, int count, IntConsumer action) {
+
+            int visited = 0;
+            if (bits == null) {
+                for (int i = skip; i < cardinality && visited < count; i++, visited++) {
+                    action.accept(high | values[i]);
+                }
+                return visited;
+            }
+            int seen = 0;
+            for (int i = 0; i < WORDS && visited < count; i++) {
+                long word = bits[i];
+                int wordCount = Long.bitCount(word);
+                if (seen + wordCount <= skip) {
+                    seen += wordCount;
+                    continue;
+                }
+                while (word != 0 && visited < count) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    if (seen++ >= skip) {
+                        action.accept(high | i << 6 | bit);
+                        visited++;
+                    }
+                }
+            }
+            return visited;
+        }
+
+        private Block copy() {
+            return new Block(values == null ? null : values.clone(), bits == null ? null : bits.clone(), cardinality);
+        }
+
+        private long[] toWords() {
+
+            if (bits != null) {
+                return bits.clone();
+            }
+            long[] words = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        private void toBits() {
+            bits = toWords();
+            values = null;
+        }
+
+        private void toArray() {
+
+            char[] array = new char[Math.max(4, cardinality)];
+            int k = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = bits[i];
+                while (word != 0) {
+                    array[k++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            values = array;
+            bits = null;
+        }
+
+    }
+
+}
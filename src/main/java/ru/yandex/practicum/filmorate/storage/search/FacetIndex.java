@@ -0,0 +1,143 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.model.ChangeType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+public class FacetIndex extends FeedIndex {
+
+    /* битовые индексы фильмов по жанрам и рейтингам MPA, обновляемые по ленте изменений: для каждого значения -
+    сжатое множество id фильмов. выбранные значения одного признака объединяются (OR), признаки пересекаются (AND).
+    число фильмов для каждого значения признака считается по выбору другого признака - клиент видит, сколько
+    фильмов добавит или оставит смена значения. все числа - мощности пересечений множеств, без обхода фильмов */
+
+    private final FilmStorage filmStorage;
+
+    private final Map<Genre, CompressedBitmap> genres = new EnumMap<>(Genre.class);
+    private final Map<RatingMPA, CompressedBitmap> ratings = new EnumMap<>(RatingMPA.class);
+    private final CompressedBitmap all = new CompressedBitmap(); // все фильмы
+
+    public FacetIndex(FilmStorage filmStorage, ChangeStorage changeStorage) {
+        super(changeStorage);
+        this.filmStorage = filmStorage;
+        for (Genre genre : Genre.values()) {
+            genres.put(genre, new CompressedBitmap());
+        }
+        for (RatingMPA rating : RatingMPA.values()) {
+            ratings.put(rating, new CompressedBitmap());
+        }
+    }
+
+    // id фильмов страницы выборки по возрастанию, размер выборки и число фильмов для каждого значения признаков
+    public Page select(Set<Genre> selectedGenres, Set<RatingMPA> selectedRatings, int offset, int count) {
+
+        awaitReady();
+
+        lock.readLock().lock();
+        try {
+            CompressedBitmap byGenre = union(genres, selectedGenres);
+            CompressedBitmap byRating = union(ratings, selectedRatings);
+            CompressedBitmap selected = byGenre.and(byRating);
+
+            List<Integer> ids = new ArrayList<>();
+            selected.forEach(offset, count, ids::add);
+
+            Map<Genre, Integer> genreCounts = new EnumMap<>(Genre.class);
+            genres.forEach((genre, films) -> genreCounts.put(genre, films.andCardinality(byRating)));
+            Map<RatingMPA, Integer> ratingCounts = new EnumMap<>(RatingMPA.class);
+            ratings.forEach((rating, films) -> ratingCounts.put(rating, films.andCardinality(byGenre)));
+
+            return new Page(ids, selected.cardinality(), genreCounts, ratingCounts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void rebuild() {
+
+        all.clear();
+        genres.values().forEach(CompressedBitmap::clear);
+        ratings.values().forEach(CompressedBitmap::clear);
+        try (Stream<Film> films = filmStorage.streamFilms()) {
+            films.forEach(this::put);
+        }
+
+        int size = all.sizeInBytes();
+        for (CompressedBitmap films : genres.values()) {
+            size += films.sizeInBytes();
+        }
+        for (CompressedBitmap films : ratings.values()) {
+            size += films.sizeInBytes();
+        }
+        log.info("Построены битовые индексы жанров и рейтингов: фильмов {}, размер {} байт", all.cardinality(), size);
+    }
+
+    @Override
+    protected void apply(Change change) {
+
+        if (change.getChangeType() == ChangeType.FILM_SAVED) {
+            put(change.getFilm());
+        }
+    }
+
+    // фильмы с любым из выбранных значений признака, без выбора - все фильмы
+    private <E extends Enum<E>> CompressedBitmap union(Map<E, CompressedBitmap> index, Set<E> selected) {
+
+        if (selected == null || selected.isEmpty()) {
+            return all;
+        }
+        CompressedBitmap union = new CompressedBitmap();
+        for (E value : selected) {
+            union = union.or(index.get(value));
+        }
+        return union;
+    }
+
+    private void put(Film film) {
+
+        int id = film.getId();
+        all.add(id);
+        genres.forEach((genre, films) -> set(films, id, film.getGenres() != null && film.getGenres().contains(genre)));
+        ratings.forEach((rating, films) -> set(films, id, rating == film.getRatingMPA()));
+    }
+
+    private static void set(CompressedBitmap films, int id, boolean present) {
+
+        if (present) {
+            films.add(id);
+        } else {
+            films.remove(id);
+        }
+    }
+
+    @Value
+    public static class Page {
+
+        List<Integer> ids; // id фильмов страницы
+
+        int total; // число фильмов в выборке
+
+        Map<Genre, Integer> genreCounts; // число фильмов с жанром среди выбранных по рейтингу
+
+        Map<RatingMPA, Integer> ratingCounts; // число фильмов с рейтингом среди выбранных по жанрам
+
+    }
+
+}
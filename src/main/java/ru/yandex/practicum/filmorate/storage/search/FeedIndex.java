@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Slf4j
+public abstract class FeedIndex {
+
+    /* индекс в памяти, обновляемый при каждом изменении хранилищ: лента вызывает индекс для каждого изменения
+    в порядке версий в своем потоке индексов - запись в хранилища не ждет обновления индексов, а чтение
+    не применяет изменения и не зависит от того, сколько изменений помещается в ленте. чтение ждет применения
+    изменений до последней версии ленты на момент запроса - запрос видит уже завершенные записи.
+    полным чтением хранилищ индекс строится один раз - при запуске приложения или при первом обращении,
+    если запуска не было; изменения, пришедшие во время построения, запоминаются и применяются после него
+    по порядку. до окончания построения чтения ждут его, после - выполняются под блокировкой чтения параллельно */
+
+    private enum State {
+        EMPTY, // индекс не построен - изменения видны построению в хранилищах
+        BUILDING, // индекс строится - изменения запоминаются
+        READY // изменения применяются сразу
+    }
+
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ChangeStorage changeStorage;
+
+    private final Object buildLock = new Object(); // построение выполняет один поток, остальные ждут его
+    private final List<Change> pending = new ArrayList<>(); // изменения во время построения, под своей блокировкой
+    private State state = State.EMPTY; // под блокировкой pending
+    private volatile boolean ready;
+
+    protected FeedIndex(ChangeStorage changeStorage) {
+        this.changeStorage = changeStorage;
+        changeStorage.addListener(this::onChange);
+    }
+
+    protected abstract void rebuild(); // построение индекса заново по всем данным хранилищ
+
+    protected abstract void apply(Change change); // применение к индексу одного изменения ленты
+
+    // построение при запуске - после восстановления хранилищ, до первого запроса
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        awaitReady();
+    }
+
+    // ожидание построения индекса и применения изменений, завершенных до запроса
+    protected void awaitReady() {
+
+        long version = changeStorage.lastVersion();
+        build();
+        try {
+            changeStorage.awaitListeners(version);
+        } catch (InterruptedException e) { // прерванный запрос читает индекс без ожидания
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // построение индекса выполняется только при первом обращении
+    private void build() {
+
+        if (ready) {
+            return;
+        }
+
+        synchronized (buildLock) {
+            if (ready) {
+                return;
+            }
+            synchronized (pending) {
+                state = State.BUILDING;
+            }
+
+            lock.writeLock().lock();
+            try {
+                rebuild();
+                synchronized (pending) { // изменения во время чтения хранилищ - в порядке версий
+                    pending.forEach(this::apply);
+                    pending.clear();
+                    state = State.READY;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ready = true;
+        }
+    }
+
+    // изменение хранилищ - вызывается потоком индексов ленты в порядке версий
+    private void onChange(Change change) {
+
+        synchronized (pending) {
+            if (state == State.EMPTY) {
+                return;
+            }
+            if (state == State.BUILDING) {
+                pending.add(change);
+                return;
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            apply(change);
+        } catch (RuntimeException e) { // индекс строится заново при следующем обращении
+            log.error("Ошибка применения изменения {} к {}", change.getVersion(), getClass().getSimpleName(), e);
+            synchronized (pending) {
+                state = State.EMPTY;
+            }
+            ready = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+}
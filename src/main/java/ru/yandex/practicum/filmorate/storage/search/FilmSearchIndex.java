@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.model.ChangeType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+public class FilmSearchIndex extends FeedIndex {
+
+    // полнотекстовый индекс названий и описаний фильмов, обновляемый по ленте изменений
+
+    private static final int NAME_WEIGHT = 2; // слова названия учитываются с таким числом вхождений
+
+    private final FilmStorage filmStorage;
+
+    private final InvertedIndex index = new InvertedIndex();
+
+    public FilmSearchIndex(FilmStorage filmStorage, ChangeStorage changeStorage) {
+        super(changeStorage);
+        this.filmStorage = filmStorage;
+    }
+
+    // id фильмов и их релевантность по убыванию релевантности запросу
+    public List<Hit> search(String query, int limit) {
+
+        awaitReady();
+
+        List<String> terms = Tokenizer.tokens(query);
+        lock.readLock().lock();
+        try {
+            return index.search(terms, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void rebuild() {
+
+        index.clear();
+        try (Stream<Film> films = filmStorage.streamFilms()) {
+            films.forEach(this::put);
+        }
+
+        log.info("Построен индекс поиска: фильмов {}, слов {}, размер списков {} байт",
+                index.documentCount(), index.termCount(), index.postingsSizeInBytes());
+    }
+
+    @Override
+    protected void apply(Change change) {
+
+        if (change.getChangeType() == ChangeType.FILM_SAVED) {
+            put(change.getFilm());
+        }
+    }
+
+    private void put(Film film) {
+
+        List<String> nameTokens = Tokenizer.tokens(film.getName());
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < NAME_WEIGHT; i++) {
+            tokens.addAll(nameTokens);
+        }
+        tokens.addAll(Tokenizer.tokens(film.getDescription()));
+
+        index.put(film.getId(), tokens);
+    }
+
+    @Value
+    public static class Hit {
+
+        int id; // id фильма
+
+        double score; // релевантность по BM25 - сравнима с релевантностью на других узлах при равномерном разбиении
+
+    }
+
+}
@@ -0,0 +1,181 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+class InvertedIndex {
+
+    /* обратный индекс: слово -> документы, в которых оно встречается. документы ранжируются по BM25:
+    вклад слова растет с числом вхождений с насыщением (K1), редкие слова весят больше частых (idf),
+    длинные документы штрафуются относительно средней длины (B). индекс не потокобезопасен */
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private int[] lengths = new int[1024]; // длины документов по id - без поиска документа при ранжировании
+    private long totalLength; // слов во всех документах - для средней длины документа
+
+    // слова документа по возрастанию и число их вхождений
+    private static final class Document {
+
+        private final String[] terms;
+        private final int[] frequencies;
+        private final int length;
+
+        private Document(String[] terms, int[] frequencies, int length) {
+            this.terms = terms;
+            this.frequencies = frequencies;
+            this.length = length;
+        }
+    }
+
+    // индексирование документа или замена прежней версии - изменяются только списки измененных слов
+    void put(int docId, List<String> tokens) {
+
+        TreeMap<String, Integer> counts = new TreeMap<>();
+        tokens.forEach(token -> counts.merge(token, 1, Integer::sum));
+
+        Document previous = documents.get(docId);
+        if (previous != null && sameTerms(previous, counts)) { // например, изменились только лайки фильма
+            return;
+        }
+
+        Map<String, Integer> previousCounts = new HashMap<>();
+        if (previous != null) {
+            for (int i = 0; i < previous.terms.length; i++) {
+                previousCounts.put(previous.terms[i], previous.frequencies[i]);
+            }
+            totalLength -= previous.length;
+        }
+
+        String[] terms = new String[counts.size()];
+        int[] frequencies = new int[counts.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            PostingList list = postings.computeIfAbsent(entry.getKey(), PostingList::new);
+            Integer old = previousCounts.remove(entry.getKey());
+            if (old == null || old.intValue() != entry.getValue()) {
+                list.put(docId, entry.getValue(), old == null ? 0 : old);
+            }
+            terms[i] = list.term; // одна строка слова на весь индекс
+            frequencies[i++] = entry.getValue();
+        }
+        previousCounts.forEach((term, old) -> removePosting(term, docId, old)); // слова, исчезнувшие из документа
+
+        documents.put(docId, new Document(terms, frequencies, tokens.size()));
+        if (docId >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(lengths.length * 2, docId + 1));
+        }
+        lengths[docId] = tokens.size();
+        totalLength += tokens.size();
+    }
+
+    void clear() {
+
+        postings.clear();
+        documents.clear();
+        Arrays.fill(lengths, 0);
+        totalLength = 0;
+    }
+
+    // документы с релевантностью по ее убыванию, при равной релевантности - по возрастанию id
+    List<FilmSearchIndex.Hit> search(List<String> queryTokens, int limit) {
+
+        if (documents.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        int documentCount = documents.size();
+        double averageLength = (double) totalLength / documentCount;
+        double[] scores = new double[lengths.length]; // сумма вкладов слов запроса по id документа
+        int[] matched = new int[0]; // id документов с ненулевой суммой
+        int[] matchedCount = {0};
+
+        for (String term : new LinkedHashSet<>(queryTokens)) {
+            PostingList list = postings.get(term);
+            if (list == null || list.documentFrequency() == 0) {
+                continue;
+            }
+            int df = list.documentFrequency();
+            double idf = Math.log(1 + (documentCount - df + 0.5) / (df + 0.5));
+
+            if (matched.length < matchedCount[0] + df) {
+                matched = Arrays.copyOf(matched, matchedCount[0] + df);
+            }
+            int[] ids = matched;
+            list.forEach((docId, frequency) -> {
+                if (scores[docId] == 0) {
+                    ids[matchedCount[0]++] = docId;
+                }
+                double norm = K1 * (1 - B + B * lengths[docId] / averageLength);
+                scores[docId] += idf * frequency * (K1 + 1) / (frequency + norm);
+            });
+        }
+
+        // отбор limit лучших кучей: в вершине наименее релевантный из отобранных
+        Comparator<Integer> byRelevance = Comparator.<Integer>comparingDouble(docId -> scores[docId])
+                .thenComparing(Comparator.<Integer>reverseOrder());
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, byRelevance);
+        for (int i = 0; i < matchedCount[0]; i++) {
+            top.add(matched[i]);
+            if (top.size() > limit) {
+                top.poll(); // вытесняется наименее релевантный
+            }
+        }
+
+        List<FilmSearchIndex.Hit> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            int docId = top.poll();
+            result.add(new FilmSearchIndex.Hit(docId, scores[docId]));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    int documentCount() {
+        return documents.size();
+    }
+
+    int termCount() {
+        return postings.size();
+    }
+
+    long postingsSizeInBytes() {
+        return postings.values().stream().mapToLong(PostingList::sizeInBytes).sum();
+    }
+
+    private void removePosting(String term, int docId, int previous) {
+
+        PostingList list = postings.get(term);
+        list.put(docId, 0, previous);
+        if (list.documentFrequency() == 0) {
+            postings.remove(term); // слово больше не встречается ни в одном документе
+        }
+    }
+
+    private static boolean sameTerms(Document document, TreeMap<String, Integer> counts) {
+
+        if (document.terms.length != counts.size()) {
+            return false;
+        }
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (!document.terms[i].equals(entry.getKey()) || document.frequencies[i] != entry.getValue()) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,146 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+class PostingList {
+
+    /* документы, содержащие слово, с числом вхождений. основная часть хранится сжато: пары
+    (разность с предыдущим id документа, число вхождений) в формате varint по возрастанию id - обычно 2 байта
+    на документ. изменения копятся в небольшом несжатом наложении (0 вхождений - документ удален)
+    и переносятся в сжатую часть, когда наложение становится сравнимым с ней по размеру */
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MIN_PENDING = 32; // изменений, которые всегда держатся в наложении
+
+    final String term; // слово - ссылка на него хранится в документах вместо копий строки
+
+    private byte[] encoded = EMPTY;
+    private int encodedLength; // занятых байт
+    private int encodedCount; // документов в сжатой части
+    private final TreeMap<Integer, Integer> pending = new TreeMap<>(); // id документа / число вхождений
+    private int documentFrequency; // документов со словом с учетом наложения
+
+    PostingList(String term) {
+        this.term = term;
+    }
+
+    // запись числа вхождений слова в документ, previous - прежнее значение, 0 - слова в документе не было
+    void put(int docId, int frequency, int previous) {
+
+        pending.put(docId, frequency);
+        documentFrequency += (frequency > 0 ? 1 : 0) - (previous > 0 ? 1 : 0);
+        if (pending.size() > MIN_PENDING && pending.size() * 4 > encodedCount) {
+            compact();
+        }
+    }
+
+    int documentFrequency() {
+        return documentFrequency;
+    }
+
+    int sizeInBytes() {
+        return encodedLength + pending.size() * 2 * Integer.BYTES;
+    }
+
+    // обход документов по возрастанию id: слияние сжатой части с наложением
+    void forEach(PostingConsumer consumer) {
+
+        Iterator<Map.Entry<Integer, Integer>> overlay = pending.entrySet().iterator();
+        Map.Entry<Integer, Integer> next = overlay.hasNext() ? overlay.next() : null;
+
+        int[] position = {0};
+        int docId = 0;
+        for (int i = 0; i < encodedCount; i++) {
+            docId += readVarInt(encoded, position);
+            int frequency = readVarInt(encoded, position);
+
+            while (next != null && next.getKey() < docId) {
+                accept(consumer, next.getKey(), next.getValue());
+                next = overlay.hasNext() ? overlay.next() : null;
+            }
+            if (next != null && next.getKey() == docId) { // наложение заменяет сжатую запись
+                accept(consumer, docId, next.getValue());
+                next = overlay.hasNext() ? overlay.next() : null;
+            } else {
+                consumer.accept(docId, frequency);
+            }
+        }
+        while (next != null) {
+            accept(consumer, next.getKey(), next.getValue());
+            next = overlay.hasNext() ? overlay.next() : null;
+        }
+    }
+
+    // перенос наложения в сжатую часть
+    void compact() {
+
+        Encoder encoder = new Encoder(encodedLength + pending.size() * 3);
+        forEach(encoder::add);
+
+        encoded = encoder.length == 0 ? EMPTY : Arrays.copyOf(encoder.buffer, encoder.length);
+        encodedLength = encoder.length;
+        encodedCount = encoder.count;
+        pending.clear();
+    }
+
+    private static void accept(PostingConsumer consumer, int docId, int frequency) {
+
+        if (frequency > 0) {
+            consumer.accept(docId, frequency);
+        }
+    }
+
+    private static int readVarInt(byte[] buffer, int[] position) {
+
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[position[0]++];
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    // запись пар (разность id, число вхождений) в формате varint
+    private static class Encoder {
+
+        private byte[] buffer;
+        private int length;
+        private int count;
+        private int previous;
+
+        private Encoder(int capacity) {
+            this.buffer = new byte[Math.max(16, capacity)];
+        }
+
+        private void add(int docId, int frequency) {
+
+            if (length + 10 > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            write(docId - previous);
+            write(frequency);
+            previous = docId;
+            count++;
+        }
+
+        private void write(int value) {
+
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+    }
+
+    interface PostingConsumer {
+        void accept(int docId, int frequency);
+    }
+
+}
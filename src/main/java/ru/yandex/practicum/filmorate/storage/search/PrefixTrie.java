@@ -0,0 +1,345 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class PrefixTrie {
+
+    /* сжатое префиксное дерево нормализованных строк. ребро помечено непустой подстрокой ключа, узлы есть
+    только там, где ключи расходятся или заканчиваются, - узлов не больше удвоенного числа ключей. каждый
+    узел хранит до topSize записей своего поддерева по убыванию популярности (при равенстве - по возрастанию
+    id): подсказки по префиксу - спуск на длину префикса и копирование готового списка. при изменении записи
+    списки обновляются только на пути от корня к ее ключу, полный пересчет списка узла из списков дочерних
+    узлов нужен, лишь когда из заполненного списка выбывает запись */
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+    private static final Node[] NO_NODES = new Node[0];
+    private static final char[] NO_CHARS = new char[0];
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::getPopularity).reversed()
+            .thenComparingLong(Entry::getId);
+
+    private final int topSize;
+    private final Map<Long, Entry> entries = new HashMap<>(); // записи по id
+    private Node root = new Node("");
+    private int nodeCount = 1;
+
+    PrefixTrie(int topSize) {
+        this.topSize = topSize;
+    }
+
+    // запись строки text с популярностью popularity, прежняя запись того же id заменяется
+    void put(long id, String text, long popularity) {
+
+        Entry entry = new Entry(id, Tokenizer.normalize(text), text, popularity);
+        Entry previous = entries.put(id, entry);
+        if (previous == null) {
+            insert(entry);
+        } else if (previous.getKey().equals(entry.getKey())) {
+            if (previous.getPopularity() != popularity || !previous.getText().equals(text)) {
+                replace(previous, entry);
+            }
+        } else {
+            remove(previous);
+            insert(entry);
+        }
+    }
+
+    // до limit записей с ключом, начинающимся с нормализованного префикса, лучшие по популярности первыми
+    List<Entry> suggest(String prefix, int limit) {
+
+        String key = Tokenizer.normalize(prefix);
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                return List.of();
+            }
+            String label = child.label;
+            int common = commonPrefix(label, key, i);
+            if (i + common == key.length()) {
+                node = child; // префикс закончился на ребре или в узле - подходят все ключи поддерева
+                break;
+            }
+            if (common < label.length()) {
+                return List.of();
+            }
+            node = child;
+            i += common;
+        }
+
+        Entry[] top = node.top;
+        return Arrays.asList(top).subList(0, Math.min(limit, top.length));
+    }
+
+    void clear() {
+        entries.clear();
+        root = new Node("");
+        nodeCount = 1;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    private void insert(Entry entry) {
+
+        String key = entry.getKey();
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                child = new Node(key.substring(i));
+                node.addChild(child);
+                nodeCount++;
+                node = child;
+                path.add(node);
+                break;
+            }
+            int common = commonPrefix(child.label, key, i);
+            if (common < child.label.length()) {
+                child = split(node, child, common);
+            }
+            node = child;
+            path.add(node);
+            i += common;
+        }
+
+        node.own = insertSorted(node.own, entry, Integer.MAX_VALUE);
+        for (int p = path.size() - 1; p >= 0; p--) {
+            Node pathNode = path.get(p);
+            pathNode.top = insertSorted(pathNode.top, entry, topSize);
+        }
+    }
+
+    private void replace(Entry previous, Entry entry) {
+
+        List<Node> path = path(previous.getKey());
+        Node terminal = path.get(path.size() - 1);
+        terminal.own = insertSorted(removeId(terminal.own, previous.getId()), entry, Integer.MAX_VALUE);
+
+        for (int p = path.size() - 1; p >= 0; p--) {
+            Node node = path.get(p);
+            boolean listed = indexOf(node.top, previous.getId()) >= 0;
+            if (listed && node.top.length == topSize && entry.getPopularity() < previous.getPopularity()) {
+                recompute(node); // запись может уступить место записи, которой нет в списке
+            } else if (listed) {
+                node.top = insertSorted(removeId(node.top, previous.getId()), entry, topSize);
+            } else {
+                node.top = insertSorted(node.top, entry, topSize);
+            }
+        }
+    }
+
+    private void remove(Entry previous) {
+
+        List<Node> path = path(previous.getKey());
+        Node terminal = path.get(path.size() - 1);
+        terminal.own = removeId(terminal.own, previous.getId());
+
+        for (int p = path.size() - 1; p >= 0; p--) {
+            Node node = path.get(p);
+            if (indexOf(node.top, previous.getId()) < 0) {
+                continue;
+            }
+            if (node.top.length == topSize) {
+                recompute(node);
+            } else {
+                node.top = removeId(node.top, previous.getId()); // в неполном списке все записи поддерева
+            }
+        }
+
+        prune(path);
+    }
+
+    // разделение ребра к child после common символов - новый узел получает список поддерева child
+    private Node split(Node parent, Node child, int common) {
+
+        Node middle = new Node(child.label.substring(0, common));
+        child.label = child.label.substring(common);
+        middle.addChild(child);
+        middle.top = child.top;
+        parent.replaceChild(middle);
+        nodeCount++;
+        return middle;
+    }
+
+    // удаление узлов без записей и потомков и слияние узла с единственным потомком
+    private void prune(List<Node> path) {
+
+        for (int p = path.size() - 1; p > 0; p--) {
+            Node node = path.get(p);
+            Node parent = path.get(p - 1);
+            if (node.own.length > 0) {
+                return;
+            }
+            if (node.children.length == 0) {
+                parent.removeChild(node.label.charAt(0));
+                nodeCount--;
+                continue;
+            }
+            if (node.children.length == 1) {
+                Node child = node.children[0];
+                child.label = node.label + child.label;
+                parent.replaceChild(child);
+                nodeCount--;
+            }
+            return;
+        }
+    }
+
+    // узлы от корня до узла, в котором заканчивается существующий ключ
+    private List<Node> path(String key) {
+
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int i = 0;
+        while (i < key.length()) {
+            node = node.child(key.charAt(i));
+            path.add(node);
+            i += node.label.length();
+        }
+        return path;
+    }
+
+    // список узла из собственных записей и списков дочерних узлов
+    private void recompute(Node node) {
+
+        List<Entry> candidates = new ArrayList<>(Arrays.asList(node.own));
+        for (Node child : node.children) {
+            candidates.addAll(Arrays.asList(child.top));
+        }
+        candidates.sort(ORDER);
+        node.top = candidates.subList(0, Math.min(topSize, candidates.size())).toArray(NO_ENTRIES);
+    }
+
+    private static Entry[] insertSorted(Entry[] list, Entry entry, int maxSize) {
+
+        int position = Arrays.binarySearch(list, entry, ORDER);
+        position = position < 0 ? -position - 1 : position;
+        if (position >= maxSize) {
+            return list;
+        }
+        int size = Math.min(list.length + 1, maxSize);
+        Entry[] result = new Entry[size];
+        System.arraycopy(list, 0, result, 0, position);
+        result[position] = entry;
+        System.arraycopy(list, position, result, position + 1, size - position - 1);
+        return result;
+    }
+
+    private static Entry[] removeId(Entry[] list, long id) {
+
+        int position = indexOf(list, id);
+        if (position < 0) {
+            return list;
+        }
+        Entry[] result = new Entry[list.length - 1];
+        System.arraycopy(list, 0, result, 0, position);
+        System.arraycopy(list, position + 1, result, position, list.length - position - 1);
+        return result;
+    }
+
+    private static int indexOf(Entry[] list, long id) {
+
+        for (int i = 0; i < list.length; i++) {
+            if (list[i].getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // число совпадающих символов метки и ключа, начиная с позиции from ключа
+    private static int commonPrefix(String label, String key, int from) {
+
+        int limit = Math.min(label.length(), key.length() - from);
+        int i = 0;
+        while (i < limit && label.charAt(i) == key.charAt(from + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    @Value
+    static class Entry {
+
+        long id;
+
+        String key; // нормализованная строка
+
+        String text; // исходная строка
+
+        long popularity;
+
+    }
+
+    private static final class Node {
+
+        private String label; // подстрока ключа на ребре от родителя
+        private char[] firsts = NO_CHARS; // первые символы меток дочерних узлов по возрастанию
+        private Node[] children = NO_NODES;
+        private Entry[] own = NO_ENTRIES; // записи, ключ которых заканчивается в узле
+        private Entry[] top = NO_ENTRIES; // лучшие записи поддерева
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private Node child(char first) {
+
+            int position = Arrays.binarySearch(firsts, first);
+            return position < 0 ? null : children[position];
+        }
+
+        private void addChild(Node child) {
+
+            int position = -Arrays.binarySearch(firsts, child.label.charAt(0)) - 1;
+            char[] newFirsts = new char[firsts.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(firsts, 0, newFirsts, 0, position);
+            System.arraycopy(children, 0, newChildren, 0, position);
+            newFirsts[position] = child.label.charAt(0);
+            newChildren[position] = child;
+            System.arraycopy(firsts, position, newFirsts, position + 1, firsts.length - position);
+            System.arraycopy(children, position, newChildren, position + 1, children.length - position);
+            firsts = newFirsts;
+            children = newChildren;
+        }
+
+        // замена дочернего узла с той же первой буквой метки
+        private void replaceChild(Node child) {
+            children[Arrays.binarySearch(firsts, child.label.charAt(0))] = child;
+        }
+
+        private void removeChild(char first) {
+
+            int position = Arrays.binarySearch(firsts, first);
+            char[] newFirsts = new char[firsts.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(firsts, 0, newFirsts, 0, position);
+            System.arraycopy(children, 0, newChildren, 0, position);
+            System.arraycopy(firsts, position + 1, newFirsts, position, firsts.length - position - 1);
+            System.arraycopy(children, position + 1, newChildren, position, children.length - position - 1);
+            firsts = newFirsts;
+            children = newChildren;
+        }
+
+    }
+
+}
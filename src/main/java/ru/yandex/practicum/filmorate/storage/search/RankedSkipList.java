@@ -0,0 +1,189 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+final class RankedSkipList {
+
+    /* список с пропусками, упорядоченный по ключу (день, id), с длинами переходов: каждая ссылка уровня хранит
+    число элементов нижнего уровня, которые она пропускает. по длинам за O(log n) находится как число элементов
+    меньше ключа, так и элемент по номеру - выборка k элементов диапазона со смещением стоит O(log n + k).
+    уровень элемента случаен, с вероятностью 1/4 выше предыдущего - в среднем 1,33 ссылки на элемент */
+
+    private static final int MAX_LEVEL = 16; // достаточно для 4^16 элементов
+
+    private final Node head = new Node(Long.MIN_VALUE, Integer.MIN_VALUE, 0, MAX_LEVEL);
+    private final Map<Integer, Node> nodes = new HashMap<>(); // элементы по id
+    private final SplittableRandom random = new SplittableRandom();
+    private int level = 1;
+    private int size;
+
+    // запись элемента id с ключом day и популярностью popularity, прежний элемент того же id заменяется
+    void put(int id, long day, long popularity) {
+
+        Node node = nodes.get(id);
+        if (node != null && node.day == day) {
+            node.popularity = popularity; // порядок не меняется
+            return;
+        }
+        if (node != null) {
+            delete(node);
+        }
+        nodes.put(id, insert(id, day, popularity));
+    }
+
+    void remove(int id) {
+
+        Node node = nodes.remove(id);
+        if (node != null) {
+            delete(node);
+        }
+    }
+
+    // число элементов с днем меньше day - номер первого элемента с днем не меньше day
+    int rank(long day) {
+
+        Node node = head;
+        int rank = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && less(node.next[i], day, Integer.MIN_VALUE)) {
+                rank += node.span[i];
+                node = node.next[i];
+            }
+        }
+        return rank;
+    }
+
+    // обход элементов с номерами от from включительно до to исключительно по возрастанию ключа
+    void forEach(int from, int to, Consumer<Node> action) {
+
+        if (from >= to) {
+            return;
+        }
+        Node node = head;
+        int traversed = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && traversed + node.span[i] <= from + 1) {
+                traversed += node.span[i];
+                node = node.next[i];
+            }
+        }
+        for (int rank = from; rank < to && node != null; rank++) {
+            action.accept(node);
+            node = node.next[0];
+        }
+    }
+
+    void clear() {
+
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            head.next[i] = null;
+            head.span[i] = 0;
+        }
+        nodes.clear();
+        level = 1;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private Node insert(int id, long day, long popularity) {
+
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (node.next[i] != null && less(node.next[i], day, id)) {
+                rank[i] += node.span[i];
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size; // ссылка заголовка на конец списка пропускает все элементы
+            }
+            level = nodeLevel;
+        }
+
+        Node inserted = new Node(day, id, popularity, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            inserted.next[i] = update[i].next[i];
+            update[i].next[i] = inserted;
+            inserted.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].span[i]++; // ссылки выше нового элемента пропускают на один элемент больше
+        }
+        size++;
+        return inserted;
+    }
+
+    private void delete(Node deleted) {
+
+        Node[] update = new Node[MAX_LEVEL];
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && less(node.next[i], deleted.day, deleted.id)) {
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == deleted) {
+                update[i].span[i] += deleted.span[i] - 1;
+                update[i].next[i] = deleted.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            head.span[level - 1] = 0;
+            level--;
+        }
+        size--;
+    }
+
+    private int randomLevel() {
+
+        int nodeLevel = 1;
+        while (nodeLevel < MAX_LEVEL && random.nextInt(4) == 0) {
+            nodeLevel++;
+        }
+        return nodeLevel;
+    }
+
+    private static boolean less(Node node, long day, int id) {
+        return node.day < day || node.day == day && node.id < id;
+    }
+
+    static final class Node {
+
+        final long day; // день выхода фильма от 1970-01-01
+        final int id;
+        long popularity;
+        private final Node[] next;
+        private final int[] span; // число элементов, пропускаемых ссылкой уровня
+
+        private Node(long day, int id, long popularity, int level) {
+            this.day = day;
+            this.id = id;
+            this.popularity = popularity;
+            this.next = new Node[level];
+            this.span = new int[level];
+        }
+
+    }
+
+}
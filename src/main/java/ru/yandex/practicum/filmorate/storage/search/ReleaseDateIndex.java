@@ -0,0 +1,116 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.model.ChangeType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+public class ReleaseDateIndex extends FeedIndex {
+
+    /* упорядоченный индекс фильмов по дате выхода, обновляемый по ленте изменений. страница диапазона дат
+    по возрастанию даты - O(log n + k); по убыванию популярности - просмотр всего диапазона из m фильмов с
+    отбором лучших в куче размером offset + count, O(log n + m log(offset + count)) */
+
+    private static final Comparator<RankedSkipList.Node> BY_POPULARITY =
+            Comparator.comparingLong((RankedSkipList.Node node) -> node.popularity).reversed()
+                    .thenComparingInt(node -> node.id);
+
+    private final FilmStorage filmStorage;
+
+    private final RankedSkipList index = new RankedSkipList();
+
+    public ReleaseDateIndex(FilmStorage filmStorage, ChangeStorage changeStorage) {
+        super(changeStorage);
+        this.filmStorage = filmStorage;
+    }
+
+    // id фильмов страницы диапазона дат выхода (границы включительно, null - без границы) и размер диапазона
+    public Page list(LocalDate from, LocalDate to, boolean byPopularity, int offset, int count) {
+
+        awaitReady();
+
+        lock.readLock().lock();
+        try {
+            int first = from == null ? 0 : index.rank(from.toEpochDay());
+            int end = to == null ? index.size() : index.rank(to.toEpochDay() + 1);
+            int total = Math.max(0, end - first);
+            int pageEnd = (int) Math.min(total, (long) offset + count);
+
+            List<Integer> ids = new ArrayList<>();
+            if (offset >= pageEnd) {
+                return new Page(ids, total);
+            }
+            if (!byPopularity) {
+                index.forEach(first + offset, first + pageEnd, node -> ids.add(node.id));
+                return new Page(ids, total);
+            }
+
+            PriorityQueue<RankedSkipList.Node> best = new PriorityQueue<>(pageEnd, BY_POPULARITY.reversed());
+            index.forEach(first, end, node -> {
+                if (best.size() < pageEnd) {
+                    best.add(node);
+                } else if (BY_POPULARITY.compare(node, best.peek()) < 0) {
+                    best.poll();
+                    best.add(node);
+                }
+            });
+            List<RankedSkipList.Node> sorted = new ArrayList<>(best);
+            sorted.sort(BY_POPULARITY);
+            sorted.subList(offset, pageEnd).forEach(node -> ids.add(node.id));
+            return new Page(ids, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void rebuild() {
+
+        index.clear();
+        try (Stream<Film> films = filmStorage.streamFilms()) {
+            films.forEach(this::put);
+        }
+
+        log.info("Построен индекс дат выхода: фильмов {}", index.size());
+    }
+
+    @Override
+    protected void apply(Change change) {
+
+        if (change.getChangeType() == ChangeType.FILM_SAVED) {
+            put(change.getFilm());
+        }
+    }
+
+    private void put(Film film) {
+
+        if (film.getReleaseDate() == null) {
+            index.remove(film.getId());
+            return;
+        }
+        index.put(film.getId(), film.getReleaseDate().toEpochDay(), film.getLikes() == null ? 0 : film.getLikes());
+    }
+
+    @Value
+    public static class Page {
+
+        List<Integer> ids; // id фильмов страницы
+
+        int total; // число фильмов во всем диапазоне
+
+    }
+
+}
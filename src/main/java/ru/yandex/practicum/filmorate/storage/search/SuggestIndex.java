@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+public class SuggestIndex extends FeedIndex {
+
+    /* префиксные деревья названий фильмов и логинов пользователей для подсказок при наборе, обновляемые по
+    ленте изменений. популярность фильма - число лайков, пользователя - число друзей */
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final int topSize;
+
+    private final PrefixTrie films;
+    private final PrefixTrie users;
+
+    public SuggestIndex(FilmStorage filmStorage,
+                        UserStorage userStorage,
+                        ChangeStorage changeStorage,
+                        @Value("${filmorate.suggest.top-size}") int topSize) {
+        super(changeStorage);
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.topSize = topSize;
+        this.films = new PrefixTrie(topSize);
+        this.users = new PrefixTrie(topSize);
+    }
+
+    // фильмы, название которых начинается с префикса, по убыванию числа лайков
+    public List<Suggestion> suggestFilms(String prefix, int limit) {
+        return suggest(films, prefix, limit);
+    }
+
+    // пользователи, логин которых начинается с префикса, по убыванию числа друзей
+    public List<Suggestion> suggestUsers(String prefix, int limit) {
+        return suggest(users, prefix, limit);
+    }
+
+    // наибольшее число подсказок в ответе - размер списков в узлах деревьев
+    public int getTopSize() {
+        return topSize;
+    }
+
+    @Override
+    protected void rebuild() {
+
+        films.clear();
+        users.clear();
+        try (Stream<Film> stream = filmStorage.streamFilms()) {
+            stream.forEach(this::put);
+        }
+        try (Stream<User> stream = userStorage.streamUsers()) {
+            stream.forEach(this::put);
+        }
+
+        log.info("Построены деревья подсказок: фильмов {} (узлов {}), пользователей {} (узлов {})",
+                films.size(), films.nodeCount(), users.size(), users.nodeCount());
+    }
+
+    @Override
+    protected void apply(Change change) {
+
+        switch (change.getChangeType()) {
+            case FILM_SAVED:
+                put(change.getFilm());
+                break;
+            case USER_SAVED:
+                put(change.getUser());
+                break;
+            default:
+                break; // лайки приходят в ленту и сохранением фильма с новым числом лайков
+        }
+    }
+
+    private List<Suggestion> suggest(PrefixTrie trie, String prefix, int limit) {
+
+        awaitReady();
+
+        List<PrefixTrie.Entry> entries;
+        lock.readLock().lock();
+        try {
+            entries = trie.suggest(prefix, Math.min(limit, topSize));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return entries.stream()
+                .map(entry -> new Suggestion(entry.getId(), entry.getText(), entry.getPopularity()))
+                .collect(Collectors.toList());
+    }
+
+    private void put(Film film) {
+        films.put(film.getId(), film.getName(), film.getLikes() == null ? 0 : film.getLikes());
+    }
+
+    private void put(User user) {
+        users.put(user.getId(), user.getLogin(), user.getFriends() == null ? 0 : user.getFriends().size());
+    }
+
+}
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// разбиение текста на слова для поиска
+
+public final class Tokenizer {
+
+    /* слово - непрерывная последовательность букв и цифр, приводится к нижнему регистру, ё заменяется на е.
+    одинаковая нормализация текста фильмов и запросов - условие совпадения слов */
+
+    private Tokenizer() {
+    }
+
+    public static List<String> tokens(String text) {
+
+        if (text == null) {
+            return List.of();
+        }
+
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(normalize(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    // нормализация строки целиком - для сравнения префиксов с нормализованными словами
+    public static String normalize(String text) {
+
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            normalized.append(normalize(text.charAt(i)));
+        }
+        return normalized.toString();
+    }
+
+    private static char normalize(char c) {
+
+        char lower = Character.toLowerCase(c);
+        return lower == 'ё' ? 'е' : lower;
+    }
+
+}
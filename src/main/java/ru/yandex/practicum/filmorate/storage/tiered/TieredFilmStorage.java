@@ -0,0 +1,197 @@
+package ru.yandex.practicum.filmorate.storage.tiered;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.FilmDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.TierStats;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.IdFilters;
+import ru.yandex.practicum.filmorate.storage.RecordWriter;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
+import ru.yandex.practicum.filmorate.storage.journal.RecordCodec;
+import ru.yandex.practicum.filmorate.storage.mapped.MappedRecordMap;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "tiered")
+public class TieredFilmStorage implements FilmStorage {
+
+    // реализация хранения информации о фильмах: рабочий набор в памяти, остальные записи на диске
+
+    private final TieredStore<Film> films;
+    private final ShardLayout shardLayout;
+    private final EntityVersions versions = new EntityVersions();
+    private final IdFilters idFilters;
+    private final RecordWriter<Film, byte[]> writer;
+    private final Map<Integer, Film> filmsView;
+
+    private Integer nextId;
+
+    public TieredFilmStorage(@Value("${filmorate.storage.tiered.directory}") String directory,
+                             @Value("${filmorate.storage.mapped.segment-size}") int segmentSize,
+                             @Value("${filmorate.storage.tiered.hot-capacity}") int hotCapacity,
+                             MutationJournal journal,
+                             ChangeStorage changeStorage,
+                             ShardLayout shardLayout,
+                             IdFilters idFilters) throws IOException {
+
+        this.films = new TieredStore<>(Paths.get(directory), "films", segmentSize, hotCapacity, RecordCodec::readFilm);
+        journal.onSync(films.cold()::flush); // файлы уровня на диске сбрасываются на диск вместе с журналом
+        this.shardLayout = shardLayout;
+        this.idFilters = idFilters;
+        this.writer = new RecordWriter<>(this, journal, changeStorage, versions, idFilters.films(), Film::getId,
+                JournalRecord::ofFilm, film -> films.cold().checkFits(RecordCodec.encodeFilm(film)),
+                (film, payload) -> films.put(film.getId(), payload, film));
+        this.filmsView = new MappedRecordMap<>(films.cold(), key -> (Integer) key, id -> (int) id, this::loadFilm);
+        films.streamIds().forEach(idFilters.films()::add); // записи, сохраненные в файлах до запуска
+        this.nextId = (int) films.cold().maxId() + 1;
+    }
+
+    // добавление информации о фильме
+    @Override
+    public Film addFilm(Film film) {
+
+        Film newFilm;
+        synchronized (this) {
+            newFilm = film.toBuilder().id(allocateId()).build();
+        }
+
+        updateFilmData(newFilm); // сохранение информации о фильме
+        log.info("Сохранена информация о фильме: {}", film);
+
+        return newFilm;
+    }
+
+    // пакетное добавление информации о фильмах - одна блокировка и одна запись журнала на диск на пакет
+    @Override
+    public List<Film> addFilms(List<Film> newFilms) {
+
+        List<Film> savedFilms = writer.saveAll(newFilms, film -> film.toBuilder().id(allocateId()).build());
+
+        log.info("Сохранено фильмов пакетом: {}", savedFilms.size());
+        return savedFilms;
+    }
+
+    // обновление информации о фильме
+    @Override
+    public Film updateFilm(Film film) {
+
+        if (film.getId() == null || !films.contains(film.getId())) {
+            throw new FilmDoesNotExistException("Такого фильма нет в списке.");
+        }
+
+        updateFilmData(film); // сохранение обновленной информации
+        log.info("Обновлена информация о фильме: {}", film);
+        return film;
+    }
+
+    // получение списка фильмов - декодирование всех записей
+    @Override
+    public List<Film> listFilms() {
+
+        List<Film> listFilms = films.stream().collect(Collectors.toList());
+
+        log.info("Количество фильмов в списке: {}", listFilms.size());
+
+        return listFilms;
+    }
+
+    // последовательное получение фильмов с диска - рабочий набор в памяти не вытесняется
+    @Override
+    public Stream<Film> streamFilms() {
+
+        log.info("Количество фильмов в списке: {}", films.size());
+
+        return films.stream();
+    }
+
+    // получение фильма по идентификатору
+    @Override
+    public Film getFilmById(Integer id) {
+
+        Film film = id == null ? null : idFilters.films().find(id, this::loadFilm);
+        if (film == null) {
+            throw new FilmDoesNotExistException(String.format("Фильм с id %d не найден", id));
+        }
+        return film;
+    }
+
+    // сохранение новой или обновленной информации о фильме
+    @Override
+    public void updateFilmData(Film film) {
+        writer.save(film);
+    }
+
+    // сохранение фильма, только если его версия не изменилась после чтения - защита от потерянных обновлений
+    @Override
+    public boolean compareAndSetFilmData(Film film, long expectedVersion) {
+        return writer.compareAndSet(film, expectedVersion);
+    }
+
+    // восстановление информации о фильме из журнала
+    @Override
+    public synchronized void restoreFilmData(Film film) {
+
+        writer.restore(film);
+        nextId = Math.max(nextId, film.getId() + 1);
+    }
+
+    // версия последнего сохранения фильма
+    @Override
+    public long getFilmVersion(Integer id) {
+
+        if (id == null || !idFilters.films().exists(id, films::contains)) {
+            throw new FilmDoesNotExistException(String.format("Фильм с id %d не найден", id));
+        }
+        return versions.get(id);
+    }
+
+    // версия списка фильмов - изменяется при сохранении любого фильма, в том числе при изменении лайков
+    @Override
+    public long getFilmsVersion() {
+        return versions.current();
+    }
+
+    // получение данных о фильмах - представление, декодирующее фильмы при обращении
+    @Override
+    public Map<Integer, Film> getFilmsData() {
+        return filmsView;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        films.close();
+    }
+
+    private Film loadFilm(long id) {
+        return films.get(id);
+    }
+
+    public TierStats getTierStats() {
+        return films.stats("films");
+    }
+
+    // выдача следующего id, принадлежащего текущему узлу, вызывается под блокировкой хранилища
+    private Integer allocateId() {
+
+        long id = shardLayout.ownedIdFrom(nextId);
+        nextId = (int) id + 1;
+        return (int) id;
+    }
+
+}
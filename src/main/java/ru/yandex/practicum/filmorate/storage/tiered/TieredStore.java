@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.storage.tiered;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.TierStats;
+import ru.yandex.practicum.filmorate.storage.mapped.MappedRecordSlab;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+@Slf4j
+public class TieredStore<V> implements Closeable {
+
+    /* двухуровневое хранение записей: ограниченный уровень в куче с вытеснением давно не читавшихся записей
+    и уровень на диске в файлах, отображенных в память. запись сохраняется на диск сразу при изменении,
+    поэтому вытеснение из памяти не требует записи, а чтение вытесненной записи загружает ее обратно.
+    перебор всех записей читает диск напрямую и не вытесняет рабочий набор из памяти.
+    файлы уровня на диске открываются заново при запуске и хранят данные и без журнала, как хранилище
+    mapped; при включенном журнале его записи повторно применяются поверх файлов - сохранение идемпотентно */
+
+    private final MappedRecordSlab cold;
+    private final MappedRecordSlab.Decoder<V> decoder;
+    private final int hotCapacity;
+    private final LinkedHashMap<Long, V> hot; // порядок доступа - первой вытесняется давно не читавшаяся запись
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TieredStore(Path directory, String name, int segmentSize, int hotCapacity,
+                       MappedRecordSlab.Decoder<V> decoder) throws IOException {
+
+        this.cold = new MappedRecordSlab(directory, name, segmentSize);
+        this.decoder = decoder;
+        this.hotCapacity = hotCapacity;
+        this.hot = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+
+                if (size() > TieredStore.this.hotCapacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // сохранение записи на диск и в память
+    public synchronized void put(long id, byte[] payload, V value) {
+
+        cold.put(id, payload);
+        hot.put(id, value);
+    }
+
+    // чтение записи по id с загрузкой в память при отсутствии, null при отсутствии записи
+    public synchronized V get(long id) {
+
+        V value = hot.get(id);
+        if (value != null) {
+            hits++;
+            return value;
+        }
+
+        value = cold.read(id, decoder);
+        if (value != null) {
+            misses++;
+            hot.put(id, value);
+        }
+        return value;
+    }
+
+    // чтение записи с диска без загрузки в память и без блокировки - для перебора всех записей
+    public V peek(long id) {
+
+        return cold.read(id, decoder);
+    }
+
+    // поток всех записей в порядке возрастания id
+    public Stream<V> stream() {
+
+        return cold.streamIds()
+                .mapToObj(this::peek)
+                .filter(value -> value != null);
+    }
+
+    public boolean contains(long id) {
+        return cold.contains(id);
+    }
+
+    public int size() {
+        return cold.size();
+    }
+
+    public LongStream streamIds() {
+        return cold.streamIds();
+    }
+
+    public MappedRecordSlab cold() {
+        return cold;
+    }
+
+    public synchronized TierStats stats(String entity) {
+
+        long reads = hits + misses;
+        return TierStats.builder()
+                .entity(entity)
+                .hotSize(hot.size())
+                .hotCapacity(hotCapacity)
+                .coldSize(cold.size())
+                .hits(hits)
+                .misses(misses)
+                .evictions(evictions)
+                .hitRatio(reads == 0 ? 0.0 : (double) hits / reads)
+                .build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        cold.close();
+    }
+
+}
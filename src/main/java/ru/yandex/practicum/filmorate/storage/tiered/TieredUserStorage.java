@@ -0,0 +1,210 @@
+package ru.yandex.practicum.filmorate.storage.tiered;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.TierStats;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.IdFilters;
+import ru.yandex.practicum.filmorate.storage.RecordWriter;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.MutationJournal;
+import ru.yandex.practicum.filmorate.storage.journal.RecordCodec;
+import ru.yandex.practicum.filmorate.storage.mapped.MappedRecordMap;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "tiered")
+public class TieredUserStorage implements UserStorage {
+
+    // реализация хранения информации о пользователях: рабочий набор в памяти, остальные записи на диске
+
+    private final TieredStore<User> users;
+    private final ShardLayout shardLayout;
+    private final EntityVersions versions = new EntityVersions();
+    private final IdFilters idFilters;
+    private final RecordWriter<User, byte[]> writer;
+    private final Map<Long, User> usersView;
+
+    private Long nextId;
+
+    public TieredUserStorage(@Value("${filmorate.storage.tiered.directory}") String directory,
+                             @Value("${filmorate.storage.mapped.segment-size}") int segmentSize,
+                             @Value("${filmorate.storage.tiered.hot-capacity}") int hotCapacity,
+                             MutationJournal journal,
+                             ChangeStorage changeStorage,
+                             ShardLayout shardLayout,
+                             IdFilters idFilters) throws IOException {
+
+        this.users = new TieredStore<>(Paths.get(directory), "users", segmentSize, hotCapacity, RecordCodec::readUser);
+        journal.onSync(users.cold()::flush); // файлы уровня на диске сбрасываются на диск вместе с журналом
+        this.shardLayout = shardLayout;
+        this.idFilters = idFilters;
+        this.writer = new RecordWriter<>(this, journal, changeStorage, versions, idFilters.users(), User::getId,
+                JournalRecord::ofUser, user -> users.cold().checkFits(RecordCodec.encodeUser(user)),
+                (user, payload) -> users.put(user.getId(), payload, user));
+        this.usersView = new MappedRecordMap<>(users.cold(), key -> (Long) key, id -> id, this::loadUser);
+        users.streamIds().forEach(idFilters.users()::add); // записи, сохраненные в файлах до запуска
+        this.nextId = users.cold().maxId() + 1;
+    }
+
+    //добавление информации о пользователе
+    @Override
+    public User addUser(User user) {
+
+        User newUser;
+        synchronized (this) {
+            newUser = user.toBuilder().id(allocateId()).build();
+        }
+
+        if (isFieldEmpty(user.getName())) { // устанавливаем логин в качестве имени в случае незаполненного поля
+            newUser = newUser.toBuilder().name(user.getLogin()).build();
+        }
+
+        updateUserData(newUser); // сохранение информации о пользователе
+        log.info("Сохранен пользователь: {}", user);
+
+        return newUser;
+    }
+
+    // пакетное добавление информации о пользователях - одна блокировка и одна запись журнала на диск на пакет
+    @Override
+    public List<User> addUsers(List<User> newUsers) {
+
+        List<User> savedUsers = writer.saveAll(newUsers, user -> user.toBuilder()
+                .id(allocateId())
+                .name(isFieldEmpty(user.getName()) ? user.getLogin() : user.getName())
+                .build());
+
+        log.info("Сохранено пользователей пакетом: {}", savedUsers.size());
+        return savedUsers;
+    }
+
+    // обновление информации о пользователе
+    @Override
+    public User updateUser(User user) {
+
+        if (user.getId() == null || !users.contains(user.getId())) {
+            throw new UserDoesNotExistException("Такого пользователя нет в списке.");
+        }
+
+        User newUser;
+
+        if (isFieldEmpty(user.getName())) {
+            newUser = user.toBuilder().name(user.getLogin()).build(); // устанавливаем логин в качестве имени в случае незаполненного поля
+        } else {
+            newUser = user;
+        }
+
+        updateUserData(newUser); // обновление информации о пользователе
+        log.info("Обновлены данные пользователя {}", user);
+        return newUser;
+    }
+
+    // получение списка пользователей - декодирование всех записей
+    @Override
+    public List<User> listUsers() {
+
+        List<User> listUsers = users.stream().collect(Collectors.toList());
+
+        log.info("Количество пользователей в списке: {}", listUsers.size());
+
+        return listUsers;
+    }
+
+    // последовательное получение пользователей с диска - рабочий набор в памяти не вытесняется
+    @Override
+    public Stream<User> streamUsers() {
+
+        log.info("Количество пользователей в списке: {}", users.size());
+
+        return users.stream();
+    }
+
+    @Override
+    public User getUserById(Long id) { // получение пользователя по идентификатору
+
+        User user = id == null ? null : idFilters.users().find(id, this::loadUser);
+        if (user == null) {
+            throw new UserDoesNotExistException(String.format("Пользователь с id %d не найден", id));
+        }
+        return user;
+    }
+
+    @Override
+    public void updateUserData(User user) { // сохранение новой или обновленной информации о пользователе
+        writer.save(user);
+    }
+
+    // сохранение пользователя, только если его версия не изменилась после чтения - защита от потерянных обновлений
+    @Override
+    public boolean compareAndSetUserData(User user, long expectedVersion) {
+        return writer.compareAndSet(user, expectedVersion);
+    }
+
+    @Override
+    public synchronized void restoreUserData(User user) { // восстановление информации о пользователе из журнала
+
+        writer.restore(user);
+        nextId = Math.max(nextId, user.getId() + 1);
+    }
+
+    @Override
+    public long getUserVersion(Long id) { // версия последнего сохранения пользователя
+
+        if (id == null || !idFilters.users().exists(id, users::contains)) {
+            throw new UserDoesNotExistException(String.format("Пользователь с id %d не найден", id));
+        }
+        return versions.get(id);
+    }
+
+    @Override
+    public long getUsersVersion() { // версия списка пользователей
+        return versions.current();
+    }
+
+    @Override
+    public Map<Long, User> getUsersData() { // представление, декодирующее пользователей при обращении
+        return usersView;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        users.close();
+    }
+
+    private User loadUser(long id) {
+        return users.get(id);
+    }
+
+    public TierStats getTierStats() {
+        return users.stats("users");
+    }
+
+    private boolean isFieldEmpty(String fieldValue) { // проверка является ли поле пустым
+        return fieldValue == null || fieldValue.isBlank();
+    }
+
+    // выдача следующего id, принадлежащего текущему узлу, вызывается под блокировкой хранилища
+    private Long allocateId() {
+
+        long id = shardLayout.ownedIdFrom(nextId);
+        nextId = id + 1;
+        return id;
+    }
+
+}
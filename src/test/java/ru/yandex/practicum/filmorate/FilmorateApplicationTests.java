@@ -12,27 +12,128 @@ import org.junit.jupiter.params.provider.ArgumentsSource;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.annotation.DirtiesContext;
-
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import ru.yandex.practicum.filmorate.controllers.AdmissionControl;
+import ru.yandex.practicum.filmorate.controllers.ErrorHandler;
 import ru.yandex.practicum.filmorate.controllers.FilmController;
+import ru.yandex.practicum.filmorate.controllers.ReactiveUserController;
 import ru.yandex.practicum.filmorate.controllers.UserController;
+import ru.yandex.practicum.filmorate.exceptions.AdmissionRejectedException;
 import ru.yandex.practicum.filmorate.exceptions.FilmDoesNotExistException;
 import ru.yandex.practicum.filmorate.exceptions.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.exceptions.VersionConflictException;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFacets;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IdFilterStats;
 import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.SingleFlight;
+import ru.yandex.practicum.filmorate.service.pipeline.MutationPipeline;
+import ru.yandex.practicum.filmorate.storage.journal.NoOpMutationJournal;
+import ru.yandex.practicum.filmorate.storage.IdBloomFilter;
 import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
 import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.ReadThroughCache;
+import ru.yandex.practicum.filmorate.storage.journal.FileMutationJournal;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.RecordType;
+import ru.yandex.practicum.filmorate.storage.InMemoryChangeStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryEventStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryLikeStorage;
+import ru.yandex.practicum.filmorate.storage.ShardLayout;
+import ru.yandex.practicum.filmorate.storage.IdFilters;
+import ru.yandex.practicum.filmorate.storage.journal.SnapshotScheduler;
+import ru.yandex.practicum.filmorate.storage.journal.JournalReplayer;
+import ru.yandex.practicum.filmorate.storage.mapped.MappedRecordSlab;
+import ru.yandex.practicum.filmorate.storage.mapped.MappedRecordMap;
+import ru.yandex.practicum.filmorate.storage.journal.ByteBufferDataInput;
+import ru.yandex.practicum.filmorate.service.Command;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.service.UserServiceCommunity;
+import ru.yandex.practicum.filmorate.service.ImportServiceBatch;
+import ru.yandex.practicum.filmorate.service.ImportFormat;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.exceptions.RequestValidationException;
+import ru.yandex.practicum.filmorate.storage.VersionedMap;
+import ru.yandex.practicum.filmorate.model.ChangeFeed;
+import ru.yandex.practicum.filmorate.model.Change;
+import ru.yandex.practicum.filmorate.service.shard.ShardClient;
+import ru.yandex.practicum.filmorate.service.shard.ShardedFilmService;
+import ru.yandex.practicum.filmorate.service.shard.ShardedSearchService;
+import ru.yandex.practicum.filmorate.service.FilmServiceRating;
+import ru.yandex.practicum.filmorate.service.SearchServiceIndex;
+import ru.yandex.practicum.filmorate.model.FilmHit;
+import ru.yandex.practicum.filmorate.exceptions.ShardRequestException;
+import ru.yandex.practicum.filmorate.storage.replication.ReplicationServer;
+import ru.yandex.practicum.filmorate.storage.replication.ReplicationClient;
+import ru.yandex.practicum.filmorate.storage.replication.ReplicationNode;
+import ru.yandex.practicum.filmorate.controllers.ReplicaRequestGuard;
+import ru.yandex.practicum.filmorate.exceptions.ReplicaUnavailableException;
+import ru.yandex.practicum.filmorate.model.ReplicationStatus;
+import ru.yandex.practicum.filmorate.model.ChangeType;
+import ru.yandex.practicum.filmorate.storage.tiered.TieredFilmStorage;
+import ru.yandex.practicum.filmorate.model.TierStats;
+import ru.yandex.practicum.filmorate.service.FriendPairLocks;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.BatchOperation;
+import ru.yandex.practicum.filmorate.model.BatchOperationType;
+import ru.yandex.practicum.filmorate.service.BatchService;
+import ru.yandex.practicum.filmorate.service.BatchServiceAtomic;
+import ru.yandex.practicum.filmorate.storage.ChangeStorage;
+import ru.yandex.practicum.filmorate.storage.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.search.SuggestIndex;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.storage.journal.SnapshotCodec;
+import ru.yandex.practicum.filmorate.storage.journal.MappedFileDataInput;
+import ru.yandex.practicum.filmorate.controllers.ShardRequestGuard;
+import ru.yandex.practicum.filmorate.exceptions.ShardAccessDeniedException;
+import ru.yandex.practicum.filmorate.service.shard.ShardedUserService;
 
 import javax.validation.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.LongStream;
+import java.net.ServerSocket;
+import java.util.function.BooleanSupplier;
+import javax.validation.Validation;
+import java.io.UncheckedIOException;
+import java.io.EOFException;
 
 @SpringBootTest
 public class FilmorateApplicationTests {
@@ -42,12 +143,26 @@ public class FilmorateApplicationTests {
     @Autowired
     private FilmController filmController;
     @Autowired
+    private ReactiveUserController reactiveUserController;
+    @Autowired
     private InMemoryFilmStorage inMemoryFilmStorage;
     @Autowired
     private InMemoryUserStorage inMemoryUserStorage;
     private Map<Integer, Film> films;
     private Map<Long, User> users;
     private Validator validator;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private FilmServiceRating filmServiceRating;
+    @Autowired
+    private SearchServiceIndex searchServiceIndex;
+    @Autowired
+    private BatchService batchService;
+    @Autowired
+    private LikeStorage likeStorage;
+    @Autowired
+    private ChangeStorage changeStorage;
 
     @BeforeEach
     void setUp() {
@@ -60,6 +175,62 @@ public class FilmorateApplicationTests {
 
     }
 
+    // чтение JSON-массива, записанного в потоковый ответ
+    private JsonNode readStreamedBody(ResponseEntity<StreamingResponseBody> response) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Objects.requireNonNull(response.getBody()).writeTo(out);
+        return objectMapper.readTree(out.toByteArray());
+    }
+
+    // id фильмов потокового ответа в порядке записи
+    private List<Integer> filmIds(ResponseEntity<StreamingResponseBody> response) throws IOException {
+
+        List<Integer> ids = new ArrayList<>();
+        readStreamedBody(response).forEach(node -> ids.add(node.get("id").asInt()));
+        return ids;
+    }
+
+    // id фильмов страницы выборки по жанрам и рейтингам
+    private List<Integer> facetIds(FilmFacets facets) {
+
+        return facets.getFilms().stream().map(Film::getId).collect(Collectors.toList());
+    }
+
+    // запрос без заголовков условного GET
+    private ServletWebRequest request() {
+
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/"), new MockHttpServletResponse());
+    }
+
+    // запрос с заголовком If-None-Match
+    private ServletWebRequest request(String ifNoneMatch) {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("If-None-Match", ifNoneMatch);
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    // запрос к точке доступа с шаблоном адреса, найденным при выборе обработчика
+    private MockHttpServletRequest admissionRequest(String pattern) {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", pattern);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, pattern);
+        return request;
+    }
+
+    // id фильмов, найденных по запросу, в порядке релевантности
+    private List<Integer> searchIds(String query) {
+
+        return filmController.searchFilms(query, 10).stream().map(Film::getId).collect(Collectors.toList());
+    }
+
+    // id фильмов из подсказок по префиксу названия
+    private List<Long> suggestIds(String prefix, int limit) {
+
+        return filmController.suggestFilms(prefix, limit).stream().map(Suggestion::getId).collect(Collectors.toList());
+    }
+
 
     //************************* Тестирование работы сервиса добавления в друзья *************************
 
@@ -83,7 +254,7 @@ public class FilmorateApplicationTests {
 
         // получаем информацию о пользователе по id
 
-        User userFromStorage = userController.getUserById(userId);
+        User userFromStorage = userController.getUserById(userId, request());
 
         // проверяем корректность информации о пользователе
 
@@ -111,7 +282,7 @@ public class FilmorateApplicationTests {
 
         UserDoesNotExistException e = assertThrows(
                 UserDoesNotExistException.class,
-                () -> userController.getUserById(nonExistentUserId),
+                () -> userController.getUserById(nonExistentUserId, request()),
                 "Не выброшено исключение UserDoesNotExistException.");
         assertEquals("Пользователь с id -1 не найден", e.getMessage());
 
@@ -547,6 +718,163 @@ public class FilmorateApplicationTests {
 
     }
 
+    @Test
+    public void shouldShedRequestsOverEndpointLimit() throws Exception { // ограничение запросов к точке доступа
+
+        // предел в один запрос без очереди: второй одновременный запрос к той же точке сразу отклоняется
+
+        AdmissionControl admission = new AdmissionControl(1, 1, 1, 0, 0, 2.0, 3);
+        HandlerMethod handler = new HandlerMethod(filmController, FilmController.class.getMethod("listFilms",
+                LocalDate.class, LocalDate.class, Integer.class, Integer.class, String.class));
+
+        MockHttpServletRequest popular = admissionRequest("/films/popular");
+        assertTrue(admission.preHandle(popular, new MockHttpServletResponse(), handler));
+
+        AdmissionRejectedException rejected = assertThrows(AdmissionRejectedException.class,
+                () -> admission.preHandle(admissionRequest("/films/popular"), new MockHttpServletResponse(), handler),
+                "Не выброшено исключение AdmissionRejectedException.");
+        assertTrue(admission.preHandle(admissionRequest("/films/{id}"), new MockHttpServletResponse(), handler),
+                "Запрос к другой точке доступа отклонен из-за нагрузки на соседнюю");
+
+        // после завершения запроса место освобождается
+
+        admission.afterCompletion(popular, new MockHttpServletResponse(), handler, null);
+        assertTrue(admission.preHandle(admissionRequest("/films/popular"), new MockHttpServletResponse(), handler),
+                "Место не освобождено после завершения запроса");
+        assertEquals(List.of("GET /films/popular", 1L, "GET /films/{id}", 0L),
+                admission.stats().stream()
+                        .flatMap(stats -> Stream.of(stats.getEndpoint(), stats.getRejected()))
+                        .collect(Collectors.toList()),
+                "Неверное число отклоненных запросов");
+
+        ResponseEntity<?> response = new ErrorHandler().handleAdmissionRejected(rejected);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode(), "Неверный код ответа");
+        assertEquals("3", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER), "Неверный заголовок Retry-After");
+
+    }
+
+    @Test
+    public void shouldApplyMutationsOfOneKeyInPublicationOrder() throws Exception { // конвейер записи
+
+        // маленький буфер: потоки запросов ждут освобождения ячеек, писатели проходят буфер по кругу много раз
+
+        MutationPipeline pipeline = new MutationPipeline(2, 8, 4, new NoOpMutationJournal());
+        long[] counters = new long[4]; // без синхронизации - изменения одного ключа выполняет один писатель
+        List<List<Long>> seen = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> producers = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            int key = thread % 4;
+            producers.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    long value = pipeline.execute(key, () -> ++counters[key]);
+                    synchronized (seen) {
+                        seen.get(key).add(value);
+                    }
+                }
+            }));
+        }
+        for (Future<?> producer : producers) {
+            producer.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        for (int key = 0; key < 4; key++) {
+            assertEquals(1000, counters[key], "Изменения одного ключа потеряны при конкурентной записи");
+            assertEquals(1000, new HashSet<>(seen.get(key)).size(), "Изменения одного ключа выполнены параллельно");
+        }
+
+        // исключение изменения передается потоку запроса без обертки, писатель продолжает работу
+
+        assertThrows(FilmDoesNotExistException.class, () -> pipeline.execute(1, () -> {
+            throw new FilmDoesNotExistException("Фильм c id: 1 не найден.", 1);
+        }), "Не выброшено исключение FilmDoesNotExistException.");
+        assertEquals(1001, pipeline.execute(1, () -> ++counters[1]), "Писатель остановлен после ошибки изменения");
+        assertThrows(StackOverflowError.class, () -> pipeline.execute(1, () -> {
+            throw new StackOverflowError();
+        }), "Error изменения не передан потоку запроса");
+        assertEquals(1002, pipeline.execute(1, () -> ++counters[1]), "Писатель остановлен после Error изменения");
+
+        pipeline.close();
+        assertThrows(IllegalStateException.class, () -> pipeline.execute(1, () -> ++counters[1]),
+                "Остановленный конвейер принял изменение");
+
+    }
+
+    @Test
+    public void shouldCompleteEveryPublishedMutationWhenPipelineStops() throws Exception {
+        //  изменения, опубликованные одновременно с остановкой конвейера, не оставляют потоки ждать бесконечно
+
+        for (int round = 0; round < 20; round++) {
+            MutationPipeline pipeline = new MutationPipeline(1, 8, 4, new NoOpMutationJournal());
+            List<CompletableFuture<Integer>> published = new CopyOnWriteArrayList<>();
+            CountDownLatch started = new CountDownLatch(4);
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            for (int thread = 0; thread < 4; thread++) {
+                executor.submit(() -> {
+                    started.countDown();
+                    try {
+                        while (true) {
+                            published.add(pipeline.submit(1, () -> 1));
+                        }
+                    } catch (IllegalStateException e) {
+                        return; // конвейер остановлен
+                    }
+                });
+            }
+            started.await();
+            pipeline.close();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "Поток запроса ждет остановленный конвейер");
+
+            for (CompletableFuture<Integer> done : published) {
+                try {
+                    done.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException, "Неверная причина отказа");
+                }
+            }
+        }
+
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldStreamFriendListReactively() { // получение списка друзей через неблокирующий API
+
+        for (long id = 1; id <= 3; id++) {
+            userController.addUser(User.builder()
+                    .email("user" + id + "@yandex.ru")
+                    .login("user" + id)
+                    .name("User " + id)
+                    .birthday(LocalDate.of(2000, 10, 10))
+                    .build());
+        }
+        userController.addFriend(1L, 2L);
+        userController.addFriend(1L, 3L);
+
+        // друзья выдаются по мере запроса - подписчик может ограничиться первыми
+
+        List<User> friends = reactiveUserController.listUserFriends(1L).collectList().block();
+        List<User> firstFriend = reactiveUserController.listUserFriends(1L).take(1).collectList().block();
+        List<User> commonFriends = reactiveUserController.listCommonFriends(2L, 3L).collectList().block();
+
+        assertEquals(Set.of(2L, 3L), friends.stream().map(User::getId).collect(Collectors.toSet()),
+                "Получен неверный список друзей");
+        assertEquals(1, firstFriend.size(), "Получено больше друзей, чем запрошено");
+        assertEquals(List.of(1L), commonFriends.stream().map(User::getId).collect(Collectors.toList()),
+                "Получен неверный список общих друзей");
+
+        // ошибка несуществующего пользователя передается подписчику
+
+        assertThrows(UserDoesNotExistException.class,
+                () -> reactiveUserController.listUserFriends(-1L).collectList().block(),
+                "Не выброшено исключение UserDoesNotExistException.");
+
+    }
+
     @Test
     @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
     public void shouldFailGetFriendListByInvalidId() { // получение списка друзей у несуществующего пользователя
@@ -788,11 +1116,11 @@ public class FilmorateApplicationTests {
 
         filmController.addFilm(film);
 
-        filmController.getFilmById(filmId);
+        filmController.getFilmById(filmId, request());
 
         // получаем информацию о фильме по id
 
-        Film filmFromStorage = filmController.getFilmById(filmId);
+        Film filmFromStorage = filmController.getFilmById(filmId, request());
 
         // проверяем корректность информации о фильме
 
@@ -821,12 +1149,327 @@ public class FilmorateApplicationTests {
 
         FilmDoesNotExistException e = assertThrows(
                 FilmDoesNotExistException.class,
-                () -> filmController.getFilmById(nonExistentFilmId),
+                () -> filmController.getFilmById(nonExistentFilmId, request()),
                 "Не выброшено исключение FilmDoesNotExistException.");
         assertEquals("Фильм с id -1 не найден", e.getMessage());
 
     }
 
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldAnswerNotModifiedUntilFilmChanges() { //  условный GET фильма по метке ETag
+
+        Film film = Film.builder()
+                .id(1)
+                .name("All hate Cris")
+                .description("Good comedy")
+                .releaseDate(LocalDate.of(2000, 10, 10))
+                .duration(90)
+                .likes(0L)
+                .build();
+        filmController.addFilm(film);
+
+        // первый запрос получает фильм и метку версии
+
+        ServletWebRequest first = request();
+        assertNotNull(filmController.getFilmById(1, first), "Фильм не получен");
+        String eTag = first.getResponse().getHeader("ETag");
+        assertNotNull(eTag, "Не выставлен заголовок ETag");
+
+        // пока фильм не менялся, повторный запрос с той же меткой получает 304 без тела
+
+        ServletWebRequest repeated = request(eTag);
+        assertNull(filmController.getFilmById(1, repeated), "Для неизменного фильма возвращено тело");
+        assertEquals(304, ((MockHttpServletResponse) repeated.getResponse()).getStatus());
+
+        // после обновления фильма старая метка больше не совпадает
+
+        filmController.updateFilm(film.toBuilder().description("Updated comedy").build(), null,
+                new MockHttpServletResponse());
+        ServletWebRequest changed = request(eTag);
+        Film updated = filmController.getFilmById(1, changed);
+        assertEquals("Updated comedy", updated.getDescription(), "Получена устаревшая версия фильма");
+        assertNotEquals(eTag, changed.getResponse().getHeader("ETag"), "Метка не изменилась после обновления");
+
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldRejectUpdateOfStaleFilmVersion() { //  обновление фильма с проверкой версии If-Match
+
+        Film film = Film.builder()
+                .id(1)
+                .name("All hate Cris")
+                .description("Good comedy")
+                .releaseDate(LocalDate.of(2000, 10, 10))
+                .duration(90)
+                .likes(0L)
+                .build();
+        filmController.addFilm(film);
+        userController.addUser(User.builder()
+                .email("Alex@yandex.ru")
+                .login("alex")
+                .name("Alex")
+                .birthday(LocalDate.of(1990, 10, 10))
+                .build());
+
+        ServletWebRequest read = request();
+        filmController.getFilmById(1, read);
+        String staleTag = read.getResponse().getHeader("ETag");
+
+        // лайк изменяет версию фильма - обновление по прочитанной до лайка версии отклоняется
+
+        filmController.addLike(1, 1L);
+        assertThrows(VersionConflictException.class,
+                () -> filmController.updateFilm(film.toBuilder().description("Stale").build(), staleTag,
+                        new MockHttpServletResponse()),
+                "Не выброшено исключение VersionConflictException.");
+        assertThrows(VersionConflictException.class,
+                () -> filmController.updateFilm(film.toBuilder().description("Stale").build(), "\"unknown-1\"",
+                        new MockHttpServletResponse()),
+                "Принята метка, выданная не этим запуском приложения");
+
+        // обновление по актуальной версии проходит, обновления с меткой и без нее не отменяют лайк
+
+        ServletWebRequest reread = request();
+        filmController.getFilmById(1, reread);
+        MockHttpServletResponse updateResponse = new MockHttpServletResponse();
+        Film updated = filmController.updateFilm(film.toBuilder().description("Fresh").build(),
+                reread.getResponse().getHeader("ETag"), updateResponse);
+        assertEquals(1L, updated.getLikes(), "Обновление фильма отменило лайк");
+
+        // ответ на обновление содержит метку новой версии - по ней можно обновлять дальше без повторного GET
+
+        ServletWebRequest afterUpdate = request();
+        filmController.getFilmById(1, afterUpdate);
+        assertEquals(afterUpdate.getResponse().getHeader("ETag"), updateResponse.getHeader("ETag"),
+                "Метка ответа на обновление не совпадает с меткой новой версии");
+        filmController.updateFilm(film.toBuilder().description("Fresher").build(), updateResponse.getHeader("ETag"),
+                new MockHttpServletResponse());
+
+        filmController.updateFilm(film.toBuilder().name("Renamed").likes(0L).build(), null,
+                new MockHttpServletResponse());
+        Film stored = filmController.getFilmById(1, request());
+        assertEquals("Renamed", stored.getName(), "Фильм не обновлен");
+        assertEquals(1L, stored.getLikes(), "Обновление фильма без метки отменило лайк");
+
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldFindFilmsByRelevance() { //  полнотекстовый поиск фильмов по названию и описанию
+
+        Film film = Film.builder()
+                .releaseDate(LocalDate.of(2000, 10, 10))
+                .duration(90)
+                .likes(0L)
+                .build();
+        filmController.addFilm(film.toBuilder().name("Space comedy").description("A comedy about space travel").build());
+        filmController.addFilm(film.toBuilder().name("Drama").description("Sad story with a bit of comedy").build());
+        filmController.addFilm(film.toBuilder().name("Space odyssey").description("Epic space journey").build());
+        filmController.addFilm(film.toBuilder().name("Ёлки").description("Новогодняя комедия").build());
+
+        // слово в названии и коротком описании весит больше, регистр и ё не важны
+
+        assertEquals(List.of(1, 2), searchIds("comedy"), "Неверный порядок фильмов по релевантности");
+        assertEquals(List.of(3, 1), searchIds("SPACE"), "Неверный порядок фильмов по релевантности");
+        assertEquals(List.of(4), searchIds("елки"), "Не найден фильм с буквой ё в названии");
+        assertEquals(List.of(3), searchIds("space journey").subList(0, 1), "Фильм со всеми словами запроса не первый");
+        assertEquals(List.of(), searchIds("western"), "Найден фильм без слов запроса");
+
+        // индекс обновляется при изменении фильма
+
+        filmController.updateFilm(film.toBuilder().id(3).name("Moon odyssey").description("Epic journey").build(), null,
+                new MockHttpServletResponse());
+        assertEquals(List.of(1), searchIds("space"), "Найден фильм по удаленному слову");
+        assertEquals(List.of(3), searchIds("moon"), "Не найден фильм по новому слову");
+
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldSuggestByPrefixInPopularityOrder() { //  подсказки по началу названия фильма и логина
+
+        Film film = Film.builder()
+                .releaseDate(LocalDate.of(2000, 10, 10))
+                .duration(90)
+                .likes(0L)
+                .build();
+        filmController.addFilm(film.toBuilder().name("Star Wars").description("Space opera").build());
+        filmController.addFilm(film.toBuilder().name("Star Trek").description("Space exploration").build());
+        filmController.addFilm(film.toBuilder().name("Stargate").description("Ancient portal").build());
+        filmController.addFilm(film.toBuilder().name("Moon").description("Lonely astronaut").build());
+
+        User user = User.builder()
+                .email("user@yandex.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+        for (String login : List.of("anna", "andrew", "boris", "anton")) {
+            userController.addUser(user.toBuilder().login(login).name(login).build());
+        }
+        filmController.addLike(2, 1L);
+        filmController.addLike(2, 2L);
+        filmController.addLike(3, 1L);
+        userController.addFriend(2L, 3L);
+
+        // популярные первыми, при равной популярности - по возрастанию id, регистр не важен
+
+        assertEquals(List.of(2L, 3L, 1L), suggestIds("sta", 10), "Неверный порядок подсказок фильмов");
+        assertEquals(List.of(2L, 1L), suggestIds("star ", 10), "Неверный отбор подсказок по префиксу с пробелом");
+        assertEquals(List.of(2L), suggestIds("STAR T", 10), "Неверный отбор подсказок по префиксу");
+        assertEquals(List.of(2L, 3L), suggestIds("s", 2), "Не учтено ограничение числа подсказок");
+        assertEquals(List.of(), suggestIds("starx", 10), "Найдена подсказка, не начинающаяся с префикса");
+        assertEquals(2L, filmController.suggestFilms("star t", 10).get(0).getPopularity(),
+                "Неверная популярность в подсказке");
+
+        assertEquals(List.of(2L, 1L, 4L), userController.suggestUsers("An", 10).stream()
+                .map(Suggestion::getId).collect(Collectors.toList()), "Неверный порядок подсказок пользователей");
+
+        // подсказки обновляются при изменении названия
+
+        filmController.updateFilm(film.toBuilder().id(2).name("Moonlight").description("Drama").build(), null,
+                new MockHttpServletResponse());
+        assertEquals(List.of(3L, 1L), suggestIds("star", 10), "Найдена подсказка по прежнему названию");
+        assertEquals(List.of(2L, 4L), suggestIds("moon", 10), "Не найдена подсказка по новому названию");
+        assertEquals("Moonlight", filmController.suggestFilms("moonl", 10).get(0).getText(),
+                "Неверный текст подсказки");
+
+    }
+
+    @Test
+    public void shouldEvictAndInvalidateCachedFilms() { //  кеш чтения фильмов: вытеснение и удаление при изменении
+
+        ReadThroughCache<Integer, Film> cache = new ReadThroughCache<>(2, 0);
+        Map<Integer, Film> storage = new HashMap<>();
+        for (int id = 1; id <= 3; id++) {
+            storage.put(id, Film.builder().id(id).name("Film " + id).build());
+        }
+
+        // первое чтение загружает фильм из хранилища, повторное - из кеша
+
+        cache.get(1, storage::get);
+        cache.get(1, storage::get);
+        cache.get(2, storage::get);
+        cache.get(3, storage::get); // вытесняет давно не читавшийся фильм
+
+        CacheStats stats = cache.stats("films");
+        assertEquals(1L, stats.getHits(), "Неверное количество чтений из кеша");
+        assertEquals(3L, stats.getMisses(), "Неверное количество чтений из хранилища");
+        assertEquals(1L, stats.getEvictions(), "Неверное количество вытеснений");
+        assertEquals(2, stats.getSize(), "Превышен размер кеша");
+
+        // после изменения в хранилище и удаления из кеша читается новая версия фильма
+
+        storage.put(3, Film.builder().id(3).name("Updated").build());
+        cache.invalidate(3);
+        assertEquals("Updated", cache.get(3, storage::get).getName(), "Из кеша прочитана устаревшая версия фильма");
+
+    }
+
+    @Test
+    public void shouldRejectNonExistentIdsByBloomFilter() { //  фильтр существующих id не пропускает отсутствующие id
+
+        IdBloomFilter filter = new IdBloomFilter(1000, 0.01);
+        for (long id = 1; id <= 1000; id++) {
+            filter.add(id);
+        }
+
+        // сохраненные id всегда проходят фильтр
+
+        for (long id = 1; id <= 1000; id++) {
+            assertTrue(filter.mightContain(id), "Фильтр отклонил сохраненный id " + id);
+        }
+
+        // доля ложных срабатываний для отсутствующих id близка к расчетной
+
+        long passed = 0;
+        for (long id = 1_000_001; id <= 1_010_000; id++) {
+            if (filter.exists(id, key -> false)) {
+                passed++;
+            }
+        }
+        IdFilterStats stats = filter.stats("users");
+        assertEquals(0L, passed, "Отсутствующий id найден в хранилище");
+        assertTrue(stats.getFalsePositiveRate() < 0.03, "Слишком много ложных срабатываний фильтра");
+        assertEquals(10_000L, stats.getRejections() + stats.getFalsePositives(),
+                "Неверно учтены проверки отсутствующих id");
+
+    }
+
+    @Test
+    public void shouldGrowBloomFilterBeyondExpectedIds() { //  фильтр добавляет слои, доля ложных срабатываний не растет
+
+        IdBloomFilter filter = new IdBloomFilter(1000, 0.01);
+        for (long id = 1; id <= 20_000; id++) {
+            filter.add(id);
+            filter.add(id); // повторное сохранение записи не заполняет фильтр
+        }
+
+        for (long id = 1; id <= 20_000; id++) {
+            assertTrue(filter.mightContain(id), "Фильтр отклонил сохраненный id " + id);
+        }
+
+        long passed = 0;
+        for (long id = 1_000_001; id <= 1_020_000; id++) {
+            if (filter.mightContain(id)) {
+                passed++;
+            }
+        }
+        IdFilterStats stats = filter.stats("films");
+        assertTrue(stats.getLayers() > 1, "Фильтр не вырос после превышения ожидаемого числа id");
+        assertTrue(stats.getCapacity() >= 20_000, "Емкость слоев меньше числа добавленных id");
+        assertTrue(stats.getInsertions() <= 20_000, "Повторные добавления id учтены как новые");
+        assertTrue(filter.expectedFalsePositiveRate() <= 0.01, "Расчетная доля ложных срабатываний превышает заданную");
+        assertTrue(passed < 20_000 * 0.015, "Слишком много ложных срабатываний выросшего фильтра: " + passed);
+
+    }
+
+    @Test
+    public void shouldShareOneComputationBetweenConcurrentQueries() throws Exception { //  объединение запросов
+
+        SingleFlight<Integer, List<Film>> flight = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Film> popular = List.of(Film.builder().id(1).name("Film").build());
+
+        // первый запрос выполняет вычисление и ждет, пока остальные запросы присоединятся
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<Film>>> results = new ArrayList<>();
+        results.add(executor.submit(() -> flight.execute(10, () -> {
+            computations.incrementAndGet();
+            started.countDown();
+            await(release);
+            return popular;
+        })));
+        started.await();
+        for (int i = 0; i < 7; i++) {
+            results.add(executor.submit(() -> flight.execute(10, () -> {
+                computations.incrementAndGet();
+                return List.of();
+            })));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<List<Film>> result : results) {
+            assertSame(popular, result.get(5, TimeUnit.SECONDS), "Запрос получил результат другого вычисления");
+        }
+        executor.shutdown();
+        assertEquals(1, computations.get(), "Одинаковые одновременные запросы вычислены повторно");
+
+    }
+
+    private static void await(CountDownLatch latch) {
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Test
     @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
     public void shouldAddLikeWithValidId() { //  существующие пользователи ставит лайк фильму с существующим id
@@ -1172,7 +1815,7 @@ public class FilmorateApplicationTests {
 
         // получаем список наиболее популярных фильмов
 
-        List<Film> mostPopularFilms = filmController.listMostPopularFilms(null);
+        List<Film> mostPopularFilms = filmController.listMostPopularFilms(null, request());
 
         // проверяем корректность списка самых популярных фильмов
 
@@ -1244,7 +1887,7 @@ public class FilmorateApplicationTests {
 
         // получаем список наиболее популярных фильмов
 
-        List<Film> mostPopularFilms = filmController.listMostPopularFilms(10);
+        List<Film> mostPopularFilms = filmController.listMostPopularFilms(10, request());
 
         // проверяем корректность списка самых популярных фильмов
 
@@ -1316,7 +1959,7 @@ public class FilmorateApplicationTests {
 
         // получаем список наиболее популярных фильмов
 
-        List<Film> mostPopularFilms = filmController.listMostPopularFilms(10);
+        List<Film> mostPopularFilms = filmController.listMostPopularFilms(10, request());
 
         // проверяем корректность списка самых популярных фильмов
 
@@ -1389,7 +2032,7 @@ public class FilmorateApplicationTests {
 
         // получаем список наиболее популярных фильмов
 
-        List<Film> mostPopularFilms = filmController.listMostPopularFilms(3);
+        List<Film> mostPopularFilms = filmController.listMostPopularFilms(3, request());
 
         // проверяем корректность сохраненной в списках друзей информации
 
@@ -1470,11 +2113,17 @@ public class FilmorateApplicationTests {
 
         User userUpdated = new User(1L, "Egor@yandex.ru", "Egor Egorov", "egor",
                 LocalDate.of(1990, 10, 10), new HashSet<>(), new HashMap<>());
-        userController.updateUser(userUpdated);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        userController.updateUser(userUpdated, null, response);
 
-        //проверяем корректность обновления данных
+        //проверяем корректность обновления данных и метку новой версии в ответе
 
         assertEquals(users.get(id), userUpdated, "Данные пользователя не обновились");
+        ServletWebRequest read = request();
+        userController.getUserById(id, read);
+        assertNotNull(response.getHeader("ETag"), "Не выставлен заголовок ETag после обновления");
+        assertEquals(read.getResponse().getHeader("ETag"), response.getHeader("ETag"),
+                "Метка ответа на обновление не совпадает с меткой новой версии");
 
     }
 
@@ -1493,7 +2142,7 @@ public class FilmorateApplicationTests {
 
         User userUpdated = new User(1L, "Egor@yandex.ru", null, "egor",
                 LocalDate.of(1990, 10, 10), new HashSet<>(), new HashMap<>());
-        userController.updateUser(userUpdated);
+        userController.updateUser(userUpdated, null, new MockHttpServletResponse());
 
         //проверяем корректность обновления данных и присвоения логина в качестве имени
 
@@ -1512,14 +2161,14 @@ public class FilmorateApplicationTests {
 
         assertThrows(
                 UserDoesNotExistException.class,
-                () -> userController.updateUser(user),
+                () -> userController.updateUser(user, null, new MockHttpServletResponse()),
                 "Такого пользователя нет в списке.");
 
     }
 
     @Test
     @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
-    public void shouldGetUsersList() {
+    public void shouldGetUsersList() throws IOException {
 
         // добавляем пользователей в список
 
@@ -1533,7 +2182,7 @@ public class FilmorateApplicationTests {
 
         //получаем пользователей из списка
 
-        List<User> usersList = userController.listUsers();
+        JsonNode usersList = readStreamedBody(userController.listUsers());
         assertEquals(usersList.size(), 2, "Список пользователей неверного размера");
 
     }
@@ -1588,7 +2237,7 @@ public class FilmorateApplicationTests {
         Film filmUpdated = new Film(1, "All like Tests", " Real comedy",
                 LocalDate.of(2023, 7, 19), 12000, 0L,
                 RatingMPA.NC_17, Collections.singleton((Genre.COMEDY)));
-        filmController.updateFilm(filmUpdated);
+        filmController.updateFilm(filmUpdated, null, new MockHttpServletResponse());
 
         //проверяем корректность обновления данных
 
@@ -1607,14 +2256,14 @@ public class FilmorateApplicationTests {
 
         assertThrows(
                 FilmDoesNotExistException.class,
-                () -> filmController.updateFilm(film),
+                () -> filmController.updateFilm(film, null, new MockHttpServletResponse()),
                 "Такого фильма нет в списке.");
 
     }
 
     @Test
     @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
-    public void shouldGetFilmsList() {
+    public void shouldGetFilmsList() throws IOException {
 
         // добавляем фильмы в список
 
@@ -1630,11 +2279,1656 @@ public class FilmorateApplicationTests {
 
         //получаем фильмы из списка
 
-        List<Film> filmsList = filmController.listFilms();
+        JsonNode filmsList = readStreamedBody(filmController.listFilms(null, null, null, null, null));
         assertEquals(filmsList.size(), 2, "Список фильмов неверного размера");
 
     }
 
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldListFilmsByReleaseDateRange() throws IOException { //  выборка фильмов по диапазону дат
+
+        Film film = Film.builder()
+                .name("Film")
+                .description("Description")
+                .duration(90)
+                .likes(0L)
+                .build();
+        for (LocalDate date : List.of(LocalDate.of(1999, 12, 31), LocalDate.of(2000, 1, 1),
+                LocalDate.of(2000, 6, 15), LocalDate.of(2000, 6, 15), LocalDate.of(2001, 1, 1),
+                LocalDate.of(2010, 5, 5))) {
+            filmController.addFilm(film.toBuilder().releaseDate(date).build());
+        }
+        User user = User.builder()
+                .email("user@yandex.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+        userController.addUser(user.toBuilder().login("first").build());
+        userController.addUser(user.toBuilder().login("second").build());
+        filmController.addLike(4, 1L);
+        filmController.addLike(4, 2L);
+        filmController.addLike(5, 1L);
+
+        // границы включительно, в пределах дня - по возрастанию id, размер диапазона - в заголовке
+
+        LocalDate from = LocalDate.of(2000, 1, 1);
+        LocalDate to = LocalDate.of(2001, 1, 1);
+        ResponseEntity<StreamingResponseBody> response = filmController.listFilms(from, to, null, null, null);
+        assertEquals("4", response.getHeaders().getFirst("X-Total-Count"), "Неверное число фильмов в диапазоне");
+        assertEquals(List.of(2, 3, 4, 5), filmIds(response), "Неверный список фильмов диапазона");
+        assertEquals(List.of(3, 4), filmIds(filmController.listFilms(from, to, 1, 2, null)),
+                "Неверная страница фильмов диапазона");
+        assertEquals(List.of(4, 5, 2, 3), filmIds(filmController.listFilms(from, to, null, null, "popularity")),
+                "Неверный порядок фильмов по популярности");
+        assertEquals(List.of(5), filmIds(filmController.listFilms(from, to, 1, 1, "popularity")),
+                "Неверная страница фильмов по популярности");
+        assertEquals(List.of(1, 2), filmIds(filmController.listFilms(null, from, null, null, null)),
+                "Неверный список фильмов без нижней границы");
+        assertEquals(List.of(), filmIds(filmController.listFilms(to, from, null, null, null)),
+                "Найдены фильмы в пустом диапазоне");
+
+        // индекс обновляется при изменении даты выхода
+
+        filmController.updateFilm(film.toBuilder().id(2).releaseDate(LocalDate.of(2011, 1, 1)).build(), null,
+                new MockHttpServletResponse());
+        assertEquals(List.of(3, 4, 5), filmIds(filmController.listFilms(from, to, null, null, null)),
+                "Фильм найден по прежней дате выхода");
+        assertEquals(List.of(6, 2), filmIds(filmController.listFilms(LocalDate.of(2002, 1, 1), null, null, null, null)),
+                "Фильм не найден по новой дате выхода");
+
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldFilterFilmsByGenreAndRatingWithCounts() { //  выборка по жанрам и рейтингам со счетчиками
+
+        Film film = Film.builder()
+                .name("Film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(90)
+                .likes(0L)
+                .build();
+        filmController.addFilm(film.toBuilder().ratingMPA(RatingMPA.PG).genres(Set.of(Genre.COMEDY)).build());
+        filmController.addFilm(film.toBuilder().ratingMPA(RatingMPA.R).genres(Set.of(Genre.COMEDY, Genre.DRAMA)).build());
+        filmController.addFilm(film.toBuilder().ratingMPA(RatingMPA.PG).genres(Set.of(Genre.DRAMA)).build());
+        filmController.addFilm(film.toBuilder().ratingMPA(RatingMPA.PG).genres(Set.of(Genre.ACTION)).build());
+        filmController.addFilm(film.toBuilder().ratingMPA(RatingMPA.G).genres(Set.of(Genre.COMEDY)).build());
+
+        // жанры объединяются, счетчики рейтингов - по выбранным жанрам, счетчики жанров - по всем фильмам
+
+        FilmFacets facets = filmController.listFilmsByFacets(Set.of(Genre.COMEDY, Genre.DRAMA), null, 0, 100,
+                null, null, null);
+        assertEquals(List.of(1, 2, 3, 5), facetIds(facets), "Неверная выборка по жанрам");
+        assertEquals(4, facets.getTotal(), "Неверный размер выборки");
+        assertEquals(2, facets.getMpa().get(RatingMPA.PG), "Неверное число фильмов с рейтингом");
+        assertEquals(0, facets.getMpa().get(RatingMPA.NC_17), "Неверное число фильмов без рейтинга в выборке");
+        assertEquals(3, facets.getGenres().get(Genre.COMEDY), "Неверное число фильмов с жанром");
+        assertEquals(1, facets.getGenres().get(Genre.ACTION), "Неверное число фильмов невыбранного жанра");
+        assertEquals(List.of(2, 3), facetIds(filmController.listFilmsByFacets(Set.of(Genre.COMEDY, Genre.DRAMA),
+                null, 1, 2, null, null, null)), "Неверная страница выборки");
+
+        // признаки пересекаются
+
+        facets = filmController.listFilmsByFacets(Set.of(Genre.COMEDY), Set.of(RatingMPA.PG), 0, 100,
+                null, null, null);
+        assertEquals(List.of(1), facetIds(facets), "Неверная выборка по жанру и рейтингу");
+        assertEquals(1, facets.getGenres().get(Genre.DRAMA), "Неверное число фильмов с жанром при рейтинге");
+        assertEquals(1, facets.getMpa().get(RatingMPA.G), "Неверное число фильмов с рейтингом при жанре");
+        assertEquals(List.of(1, 3, 4), facetIds(filmController.listFilmsByRating(Set.of(RatingMPA.PG), 0, 100,
+                null, null, null)),
+                "Неверная выборка по рейтингу");
+
+        // индексы обновляются при изменении фильма
+
+        filmController.updateFilm(film.toBuilder().id(4).ratingMPA(RatingMPA.PG).genres(Set.of(Genre.COMEDY)).build(),
+                null, new MockHttpServletResponse());
+        facets = filmController.listFilmsByFacets(Set.of(Genre.COMEDY), null, 0, 100, null, null, null);
+        assertEquals(List.of(1, 2, 4, 5), facetIds(facets), "Фильм не найден по новому жанру");
+        assertEquals(0, facets.getGenres().get(Genre.ACTION), "Фильм учтен по прежнему жанру");
+
+        // выборка не сочетается с диапазоном дат и порядком страницы - запрос отклоняется
+
+        assertThrows(RequestValidationException.class, () -> filmController.listFilmsByFacets(Set.of(Genre.COMEDY),
+                null, 0, 100, "2000-01-01", null, null), "Диапазон дат выхода отброшен без ошибки");
+        assertThrows(RequestValidationException.class, () -> filmController.listFilmsByRating(Set.of(RatingMPA.PG),
+                0, 100, null, null, "likes"), "Порядок страницы отброшен без ошибки");
+
+    }
+
+    //************************* Тестирование пакетных операций *************************
+
+    @Test
+    public void shouldResolveReferencesToRecordsCreatedInBatch() { //  ссылки на операции создания заменяются id
+
+        User existing = userController.addUser(User.builder().email("old@yandex.ru").login("old")
+                .name("Old").birthday(LocalDate.of(1990, 1, 1)).build());
+
+        List<BatchResult> results = batchService.execute(List.of(
+                BatchOperation.builder().type(BatchOperationType.ADD_USER).user(User.builder()
+                        .email("first@yandex.ru").login("first").birthday(LocalDate.of(2000, 1, 1)).build()).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_USER).user(User.builder()
+                        .email("second@yandex.ru").login("second").birthday(LocalDate.of(2000, 1, 1)).build()).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_FRIEND).userRef(0).friendRef(1).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_FRIEND).userRef(1).friendId(existing.getId())
+                        .build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_FILM).film(Film.builder().name("Batch film")
+                        .description("Description").releaseDate(LocalDate.of(2000, 1, 1)).duration(90).build())
+                        .build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_LIKE).filmRef(4).userRef(0).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_LIKE).filmRef(4).userId(existing.getId())
+                        .build()));
+
+        Long first = results.get(0).getUser().getId();
+        Long second = results.get(1).getUser().getId();
+        Integer film = results.get(4).getFilm().getId();
+        assertTrue(first > 0 && second > 0 && film > 0, "В результатах остались временные id");
+        assertEquals("first", results.get(0).getUser().getName(), "Имя не заменено логином");
+        assertEquals(Set.of(second), inMemoryUserStorage.getUserById(first).getFriends(), "Неверные друзья по ссылкам");
+        assertEquals(Set.of(first, existing.getId()), inMemoryUserStorage.getUserById(second).getFriends(),
+                "Неверные друзья по ссылке и id");
+        assertEquals(Set.of(second), inMemoryUserStorage.getUserById(existing.getId()).getFriends(),
+                "Существующий пользователь не получил друга, созданного в пакете");
+        assertEquals(2L, inMemoryFilmStorage.getFilmById(film).getLikes(), "Лайки по ссылкам не сохранены");
+        assertEquals(2L, results.get(6).getFilm().getLikes(), "Результат не отражает состояние после пакета");
+
+        assertThrows(RequestValidationException.class, () -> batchService.execute(List.of(
+                BatchOperation.builder().type(BatchOperationType.ADD_FILM).film(Film.builder().name("Film")
+                        .description("Description").releaseDate(LocalDate.of(2000, 1, 1)).duration(90).build())
+                        .build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_FRIEND).userRef(0)
+                        .friendId(existing.getId()).build())), "Принята ссылка на операцию создания фильма");
+        assertThrows(RequestValidationException.class, () -> batchService.execute(List.of(
+                BatchOperation.builder().type(BatchOperationType.ADD_LIKE).filmRef(1).userId(existing.getId()).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_FILM).film(Film.builder().name("Film")
+                        .description("Description").releaseDate(LocalDate.of(2000, 1, 1)).duration(90).build())
+                        .build())), "Принята ссылка на более позднюю операцию");
+    }
+
+    @Test
+    public void shouldKeepFriendsAndLikesWhenBatchUpdatesRecords() { //  обновление в пакете не затирает друзей и лайки
+
+        User user = userController.addUser(User.builder().email("keeper@yandex.ru").login("keeper")
+                .name("Keeper").birthday(LocalDate.of(1990, 1, 1)).build());
+        User oldFriend = userController.addUser(User.builder().email("oldfriend@yandex.ru").login("oldfriend")
+                .name("Old friend").birthday(LocalDate.of(1990, 1, 1)).build());
+        User newFriend = userController.addUser(User.builder().email("newfriend@yandex.ru").login("newfriend")
+                .name("New friend").birthday(LocalDate.of(1990, 1, 1)).build());
+        Film film = filmController.addFilm(Film.builder().name("Liked film").description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).build());
+        userController.addFriend(user.getId(), oldFriend.getId());
+        filmController.addLike(film.getId(), oldFriend.getId());
+
+        // тела обновлений без друзей и лайков, как их обычно присылает клиент
+        batchService.execute(List.of(
+                BatchOperation.builder().type(BatchOperationType.ADD_FRIEND).userId(user.getId())
+                        .friendId(newFriend.getId()).build(),
+                BatchOperation.builder().type(BatchOperationType.UPDATE_USER).user(user.toBuilder().name("Renamed")
+                        .friends(null).build()).build(),
+                BatchOperation.builder().type(BatchOperationType.UPDATE_FILM).film(film.toBuilder().name("Renamed film")
+                        .likes(null).build()).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_LIKE).filmId(film.getId()).userId(user.getId())
+                        .build()));
+
+        User updated = inMemoryUserStorage.getUserById(user.getId());
+        assertEquals("Renamed", updated.getName(), "Данные пользователя не обновлены");
+        assertEquals(Set.of(oldFriend.getId(), newFriend.getId()), updated.getFriends(),
+                "Обновление пользователя затерло друзей");
+        Film updatedFilm = inMemoryFilmStorage.getFilmById(film.getId());
+        assertEquals("Renamed film", updatedFilm.getName(), "Данные фильма не обновлены");
+        assertEquals(2L, updatedFilm.getLikes(), "Обновление фильма затерло лайки");
+    }
+
+    @Test
+    public void shouldLeaveStoragesUntouchedWhenBatchIsRejected() { //  отклоненный пакет не изменяет хранилища
+
+        User user = userController.addUser(User.builder().email("kept@yandex.ru").login("kept")
+                .name("Kept").birthday(LocalDate.of(1990, 1, 1)).build());
+        Film film = filmController.addFilm(Film.builder().name("Kept film").description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).build());
+
+        int usersBefore = inMemoryUserStorage.getUsersData().size();
+        int filmsBefore = inMemoryFilmStorage.getFilmsData().size();
+        long changesBefore = changeStorage.lastVersion();
+
+        // последняя операция ссылается на несуществующего пользователя - все предыдущие отменяются
+        assertThrows(UserDoesNotExistException.class, () -> batchService.execute(List.of(
+                BatchOperation.builder().type(BatchOperationType.ADD_USER).user(User.builder()
+                        .email("new@yandex.ru").login("new").birthday(LocalDate.of(2000, 1, 1)).build()).build(),
+                BatchOperation.builder().type(BatchOperationType.UPDATE_USER).user(user.toBuilder()
+                        .name("Changed").build()).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_FRIEND).userId(user.getId()).friendRef(0).build(),
+                BatchOperation.builder().type(BatchOperationType.UPDATE_FILM).film(film.toBuilder()
+                        .name("Changed film").build()).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_LIKE).filmId(film.getId()).userId(user.getId())
+                        .build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_LIKE).filmId(film.getId()).userId(999_999L)
+                        .build())));
+
+        assertEquals(usersBefore, inMemoryUserStorage.getUsersData().size(), "Пользователь из отклоненного пакета сохранен");
+        assertEquals(filmsBefore, inMemoryFilmStorage.getFilmsData().size(), "Число фильмов изменилось");
+        assertEquals("Kept", inMemoryUserStorage.getUserById(user.getId()).getName(), "Пользователь обновлен");
+        assertNull(inMemoryUserStorage.getUserById(user.getId()).getFriends(), "Друг из отклоненного пакета сохранен");
+        assertEquals("Kept film", inMemoryFilmStorage.getFilmById(film.getId()).getName(), "Фильм обновлен");
+        assertFalse(likeStorage.containsLike(film.getId(), user.getId()), "Лайк из отклоненного пакета сохранен");
+        assertEquals(changesBefore, changeStorage.lastVersion(), "В ленту изменений попали изменения пакета");
+    }
+
+    @Test
+    public void shouldRejectBatchTouchingRecordsOfAnotherShard() throws IOException { //  пакет изменяет только записи своего узла
+
+        InMemoryUserStorage users = new InMemoryUserStorage(new NoOpMutationJournal(),
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryFilmStorage films = new InMemoryFilmStorage(new NoOpMutationJournal(),
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryLikeStorage likes = new InMemoryLikeStorage(films, new NoOpMutationJournal(),
+                new InMemoryEventStorage(100), new InMemoryChangeStorage(100, false, "", 0));
+        User local = users.addUser(User.builder().email("local@yandex.ru").login("local")
+                .birthday(LocalDate.of(2000, 1, 1)).build());
+        ShardLayout layout = layoutOwning(local.getId());
+        long remoteId = idOfShard(layout, 1 - layout.index());
+
+        BatchServiceAtomic service = new BatchServiceAtomic(users, films, likes, new InMemoryEventStorage(100),
+                new NoOpMutationJournal(), new FriendPairLocks(), layout,
+                Validation.buildDefaultValidatorFactory().getValidator(), 100);
+
+        RequestValidationException exception = assertThrows(RequestValidationException.class,
+                () -> service.execute(List.of(
+                        BatchOperation.builder().type(BatchOperationType.UPDATE_USER).user(local.toBuilder()
+                                .name("Changed").build()).build(),
+                        BatchOperation.builder().type(BatchOperationType.ADD_FRIEND).userId(local.getId())
+                                .friendId(remoteId).build())));
+        assertTrue(exception.getMessage().contains("на другом узле"), "Неверная причина отказа");
+        assertNotEquals("Changed", users.getUserById(local.getId()).getName(), "Пакет частично выполнен");
+
+        List<BatchResult> results = service.execute(List.of(BatchOperation.builder()
+                .type(BatchOperationType.UPDATE_USER).user(local.toBuilder().name("Changed").build()).build()));
+        assertEquals("Changed", results.get(0).getUser().getName(), "Пакет с записями узла не выполнен");
+    }
+
+    //************************* Тестирование шардирования *************************
+
+    @Test
+    public void shouldPartitionIdsBetweenShards() { //  каждый id принадлежит ровно одному узлу
+
+        List<String> nodes = List.of("http://node0", "http://node1", "http://node2");
+        List<ShardLayout> layouts = List.of(new ShardLayout(true, 0, nodes), new ShardLayout(true, 1, nodes),
+                new ShardLayout(true, 2, nodes));
+        int[] owned = new int[nodes.size()];
+
+        for (long id = 1; id <= 3000; id++) {
+            long currentId = id;
+            List<ShardLayout> owners = layouts.stream().filter(layout -> layout.owns(currentId))
+                    .collect(Collectors.toList());
+            assertEquals(1, owners.size(), "У id " + id + " не один узел-владелец");
+            assertEquals(owners.get(0).index(), layouts.get(0).shardOf(id), "Узлы по-разному определяют владельца");
+            owned[owners.get(0).index()]++;
+        }
+        for (int count : owned) {
+            assertTrue(count > 800 && count < 1200, "Последовательные id распределены неравномерно: " + count);
+        }
+
+        ShardLayout layout = layouts.get(1);
+        for (long candidate = 1; candidate <= 100; candidate++) {
+            long id = layout.ownedIdFrom(candidate);
+            assertTrue(id >= candidate && layout.owns(id), "Выдан id другого узла");
+            for (long skipped = candidate; skipped < id; skipped++) {
+                assertFalse(layout.owns(skipped), "Пропущен id текущего узла");
+            }
+        }
+
+        ShardLayout single = new ShardLayout(false, 5, List.of());
+        assertTrue(single.owns(1L) && single.owns(Long.MAX_VALUE), "Без шардирования узел владеет не всеми id");
+        assertEquals(1, single.count());
+        assertThrows(IllegalArgumentException.class, () -> new ShardLayout(true, 3, nodes),
+                "Принят номер узла вне списка узлов");
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldRouteFilmRequestsToOwnerShard() { //  запрос по id выполняет узел-владелец, рейтинг - все узлы
+
+        Film local = filmController.addFilm(Film.builder().name("Local").description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).likes(3L).build());
+        ShardLayout layout = layoutOwning(local.getId());
+        int remote = 1 - layout.index();
+        int remoteId = (int) idOfShard(layout, remote);
+
+        Film remoteFilm = Film.builder().id(remoteId).name("Remote").description("Description")
+                .releaseDate(LocalDate.of(2001, 1, 1)).duration(90).likes(5L).build();
+        Film unpopular = remoteFilm.toBuilder().id(remoteId + 1000).likes(0L).build();
+
+        StubShardClient client = new StubShardClient(layout, objectMapper);
+        client.responses.put(remote + " /shard/films/" + remoteId, remoteFilm);
+        client.responses.put(remote + " /shard/films?expectedVersion=v1", remoteFilm.toBuilder().name("Renamed").build());
+        client.responses.put(remote + " /shard/films/popular?count=2", List.of(remoteFilm, unpopular));
+        ShardedFilmService service = new ShardedFilmService(layout, client, filmServiceRating, null);
+
+        assertEquals(local, service.getFilmById(local.getId()), "Локальный фильм запрошен у другого узла");
+        assertTrue(client.requests.isEmpty());
+
+        assertEquals(remoteFilm, service.getFilmById(remoteId), "Фильм другого узла не получен от владельца");
+        assertEquals("Renamed", service.updateFilm(remoteFilm.toBuilder().name("Renamed").build(), "v1").getName());
+        assertEquals(List.of(remoteFilm.getId(), local.getId()), service.listMostPopularFilms(2).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Рейтинг узлов объединен неверно");
+
+        assertEquals(List.of("GET " + remote + " /shard/films/" + remoteId,
+                "PUT " + remote + " /shard/films?expectedVersion=v1",
+                "GET " + remote + " /shard/films/popular?count=2"), client.requests);
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldGatherSearchResultsFromAllShards() { //  поиск и подсказки объединяют результаты всех узлов
+
+        Film local = filmController.addFilm(Film.builder().name("Star Wars").description("Space opera")
+                .releaseDate(LocalDate.of(1977, 5, 25)).duration(121).build());
+        User localUser = userController.addUser(User.builder().email("anna@yandex.ru").login("anna")
+                .name("Anna").birthday(LocalDate.of(2000, 1, 1)).build());
+        ShardLayout layout = layoutOwning(local.getId());
+        int remote = 1 - layout.index();
+
+        Film relevant = local.toBuilder().id((int) idOfShard(layout, remote)).name("Star Wars: Star Wars").build();
+        Film weak = relevant.toBuilder().id(relevant.getId() + 1000).name("Wars").build();
+
+        StubShardClient client = new StubShardClient(layout, objectMapper);
+        client.responses.put(remote + " /shard/films/search?q=star+wars&limit=2",
+                List.of(new FilmHit(relevant, 100.0), new FilmHit(weak, 0.001)));
+        client.responses.put(remote + " /shard/users/suggest?prefix=an&limit=2",
+                List.of(new Suggestion(7L, "andrew", 5L), new Suggestion(9L, "anton", 0L)));
+        ShardedSearchService service = new ShardedSearchService(layout, client, searchServiceIndex);
+
+        assertEquals(List.of(relevant.getId(), local.getId()), service.searchFilms("star wars", 2).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Результаты узлов объединены не по релевантности");
+        assertEquals(List.of(7L, localUser.getId()), service.suggestUsers("an", 2).stream()
+                .map(Suggestion::getId).collect(Collectors.toList()), "Подсказки узлов объединены не по популярности");
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldMergeReleaseDatePagesOfAllShards() { //  страница диапазона дат выбирается из страниц всех узлов
+
+        Film early = filmController.addFilm(Film.builder().name("Local early").description("Description")
+                .releaseDate(LocalDate.of(1901, 3, 1)).duration(90).likes(5L).build());
+        ShardLayout layout = layoutOwning(early.getId());
+        int remote = 1 - layout.index();
+        // фильмы с id другого узла - вне диапазона дат
+        for (long id = early.getId() + 1; layout.shardOf(id) != layout.index(); id++) {
+            filmController.addFilm(Film.builder().name("Outside").description("Description")
+                    .releaseDate(LocalDate.of(1950, 1, 1)).duration(90).build());
+        }
+        Film late = filmController.addFilm(Film.builder().name("Local late").description("Description")
+                .releaseDate(LocalDate.of(1901, 6, 1)).duration(90).likes(1L).build());
+        assertEquals(layout.index(), layout.shardOf(late.getId()), "Фильмы теста должны храниться на одном узле");
+
+        int remoteId = (int) idOfShard(layout, remote);
+        int otherRemoteId = remoteId + 1;
+        while (layout.shardOf(otherRemoteId) != remote) {
+            otherRemoteId++;
+        }
+        Film remoteFirst = early.toBuilder().id(remoteId).name("Remote first")
+                .releaseDate(LocalDate.of(1901, 2, 1)).likes(2L).build();
+        Film remotePopular = early.toBuilder().id(otherRemoteId).name("Remote popular")
+                .releaseDate(LocalDate.of(1901, 4, 1)).likes(9L).build();
+
+        StubShardClient client = new StubShardClient(layout, objectMapper);
+        client.responses.put(remote + " /shard/films/released?byPopularity=false&count=3&from=1901-01-01&to=1901-12-31",
+                new FilmPage(List.of(remoteFirst, remotePopular), 3));
+        client.responses.put(remote + " /shard/films/released?byPopularity=true&count=3&from=1901-01-01&to=1901-12-31",
+                new FilmPage(List.of(remotePopular, remoteFirst), 3));
+        ShardedSearchService service = new ShardedSearchService(layout, client, searchServiceIndex);
+
+        FilmPage byDate = service.listFilmsReleasedBetween(LocalDate.of(1901, 1, 1), LocalDate.of(1901, 12, 31),
+                false, 1, 2);
+        assertEquals(List.of(early.getId(), remotePopular.getId()), byDate.getFilms().stream()
+                .map(Film::getId).collect(Collectors.toList()), "Страницы узлов объединены не по дате выхода");
+        assertEquals(5, byDate.getTotal(), "Размер диапазона не сложен по узлам");
+
+        FilmPage byLikes = service.listFilmsReleasedBetween(LocalDate.of(1901, 1, 1), LocalDate.of(1901, 12, 31),
+                true, 1, 2);
+        assertEquals(List.of(early.getId(), remoteFirst.getId()), byLikes.getFilms().stream()
+                .map(Film::getId).collect(Collectors.toList()), "Страницы узлов объединены не по популярности");
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldMergeFacetsOfAllShards() { //  страница выборки по жанрам и счетчики собираются со всех узлов
+
+        Film local = filmController.addFilm(Film.builder().name("Local").description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).ratingMPA(RatingMPA.NC_17)
+                .genres(Set.of(Genre.DOCUMENTARY)).build());
+        ShardLayout layout = layoutOwning(local.getId());
+        int remote = 1 - layout.index();
+
+        int remoteId = (int) idOfShard(layout, remote);
+        int otherRemoteId = remoteId + 1;
+        while (layout.shardOf(otherRemoteId) != remote) {
+            otherRemoteId++;
+        }
+        Film remoteFirst = local.toBuilder().id(remoteId).name("Remote first").build();
+        Film remoteSecond = local.toBuilder().id(otherRemoteId).name("Remote second").build();
+
+        StubShardClient client = new StubShardClient(layout, objectMapper);
+        client.responses.put(remote + " /shard/films/facets?count=3&genre=DOCUMENTARY",
+                new FilmFacets(List.of(remoteFirst, remoteSecond), 4, Map.of(Genre.DOCUMENTARY, 4, Genre.ACTION, 1),
+                        Map.of(RatingMPA.NC_17, 4)));
+        ShardedSearchService service = new ShardedSearchService(layout, client, searchServiceIndex);
+
+        FilmFacets facets = service.listFilmsByFacets(Set.of(Genre.DOCUMENTARY), null, 1, 2);
+        List<Integer> ids = new ArrayList<>(List.of(local.getId(), remoteFirst.getId(), remoteSecond.getId()));
+        Collections.sort(ids);
+        assertEquals(ids.subList(1, 3), facetIds(facets), "Страницы узлов объединены не по возрастанию id");
+        assertEquals(5, facets.getTotal(), "Размер выборки не сложен по узлам");
+        assertEquals(5, facets.getGenres().get(Genre.DOCUMENTARY), "Счетчик жанра не сложен по узлам");
+        assertEquals(1, facets.getGenres().get(Genre.ACTION), "Счетчик жанра другого узла потерян");
+        assertEquals(5, facets.getMpa().get(RatingMPA.NC_17), "Счетчик рейтинга не сложен по узлам");
+    }
+
+    // разбиение на два узла, в котором текущий узел владеет указанным id
+    @Test
+    public void shouldGuardAndValidateShardRequests() { //  внутренние запросы узлов - секрет, владелец и друг
+
+        ShardRequestGuard guard = new ShardRequestGuard("secret");
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/shard/users/1/friends/2");
+        assertThrows(ShardAccessDeniedException.class,
+                () -> guard.preHandle(request, new MockHttpServletResponse(), null), "Запрос без секрета принят");
+        request.addHeader(ShardClient.SECRET_HEADER, "wrong");
+        assertThrows(ShardAccessDeniedException.class,
+                () -> guard.preHandle(request, new MockHttpServletResponse(), null), "Запрос с чужим секретом принят");
+        MockHttpServletRequest signed = new MockHttpServletRequest("PUT", "/shard/users/1/friends/2");
+        signed.addHeader(ShardClient.SECRET_HEADER, "secret");
+        assertTrue(guard.preHandle(signed, new MockHttpServletResponse(), null), "Запрос узла отклонен");
+        assertThrows(IllegalStateException.class, () -> new ShardRequestGuard(" "), "Узел запущен без секрета");
+        assertThrows(RequestValidationException.class, () -> ShardClient.checkCount(ShardClient.MAX_COUNT + 1L));
+
+        User local = userController.addUser(User.builder().email("local@yandex.ru").login("local")
+                .birthday(LocalDate.of(2000, 1, 1)).build());
+        ShardLayout layout = layoutOwning(local.getId());
+        int remote = 1 - layout.index();
+        long remoteId = idOfShard(layout, remote);
+        StubShardClient client = new StubShardClient(layout, objectMapper);
+        ShardedUserService service = new ShardedUserService(layout, client, new UserServiceCommunity(
+                inMemoryUserStorage, new InMemoryEventStorage(100), Optional.empty(), new FriendPairLocks()));
+
+        assertThrows(ShardRequestException.class,
+                () -> service.updateLocalFriendship(local.getId(), remoteId, Command.ADD, false),
+                "Добавлен в друзья несуществующий пользователь другого узла");
+        assertNull(inMemoryUserStorage.getUserById(local.getId()).getFriends(), "Список друзей изменен");
+        assertThrows(RequestValidationException.class,
+                () -> service.updateLocalFriendship(remoteId, local.getId(), Command.ADD, false),
+                "Изменен пользователь другого узла");
+
+        client.responses.put(remote + " /shard/users/" + remoteId, User.builder().id(remoteId).build());
+        assertEquals(Set.of(remoteId), service.updateLocalFriendship(local.getId(), remoteId, Command.ADD, false)
+                .getFriends(), "Друг с другого узла не добавлен");
+    }
+
+    private static ShardLayout layoutOwning(long id) {
+
+        List<String> nodes = List.of("http://node0", "http://node1");
+        return new ShardLayout(true, new ShardLayout(true, 0, nodes).shardOf(id), nodes);
+    }
+
+    private static long idOfShard(ShardLayout layout, int shard) {
+
+        long id = 1;
+        while (layout.shardOf(id) != shard) {
+            id++;
+        }
+        return id;
+    }
+
+    // заглушка клиента узлов: запросы записываются, ответы берутся по номеру узла и адресу запроса
+    private static class StubShardClient extends ShardClient {
+
+        private final Map<String, Object> responses = new HashMap<>();
+        private final List<String> requests = new ArrayList<>();
+
+        private StubShardClient(ShardLayout layout, ObjectMapper objectMapper) {
+            super(layout, objectMapper, 1000, "secret");
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> CompletableFuture<T> respond(String method, int shard, String path) {
+
+            requests.add(method + " " + shard + " " + path);
+            Object response = responses.get(shard + " " + path);
+            return response == null
+                    ? CompletableFuture.failedFuture(new ShardRequestException("Нет ответа на " + path, 404))
+                    : CompletableFuture.completedFuture((T) response);
+        }
+
+        @Override
+        public <T> CompletableFuture<T> getAsync(int shard, String path, Class<T> type) {
+            return respond("GET", shard, path);
+        }
+
+        @Override
+        public <T> CompletableFuture<List<T>> getListAsync(int shard, String path, Class<T> type) {
+            return respond("GET", shard, path);
+        }
+
+        @Override
+        public <T> CompletableFuture<List<T>> postListAsync(int shard, String path, Object body, Class<T> type) {
+            return respond("POST", shard, path);
+        }
+
+        @Override
+        public <T> T put(int shard, String path, Object body, Class<T> type) {
+            return join(respond("PUT", shard, path));
+        }
+
+        @Override
+        public <T> T delete(int shard, String path, Class<T> type) {
+            return join(respond("DELETE", shard, path));
+        }
+
+    }
+
+    //************************* Тестирование журнала, снимков и хранилищ на диске *************************
+
+    @Test
+    public void shouldCoverEarlierRecordsWithOneJournalSync(@TempDir Path directory) throws IOException {
+        //  групповая запись журнала: один fsync сохраняет все добавленные к этому моменту записи
+
+        FileMutationJournal journal = new FileMutationJournal(directory.resolve("journal.bin").toString());
+        long first = journal.append(JournalRecord.ofLikeAdded(1, 1L));
+        long second = journal.append(JournalRecord.ofLikeAdded(1, 2L));
+
+        journal.sync(second);
+        journal.sync(first); // первая запись уже на диске вместе со второй
+        assertEquals(1L, journal.getSyncCount(), "Сохраненные записи повторно сбрасываются на диск");
+
+        // в пакете с отложенной записью sync только запоминает позицию
+
+        long batchEnd = journal.deferSync(() -> {
+            for (long userId = 3; userId <= 10; userId++) {
+                journal.sync(journal.append(JournalRecord.ofLikeAdded(1, userId)));
+            }
+        });
+        assertEquals(1L, journal.getSyncCount(), "Записи пакета сброшены на диск до его окончания");
+        journal.sync(batchEnd);
+        assertEquals(2L, journal.getSyncCount(), "Пакет записей сохранен не одним fsync");
+        assertEquals(journal.lastSequence(), batchEnd, "Неверная позиция конца пакета");
+        journal.close();
+
+    }
+
+    @Test
+    public void shouldReplayJournalFromPosition(@TempDir Path directory) throws IOException {
+        //  чтение журнала после перезапуска - с начала и с позиции, запомненной снимком
+
+        String path = directory.resolve("journal.bin").toString();
+        FileMutationJournal journal = new FileMutationJournal(path);
+        Film film = Film.builder().id(1).name("Film").description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).likes(0L).build();
+        journal.append(JournalRecord.ofFilm(film));
+        long position = journal.append(JournalRecord.ofLikeAdded(1, 1L));
+        journal.append(JournalRecord.ofLikeRemoved(1, 1L));
+        journal.sync(journal.lastSequence());
+        journal.close();
+
+        FileMutationJournal reopened = new FileMutationJournal(path);
+        List<JournalRecord> records = new ArrayList<>();
+        reopened.replay(0, records::add);
+        assertEquals(List.of(RecordType.FILM, RecordType.LIKE_ADDED, RecordType.LIKE_REMOVED),
+                records.stream().map(JournalRecord::getType).collect(Collectors.toList()),
+                "Неверные записи журнала после перезапуска");
+        assertEquals(film, records.get(0).getFilm(), "Фильм восстановлен из журнала с искажениями");
+
+        records.clear();
+        reopened.replay(position, records::add);
+        assertEquals(List.of(JournalRecord.ofLikeRemoved(1, 1L)), records, "Неверное чтение журнала с позиции");
+        reopened.close();
+
+    }
+
+    @Test
+    public void shouldDiscardTornAndCorruptedJournalTail(@TempDir Path directory) throws IOException {
+        //  недописанная запись и запись с неверной контрольной суммой в конце журнала отбрасываются
+
+        Path path = directory.resolve("journal.bin");
+        FileMutationJournal journal = new FileMutationJournal(path.toString());
+        journal.append(JournalRecord.ofLikeAdded(1, 1L));
+        long intact = journal.append(JournalRecord.ofLikeAdded(1, 2L));
+        journal.append(JournalRecord.ofLikeAdded(1, 3L));
+        journal.close();
+
+        // последний байт последней записи искажен, за ней - начало недописанной записи
+
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 1] ^= 0x5A;
+        byte[] torn = Arrays.copyOf(bytes, bytes.length + 6);
+        torn[bytes.length + 3] = 100; // длина данных, которых в файле нет
+        Files.write(path, torn);
+
+        FileMutationJournal reopened = new FileMutationJournal(path.toString());
+        List<JournalRecord> records = new ArrayList<>();
+        reopened.replay(0, records::add);
+        assertEquals(2, records.size(), "Поврежденные записи прочитаны из журнала");
+        assertEquals(intact, reopened.lastSequence(), "Журнал не обрезан по последней целой записи");
+
+        // новые записи добавляются после последней целой записи и читаются при следующем запуске
+
+        reopened.sync(reopened.append(JournalRecord.ofLikeAdded(1, 4L)));
+        reopened.close();
+        FileMutationJournal restarted = new FileMutationJournal(path.toString());
+        records.clear();
+        restarted.replay(0, records::add);
+        assertEquals(List.of(1L, 2L, 4L), records.stream().map(JournalRecord::getUserId).collect(Collectors.toList()),
+                "Запись после обрезанного хвоста не прочитана");
+        restarted.close();
+
+    }
+
+    @Test
+    public void shouldKeepStringsLongerThan64KbInJournalAndSnapshot(@TempDir Path directory) throws IOException {
+        //  строки длиннее 65535 байт UTF-8 сохраняются в журнале и снимке без ограничения writeUTF
+
+        String journalPath = directory.resolve("journal.bin").toString();
+        String snapshotPath = directory.resolve("snapshot.bin").toString();
+        String description = "Описание ".repeat(5000); // около 85 КБ в UTF-8
+
+        FileMutationJournal journal = new FileMutationJournal(journalPath);
+        InMemoryUserStorage users = new InMemoryUserStorage(journal, new InMemoryChangeStorage(100, false, "", 0),
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryFilmStorage films = new InMemoryFilmStorage(journal, new InMemoryChangeStorage(100, false, "", 0),
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryLikeStorage likes = new InMemoryLikeStorage(films, journal, new InMemoryEventStorage(100),
+                new InMemoryChangeStorage(100, false, "", 0));
+
+        films.addFilm(Film.builder().name("Film 1").description(description)
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).likes(0L).build());
+        new SnapshotScheduler(journal, users, films, likes, new InMemoryChangeStorage(100, false, "", 0), null,
+                snapshotPath, 0).takeSnapshot();
+        films.addFilm(Film.builder().name("Film 2").description(description + "2")
+                .releaseDate(LocalDate.of(2000, 1, 2)).duration(90).likes(0L).build());
+        journal.sync(journal.lastSequence());
+        journal.close();
+
+        FileMutationJournal reopened = new FileMutationJournal(journalPath);
+        InMemoryFilmStorage restoredFilms = new InMemoryFilmStorage(reopened,
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        new JournalReplayer(reopened, new InMemoryUserStorage(reopened, new InMemoryChangeStorage(100, false, "", 0),
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01)), restoredFilms,
+                new InMemoryLikeStorage(restoredFilms, reopened, new InMemoryEventStorage(100),
+                        new InMemoryChangeStorage(100, false, "", 0)),
+                new InMemoryChangeStorage(100, false, "", 0), snapshotPath).replay();
+
+        assertEquals(description, restoredFilms.getFilmById(1).getDescription(), "Описание из снимка искажено");
+        assertEquals(description + "2", restoredFilms.getFilmById(2).getDescription(),
+                "Описание из журнала искажено");
+        reopened.close();
+
+    }
+
+    @Test
+    public void shouldNotApplyChangeWhenJournalAppendFails() throws IOException {
+        //  изменение, не записанное в журнал, не попадает ни в хранилище, ни в фильтр id, ни в ленту изменений
+
+        NoOpMutationJournal failingJournal = new NoOpMutationJournal() {
+            @Override
+            public long append(JournalRecord record) {
+                throw new UncheckedIOException("Диск заполнен", new IOException());
+            }
+        };
+        InMemoryChangeStorage changes = new InMemoryChangeStorage(100, false, "", 0);
+        IdFilters idFilters = new IdFilters(1000, 0.01);
+        InMemoryUserStorage users = new InMemoryUserStorage(failingJournal, changes,
+                new ShardLayout(false, 0, List.of()), idFilters);
+
+        assertThrows(UncheckedIOException.class, () -> users.addUser(User.builder().email("user@yandex.ru")
+                .login("user").name("User").birthday(LocalDate.of(2000, 1, 1)).build()));
+        assertTrue(users.getUsersData().isEmpty(), "Пользователь сохранен без записи в журнал");
+        assertFalse(idFilters.users().mightContain(1L), "Id добавлен в фильтр без записи в журнал");
+        assertEquals(0L, changes.lastVersion(), "Изменение попало в ленту без записи в журнал");
+
+        InMemoryFilmStorage films = new InMemoryFilmStorage(new NoOpMutationJournal(), changes,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        films.addFilm(Film.builder().name("Film").description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).likes(0L).build());
+        InMemoryEventStorage events = new InMemoryEventStorage(100);
+        InMemoryLikeStorage likes = new InMemoryLikeStorage(films, failingJournal, events, changes);
+        long versionBefore = changes.lastVersion();
+
+        assertThrows(UncheckedIOException.class, () -> likes.addLike(1, 1L));
+        assertTrue(likes.getLikesData().isEmpty(), "Лайк сохранен без записи в журнал");
+        assertTrue(events.listEvents(0L, 10).isEmpty(), "Событие лайка записано без записи в журнал");
+        assertEquals(versionBefore, changes.lastVersion(), "Лайк попал в ленту без записи в журнал");
+
+    }
+
+    @Test
+    public void shouldReadMappedFileAcrossWindowBoundaries(@TempDir Path directory) throws IOException {
+        //  файл читается окнами отображения - значения и строки на границе окон читаются целиком
+
+        Path path = directory.resolve("windows.bin");
+        String text = "Строка длиннее окна отображения";
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            out.writeByte(7);
+            out.writeLong(Long.MAX_VALUE - 1);
+            out.writeInt(text.getBytes(StandardCharsets.UTF_8).length);
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.writeInt(42);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedFileDataInput in = new MappedFileDataInput(channel, 10);
+            assertEquals(7, in.readByte());
+            assertEquals(Long.MAX_VALUE - 1, in.readLong(), "Значение на границе окон искажено");
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            assertEquals(text, new String(bytes, StandardCharsets.UTF_8), "Строка длиннее окна искажена");
+            assertEquals(42, in.readInt());
+            assertEquals(Files.size(path), in.position(), "Неверная позиция чтения в файле");
+            assertThrows(EOFException.class, in::readInt, "Чтение за концом файла");
+        }
+
+    }
+
+    @Test
+    public void shouldRejectJournalWithoutHeader(@TempDir Path directory) throws IOException {
+        //  файл журнала без заголовка или другого формата не читается как пустой журнал
+
+        Path path = directory.resolve("journal.bin");
+        Files.write(path, new byte[]{0, 0, 0, 4, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+
+        IOException exception = assertThrows(IOException.class, () -> new FileMutationJournal(path.toString()));
+        assertTrue(exception.getMessage().contains("Неизвестный формат журнала"));
+
+    }
+
+    @Test
+    public void shouldRestoreFromSnapshotAndCompactedJournal(@TempDir Path directory) throws IOException {
+        //  снимок состояния удаляет из журнала записи до своей позиции, восстановление - снимок и хвост журнала
+
+        String journalPath = directory.resolve("journal.bin").toString();
+        String snapshotPath = directory.resolve("snapshot.bin").toString();
+
+        FileMutationJournal journal = new FileMutationJournal(journalPath);
+        InMemoryUserStorage users = new InMemoryUserStorage(journal, new InMemoryChangeStorage(100, false, "", 0),
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryFilmStorage films = new InMemoryFilmStorage(journal, new InMemoryChangeStorage(100, false, "", 0),
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryLikeStorage likes = new InMemoryLikeStorage(films, journal, new InMemoryEventStorage(100),
+                new InMemoryChangeStorage(100, false, "", 0));
+
+        for (int i = 1; i <= 20; i++) {
+            users.addUser(User.builder().email("user" + i + "@yandex.ru").login("user" + i)
+                    .name("User " + i).birthday(LocalDate.of(2000, 1, 1)).build());
+            films.addFilm(Film.builder().name("Film " + i).description("Description")
+                    .releaseDate(LocalDate.of(2000, 1, i)).duration(90).likes(0L).build());
+        }
+        likes.addLike(1, 1L);
+        long snapshotSequence = journal.lastSequence();
+        long journalSize = Files.size(Path.of(journalPath));
+
+        new SnapshotScheduler(journal, users, films, likes, new InMemoryChangeStorage(100, false, "", 0), null,
+                snapshotPath, 0).takeSnapshot();
+        assertTrue(Files.size(Path.of(journalPath)) < journalSize / 10, "Журнал не сокращен после снимка");
+        assertThrows(IllegalStateException.class, () -> journal.replay(0, record -> { }),
+                "Журнал читается с позиции, удаленной после снимка");
+
+        // изменения после снимка остаются в журнале с прежними позициями
+
+        users.updateUser(users.getUserById(2L).toBuilder().name("Renamed").build());
+        likes.addLike(2, 3L);
+        assertTrue(journal.lastSequence() > snapshotSequence, "Позиции журнала сбросились после удаления записей");
+        journal.sync(journal.lastSequence());
+        journal.close();
+
+        FileMutationJournal reopened = new FileMutationJournal(journalPath);
+        InMemoryUserStorage restoredUsers = new InMemoryUserStorage(reopened,
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryFilmStorage restoredFilms = new InMemoryFilmStorage(reopened,
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryLikeStorage restoredLikes = new InMemoryLikeStorage(restoredFilms, reopened,
+                new InMemoryEventStorage(100), new InMemoryChangeStorage(100, false, "", 0));
+        new JournalReplayer(reopened, restoredUsers, restoredFilms, restoredLikes,
+                new InMemoryChangeStorage(100, false, "", 0), snapshotPath).replay();
+
+        assertEquals(20, restoredUsers.getUsersData().size(), "Пользователи не восстановлены");
+        assertEquals(20, restoredFilms.getFilmsData().size(), "Фильмы не восстановлены");
+        assertEquals("Renamed", restoredUsers.getUserById(2L).getName(), "Изменение после снимка не восстановлено");
+        assertEquals(Map.of(1, Set.of(1L), 2, Set.of(3L)), restoredLikes.getLikesData(), "Лайки не восстановлены");
+        assertEquals(journal.lastSequence(), reopened.lastSequence(), "Неверная позиция журнала после запуска");
+        reopened.close();
+
+    }
+
+    @Test
+    public void shouldKeepWritersRunningWhileSnapshotIsWritten(@TempDir Path directory) throws Exception {
+        //  снимок читает срезы хранилищ после снятия блокировок - запись во время снимка не ждет его окончания
+
+        String journalPath = directory.resolve("journal.bin").toString();
+        String snapshotPath = directory.resolve("snapshot.bin").toString();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+
+        FileMutationJournal journal = new FileMutationJournal(journalPath);
+        InMemoryUserStorage users = new InMemoryUserStorage(journal, new InMemoryChangeStorage(100, false, "", 0),
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01)) {
+            @Override
+            public Stream<User> streamUsers() {
+                // первая запись среза читается, пока другой поток добавляет пользователя и лайк
+                return super.streamUsers().peek(user -> {
+                    if (user.getId() == 1L) {
+                        assertDoesNotThrow(() -> writer.submit(() -> addUser(User.builder()
+                                .email("late@yandex.ru").login("late").name("Late")
+                                .birthday(LocalDate.of(2000, 1, 1)).build())).get(5, TimeUnit.SECONDS),
+                                "Запись пользователя ждет окончания снимка");
+                    }
+                });
+            }
+        };
+        InMemoryFilmStorage films = new InMemoryFilmStorage(journal, new InMemoryChangeStorage(100, false, "", 0),
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryLikeStorage likes = new InMemoryLikeStorage(films, journal, new InMemoryEventStorage(100),
+                new InMemoryChangeStorage(100, false, "", 0));
+
+        users.addUser(User.builder().email("early@yandex.ru").login("early").name("Early")
+                .birthday(LocalDate.of(2000, 1, 1)).build());
+        films.addFilm(Film.builder().name("Film").description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).likes(0L).build());
+        likes.addLike(1, 1L);
+
+        new SnapshotScheduler(journal, users, films, likes, new InMemoryChangeStorage(100, false, "", 0), null,
+                snapshotPath, 0).takeSnapshot();
+        writer.shutdown();
+        journal.close();
+
+        // снимок - срез на момент открытия, пользователь, добавленный во время записи снимка, - в хвосте журнала
+
+        List<User> snapshotUsers = new ArrayList<>();
+        SnapshotCodec.read(Path.of(snapshotPath), snapshotUsers::add, film -> { }, (filmId, userId) -> { });
+        assertEquals(List.of(1L), snapshotUsers.stream().map(User::getId).collect(Collectors.toList()),
+                "Снимок содержит запись после своей позиции");
+
+        FileMutationJournal reopened = new FileMutationJournal(journalPath);
+        InMemoryUserStorage restoredUsers = new InMemoryUserStorage(reopened,
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryFilmStorage restoredFilms = new InMemoryFilmStorage(reopened,
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryLikeStorage restoredLikes = new InMemoryLikeStorage(restoredFilms, reopened,
+                new InMemoryEventStorage(100), new InMemoryChangeStorage(100, false, "", 0));
+        new JournalReplayer(reopened, restoredUsers, restoredFilms, restoredLikes,
+                new InMemoryChangeStorage(100, false, "", 0), snapshotPath).replay();
+
+        assertEquals("Late", restoredUsers.getUserById(2L).getName(), "Запись во время снимка не восстановлена");
+        assertEquals(Map.of(1, Set.of(1L)), restoredLikes.getLikesData(), "Лайки снимка не восстановлены");
+        reopened.close();
+    }
+
+    @Test
+    public void shouldKeepSlabRecordsAcrossReopenAndSkipUnfinishedCells(@TempDir Path directory) throws IOException {
+        //  записи вне кучи: обновление в новую ячейку, обход по возрастанию id, восстановление индекса
+
+        MappedRecordSlab slab = new MappedRecordSlab(directory, "test", 4096);
+        slab.put(2L, utf("aaaaaaaa"));
+        slab.put(1L, utf("bbbbbbbb"));
+        slab.put(1L, utf("c".repeat(100))); // не помещается в ячейку на 64 байта - ячейка на 128 байт
+        slab.put(2L, utf("dddd")); // помещается, но записывается в новую ячейку
+
+        Map<Long, String> view = new MappedRecordMap<>(slab, key -> (Long) key, id -> id,
+                id -> slab.read(id, ByteBufferDataInput::readUTF));
+        assertEquals(List.of(Map.entry(1L, "c".repeat(100)), Map.entry(2L, "dddd")),
+                new ArrayList<>(view.entrySet()), "Неверный обход записей хранилища");
+
+        NoOpMutationJournal journal = new NoOpMutationJournal();
+        journal.onSync(slab::flush); // сегменты сбрасываются на диск вместе с журналом
+        journal.sync(journal.append(JournalRecord.ofLikeAdded(1, 1L)));
+        slab.close();
+
+        MappedRecordSlab reopened = new MappedRecordSlab(directory, "test", 4096);
+        assertEquals(2, reopened.size(), "Неверное число записей после перезапуска");
+        assertEquals("c".repeat(100), reopened.read(1L, ByteBufferDataInput::readUTF),
+                "Перенесенная запись не восстановлена");
+        assertEquals("dddd", reopened.read(2L, ByteBufferDataInput::readUTF), "Обновление не восстановлено");
+        reopened.close();
+
+        // ячейка без признака актуальности - запись, прерванная до его установки, - при запуске пропускается
+
+        Path segment = directory.resolve("test-00000.slab");
+        int cell = cellOf(segment, utf("c".repeat(100)));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}), cell + Integer.BYTES);
+        }
+        MappedRecordSlab recovered = new MappedRecordSlab(directory, "test", 4096);
+        assertFalse(recovered.contains(1L), "Незавершенная ячейка прочитана как запись");
+        assertEquals(1, recovered.size(), "Неверное число записей после прерванной записи");
+        recovered.put(3L, utf("eeee"));
+        assertEquals("eeee", recovered.read(3L, ByteBufferDataInput::readUTF), "Запись после восстановления не читается");
+        recovered.close();
+
+        // сегмент другого формата не читается как пустое хранилище
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 64}), 0);
+        }
+        assertThrows(IOException.class, () -> new MappedRecordSlab(directory, "test", 4096),
+                "Сегмент неизвестного формата прочитан");
+
+    }
+
+    @Test
+    public void shouldKeepPreviousSlabRecordWhenUpdateIsTorn(@TempDir Path directory) throws IOException {
+        //  обновление не перезаписывает ячейку: прерванная запись оставляет предыдущую версию
+
+        for (boolean torn : new boolean[]{false, true}) {
+            Path slabDirectory = directory.resolve(torn ? "torn" : "complete");
+            MappedRecordSlab slab = new MappedRecordSlab(slabDirectory, "test", 4096);
+            slab.put(1L, utf("old"));
+            slab.flush();
+            slab.put(1L, utf("new")); // остановка без сброса - в сегменте две актуальные ячейки записи
+            slab.put(2L, utf("other"));
+
+            // данные новой ячейки сохранены частично - контрольная сумма не сходится, читается прежняя версия
+            if (torn) {
+                Path segment = slabDirectory.resolve("test-00000.slab");
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.wrap(new byte[]{'x'}), cellOf(segment, utf("new")) + 29 + 2);
+                }
+            }
+
+            MappedRecordSlab restarted = new MappedRecordSlab(slabDirectory, "test", 4096);
+            assertEquals(torn ? "old" : "new", restarted.read(1L, ByteBufferDataInput::readUTF),
+                    torn ? "Прерванное обновление испортило запись" : "Из двух ячеек записи выбрана не последняя");
+            assertEquals("other", restarted.read(2L, ByteBufferDataInput::readUTF), "Соседняя запись потеряна");
+            assertEquals(2, restarted.size(), "Неверное число записей после перезапуска");
+
+            slab.close();
+            restarted.close();
+        }
+    }
+
+    @Test
+    public void shouldReuseReplacedSlabCellsAfterFlush(@TempDir Path directory) throws IOException {
+        //  замещенные ячейки после сброса замены на диск используются повторно - файлы не растут
+
+        MappedRecordSlab slab = new MappedRecordSlab(directory, "test", 4096);
+        for (int i = 0; i < 1000; i++) {
+            slab.put(1L, utf("value " + i));
+            slab.put(2L, utf("other " + i));
+            slab.flush();
+        }
+
+        assertEquals("value 999", slab.read(1L, ByteBufferDataInput::readUTF), "Неверная последняя версия");
+        assertEquals(1, Files.list(directory).count(), "Замещенные ячейки не используются повторно");
+        slab.close();
+
+        MappedRecordSlab reopened = new MappedRecordSlab(directory, "test", 4096);
+        assertEquals("other 999", reopened.read(2L, ByteBufferDataInput::readUTF), "Неверная версия после перезапуска");
+        assertEquals(2, reopened.size(), "Неверное число записей после перезапуска");
+        reopened.close();
+    }
+
+    // смещение ячейки с данными в файле сегмента - заголовок ячейки занимает 29 байт перед данными
+    private static int cellOf(Path segment, byte[] payload) throws IOException {
+
+        byte[] bytes = Files.readAllBytes(segment);
+        for (int i = 0; i + payload.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + payload.length, payload, 0, payload.length)) {
+                return i - 29;
+            }
+        }
+        throw new IllegalStateException("Данные не найдены в сегменте");
+    }
+
+    private static byte[] utf(String value) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(value);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void shouldRestoreLikesWithoutAppendingEvents() throws IOException {
+        //  восстановление лайков из журнала, снимка или реплики изменяет проекцию, но не историю событий
+
+        InMemoryEventStorage events = new InMemoryEventStorage(100);
+        InMemoryFilmStorage films = new InMemoryFilmStorage(new NoOpMutationJournal(),
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryLikeStorage likes = new InMemoryLikeStorage(films, new NoOpMutationJournal(), events,
+                new InMemoryChangeStorage(100, false, "", 0));
+        films.addFilm(Film.builder().name("Film").description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).likes(0L).build());
+
+        likes.restoreLike(1, 1L, Command.ADD);
+        likes.restoreLike(1, 2L, Command.ADD);
+        likes.restoreLike(1, 2L, Command.DELETE);
+        likes.restoreLike(1, 1L, Command.ADD); // повторное применение записи идемпотентно
+
+        assertEquals(Map.of(1, Set.of(1L)), likes.getLikesData(), "Неверные лайки после восстановления");
+        assertTrue(events.listEvents(0L, 100).isEmpty(), "Восстановление лайков добавило события в историю");
+
+        likes.addLike(1, 3L);
+        assertEquals(List.of(EventType.LIKE_ADDED),
+                events.listEvents(0L, 100).stream().map(Event::getEventType).collect(Collectors.toList()),
+                "Новый лайк не записан в историю событий");
+
+    }
+
+    @Test
+    public void shouldKeepOnlyRetainedEvents() {
+        //  история событий ограничена последними событиями, id событий не переиспользуются
+
+        InMemoryEventStorage events = new InMemoryEventStorage(3);
+        for (long userId = 1; userId <= 5; userId++) {
+            events.addEvent(EventType.FRIEND_ADDED, userId, userId + 1);
+        }
+
+        assertEquals(List.of(3L, 4L, 5L),
+                events.listEvents(0L, 10).stream().map(Event::getEventId).collect(Collectors.toList()),
+                "Неверные события после удаления старых");
+        assertEquals(6L, events.addEvent(EventType.FRIEND_REMOVED, 1L, 2L).getEventId(),
+                "Неверный id события после удаления старых");
+        assertEquals(List.of(5L, 6L),
+                events.listEvents(4L, 10).stream().map(Event::getEventId).collect(Collectors.toList()),
+                "Неверное чтение событий с id");
+        assertEquals(List.of(4L, 5L),
+                events.listEvents(0L, 2).stream().map(Event::getEventId).collect(Collectors.toList()),
+                "Новое событие не заместило самое старое");
+
+    }
+
+    @Test
+    public void shouldApplyConcurrentFriendEventsInHistoryOrder() throws Exception {
+        //  одновременные добавления и удаления дружбы одной пары: списки друзей соответствуют последнему событию
+
+        InMemoryUserStorage userStorage = new InMemoryUserStorage(new NoOpMutationJournal(),
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryEventStorage events = new InMemoryEventStorage(100_000);
+        UserServiceCommunity service = new UserServiceCommunity(userStorage, events, Optional.empty(), new FriendPairLocks());
+        for (int i = 1; i <= 2; i++) {
+            userStorage.addUser(User.builder().email("user" + i + "@yandex.ru").login("user" + i)
+                    .birthday(LocalDate.of(2000, 1, 1)).build());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            long seed = thread;
+            tasks.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 300; i++) {
+                    long userId = random.nextBoolean() ? 1L : 2L;
+                    if (random.nextBoolean()) {
+                        service.addFriend(userId, 3 - userId);
+                    } else {
+                        service.deleteFriend(userId, 3 - userId);
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        List<Event> history = events.listEvents(0L, 10_000);
+        boolean friends = history.get(history.size() - 1).getEventType() == EventType.FRIEND_ADDED;
+        assertEquals(friends, Optional.ofNullable(userStorage.getUserById(1L).getFriends()).orElse(Set.of())
+                .contains(2L), "Список друзей первого пользователя не соответствует последнему событию");
+        assertEquals(friends, Optional.ofNullable(userStorage.getUserById(2L).getFriends()).orElse(Set.of())
+                .contains(1L), "Список друзей второго пользователя не соответствует последнему событию");
+
+    }
+
+    @Test
+    public void shouldImportCsvAndNdjsonInChunksAndReportBadRows() throws IOException, NoSuchMethodException {
+        //  импорт: CSV и NDJSON, строки с ошибками разбора и валидации отклоняются, сохранение пакетами
+
+        List<Integer> chunkSizes = new ArrayList<>();
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage(new NoOpMutationJournal(),
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01)) {
+            @Override
+            public List<Film> addFilms(List<Film> newFilms) {
+                chunkSizes.add(newFilms.size());
+                return super.addFilms(newFilms);
+            }
+        };
+        InMemoryUserStorage userStorage = new InMemoryUserStorage(new NoOpMutationJournal(),
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        ImportServiceBatch importService = new ImportServiceBatch(filmStorage, userStorage, validator,
+                objectMapper, 2);
+
+        String csv = "name,description,releaseDate,duration,ratingMPA,genres\n"
+                + "First,\"Quoted, with comma\",2000-01-01,90,PG,COMEDY|DRAMA\n"
+                + "Second,Description,2001-01-01,100,,\n"
+                + "\n"
+                + "Third,Description,not-a-date,100,,\n" // ошибка разбора
+                + ",Description,2002-01-01,100,,\n" // ошибка валидации - пустое название
+                + "Fourth,Description,2003-01-01,100,R,\n"
+                + "Fifth,Description,2004-01-01,100,,\n";
+        ImportReport report = importService.importFilms(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ImportFormat.CSV);
+
+        assertEquals(6L, report.getProcessed(), "Неверное количество прочитанных записей");
+        assertEquals(4L, report.getImported(), "Неверное количество сохраненных записей");
+        assertEquals(2L, report.getRejected(), "Неверное количество отклоненных записей");
+        assertEquals(2, report.getErrors().size(), "Неверное количество ошибок в отчете");
+        assertTrue(report.getErrors().get(0).startsWith("строка 5:"), "Неверный номер строки с ошибкой");
+        assertEquals(List.of(2, 2), chunkSizes, "Записи сохранены не пакетами заданного размера");
+
+        Film first = filmStorage.getFilmById(1);
+        assertEquals("Quoted, with comma", first.getDescription(), "Значение CSV в кавычках разобрано неверно");
+        assertEquals(Set.of(Genre.COMEDY, Genre.DRAMA), first.getGenres(), "Жанры CSV разобраны неверно");
+
+        String ndjson = "{\"email\":\"first@yandex.ru\",\"login\":\"first\",\"birthday\":\"2000-01-01\"}\n"
+                + "{\"email\":\"wrong\",\"login\":\"second\",\"birthday\":\"2000-01-01\"}\n" // ошибка валидации
+                + "{not json}\n" // ошибка разбора
+                + "{\"email\":\"third@yandex.ru\",\"login\":\"third\",\"name\":\"Third\",\"birthday\":\"2000-01-01\"}\n";
+        report = importService.importUsers(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), ImportFormat.NDJSON);
+
+        assertEquals(4L, report.getProcessed(), "Неверное количество прочитанных записей NDJSON");
+        assertEquals(2L, report.getImported(), "Неверное количество сохраненных записей NDJSON");
+        assertEquals(2L, report.getRejected(), "Неверное количество отклоненных записей NDJSON");
+        assertEquals("first", userStorage.getUserById(1L).getName(), "Логин не установлен в качестве имени");
+
+        // неизвестный формат - ошибка данных запроса, а не непредвиденная ошибка
+
+        assertThrows(RequestValidationException.class, () -> ImportFormat.of("xml"), "Неизвестный формат принят");
+        assertEquals(ImportFormat.CSV, ImportFormat.of("csv"), "Формат не распознан без учета регистра");
+        List<Class<? extends Throwable>> badRequest = Arrays.asList(ErrorHandler.class
+                .getMethod("handleFailValidation", RuntimeException.class)
+                .getAnnotation(ExceptionHandler.class).value());
+        assertTrue(badRequest.contains(RequestValidationException.class), "Ошибка данных запроса не приводит к 400");
+        assertFalse(badRequest.contains(IllegalArgumentException.class), "Любой IllegalArgumentException приводит к 400");
+
+    }
+
+    @Test
+    public void shouldKeepSnapshotVersionsUntilStreamsAreReleased() {
+
+        VersionedMap<Long, String> map = new VersionedMap<>();
+        map.put(1L, "a1");
+
+        Stream<String> first = map.streamSnapshot();
+        Stream<String> second = map.streamSnapshot();
+        assertEquals(2, map.openSnapshots(), "Срезы одной версии не подсчитаны");
+
+        map.put(1L, "a2");
+        map.put(2L, "b1");
+        assertEquals(2, map.versionCount(1L), "Версия открытого среза удалена");
+
+        assertEquals(List.of("a1"), first.collect(Collectors.toList()), "Срез видит изменения после открытия");
+        assertEquals(1, map.openSnapshots(), "Срез не освобожден после полного прохода");
+
+        map.put(1L, "a3");
+        assertEquals(3, map.versionCount(1L), "Удалена версия, которую видит второй срез");
+
+        second.close();
+        assertEquals(0, map.openSnapshots(), "Срез не освобожден при закрытии потока");
+
+        map.put(1L, "a4");
+        assertEquals(1, map.versionCount(1L), "Старые версии не удалены при записи после закрытия срезов");
+        assertEquals(List.of("a4", "b1"), map.streamSnapshot().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldReleaseSnapshotOfAbandonedStream() throws InterruptedException {
+
+        VersionedMap<Long, String> map = new VersionedMap<>();
+        map.put(1L, "a1");
+        map.put(2L, "b1");
+
+        openAndAbandonSnapshot(map);
+        assertEquals(1, map.openSnapshots());
+
+        for (int i = 0; i < 50 && map.openSnapshots() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(0, map.openSnapshots(), "Брошенный незакрытый поток удерживает срез");
+
+        map.put(1L, "a2");
+        assertEquals(1, map.versionCount(1L), "Брошенный поток удерживает старые версии");
+    }
+
+    // поток читается не до конца и не закрывается
+    private static void openAndAbandonSnapshot(VersionedMap<Long, String> map) {
+        assertTrue(map.streamSnapshot().iterator().hasNext());
+    }
+
+    @Test
+    public void shouldContinueChangeVersionsAfterRestartWithoutTail(@TempDir Path directory) throws IOException {
+        //  лента без хвоста на диске продолжает нумерацию с версии снимка и числа записей журнала после него
+
+        String journalPath = directory.resolve("journal.bin").toString();
+        String snapshotPath = directory.resolve("snapshot.bin").toString();
+
+        FileMutationJournal journal = new FileMutationJournal(journalPath);
+        InMemoryChangeStorage changes = new InMemoryChangeStorage(100, false, "", 0);
+        InMemoryUserStorage users = new InMemoryUserStorage(journal, changes,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryFilmStorage films = new InMemoryFilmStorage(journal, changes,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryLikeStorage likes = new InMemoryLikeStorage(films, journal, new InMemoryEventStorage(100), changes);
+
+        for (int i = 1; i <= 5; i++) {
+            users.addUser(User.builder().email("user" + i + "@yandex.ru").login("user" + i)
+                    .name("User " + i).birthday(LocalDate.of(2000, 1, 1)).build());
+            films.addFilm(Film.builder().name("Film " + i).description("Description")
+                    .releaseDate(LocalDate.of(2000, 1, i)).duration(90).likes(0L).build());
+        }
+        new SnapshotScheduler(journal, users, films, likes, changes, null, snapshotPath, 0).takeSnapshot();
+        likes.addLike(1, 2L);
+        users.updateUser(users.getUserById(3L).toBuilder().name("Renamed").build());
+        long lastVersion = changes.lastVersion();
+        journal.sync(journal.lastSequence());
+        journal.close();
+
+        FileMutationJournal reopened = new FileMutationJournal(journalPath);
+        InMemoryChangeStorage restoredChanges = new InMemoryChangeStorage(100, false, "", 0);
+        InMemoryUserStorage restoredUsers = new InMemoryUserStorage(reopened, restoredChanges,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryFilmStorage restoredFilms = new InMemoryFilmStorage(reopened, restoredChanges,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryLikeStorage restoredLikes = new InMemoryLikeStorage(restoredFilms, reopened,
+                new InMemoryEventStorage(100), restoredChanges);
+        new JournalReplayer(reopened, restoredUsers, restoredFilms, restoredLikes, restoredChanges, snapshotPath)
+                .replay();
+
+        assertEquals(lastVersion, restoredChanges.lastVersion(), "Нумерация ленты началась заново после запуска");
+        assertTrue(restoredChanges.listChanges(lastVersion - 1, 10).isResyncRequired(),
+                "Изменения до перезапуска выданы из пустого буфера");
+
+        restoredUsers.updateUser(restoredUsers.getUserById(1L).toBuilder().name("After restart").build());
+        ChangeFeed feed = restoredChanges.listChanges(lastVersion, 10);
+        assertFalse(feed.isResyncRequired());
+        assertEquals(1, feed.getChanges().size(), "Потребитель пропустил изменение после перезапуска");
+        assertEquals(lastVersion + 1, feed.getChanges().get(0).getVersion(), "Версия выдана повторно");
+        reopened.close();
+    }
+
+    @Test
+    public void shouldWriteChangeTailInBackgroundAndReadItAfterRestart(@TempDir Path directory) throws IOException {
+        //  хвост ленты записывается фоновым потоком, при остановке очередь дописывается в файл
+
+        String tailPath = directory.resolve("changes.bin").toString();
+        InMemoryChangeStorage changes = new InMemoryChangeStorage(4, true, tailPath, 1 << 20);
+
+        for (long i = 1; i <= 50; i++) {
+            assertEquals(i, changes.addChange(JournalRecord.ofLikeAdded(1, i)));
+        }
+        changes.close();
+
+        InMemoryChangeStorage reopened = new InMemoryChangeStorage(4, true, tailPath, 1 << 20);
+        assertEquals(50, reopened.lastVersion(), "Версии ленты не восстановлены по файлу");
+
+        ChangeFeed feed = reopened.listChanges(0L, 100);
+        assertFalse(feed.isResyncRequired(), "Изменения вне буфера не прочитаны из файла");
+        assertEquals(LongStream.rangeClosed(1, 50).boxed().collect(Collectors.toList()),
+                feed.getChanges().stream().map(Change::getVersion).collect(Collectors.toList()));
+        assertEquals(50L, feed.getChanges().get(49).getUserId(), "Данные изменения искажены в файле");
+
+        assertEquals(51, reopened.addChange(JournalRecord.ofLikeRemoved(1, 1L)));
+        reopened.close();
+    }
+
+    @Test
+    public void shouldBoundChangeTailFilesBySize(@TempDir Path directory) throws IOException {
+        //  хвост ленты ограничен по размеру: старые файлы удаляются, вытесненные версии требуют синхронизации
+
+        String tailPath = directory.resolve("changes.bin").toString();
+        InMemoryChangeStorage changes = new InMemoryChangeStorage(4, true, tailPath, 4096);
+        for (long i = 1; i <= 1000; i++) {
+            changes.addChange(JournalRecord.ofLikeAdded(1, i));
+        }
+        changes.close();
+
+        long tailSize;
+        try (Stream<Path> files = Files.list(directory)) {
+            tailSize = files.mapToLong(file -> file.toFile().length()).sum();
+        }
+        assertTrue(tailSize <= 4096 + 100, "Размер хвоста ленты превышает предел: " + tailSize);
+
+        InMemoryChangeStorage reopened = new InMemoryChangeStorage(4, true, tailPath, 4096);
+        assertEquals(1000, reopened.lastVersion(), "Версии ленты не восстановлены по файлам");
+
+        ChangeFeed stale = reopened.listChanges(0L, 100);
+        assertTrue(stale.isResyncRequired(), "Вытесненные из файлов изменения не требуют синхронизации");
+        assertTrue(stale.getOldestVersion() > 1, "Старые изменения не удалены с диска");
+
+        ChangeFeed recent = reopened.listChanges(stale.getOldestVersion() - 1, 1000);
+        assertFalse(recent.isResyncRequired(), "Хранимые изменения не прочитаны из файлов");
+        assertEquals(LongStream.rangeClosed(stale.getOldestVersion(), 1000).boxed().collect(Collectors.toList()),
+                recent.getChanges().stream().map(Change::getVersion).collect(Collectors.toList()),
+                "Изменения из двух файлов прочитаны не подряд");
+        reopened.close();
+    }
+
+    @Test
+    public void shouldApplyChangesToListenersOutsideWriterThread() throws Exception {
+        //  запись в ленту не ждет слушателей (индексов), читатель ждет применения нужной ему версии
+
+        InMemoryChangeStorage changes = new InMemoryChangeStorage(100, false, "", 0);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> applied = new CopyOnWriteArrayList<>();
+        changes.addListener(change -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            applied.add(change.getVersion());
+        });
+
+        for (long i = 1; i <= 3; i++) { // слушатель заблокирован, запись продолжается
+            assertEquals(i, changes.addChange(JournalRecord.ofLikeAdded(1, i)));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> reader = executor.submit(() -> {
+            changes.awaitListeners(3L);
+            return null;
+        });
+        assertThrows(TimeoutException.class, () -> reader.get(200, TimeUnit.MILLISECONDS),
+                "Читатель не ждет применения изменений слушателями");
+
+        release.countDown();
+        reader.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(1L, 2L, 3L), applied, "Изменения переданы слушателю не в порядке версий");
+
+        changes.seedVersion(10L); // пропущенные версии не задерживают читателей
+        changes.awaitListeners(10L);
+        executor.shutdownNow();
+        changes.close();
+    }
+
+    @Test
+    public void shouldCatchUpReplicaFromSnapshotAndReconnectFromAppliedVersion() throws Exception {
+        //  реплика получает снимок, если изменения вытеснены из ленты, и после разрыва продолжает с своей версии
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+
+        InMemoryChangeStorage changes = new InMemoryChangeStorage(8, false, "", 0);
+        InMemoryUserStorage users = new InMemoryUserStorage(new NoOpMutationJournal(), changes,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryFilmStorage films = new InMemoryFilmStorage(new NoOpMutationJournal(), changes,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryLikeStorage likes = new InMemoryLikeStorage(films, new NoOpMutationJournal(),
+                new InMemoryEventStorage(100), changes);
+
+        users.addUser(User.builder().email("user@yandex.ru").login("user").name("User")
+                .birthday(LocalDate.of(2000, 1, 1)).build());
+        for (int i = 1; i <= 10; i++) {
+            films.addFilm(Film.builder().name("Film " + i).description("Description")
+                    .releaseDate(LocalDate.of(2000, 1, i)).duration(90).likes(0L).build());
+        }
+        likes.addLike(3, 1L);
+
+        InMemoryChangeStorage replicaChanges = new InMemoryChangeStorage(100, false, "", 0);
+        InMemoryUserStorage replicaUsers = new InMemoryUserStorage(new NoOpMutationJournal(), replicaChanges,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryFilmStorage replicaFilms = new InMemoryFilmStorage(new NoOpMutationJournal(), replicaChanges,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryLikeStorage replicaLikes = new InMemoryLikeStorage(replicaFilms, new NoOpMutationJournal(),
+                new InMemoryEventStorage(100), replicaChanges);
+
+        ReplicationServer server = new ReplicationServer(changes, users, films, likes, "localhost", port, 50);
+        ReplicationClient replica = new ReplicationClient(replicaUsers, replicaFilms, replicaLikes, replicaChanges,
+                "localhost", port, 300, 50);
+        assertFalse(replica.isFresh(), "Реплика без данных основного узла считается актуальной");
+
+        server.start();
+        replica.start();
+        try {
+            awaitCondition(() -> replica.isFresh() && replica.status().getAppliedVersion() == changes.lastVersion());
+
+            assertEquals(10, replicaFilms.getFilmsData().size(), "Фильмы снимка не применены");
+            assertEquals(Map.of(3, Set.of(1L)), replicaLikes.getLikesData(), "Лайки снимка не применены");
+            assertEquals(1L, replicaFilms.getFilmById(3).getLikes());
+            long snapshotChanges = replicaChanges.lastVersion();
+            assertTrue(snapshotChanges >= 12, "Записи снимка не зарегистрированы в ленте реплики");
+
+            // разрыв соединения: изменения основного узла помещаются в ленту и передаются после переподключения
+
+            server.stop();
+            users.updateUser(users.getUserById(1L).toBuilder().name("Renamed").build());
+            likes.deleteLike(3, 1L);
+            awaitCondition(() -> !replica.isFresh());
+
+            server = new ReplicationServer(changes, users, films, likes, "localhost", port, 50);
+            server.start();
+            awaitCondition(() -> replica.isFresh() && replica.status().getAppliedVersion() == changes.lastVersion());
+
+            assertEquals("Renamed", replicaUsers.getUserById(1L).getName(), "Изменение после разрыва не применено");
+            assertEquals(Map.of(3, Set.of()), replicaLikes.getLikesData(), "Удаление лайка не применено");
+            ChangeFeed feed = replicaChanges.listChanges(snapshotChanges, 100);
+            assertEquals(List.of(ChangeType.USER_SAVED, ChangeType.LIKE_REMOVED, ChangeType.FILM_SAVED),
+                    feed.getChanges().stream().map(Change::getChangeType).collect(Collectors.toList()),
+                    "Реплика получила снимок вместо изменений с версии разрыва");
+        } finally {
+            replica.stop();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldRejectWritesAndStaleReadsOnReplica() throws Exception { //  503 для изменений и отставшей реплики
+
+        boolean[] fresh = {true};
+        ReplicaRequestGuard guard = new ReplicaRequestGuard(new ReplicationNode() {
+            @Override
+            public ReplicationStatus status() {
+                return null;
+            }
+
+            @Override
+            public boolean isFresh() {
+                return fresh[0];
+            }
+        });
+
+        assertTrue(guard.preHandle(new MockHttpServletRequest("GET", "/films"), new MockHttpServletResponse(), null));
+        assertThrows(ReplicaUnavailableException.class, () -> guard.preHandle(
+                new MockHttpServletRequest("POST", "/films"), new MockHttpServletResponse(), null),
+                "Реплика приняла изменение");
+
+        fresh[0] = false;
+        assertThrows(ReplicaUnavailableException.class, () -> guard.preHandle(
+                new MockHttpServletRequest("GET", "/films"), new MockHttpServletResponse(), null),
+                "Отставшая реплика выполнила чтение");
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ErrorHandler.class
+                .getMethod("handleReplicaUnavailable", RuntimeException.class)
+                .getAnnotation(ResponseStatus.class).value(), "Отказ реплики возвращается не с кодом 503");
+    }
+
+    // ожидание условия, которое выполняет другой поток
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Условие не выполнено за 10 секунд");
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void shouldEvictToColdTierAndKeepTieredDataAcrossRestartWithoutJournal(@TempDir Path directory)
+            throws IOException {
+        //  вытесненные из памяти записи читаются с диска, файлы на диске переживают перезапуск без журнала
+
+        String tieredDirectory = directory.resolve("tiered").toString();
+        TieredFilmStorage films = new TieredFilmStorage(tieredDirectory, 1 << 16, 2, new NoOpMutationJournal(),
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+
+        List<Film> added = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            added.add(films.addFilm(Film.builder().name("Film " + i).description("Description")
+                    .releaseDate(LocalDate.of(2000, 1, i)).duration(90).likes(0L).build()));
+        }
+        TierStats stats = films.getTierStats();
+        assertEquals(2, stats.getHotSize(), "В памяти больше записей, чем допускает уровень");
+        assertEquals(5, stats.getColdSize(), "На диске хранятся не все записи");
+        assertEquals(3L, stats.getEvictions(), "Давно не читавшиеся записи не вытеснены");
+
+        assertEquals(added.get(0), films.getFilmById(1), "Вытесненная запись прочитана с диска неверно");
+        assertEquals(added.get(0), films.getFilmById(1));
+        stats = films.getTierStats();
+        assertEquals(1L, stats.getMisses(), "Вытесненная запись не загружена в память");
+        assertEquals(1L, stats.getHits(), "Повторное чтение не из памяти");
+        assertEquals(added, films.listFilms(), "Перебор записей с диска неверен");
+        films.close();
+
+        TieredFilmStorage reopened = new TieredFilmStorage(tieredDirectory, 1 << 16, 2, new NoOpMutationJournal(),
+                new InMemoryChangeStorage(100, false, "", 0), new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        assertEquals(added, reopened.listFilms(), "Данные многоуровневого хранилища потеряны при перезапуске");
+        assertEquals(added.get(4), reopened.getFilmById(5));
+        assertEquals(6, reopened.addFilm(added.get(0).toBuilder().id(null).build()).getId(),
+                "Id после перезапуска выдаются заново");
+        reopened.close();
+    }
+
+    @Test
+    public void shouldJournalBatchAsOneRecordAndRestoreItWhole(@TempDir Path directory) throws IOException {
+        //  пакет записывается в журнал одной записью и после сбоя восстанавливается целиком или не восстанавливается
+
+        Path journalPath = directory.resolve("journal.bin");
+        String snapshotPath = directory.resolve("snapshot.bin").toString();
+
+        FileMutationJournal journal = new FileMutationJournal(journalPath.toString());
+        InMemoryChangeStorage changes = new InMemoryChangeStorage(100, false, "", 0);
+        InMemoryUserStorage users = new InMemoryUserStorage(journal, changes, new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryFilmStorage films = new InMemoryFilmStorage(journal, changes, new ShardLayout(false, 0, List.of()),
+                new IdFilters(1000, 0.01));
+        InMemoryLikeStorage likes = new InMemoryLikeStorage(films, journal, new InMemoryEventStorage(100), changes);
+        BatchServiceAtomic service = new BatchServiceAtomic(users, films, likes, new InMemoryEventStorage(100),
+                journal, new FriendPairLocks(), new ShardLayout(false, 0, List.of()),
+                Validation.buildDefaultValidatorFactory().getValidator(), 100);
+
+        long before = journal.lastSequence();
+        service.execute(List.of(
+                BatchOperation.builder().type(BatchOperationType.ADD_USER).user(User.builder()
+                        .email("first@yandex.ru").login("first").birthday(LocalDate.of(2000, 1, 1)).build()).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_USER).user(User.builder()
+                        .email("second@yandex.ru").login("second").birthday(LocalDate.of(2000, 1, 1)).build()).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_FRIEND).userRef(0).friendRef(1).build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_FILM).film(Film.builder().name("Film")
+                        .description("Description").releaseDate(LocalDate.of(2000, 1, 1)).duration(90).build())
+                        .build(),
+                BatchOperation.builder().type(BatchOperationType.ADD_LIKE).filmRef(3).userRef(0).build()));
+        long after = journal.lastSequence();
+        journal.close();
+
+        List<JournalRecord> records = new ArrayList<>();
+        new FileMutationJournal(journalPath.toString()).replay(before, records::add);
+        assertEquals(1, records.size(), "Пакет записан в журнал несколькими записями");
+        assertEquals(RecordType.BATCH, records.get(0).getType(), "Неверный тип записи пакета");
+        assertEquals(changes.lastVersion(), records.get(0).changeCount(),
+                "Число записей пакета не совпадает с числом изменений ленты");
+
+        // восстановление пакета целиком, нумерация ленты продолжается после изменений пакета
+
+        FileMutationJournal reopened = new FileMutationJournal(journalPath.toString());
+        InMemoryChangeStorage restoredChanges = new InMemoryChangeStorage(100, false, "", 0);
+        InMemoryUserStorage restoredUsers = new InMemoryUserStorage(reopened, restoredChanges,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryFilmStorage restoredFilms = new InMemoryFilmStorage(reopened, restoredChanges,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryLikeStorage restoredLikes = new InMemoryLikeStorage(restoredFilms, reopened,
+                new InMemoryEventStorage(100), restoredChanges);
+        new JournalReplayer(reopened, restoredUsers, restoredFilms, restoredLikes, restoredChanges, snapshotPath)
+                .replay();
+
+        assertEquals(Set.of(2L), restoredUsers.getUserById(1L).getFriends(), "Дружба из пакета не восстановлена");
+        assertEquals(Map.of(1, Set.of(1L)), restoredLikes.getLikesData(), "Лайк из пакета не восстановлен");
+        assertEquals(changes.lastVersion(), restoredChanges.lastVersion(), "Нумерация ленты не продолжена");
+        reopened.close();
+
+        // недописанная запись пакета отбрасывается целиком - частично примененного пакета нет
+
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - (after - before) / 2);
+        }
+        FileMutationJournal torn = new FileMutationJournal(journalPath.toString());
+        InMemoryUserStorage tornUsers = new InMemoryUserStorage(torn, new InMemoryChangeStorage(100, false, "", 0),
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryFilmStorage tornFilms = new InMemoryFilmStorage(torn, new InMemoryChangeStorage(100, false, "", 0),
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        new JournalReplayer(torn, tornUsers, tornFilms, new InMemoryLikeStorage(tornFilms, torn,
+                new InMemoryEventStorage(100), new InMemoryChangeStorage(100, false, "", 0)),
+                new InMemoryChangeStorage(100, false, "", 0), snapshotPath).replay();
+
+        assertTrue(tornUsers.getUsersData().isEmpty() && tornFilms.getFilmsData().isEmpty(),
+                "Восстановлена часть пакета");
+        torn.close();
+    }
+
+    @Test
+    public void shouldSuggestLikeBruteForceAfterRandomChanges() throws IOException {
+        //  подсказки совпадают с полным перебором после случайных изменений, лента меньше числа изменений
+
+        InMemoryChangeStorage changes = new InMemoryChangeStorage(8, false, "", 0);
+        InMemoryFilmStorage films = new InMemoryFilmStorage(new NoOpMutationJournal(), changes,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        InMemoryUserStorage users = new InMemoryUserStorage(new NoOpMutationJournal(), changes,
+                new ShardLayout(false, 0, List.of()), new IdFilters(1000, 0.01));
+        SuggestIndex index = new SuggestIndex(films, users, changes, 5);
+        Random random = new Random(42);
+        String[] parts = {"a", "b", "ab", "ba", "A", "bb"};
+
+        for (int i = 0; i < 20; i++) { // фильмы до построения индекса
+            films.addFilm(Film.builder().name(randomName(random, parts)).description("Description")
+                    .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).likes((long) random.nextInt(5)).build());
+        }
+        assertEquals(5, index.suggestFilms("", 5).size(), "Индекс не построен по хранилищу");
+
+        for (int step = 0; step < 2000; step++) {
+            if (random.nextInt(4) == 0) {
+                films.addFilm(Film.builder().name(randomName(random, parts)).description("Description")
+                        .releaseDate(LocalDate.of(2000, 1, 1)).duration(90).likes((long) random.nextInt(5)).build());
+            } else {
+                Film film = films.getFilmById(1 + random.nextInt(films.getFilmsData().size()));
+                films.updateFilm(random.nextBoolean()
+                        ? film.toBuilder().likes((long) random.nextInt(10)).build()
+                        : film.toBuilder().name(randomName(random, parts)).build());
+            }
+
+            String name = randomName(random, parts);
+            String prefix = name.substring(0, random.nextInt(Math.min(3, name.length()) + 1));
+            int limit = 1 + random.nextInt(6);
+            List<Long> expected = films.getFilmsData().values().stream()
+                    .filter(film -> film.getName().toLowerCase().startsWith(prefix.toLowerCase()))
+                    .sorted(Comparator.comparingLong(Film::getLikes).reversed().thenComparingInt(Film::getId))
+                    .limit(Math.min(limit, 5))
+                    .map(film -> (long) film.getId())
+                    .collect(Collectors.toList());
+            List<Long> actual = index.suggestFilms(prefix, limit).stream()
+                    .map(Suggestion::getId).collect(Collectors.toList());
+            assertEquals(expected, actual, "Подсказки по префиксу '" + prefix + "' на шаге " + step
+                    + " не совпадают с перебором");
+        }
+    }
+
+    private static String randomName(Random random, String[] parts) {
+
+        StringBuilder name = new StringBuilder();
+        for (int i = 1 + random.nextInt(4); i > 0; i--) {
+            name.append(parts[random.nextInt(parts.length)]);
+        }
+        return name.toString();
+    }
+
     //************************* Тесты на валидацию данных для фильмов *************************
     @Test
     public void shouldPassValidationFilmWithValidData() { //filmData is valid = should pass